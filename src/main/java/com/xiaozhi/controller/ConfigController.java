@@ -10,6 +10,11 @@ import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysUser;
 import com.xiaozhi.service.SysConfigService;
 import com.xiaozhi.utils.CmsUtils;
+import com.xiaozhi.websocket.llm.LlmManager;
+import com.xiaozhi.websocket.service.TtsRateLimiter;
+import com.xiaozhi.websocket.stt.factory.SttServiceFactory;
+import com.xiaozhi.websocket.token.TokenManager;
+import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,21 @@ public class ConfigController {
     @Resource
     private SysConfigService configService;
 
+    @Resource
+    private TtsServiceFactory ttsServiceFactory;
+
+    @Resource
+    private SttServiceFactory sttServiceFactory;
+
+    @Resource
+    private LlmManager llmManager;
+
+    @Resource
+    private TtsRateLimiter ttsRateLimiter;
+
+    @Resource
+    private TokenManager tokenManager;
+
     /**
      * 配置查询
      * 
@@ -75,6 +95,12 @@ public class ConfigController {
         return Mono.fromCallable(() -> {
             try {
                 configService.update(config);
+                // 配置变化（包括删除）后重新创建使用该配置的模型、语音合成和语音识别服务，缓存的Token作废
+                llmManager.invalidate(config.getConfigId());
+                ttsServiceFactory.invalidate(config.getConfigId());
+                sttServiceFactory.invalidate(config.getConfigId());
+                ttsRateLimiter.invalidate(config.getConfigId());
+                tokenManager.invalidate(config.getConfigId());
                 return AjaxResult.success();
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
@@ -99,6 +125,9 @@ public class ConfigController {
                 }
                 
                 configService.add(config);
+                // 新配置可能成为备用语音识别或语音合成服务
+                sttServiceFactory.invalidate(config.getConfigId());
+                ttsRateLimiter.invalidate(config.getConfigId());
                 return AjaxResult.success();
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
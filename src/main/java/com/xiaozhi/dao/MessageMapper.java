@@ -15,7 +15,13 @@ public interface MessageMapper {
 
   int add(SysDevice message);
 
+  int addBatch(List<SysMessage> messages);
+
   int update(SysMessage message);
 
   List<SysMessage> query(SysMessage message);
+
+  List<String> queryReferencedAudioPaths(List<String> audioPaths);
+
+  int clearAudioPath(List<String> audioPaths);
 }
\ No newline at end of file
@@ -21,6 +21,14 @@ public interface SysMessageService {
    */
   public int add(SysDevice device);
 
+  /**
+   * 批量新增记录，一条多行INSERT写入
+   * 
+   * @param messages
+   * @return
+   */
+  public int addBatch(List<SysMessage> messages);
+
   /**
    * 查询聊天记录
    * 
@@ -29,4 +37,20 @@ public interface SysMessageService {
    */
   public List<SysMessage> query(SysMessage message);
 
+  /**
+   * 查询聊天记录或验证码中仍引用的音频路径
+   * 
+   * @param audioPaths
+   * @return
+   */
+  public List<String> queryReferencedAudioPaths(List<String> audioPaths);
+
+  /**
+   * 清空聊天记录中的音频路径（音频文件已被清理）
+   * 
+   * @param audioPaths
+   * @return
+   */
+  public int clearAudioPath(List<String> audioPaths);
+
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.xiaozhi.service.impl;
 
+import java.util.Collections;
 import java.util.List;
 
 import com.github.pagehelper.PageHelper;
@@ -38,6 +39,21 @@ public class SysMessageServiceImpl implements SysMessageService {
         return messageMapper.add(device);
     }
 
+    /**
+     * 批量新增聊天记录
+     *
+     * @param messages
+     * @return
+     */
+    @Override
+    @Transactional
+    public int addBatch(List<SysMessage> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        return messageMapper.addBatch(messages);
+    }
+
     /**
      * 查询聊天记录
      *
@@ -52,4 +68,33 @@ public class SysMessageServiceImpl implements SysMessageService {
         return messageMapper.query(message);
     }
 
-}
\ No newline at end of file
+    /**
+     * 查询仍被引用的音频路径
+     *
+     * @param audioPaths
+     * @return
+     */
+    @Override
+    public List<String> queryReferencedAudioPaths(List<String> audioPaths) {
+        if (audioPaths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return messageMapper.queryReferencedAudioPaths(audioPaths);
+    }
+
+    /**
+     * 清空聊天记录中的音频路径
+     *
+     * @param audioPaths
+     * @return
+     */
+    @Override
+    @Transactional
+    public int clearAudioPath(List<String> audioPaths) {
+        if (audioPaths.isEmpty()) {
+            return 0;
+        }
+        return messageMapper.clearAudioPath(audioPaths);
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.xiaozhi.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 将Opus帧封装为Ogg Opus文件（RFC 7845），不做解码和重新编码，浏览器可直接播放
+ * 每个Ogg页最多容纳255个分段，单个Opus帧不超过1275字节，因此帧不会跨页。非线程安全
+ */
+public class OggOpusWriter implements Closeable {
+
+    // Ogg Opus的granule position固定以48kHz计
+    private static final int GRANULE_RATE = 48000;
+
+    // 单页数据达到该大小后换页
+    private static final int MAX_PAGE_BYTES = 4096;
+
+    private static final int MAX_SEGMENTS = 255;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private final OutputStream out;
+    private final int serial;
+
+    // 当前页的分段表和数据
+    private final byte[] segments = new byte[MAX_SEGMENTS];
+    private int segmentCount;
+    private final ByteArrayOutputStream pageData = new ByteArrayOutputStream(MAX_PAGE_BYTES);
+
+    private int pageSequence;
+    private long granulePosition;
+    private boolean closed;
+
+    /**
+     * @param out        输出流，关闭时一并关闭
+     * @param sampleRate 原始采样率，仅写入文件头供播放器参考
+     * @param channels   通道数
+     */
+    public OggOpusWriter(OutputStream out, int sampleRate, int channels) throws IOException {
+        this.out = out;
+        this.serial = (int) System.nanoTime();
+        writeHeaders(sampleRate, channels);
+    }
+
+    /**
+     * 写入一个Opus帧
+     *
+     * @param packet     Opus帧
+     * @param durationMs 帧时长（毫秒）
+     */
+    public void writePacket(byte[] packet, int durationMs) throws IOException {
+        int lacing = packet.length / 255 + 1;
+        if (segmentCount + lacing > MAX_SEGMENTS || pageData.size() + packet.length > MAX_PAGE_BYTES) {
+            flushPage(0);
+        }
+        for (int i = 0; i < lacing - 1; i++) {
+            segments[segmentCount++] = (byte) 255;
+        }
+        segments[segmentCount++] = (byte) (packet.length % 255);
+        pageData.write(packet, 0, packet.length);
+        granulePosition += (long) GRANULE_RATE * durationMs / 1000;
+    }
+
+    /**
+     * 写出最后一页并标记流结束
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushPage(0x04);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeaders(int sampleRate, int channels) throws IOException {
+        // OpusHead
+        byte[] head = new byte[19];
+        System.arraycopy("OpusHead".getBytes(StandardCharsets.US_ASCII), 0, head, 0, 8);
+        head[8] = 1; // 版本
+        head[9] = (byte) channels;
+        // pre-skip为0：帧来自播放流，不裁剪编码器延迟
+        writeIntLE(head, 12, sampleRate);
+        // 输出增益0，通道映射族0
+        writeHeaderPage(head, 0x02);
+
+        // OpusTags
+        byte[] vendor = "xiaozhi".getBytes(StandardCharsets.US_ASCII);
+        byte[] tags = new byte[8 + 4 + vendor.length + 4];
+        System.arraycopy("OpusTags".getBytes(StandardCharsets.US_ASCII), 0, tags, 0, 8);
+        writeIntLE(tags, 8, vendor.length);
+        System.arraycopy(vendor, 0, tags, 12, vendor.length);
+        writeHeaderPage(tags, 0);
+    }
+
+    private void writeHeaderPage(byte[] packet, int headerType) throws IOException {
+        segmentCount = 0;
+        pageData.reset();
+        int lacing = packet.length / 255 + 1;
+        for (int i = 0; i < lacing - 1; i++) {
+            segments[segmentCount++] = (byte) 255;
+        }
+        segments[segmentCount++] = (byte) (packet.length % 255);
+        pageData.write(packet, 0, packet.length);
+        flushPage(headerType);
+    }
+
+    private void flushPage(int headerType) throws IOException {
+        byte[] data = pageData.toByteArray();
+        byte[] page = new byte[27 + segmentCount + data.length];
+        System.arraycopy("OggS".getBytes(StandardCharsets.US_ASCII), 0, page, 0, 4);
+        page[4] = 0; // 版本
+        page[5] = (byte) headerType;
+        writeLongLE(page, 6, granulePosition);
+        writeIntLE(page, 14, serial);
+        writeIntLE(page, 18, pageSequence++);
+        // 22~25为CRC，计算时按0处理
+        page[26] = (byte) segmentCount;
+        System.arraycopy(segments, 0, page, 27, segmentCount);
+        System.arraycopy(data, 0, page, 27 + segmentCount, data.length);
+        writeIntLE(page, 22, crc(page));
+        out.write(page);
+
+        segmentCount = 0;
+        pageData.reset();
+    }
+
+    private static int crc(byte[] data) {
+        int crc = 0;
+        for (byte b : data) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) & 0xff) ^ (b & 0xff)];
+        }
+        return crc;
+    }
+
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static void writeLongLE(byte[] buffer, int offset, long value) {
+        writeIntLE(buffer, offset, (int) value);
+        writeIntLE(buffer, offset + 4, (int) (value >>> 32));
+    }
+}
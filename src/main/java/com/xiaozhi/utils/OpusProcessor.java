@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -50,6 +51,16 @@ public class OpusProcessor {
         return pcmBuffer;
     }
 
+    /**
+     * 使用会话的解码器解码Opus帧到调用方提供的数组，不为每帧创建解码器，
+     * 解码器保留前面各帧的状态，丢包隐藏有历史可用。同一会话的帧需按顺序串行解码
+     *
+     * @return 解码出的样本数
+     */
+    public int decodeOpusFrame(String sessionId, byte[] opusData, short[] pcm) throws OpusException {
+        return getSessionDecoder(sessionId).decode(opusData, 0, opusData.length, pcm, 0, pcm.length, false);
+    }
+
     /**
      * 获取会话的Opus解码器（如果不存在则创建）
      */
@@ -104,6 +115,86 @@ public class OpusProcessor {
         return opusFrames;
     }
 
+    /**
+     * 创建流式编码器，PCM可以分块送入，不足一帧的部分留到下一块，整句共用一个编码器
+     */
+    public StreamEncoder createStreamEncoder(int sampleRate, int channels, int frameDurationMs)
+            throws OpusException {
+        return new StreamEncoder(sampleRate, channels, frameDurationMs);
+    }
+
+    /**
+     * 流式Opus编码器，非线程安全，同一时间只能由一个线程送入数据
+     */
+    public static class StreamEncoder {
+        private final OpusEncoder encoder;
+        private final int frameSize;
+        private final short[] frame;
+        private final byte[] opusBuffer = new byte[1275];
+        // 当前帧已填充的样本数
+        private int filled;
+        // 上一块末尾落单的字节，16位样本可能被拆在两块中
+        private int carry = -1;
+
+        StreamEncoder(int sampleRate, int channels, int frameDurationMs) throws OpusException {
+            encoder = new OpusEncoder(sampleRate, channels, OpusApplication.OPUS_APPLICATION_VOIP);
+            encoder.setBitrate(16000);
+            frameSize = sampleRate * frameDurationMs / 1000;
+            frame = new short[frameSize * channels];
+        }
+
+        /**
+         * 送入一块16位小端PCM
+         *
+         * @return 本次凑满的Opus帧
+         */
+        public List<byte[]> encode(byte[] pcm) throws OpusException {
+            List<byte[]> frames = new ArrayList<>();
+            int i = 0;
+            if (carry >= 0 && pcm.length > 0) {
+                append((short) (carry | (pcm[0] << 8)), frames);
+                carry = -1;
+                i = 1;
+            }
+            for (; i + 1 < pcm.length; i += 2) {
+                append((short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8)), frames);
+            }
+            if (i < pcm.length) {
+                carry = pcm[i] & 0xFF;
+            }
+            return frames;
+        }
+
+        /**
+         * 结束输入，不足一帧的剩余样本补静音后输出
+         *
+         * @return 最后一帧，没有剩余样本时为空
+         */
+        public List<byte[]> flush() throws OpusException {
+            List<byte[]> frames = new ArrayList<>();
+            carry = -1;
+            if (filled > 0) {
+                Arrays.fill(frame, filled, frame.length, (short) 0);
+                filled = frame.length;
+                frames.add(encodeFrame());
+            }
+            return frames;
+        }
+
+        private void append(short sample, List<byte[]> frames) throws OpusException {
+            frame[filled++] = sample;
+            if (filled == frame.length) {
+                frames.add(encodeFrame());
+            }
+        }
+
+        private byte[] encodeFrame() throws OpusException {
+            int length = encoder.encode(frame, 0, frameSize, opusBuffer, 0, opusBuffer.length);
+            filled = 0;
+            return Arrays.copyOf(opusBuffer, length);
+        }
+    }
+
     /**
      * 清理会话资源
      */
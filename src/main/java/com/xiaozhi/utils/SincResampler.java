@@ -0,0 +1,158 @@
+package com.xiaozhi.utils;
+
+/**
+ * 带抗混叠低通的重采样器（多相加窗sinc）
+ * 源采样率和目标采样率约为最简比L/M后，第i个输出样本位于源信号的i*M/L处，只有L种相位，各相位的滤波器系数预先算好。
+ * 截止频率取两者中较低的奈奎斯特频率的95%，降采样时先滤除会混叠到目标频带内的高频。
+ * 实例不可变，可在线程间共享
+ */
+public final class SincResampler {
+
+    // 窗口每侧的过零点数，越大过渡带越窄
+    private static final int ZERO_CROSSINGS = 16;
+
+    // 截止频率相对于较低奈奎斯特频率的比例
+    private static final double ROLLOFF = 0.95;
+
+    // Kaiser窗参数，约对应80dB的阻带衰减
+    private static final double KAISER_BETA = 8.0;
+
+    // 相位数上限，采样率之比约分后仍过大时按该精度取最近的相位
+    private static final int MAX_PHASES = 1024;
+
+    private final int sourceRate;
+    private final int targetRate;
+    // 约分后的比值 targetRate/sourceRate = up/down
+    private final long up;
+    private final long down;
+    // 是否按精确比值计算相位
+    private final boolean exact;
+    private final int phases;
+    // 每个相位的抽头数，一半在输出位置之前
+    private final int taps;
+    private final int halfTaps;
+    private final float[][] filters;
+
+    public SincResampler(int sourceRate, int targetRate) {
+        if (sourceRate <= 0 || targetRate <= 0) {
+            throw new IllegalArgumentException("采样率必须为正数");
+        }
+        this.sourceRate = sourceRate;
+        this.targetRate = targetRate;
+        long gcd = gcd(sourceRate, targetRate);
+        this.up = targetRate / gcd;
+        this.down = sourceRate / gcd;
+        this.exact = up <= MAX_PHASES;
+        this.phases = exact ? (int) up : MAX_PHASES;
+
+        // 以源采样间隔为单位的截止频率（1表示源奈奎斯特频率）
+        double cutoff = ROLLOFF * Math.min(1.0, (double) targetRate / sourceRate);
+        this.halfTaps = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        this.taps = halfTaps * 2;
+        this.filters = new float[phases][taps];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int p = 0; p < phases; p++) {
+            double fraction = (double) p / phases;
+            double sum = 0;
+            double[] kernel = new double[taps];
+            for (int j = 0; j < taps; j++) {
+                // 抽头对应的源样本相对输出位置的距离
+                double t = j - halfTaps + 1 - fraction;
+                double ratio = t / halfTaps;
+                if (Math.abs(ratio) >= 1) {
+                    continue;
+                }
+                double window = besselI0(KAISER_BETA * Math.sqrt(1 - ratio * ratio)) / i0Beta;
+                kernel[j] = cutoff * sinc(cutoff * t) * window;
+                sum += kernel[j];
+            }
+            // 每个相位的直流增益归一化为1
+            for (int j = 0; j < taps; j++) {
+                filters[p][j] = (float) (kernel[j] / sum);
+            }
+        }
+    }
+
+    public int getSourceRate() {
+        return sourceRate;
+    }
+
+    public int getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * 重采样一段完整的音频，段外的样本按0处理
+     *
+     * @param input 源采样率的样本
+     * @return 目标采样率的样本，长度为 input.length * targetRate / sourceRate 向下取整
+     */
+    public float[] resample(float[] input) {
+        if (sourceRate == targetRate) {
+            return input.clone();
+        }
+        int outputLength = (int) ((long) input.length * targetRate / sourceRate);
+        float[] output = new float[outputLength];
+        for (int i = 0; i < outputLength; i++) {
+            long base;
+            int phase;
+            if (exact) {
+                long position = i * down;
+                base = position / up;
+                phase = (int) (position % up);
+            } else {
+                double position = (double) i * sourceRate / targetRate;
+                base = (long) position;
+                phase = (int) Math.round((position - base) * phases);
+                if (phase == phases) {
+                    base++;
+                    phase = 0;
+                }
+            }
+            float[] filter = filters[phase];
+            long first = base - halfTaps + 1;
+            int from = (int) Math.max(0, -first);
+            int to = (int) Math.min(taps, input.length - first);
+            double value = 0;
+            for (int j = from; j < to; j++) {
+                value += filter[j] * input[(int) (first + j)];
+            }
+            output[i] = (float) value;
+        }
+        return output;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * 第一类零阶修正贝塞尔函数，用于Kaiser窗
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -8,6 +8,7 @@ import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.service.SysConfigService;
 import com.xiaozhi.service.SysDeviceService;
 import com.xiaozhi.websocket.service.AudioService;
+import com.xiaozhi.websocket.service.AudioStore;
 import com.xiaozhi.websocket.service.DialogueService;
 import com.xiaozhi.websocket.service.SessionManager;
 import com.xiaozhi.websocket.service.VadService;
@@ -26,6 +27,7 @@ import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Date;
 import java.util.List;
@@ -47,6 +49,9 @@ public class ReactiveWebSocketHandler implements WebSocketHandler {
     @Autowired
     private TtsServiceFactory ttsService;
 
+    @Autowired
+    private AudioStore audioStore;
+
     @Autowired
     private VadService vadService;
 
@@ -209,19 +214,20 @@ public class ReactiveWebSocketHandler implements WebSocketHandler {
     private Mono<Void> handleUnboundDevice(WebSocketSession session, SysDevice device) {
         return Mono.fromCallable(() -> {
             SysDevice codeResult = deviceService.generateCode(device);
-            String audioFilePath;
-            if (!StringUtils.hasText(codeResult.getAudioPath())) {
-                audioFilePath = ttsService.getTtsService().textToSpeech("请到设备管理页面添加设备，输入验证码" + codeResult.getCode());
+            // 验证码语音会被重复播放，作为片段保存；文件已被清理时重新生成
+            if (!StringUtils.hasText(codeResult.getAudioPath()) || !new File(codeResult.getAudioPath()).exists()) {
+                String audioFilePath = audioStore.persist(ttsService.getTtsService()
+                        .textToSpeech("请到设备管理页面添加设备，输入验证码" + codeResult.getCode()));
                 codeResult.setDeviceId(device.getDeviceId());
                 codeResult.setSessionId(session.getId());
                 codeResult.setAudioPath(audioFilePath);
                 deviceService.updateCode(codeResult);
-            } else {
-                audioFilePath = codeResult.getAudioPath();
             }
             logger.info("设备未绑定，返回验证码");
-            return audioService.sendAudioMessage(session, audioFilePath, codeResult.getCode(), true, true);
-        }).subscribeOn(Schedulers.boundedElastic()).then();
+            return codeResult;
+        }).subscribeOn(Schedulers.boundedElastic())
+                .flatMap(codeResult -> audioService.sendAudioMessage(session, codeResult.getAudioPath(),
+                        codeResult.getCode(), true, true));
     }
 
     private Mono<Void> handleHelloMessage(WebSocketSession session, JsonNode jsonNode) {
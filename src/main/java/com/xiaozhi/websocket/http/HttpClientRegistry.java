@@ -0,0 +1,337 @@
+package com.xiaozhi.websocket.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * HTTP客户端注册表
+ * 按"提供商 + 接口地址"管理OkHttpClient，每个端点拥有独立的调度器和连接池，
+ * 并发上限、连接池大小、keep-alive和HTTP/2均可配置，全局默认值为app.http.client.*，
+ * 也可按提供商单独配置，如app.http.client.openai.max-requests-per-host。
+ * 流式请求使用基于Reactor Netty的WebClient，同样按端点拥有独立的连接池，读取响应不占用线程。
+ * 两种客户端的排队、执行和连接数指标均为xiaozhi.http.client.*，以transport标签（okhttp、reactor-netty）区分
+ */
+@Component
+public class HttpClientRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    private static final String PREFIX = "app.http.client.";
+
+    // 未经Spring管理的场景（如直接new出来的服务）使用的共享客户端
+    private static final OkHttpClient DEFAULT_CLIENT = new OkHttpClient.Builder()
+            .connectTimeout(30, TimeUnit.SECONDS)
+            .readTimeout(60, TimeUnit.SECONDS)
+            .writeTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    private static final WebClient DEFAULT_WEB_CLIENT = WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create()
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
+                    .responseTimeout(Duration.ofSeconds(60))))
+            .build();
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    // 所有端点共用的调用线程池，并发上限由各自的调度器控制
+    private final ExecutorService executor;
+
+    // 已创建的客户端，键为"provider@scheme://host:port"
+    private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    // 流式请求使用的WebClient，键与OkHttpClient相同
+    private final Map<String, WebClient> webClients = new ConcurrentHashMap<>();
+
+    // WebClient的连接池，关闭时释放
+    private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public HttpClientRegistry(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry.getIfAvailable();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "http-client-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 共享的默认客户端
+     */
+    public static OkHttpClient defaultClient() {
+        return DEFAULT_CLIENT;
+    }
+
+    /**
+     * 共享的默认WebClient
+     */
+    public static WebClient defaultWebClient() {
+        return DEFAULT_WEB_CLIENT;
+    }
+
+    /**
+     * 获取指定提供商和接口地址的客户端
+     *
+     * @param provider 提供商名称
+     * @param endpoint 接口地址，为空时按提供商共用一个客户端
+     * @return 客户端
+     */
+    public OkHttpClient getClient(String provider, String endpoint) {
+        String key = provider + "@" + origin(endpoint);
+        return clients.computeIfAbsent(key, k -> createClient(k, provider));
+    }
+
+    /**
+     * 获取指定提供商和接口地址的WebClient，用于流式请求
+     *
+     * @param provider 提供商名称
+     * @param endpoint 接口地址，为空时按提供商共用一个客户端
+     * @return WebClient
+     */
+    public WebClient getWebClient(String provider, String endpoint) {
+        String origin = origin(endpoint);
+        String key = provider + "@" + origin;
+        return webClients.computeIfAbsent(key, k -> createWebClient(k, provider, origin.startsWith("https://")));
+    }
+
+    /**
+     * 获取所有客户端的调用统计
+     */
+    public List<ClientStats> getStats() {
+        List<ClientStats> stats = new ArrayList<>();
+        clients.forEach((key, client) -> {
+            Dispatcher dispatcher = client.dispatcher();
+            ConnectionPool pool = client.connectionPool();
+            stats.add(new ClientStats(key, dispatcher.queuedCallsCount(), dispatcher.runningCallsCount(),
+                    pool.connectionCount(), pool.idleConnectionCount()));
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        clients.values().forEach(client -> client.connectionPool().evictAll());
+        connectionProviders.forEach(ConnectionProvider::dispose);
+        executor.shutdown();
+    }
+
+    private OkHttpClient createClient(String key, String provider) {
+        int maxRequests = property(provider, "max-requests", 256);
+        int maxRequestsPerHost = property(provider, "max-requests-per-host", 128);
+        int maxIdleConnections = property(provider, "max-idle-connections", 32);
+        long keepAliveMs = property(provider, "keep-alive-ms", 300000L);
+        boolean http2 = property(provider, "http2", true);
+        long connectTimeoutMs = property(provider, "connect-timeout-ms", 30000L);
+        long readTimeoutMs = property(provider, "read-timeout-ms", 60000L);
+        long writeTimeoutMs = property(provider, "write-timeout-ms", 30000L);
+
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        // 启用HTTP/2时，同一主机的并发流复用少量连接；服务端不支持时自动回退到HTTP/1.1
+        List<Protocol> protocols = http2
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Collections.singletonList(Protocol.HTTP_1_1);
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS))
+                .protocols(protocols)
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(writeTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        if (meterRegistry != null) {
+            Gauge.builder("xiaozhi.http.client.calls", dispatcher, Dispatcher::queuedCallsCount)
+                    .tag("client", key)
+                    .tag("transport", "okhttp")
+                    .tag("state", "queued")
+                    .description("等待调度的HTTP请求数")
+                    .register(meterRegistry);
+            Gauge.builder("xiaozhi.http.client.calls", dispatcher, Dispatcher::runningCallsCount)
+                    .tag("client", key)
+                    .tag("transport", "okhttp")
+                    .tag("state", "active")
+                    .description("正在执行的HTTP请求数")
+                    .register(meterRegistry);
+            Gauge.builder("xiaozhi.http.client.connections", client.connectionPool(), ConnectionPool::connectionCount)
+                    .tag("client", key)
+                    .tag("transport", "okhttp")
+                    .description("连接池中的连接数")
+                    .register(meterRegistry);
+        }
+
+        logger.info("创建HTTP客户端 - {}, 最大并发: {}, 单主机并发: {}, 空闲连接: {}, keep-alive: {}ms, HTTP/2: {}",
+                key, maxRequests, maxRequestsPerHost, maxIdleConnections, keepAliveMs, http2);
+        return client;
+    }
+
+    private WebClient createWebClient(String key, String provider, boolean secure) {
+        int maxRequestsPerHost = property(provider, "max-requests-per-host", 128);
+        long keepAliveMs = property(provider, "keep-alive-ms", 300000L);
+        boolean http2 = property(provider, "http2", true);
+        long connectTimeoutMs = property(provider, "connect-timeout-ms", 30000L);
+        long readTimeoutMs = property(provider, "read-timeout-ms", 60000L);
+
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("xiaozhi-" + key)
+                .maxConnections(maxRequestsPerHost)
+                .maxIdleTime(Duration.ofMillis(keepAliveMs));
+        if (meterRegistry != null) {
+            // 连接池按远端地址创建，创建时登记其统计，由注入的MeterRegistry汇总上报，不使用Reactor Netty的全局注册表
+            List<ConnectionPoolMetrics> pools = new CopyOnWriteArrayList<>();
+            builder.metrics(true, () -> (poolName, id, remoteAddress, metrics) -> pools.add(metrics));
+            registerPoolGauges(key, pools);
+        }
+        ConnectionProvider connectionProvider = builder.build();
+        connectionProviders.add(connectionProvider);
+
+        // responseTimeout为读取响应时相邻两次读之间的最长间隔，与OkHttp的读超时一致
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        // HTTP/2需要通过TLS协商，明文端点只使用HTTP/1.1
+        if (http2 && secure) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        logger.info("创建WebClient - {}, 最大连接数: {}, keep-alive: {}ms, HTTP/2: {}",
+                key, maxRequestsPerHost, keepAliveMs, http2 && secure);
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * WebClient连接池的指标，名称和标签与OkHttp客户端一致：等待获取连接的请求计为queued，占用连接的请求计为active
+     */
+    private void registerPoolGauges(String key, List<ConnectionPoolMetrics> pools) {
+        Gauge.builder("xiaozhi.http.client.calls", pools, p -> sum(p, ConnectionPoolMetrics::pendingAcquireSize))
+                .tag("client", key)
+                .tag("transport", "reactor-netty")
+                .tag("state", "queued")
+                .description("等待调度的HTTP请求数")
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.http.client.calls", pools, p -> sum(p, ConnectionPoolMetrics::acquiredSize))
+                .tag("client", key)
+                .tag("transport", "reactor-netty")
+                .tag("state", "active")
+                .description("正在执行的HTTP请求数")
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.http.client.connections", pools, p -> sum(p, ConnectionPoolMetrics::allocatedSize))
+                .tag("client", key)
+                .tag("transport", "reactor-netty")
+                .description("连接池中的连接数")
+                .register(meterRegistry);
+    }
+
+    private static double sum(List<ConnectionPoolMetrics> pools, ToIntFunction<ConnectionPoolMetrics> value) {
+        return pools.stream().mapToInt(value).sum();
+    }
+
+    private <T> T property(String provider, String name, T defaultValue) {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) defaultValue.getClass();
+        T global = environment.getProperty(PREFIX + name, type, defaultValue);
+        if (provider == null || provider.isEmpty()) {
+            return global;
+        }
+        return environment.getProperty(PREFIX + provider.toLowerCase() + "." + name, type, global);
+    }
+
+    /**
+     * 提取接口地址的scheme://host:port部分
+     */
+    private static String origin(String endpoint) {
+        if (endpoint == null || endpoint.isEmpty()) {
+            return "default";
+        }
+        try {
+            URI uri = URI.create(endpoint.trim());
+            if (uri.getHost() == null) {
+                return endpoint;
+            }
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+        } catch (IllegalArgumentException e) {
+            return endpoint;
+        }
+    }
+
+    /**
+     * 客户端调用统计
+     */
+    public static class ClientStats {
+        private final String key;
+        private final int queuedCalls;
+        private final int runningCalls;
+        private final int connections;
+        private final int idleConnections;
+
+        public ClientStats(String key, int queuedCalls, int runningCalls, int connections, int idleConnections) {
+            this.key = key;
+            this.queuedCalls = queuedCalls;
+            this.runningCalls = runningCalls;
+            this.connections = connections;
+            this.idleConnections = idleConnections;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getQueuedCalls() {
+            return queuedCalls;
+        }
+
+        public int getRunningCalls() {
+            return runningCalls;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+    }
+}
@@ -3,25 +3,35 @@ package com.xiaozhi.websocket.llm;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.websocket.llm.api.AbstractLlmService;
 import com.xiaozhi.websocket.llm.api.LlmService;
 import com.xiaozhi.websocket.llm.api.StreamResponseListener;
+import com.xiaozhi.websocket.http.HttpClientRegistry;
+import com.xiaozhi.websocket.llm.context.ContextWindowBuilder;
 import com.xiaozhi.websocket.llm.factory.LlmServiceFactory;
+import com.xiaozhi.websocket.llm.failover.HedgedTokenStream;
 import com.xiaozhi.websocket.llm.memory.ChatMemory;
 import com.xiaozhi.websocket.llm.memory.ModelContext;
+import com.xiaozhi.websocket.llm.segment.EmissionPolicy;
+import com.xiaozhi.websocket.llm.segment.FirstSentenceFastFlushPolicy;
+import com.xiaozhi.websocket.llm.segment.LengthEmissionPolicy;
+import com.xiaozhi.websocket.llm.segment.SentenceSegmenter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * LLM管理器
@@ -31,20 +41,41 @@ import java.util.regex.Pattern;
 public class LlmManager {
     private static final Logger logger = LoggerFactory.getLogger(LlmManager.class);
 
-    // 句子结束标点符号模式（中英文句号、感叹号、问号）
-    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
-    
-    // 逗号、分号等停顿标点
-    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
-    
-    // 数字模式（用于检测小数点是否在数字中）
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
-
-    // 最小句子长度（字符数）
-    private static final int MIN_SENTENCE_LENGTH = 5;
-    
-    // 新句子判断的token阈值
-    private static final int NEW_SENTENCE_TOKEN_THRESHOLD = 15;
+    // 句末标点处输出句子的最小长度，过短的句子与下一句合并
+    @Value("${app.llm.segment.min-length:5}")
+    private int minSentenceLength;
+
+    // 句子超过该长度时在逗号等停顿标点处切分
+    @Value("${app.llm.segment.max-length:50}")
+    private int maxSentenceLength;
+
+    // 首句在第一个逗号处提前输出所需的最少文字数，0表示关闭，首句也按完整句子输出
+    @Value("${app.llm.segment.first-clause-min-length:4}")
+    private int firstClauseMinLength;
+
+    // 默认的模型上下文预算（token数），包含系统消息、历史对话、当前用户消息和预留的回复
+    @Value("${app.llm.context.max-tokens:4096}")
+    private int contextMaxTokens;
+
+    // 为模型回复预留的token数
+    @Value("${app.llm.context.reserved-tokens:1024}")
+    private int contextReservedTokens;
+
+    // 按模型名称单独配置的上下文预算，如 {'qwen-turbo':8192,'gpt-4o-mini':16384}
+    @Value("#{${app.llm.context.model-max-tokens:{:}}}")
+    private Map<String, Integer> modelContextMaxTokens;
+
+    // 故障转移链：主配置ID -> 依次尝试的备用配置ID（逗号分隔），如 {1:'2', 3:'2,4'}
+    @Value("#{${app.llm.failover.chains:{:}}}")
+    private Map<Integer, String> failoverChains;
+
+    // 所有故障转移链最后使用的本地模型配置ID（如本地Ollama），0表示不使用
+    @Value("${app.llm.failover.local-config-id:0}")
+    private int localConfigId;
+
+    // 首token期限（毫秒），当前候选超时未输出时对冲请求下一个候选
+    @Value("${app.llm.failover.first-token-timeout-ms:1500}")
+    private long firstTokenTimeoutMs;
 
     @Autowired
     private SysConfigService configService;
@@ -52,10 +83,15 @@ public class LlmManager {
     @Autowired
     private ChatMemory chatMemory;
 
+    @Autowired
+    private HttpClientRegistry httpClientRegistry;
+
     // 设备LLM服务缓存，每个设备只保留一个服务
     private Map<String, LlmService> deviceLlmServices = new ConcurrentHashMap<>();
     // 设备当前使用的configId缓存
     private Map<String, Integer> deviceConfigIds = new ConcurrentHashMap<>();
+    // 故障转移链中备用配置的服务，按configId共享
+    private Map<Integer, LlmService> configLlmServices = new ConcurrentHashMap<>();
 
     /**
      * 处理用户查询（同步方式）
@@ -89,17 +125,23 @@ public class LlmManager {
     }
 
     /**
-     * 处理用户查询（流式方式）
+     * 处理用户查询（响应式流式方式）
+     * 订阅时发起请求，取消订阅会立即中止对提供商的请求
      * 
-     * @param device         设备信息
-     * @param message        用户消息
-     * @param streamListener 流式响应监听器
+     * @param device  设备信息
+     * @param message 用户消息
+     * @return token流
      */
-    public void chatStream(SysDevice device, String message, StreamResponseListener streamListener) {
-        try {
+    public Flux<String> streamTokens(SysDevice device, String message) {
+        return Flux.defer(() -> {
             String deviceId = device.getDeviceId();
             Integer configId = device.getModelId();
 
+            List<Integer> chain = getFailoverChain(configId);
+            if (chain.size() > 1) {
+                return streamTokensWithFailover(device, message, chain);
+            }
+
             // 获取LLM服务
             LlmService llmService = getLlmService(deviceId, configId);
 
@@ -111,12 +153,115 @@ public class LlmManager {
                     chatMemory);
 
             // 调用LLM流式接口
-            llmService.chatStream(message, modelContext, streamListener);
+            return llmService.streamTokens(message, modelContext);
+        });
+    }
 
-        } catch (Exception e) {
-            logger.error("处理流式查询时出错: {}", e.getMessage(), e);
-            streamListener.onError(e);
+    /**
+     * 按故障转移链请求：主配置在首token期限内没有输出或失败时对冲请求下一个配置，最先输出的胜出，其余取消。
+     * 各候选请求不保存消息，用户消息在发起前保存，胜出的回复在结束时保存
+     */
+    private Flux<String> streamTokensWithFailover(SysDevice device, String message, List<Integer> chain) {
+        ModelContext modelContext = new ModelContext(
+                device.getDeviceId(),
+                device.getSessionId(),
+                device.getRoleId(),
+                chatMemory);
+        modelContext.addUserMessage(message);
+
+        List<HedgedTokenStream.Candidate> candidates = new ArrayList<>(chain.size());
+        for (Integer candidateConfigId : chain) {
+            candidates.add(new HedgedTokenStream.Candidate("config#" + candidateConfigId, () -> {
+                LlmService llmService = candidateConfigId.equals(device.getModelId())
+                        ? getLlmService(device.getDeviceId(), candidateConfigId)
+                        : configLlmServices.computeIfAbsent(candidateConfigId, this::createLlmService);
+                ModelContext candidateContext = new ModelContext(
+                        device.getDeviceId(),
+                        device.getSessionId(),
+                        device.getRoleId(),
+                        chatMemory,
+                        false);
+                return llmService.streamTokens(message, candidateContext);
+            }));
         }
+
+        StringBuilder fullResponse = new StringBuilder();
+        return HedgedTokenStream.create(candidates, Duration.ofMillis(firstTokenTimeoutMs))
+                .doOnNext(fullResponse::append)
+                .doOnComplete(() -> modelContext.addAssistantMessage(fullResponse.toString()))
+                .doOnError(e -> {
+                    // 胜出的请求中途出错时保存已生成的部分，用户消息不会缺少回复
+                    if (fullResponse.length() > 0) {
+                        modelContext.addAssistantMessage(fullResponse.toString());
+                    }
+                })
+                .doOnCancel(() -> {
+                    // 被中止时保存已生成的部分，保证历史记录中用户和助手消息成对
+                    if (fullResponse.length() > 0) {
+                        modelContext.addAssistantMessage(fullResponse.toString());
+                    }
+                });
+    }
+
+    /**
+     * 获取配置的故障转移链，第一个为主配置，重复的配置只保留一次
+     * 
+     * @param configId 主配置ID
+     * @return 按优先级排列的配置ID
+     */
+    private List<Integer> getFailoverChain(Integer configId) {
+        List<Integer> chain = new ArrayList<>(3);
+        chain.add(configId);
+        String fallbacks = configId != null ? failoverChains.get(configId) : null;
+        if (fallbacks != null) {
+            for (String id : fallbacks.split(",")) {
+                id = id.trim();
+                if (!id.isEmpty() && !chain.contains(Integer.valueOf(id))) {
+                    chain.add(Integer.valueOf(id));
+                }
+            }
+        }
+        if (localConfigId > 0 && !chain.contains(localConfigId)) {
+            chain.add(localConfigId);
+        }
+        return chain;
+    }
+
+    /**
+     * 保存一轮未经过模型生成的对话（如命中回复缓存），保持历史记录连贯
+     * 
+     * @param device      设备信息
+     * @param userMessage 用户消息
+     * @param reply       回复内容
+     */
+    public void recordExchange(SysDevice device, String userMessage, String reply) {
+        ModelContext modelContext = new ModelContext(
+                device.getDeviceId(),
+                device.getSessionId(),
+                device.getRoleId(),
+                chatMemory);
+        modelContext.addUserMessage(userMessage);
+        modelContext.addAssistantMessage(reply);
+    }
+
+    /**
+     * 处理用户查询（流式方式）
+     * 
+     * @param device         设备信息
+     * @param message        用户消息
+     * @param streamListener 流式响应监听器
+     * @return 可用于中止请求的订阅
+     */
+    public Disposable chatStream(SysDevice device, String message, StreamResponseListener streamListener) {
+        StringBuilder fullResponse = new StringBuilder();
+        streamListener.onStart();
+        return streamTokens(device, message).subscribe(
+                token -> {
+                    fullResponse.append(token);
+                    streamListener.onToken(token);
+                },
+                streamListener::onError,
+                () -> streamListener.onComplete(fullResponse.toString()));
     }
 
     /**
@@ -125,8 +270,9 @@ public class LlmManager {
      * @param device       设备信息
      * @param message      用户消息
      * @param tokenHandler token处理函数，接收每个生成的token
+     * @return 可用于中止请求的订阅
      */
-    public void chatStream(SysDevice device, String message, Consumer<String> tokenHandler) {
+    public Disposable chatStream(SysDevice device, String message, Consumer<String> tokenHandler) {
         try {
             // 创建流式响应监听器
             StreamResponseListener streamListener = new StreamResponseListener() {
@@ -156,10 +302,11 @@ public class LlmManager {
             };
 
             // 调用现有的流式方法
-            chatStream(device, message, streamListener);
+            return chatStream(device, message, streamListener);
 
         } catch (Exception e) {
             logger.error("处理流式查询时出错: {}", e.getMessage(), e);
+            return Disposables.disposed();
         }
     }
 
@@ -169,119 +316,49 @@ public class LlmManager {
      * @param device          设备信息
      * @param message         用户消息
      * @param sentenceHandler 句子处理函数，接收句子内容、是否是开始句子、是否是结束句子
+     * @return 可用于中止请求的订阅
      */
-    public void chatStreamBySentence(SysDevice device, String message,
+    public Disposable chatStreamBySentence(SysDevice device, String message,
+            TriConsumer<String, Boolean, Boolean> sentenceHandler) {
+        return chatStreamBySentence(device, message, () -> {
+        }, sentenceHandler);
+    }
+
+    /**
+     * 处理用户查询（流式方式，使用句子切分，带有开始和结束标志）
+     * 
+     * @param device            设备信息
+     * @param message           用户消息
+     * @param firstTokenHandler 收到第一个token时调用
+     * @param sentenceHandler   句子处理函数，接收句子内容、是否是开始句子、是否是结束句子
+     * @return 可用于中止请求的订阅
+     */
+    public Disposable chatStreamBySentence(SysDevice device, String message, Runnable firstTokenHandler,
             TriConsumer<String, Boolean, Boolean> sentenceHandler) {
         try {
-            final StringBuilder currentSentence = new StringBuilder(); // 当前句子的缓冲区
-            final StringBuilder contextBuffer = new StringBuilder(); // 上下文缓冲区，用于检测数字中的小数点
-            final AtomicInteger sentenceCount = new AtomicInteger(0); // 已发送句子的计数
-            final StringBuilder fullResponse = new StringBuilder(); // 完整响应的缓冲区
-            final AtomicReference<String> pendingSentence = new AtomicReference<>(null); // 暂存的句子
-            final AtomicInteger tokensSinceLastEnd = new AtomicInteger(0); // 自上一个句子结束标点符号以来的token数
-            final AtomicBoolean lastTokenWasEndMark = new AtomicBoolean(false); // 上一个token是否为句子结束标记
+            SentenceSegmenter segmenter = new SentenceSegmenter(createEmissionPolicy(), sentenceHandler::accept);
 
             // 创建流式响应监听器
             StreamResponseListener streamListener = new StreamResponseListener() {
+                private boolean firstToken = true;
+
                 @Override
                 public void onStart() {
                 }
 
                 @Override
                 public void onToken(String token) {
-                    // 将token添加到完整响应
-                    fullResponse.append(token);
-                    
-                    // 将token添加到上下文缓冲区（保留最近的字符以检测数字模式）
-                    contextBuffer.append(token);
-                    if (contextBuffer.length() > 20) { // 保留足够的上下文
-                        contextBuffer.delete(0, contextBuffer.length() - 20);
-                    }
-
-                    // 将token添加到当前句子缓冲区
-                    currentSentence.append(token);
-                    
-                    // 检查是否是句子结束标点符号
-                    boolean isEndMark = SENTENCE_END_PATTERN.matcher(token).find();
-                    
-                    // 如果当前token是句子结束标点，需要检查它是否是数字中的小数点
-                    if (isEndMark && token.equals(".")) {
-                        // 检查小数点是否在数字中
-                        String context = contextBuffer.toString();
-                        Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
-                        
-                        // 如果找到数字模式（如"0.271"），则不视为句子结束标点
-                        if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
-                            isEndMark = false;
-                        }
-                    }
-                    
-                    // 如果当前token是句子结束标点，或者上一个token是句子结束标点且当前是空白字符
-                    if (isEndMark || (lastTokenWasEndMark.get() && token.trim().isEmpty())) {
-                        // 重置计数器
-                        tokensSinceLastEnd.set(0);
-                        lastTokenWasEndMark.set(isEndMark);
-                        
-                        // 当前句子包含句子结束标点，检查是否达到最小长度
-                        String sentence = currentSentence.toString().trim();
-                        if (sentence.length() >= MIN_SENTENCE_LENGTH) {
-                            // 如果有暂存的句子，先发送它（isEnd = false）
-                            if (pendingSentence.get() != null) {
-                                sentenceHandler.accept(pendingSentence.get(), sentenceCount.get() == 0, false);
-                                sentenceCount.incrementAndGet();
-                            }
-
-                            // 将当前句子标记为暂存句子
-                            pendingSentence.set(sentence);
-
-                            // 清空当前句子缓冲区
-                            currentSentence.setLength(0);
-                        }
-                    } else {
-                        // 更新上一个token的状态
-                        lastTokenWasEndMark.set(false);
-                        
-                        // 增加自上一个句子结束标点以来的token计数
-                        tokensSinceLastEnd.incrementAndGet();
-                        
-                        // 检查是否有停顿标点（如逗号）且已经累积了足够多的内容
-                        if (PAUSE_PATTERN.matcher(token).find() && pendingSentence.get() != null && 
-                            tokensSinceLastEnd.get() >= NEW_SENTENCE_TOKEN_THRESHOLD) {
-                            // 如果有暂存的句子且已经累积了足够多的token，发送暂存的句子
-                            sentenceHandler.accept(pendingSentence.get(), sentenceCount.get() == 0, false);
-                            sentenceCount.incrementAndGet();
-                            pendingSentence.set(null);
-                        }
-                        
-                        // 如果自上一个句子结束标点后已经累积了非常多的token（表示新句子已经开始）
-                        // 且有暂存的句子，则发送暂存的句子
-                        if (tokensSinceLastEnd.get() >= NEW_SENTENCE_TOKEN_THRESHOLD && pendingSentence.get() != null) {
-                            sentenceHandler.accept(pendingSentence.get(), sentenceCount.get() == 0, false);
-                            sentenceCount.incrementAndGet();
-                            pendingSentence.set(null);
-                        }
+                    if (firstToken) {
+                        firstToken = false;
+                        firstTokenHandler.run();
                     }
+                    segmenter.append(token);
                 }
 
                 @Override
                 public void onComplete(String completeResponse) {
-                    // 如果有暂存的句子，发送它
-                    if (pendingSentence.get() != null) {
-                        boolean isFirst = sentenceCount.get() == 0;
-                        boolean isLast = currentSentence.length() == 0 || 
-                                         !containsSubstantialContent(currentSentence.toString());
-                        
-                        sentenceHandler.accept(pendingSentence.get(), isFirst, isLast);
-                        sentenceCount.incrementAndGet();
-                        pendingSentence.set(null);
-                    }
-
-                    // 处理当前缓冲区剩余的内容（如果有）
-                    if (currentSentence.length() > 0 && containsSubstantialContent(currentSentence.toString())) {
-                        String sentence = currentSentence.toString().trim();
-                        sentenceHandler.accept(sentence, sentenceCount.get() == 0, true);
-                        sentenceCount.incrementAndGet();
-                    }
+                    // 输出剩余内容并标记最后一句
+                    segmenter.finish();
                 }
 
                 @Override
@@ -293,29 +370,25 @@ public class LlmManager {
             };
 
             // 调用现有的流式方法
-            chatStream(device, message, streamListener);
+            return chatStream(device, message, streamListener);
 
         } catch (Exception e) {
             logger.error("处理流式查询时出错: {}", e.getMessage(), e);
             // 发送错误信号
             sentenceHandler.accept("抱歉，我在处理您的请求时遇到了问题。", true, true);
+            return Disposables.disposed();
         }
     }
-    
+
     /**
-     * 判断文本是否包含实质性内容（不仅仅是空白字符或标点符号）
-     * 
-     * @param text 要检查的文本
-     * @return 是否包含实质性内容
+     * 创建分句输出策略，开启首句快速输出时第一句在第一个逗号处即可输出，之后按完整句子输出
      */
-    private boolean containsSubstantialContent(String text) {
-        if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
-            return false;
+    private EmissionPolicy createEmissionPolicy() {
+        EmissionPolicy policy = new LengthEmissionPolicy(minSentenceLength, maxSentenceLength);
+        if (firstClauseMinLength > 0) {
+            policy = new FirstSentenceFastFlushPolicy(policy, firstClauseMinLength);
         }
-        
-        // 移除所有标点符号和空白字符后，检查是否还有内容
-        String stripped = text.replaceAll("[\\p{P}\\s]", "");
-        return stripped.length() >= 2; // 至少有两个非标点非空白字符
+        return policy;
     }
 
     /**
@@ -360,7 +433,30 @@ public class LlmManager {
         String appId = config.getAppId();
         String apiSecret = config.getApiSecret();
 
-        return LlmServiceFactory.createLlmService(provider, endpoint, appId, apiKey, apiSecret, model);
+        LlmService service = LlmServiceFactory.createLlmService(provider, endpoint, appId, apiKey, apiSecret, model,
+                httpClientRegistry);
+        if (service instanceof AbstractLlmService) {
+            int maxTokens = modelContextMaxTokens.getOrDefault(model, contextMaxTokens);
+            ((AbstractLlmService) service).setContextWindow(new ContextWindowBuilder(maxTokens, contextReservedTokens));
+        }
+        return service;
+    }
+
+    /**
+     * 配置变更后移除使用该配置的服务，下次请求时按新配置重新创建
+     * 
+     * @param configId 配置ID
+     */
+    public void invalidate(Integer configId) {
+        if (configId == null) {
+            return;
+        }
+        configLlmServices.remove(configId);
+        deviceConfigIds.forEach((deviceId, deviceConfigId) -> {
+            if (configId.equals(deviceConfigId)) {
+                deviceLlmServices.remove(deviceId);
+            }
+        });
     }
 
     /**
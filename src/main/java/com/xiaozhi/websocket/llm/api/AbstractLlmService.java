@@ -2,19 +2,21 @@ package com.xiaozhi.websocket.llm.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.websocket.http.HttpClientRegistry;
+import com.xiaozhi.websocket.llm.context.ContextWindowBuilder;
 import com.xiaozhi.websocket.llm.memory.ModelContext;
-import okhttp3.OkHttpClient;
 import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 /**
  * LLM服务抽象类
@@ -23,20 +25,25 @@ import java.util.concurrent.TimeUnit;
 public abstract class AbstractLlmService implements LlmService {
     protected static final Logger logger = LoggerFactory.getLogger(AbstractLlmService.class);
     protected static final ObjectMapper objectMapper = new ObjectMapper();
-    protected static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+
+    // HTTP客户端，由工厂按提供商端点从注册表中分配，未设置时使用共享的默认客户端
+    protected OkHttpClient client = HttpClientRegistry.defaultClient();
+
+    // 流式请求使用的WebClient，由工厂按提供商端点从注册表中分配，未设置时使用共享的默认客户端
+    protected WebClient webClient = HttpClientRegistry.defaultWebClient();
 
     protected static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
-    // 设备历史记录缓存，键为deviceId，值为该设备的历史消息
-    protected Map<String, List<SysMessage>> deviceHistoryCache = new ConcurrentHashMap<>();
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_EVENT_TYPE =
+            new ParameterizedTypeReference<ServerSentEvent<String>>() {
+            };
 
     // 历史记录默认限制数量
     protected static final int DEFAULT_HISTORY_LIMIT = 10;
 
+    // 上下文构建器，由管理器按模型的上下文预算设置，未设置时不限制token数
+    protected ContextWindowBuilder contextWindow = new ContextWindowBuilder(Integer.MAX_VALUE, 0);
+
     protected final String endpoint;
     protected final String apiKey;
     protected final String model;
@@ -60,119 +67,51 @@ public abstract class AbstractLlmService implements LlmService {
     }
 
     /**
-     * 初始化设备的历史记录缓存
+     * 设置HTTP客户端
      * 
-     * @param modelContext 模型上下文
+     * @param client HTTP客户端
+     */
+    public void setHttpClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 设置流式请求使用的WebClient
+     * 
+     * @param webClient WebClient
+     */
+    public void setWebClient(WebClient webClient) {
+        this.webClient = webClient;
+    }
+
+    /**
+     * 设置上下文构建器
+     * 
+     * @param contextWindow 上下文构建器
      */
-    protected void initializeHistory(ModelContext modelContext) {
-        String deviceId = modelContext.getDeviceId();
-        if (!deviceHistoryCache.containsKey(deviceId)) {
-            // 从数据库加载历史记录
-            List<SysMessage> history = modelContext.getMessages(DEFAULT_HISTORY_LIMIT); // 这里后期可以设置 limit，来自定义历史记录条数
-            deviceHistoryCache.put(deviceId, history);
-            logger.info("已初始化设备 {} 的历史记录缓存，共 {} 条消息", deviceId, history.size());
-        }
+    public void setContextWindow(ContextWindowBuilder contextWindow) {
+        this.contextWindow = contextWindow;
     }
 
     /**
      * 获取格式化的消息历史，适合发送给LLM API
+     * 历史消息按上下文预算裁剪，系统消息和历史消息的token数与JSON片段在各轮之间复用
      * 
      * @param modelContext 模型上下文
      * @param userMessage  当前用户消息
      * @return 格式化的消息历史列表
      */
     protected List<Map<String, String>> getFormattedHistory(ModelContext modelContext, String userMessage) {
-        String deviceId = modelContext.getDeviceId();
         String systemMessage = modelContext.getSystemMessage();
 
-        // 初始化历史记录缓存（如果需要）
-        if (!deviceHistoryCache.containsKey(deviceId)) {
-            initializeHistory(modelContext);
-        }
-
-        List<SysMessage> historyMessages = deviceHistoryCache.get(deviceId);
-        List<Map<String, String>> formattedMessages = new ArrayList<>();
-
-        // 添加系统消息（如果有）
-        if (systemMessage != null && !systemMessage.isEmpty()) {
-            Map<String, String> systemMsg = new HashMap<>();
-            systemMsg.put("role", "system");
-            systemMsg.put("content", systemMessage);
-            formattedMessages.add(systemMsg);
-        }
-
-        // 添加历史消息
-        for (SysMessage msg : historyMessages) {
-            String role = msg.getSender();
-            role = role.equals("assistant") ? "assistant" : "user";
-
-            Map<String, String> formattedMsg = new HashMap<>();
-            formattedMsg.put("role", role);
-            formattedMsg.put("content", msg.getMessage());
-            formattedMessages.add(formattedMsg);
-        }
-
-        // 添加当前用户消息
-        Map<String, String> currentUserMsg = new HashMap<>();
-        currentUserMsg.put("role", "user");
-        currentUserMsg.put("content", userMessage);
-        formattedMessages.add(currentUserMsg);
-
-        return formattedMessages;
-    }
-
-    /**
-     * 更新设备的历史记录缓存
-     * 
-     * @param modelContext     模型上下文
-     * @param userMessage      用户消息
-     * @param assistantMessage AI消息
-     */
-    protected void updateHistoryCache(ModelContext modelContext, String userMessage, String assistantMessage) {
-        String deviceId = modelContext.getDeviceId();
-        String sessionId = modelContext.getSessionId();
-        Integer roleId = modelContext.getRoleId();
-
-        // 获取当前缓存，如果没有则从数据库加载
-        List<SysMessage> history = deviceHistoryCache.computeIfAbsent(deviceId,
-                k -> modelContext.getMessages(DEFAULT_HISTORY_LIMIT));
-
-        // 创建新的用户消息对象
-        SysMessage userMsg = new SysMessage();
-        userMsg.setDeviceId(deviceId);
-        userMsg.setSessionId(sessionId);
-        userMsg.setSender("user");
-        userMsg.setMessage(userMessage);
-        userMsg.setRoleId(roleId);
-
-        // 创建新的助手消息对象
-        SysMessage assistantMsg = new SysMessage();
-        assistantMsg.setDeviceId(deviceId);
-        assistantMsg.setSessionId(sessionId);
-        assistantMsg.setSender("assistant");
-        assistantMsg.setMessage(assistantMessage);
-        assistantMsg.setRoleId(roleId);
-
-        // 添加新消息
-        history.add(userMsg);
-        history.add(assistantMsg);
-
-        // 如果历史记录过长，移除最旧的消息（保持偶数，确保user/assistant对保持完整）
-        while (history.size() > DEFAULT_HISTORY_LIMIT) {
-            history.remove(0);
-            if (history.size() > DEFAULT_HISTORY_LIMIT) {
-                history.remove(0);
-            }
-        }
+        // 历史记录由共享的历史存储维护，不包含尚未得到回复的用户消息
+        List<SysMessage> historyMessages = modelContext.getMessages(DEFAULT_HISTORY_LIMIT);
 
-        // 更新缓存
-        deviceHistoryCache.put(deviceId, history);
+        return contextWindow.build(systemMessage, historyMessages, userMessage);
     }
 
     @Override
     public String chat(String userMessage, ModelContext modelContext) throws IOException {
-        // 初始化历史记录缓存
-        initializeHistory(modelContext);
         // 保存用户消息
         modelContext.addUserMessage(userMessage);
 
@@ -185,56 +124,111 @@ public abstract class AbstractLlmService implements LlmService {
         // 保存AI消息
         modelContext.addAssistantMessage(response);
 
-        // 更新缓存
-        updateHistoryCache(modelContext, userMessage, response);
-
         return response;
     }
 
     @Override
     public void chatStream(String userMessage, ModelContext modelContext, StreamResponseListener streamListener)
             throws IOException {
+        StringBuilder fullResponse = new StringBuilder();
+        streamListener.onStart();
+        streamTokens(userMessage, modelContext).subscribe(
+                token -> {
+                    fullResponse.append(token);
+                    streamListener.onToken(token);
+                },
+                streamListener::onError,
+                () -> streamListener.onComplete(fullResponse.toString()));
+    }
 
-        // 初始化历史记录缓存
-        initializeHistory(modelContext);
-        // 保存用户消息
-        modelContext.addUserMessage(userMessage);
-
-        // 获取格式化的历史记录（包含当前用户消息）
-        List<Map<String, String>> formattedMessages = getFormattedHistory(modelContext, userMessage);
-
-        // 创建一个包装监听器，在完成时保存响应
-        StreamResponseListener wrappedListener = new StreamResponseListener() {
-            @Override
-            public void onStart() {
-                streamListener.onStart();
-            }
+    @Override
+    public Flux<String> streamTokens(String userMessage, ModelContext modelContext) {
+        return Flux.defer(() -> {
+            // 保存用户消息
+            modelContext.addUserMessage(userMessage);
+
+            // 获取格式化的历史记录（包含当前用户消息）
+            List<Map<String, String>> formattedMessages = getFormattedHistory(modelContext, userMessage);
+
+            StringBuilder fullResponse = new StringBuilder();
+            return streamTokens(formattedMessages)
+                    .doOnNext(fullResponse::append)
+                    .doOnComplete(() -> modelContext.addAssistantMessage(fullResponse.toString()))
+                    .doOnError(e -> {
+                        // 中途出错时同样保存已生成的部分
+                        if (fullResponse.length() > 0) {
+                            modelContext.addAssistantMessage(fullResponse.toString());
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        // 被中止时保存已生成的部分，保证历史记录中用户和助手消息成对
+                        if (fullResponse.length() > 0) {
+                            modelContext.addAssistantMessage(fullResponse.toString());
+                        }
+                    });
+        });
+    }
 
-            @Override
-            public void onToken(String token) {
-                streamListener.onToken(token);
+    /**
+     * 执行实际的流式聊天请求
+     * 响应由Reactor Netty非阻塞地读取，按下游的请求量发出token，不占用阻塞线程；
+     * 取消订阅时随之取消HTTP请求，关闭与提供商的连接
+     *
+     * @param messages 格式化的消息列表（包含系统消息、历史对话和当前用户消息）
+     * @return token流
+     */
+    protected Flux<String> streamTokens(List<Map<String, String>> messages) {
+        return Flux.defer(() -> {
+            WebClient.RequestHeadersSpec<?> request;
+            try {
+                request = createStreamRequest(messages);
+            } catch (IOException e) {
+                return Flux.error(e);
             }
+            return decodeTokens(request.retrieve());
+        }).doOnError(e -> logger.error("流式请求失败: {}", e.getMessage(), e));
+    }
 
-            @Override
-            public void onComplete(String fullResponse) {
-                // 保存AI消息到数据库
-                String response = fullResponse.toString();
-                modelContext.addAssistantMessage(response);
-
-                // 更新缓存
-                updateHistoryCache(modelContext, userMessage, response);
+    /**
+     * 构建流式聊天请求
+     *
+     * @param messages 格式化的消息列表（包含系统消息、历史对话和当前用户消息）
+     * @return 使用{@link #webClient}构建的请求
+     * @throws IOException 如果请求体序列化失败
+     */
+    protected abstract WebClient.RequestHeadersSpec<?> createStreamRequest(List<Map<String, String>> messages)
+            throws IOException;
 
-                streamListener.onComplete(fullResponse);
+    /**
+     * 把流式响应解码为非空token流，默认按OpenAI兼容的SSE格式解析，finish_reason为stop或收到[DONE]时结束。
+     * 每次请求调用一次
+     *
+     * @param response 响应
+     * @return token流
+     */
+    protected Flux<String> decodeTokens(WebClient.ResponseSpec response) {
+        ChatDeltaParser deltaParser = new ChatDeltaParser();
+        return response.bodyToFlux(SSE_EVENT_TYPE).handle((event, sink) -> {
+            String data = event.data();
+            if (data == null || data.isEmpty()) {
+                return;
             }
-
-            @Override
-            public void onError(Throwable e) {
-                streamListener.onError(e);
+            try {
+                if (!deltaParser.parse(data)) {
+                    sink.complete();
+                    return;
+                }
+            } catch (IOException e) {
+                logger.error("解析流式响应失败: {}", e.getMessage(), e);
+                return;
             }
-        };
-
-        // 调用实际的流式聊天方法
-        chatStream(formattedMessages, wrappedListener);
+            if (deltaParser.hasContent()) {
+                sink.next(deltaParser.getContent());
+            }
+            if ("stop".equals(deltaParser.getFinishReason())) {
+                sink.complete();
+            }
+        });
     }
 
     @Override
@@ -250,14 +244,4 @@ public abstract class AbstractLlmService implements LlmService {
      * @throws IOException 如果请求失败
      */
     protected abstract String chat(List<Map<String, String>> messages) throws IOException;
-
-    /**
-     * 执行实际的流式聊天请求
-     * 
-     * @param messages       格式化的消息列表（包含系统消息、历史对话和当前用户消息）
-     * @param streamListener 流式响应监听器
-     * @throws IOException 如果请求失败
-     */
-    protected abstract void chatStream(List<Map<String, String>> messages, StreamResponseListener streamListener)
-            throws IOException;
 }
\ No newline at end of file
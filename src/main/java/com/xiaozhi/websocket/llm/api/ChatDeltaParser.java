@@ -0,0 +1,130 @@
+package com.xiaozhi.websocket.llm.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * OpenAI兼容接口流式响应（SSE）的增量解析器
+ * 逐个解析SSE事件的data字段，只提取choices[0].delta.content和choices[0].finish_reason，
+ * 其余字段直接跳过，不构建Map树。
+ * 非线程安全，每个流式请求使用一个实例
+ */
+public class ChatDeltaParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String DONE = "[DONE]";
+
+    // 当前数据块的增量内容
+    private final StringBuilder content = new StringBuilder();
+
+    // 当前数据块的结束原因，没有时为null
+    private String finishReason;
+
+    // 是否已收到[DONE]
+    private boolean done;
+
+    /**
+     * 解析一个SSE事件的data字段
+     *
+     * @param data 事件数据，不含"data:"前缀
+     * @return 是否读到数据块，收到[DONE]时返回false
+     * @throws com.fasterxml.jackson.core.JsonProcessingException 数据块格式错误，可继续解析后续事件
+     * @throws IOException 读取数据失败
+     */
+    public boolean parse(String data) throws IOException {
+        content.setLength(0);
+        finishReason = null;
+
+        if (DONE.equals(data.trim())) {
+            done = true;
+            return false;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                parseRoot(parser);
+            }
+        }
+        return true;
+    }
+
+    public boolean hasContent() {
+        return content.length() > 0;
+    }
+
+    /**
+     * 当前数据块的增量内容
+     */
+    public String getContent() {
+        return content.toString();
+    }
+
+    /**
+     * 当前数据块的结束原因，没有时返回null
+     */
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    /**
+     * 是否已收到[DONE]
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    private void parseRoot(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                parseChoices(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseChoices(JsonParser parser) throws IOException {
+        boolean first = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            if (first && token == JsonToken.START_OBJECT) {
+                parseChoice(parser);
+                first = false;
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                parseDelta(parser);
+            } else if ("finish_reason".equals(field) && token == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field) && token == JsonToken.VALUE_STRING) {
+                // 直接从解析器的字符缓冲区复制，不创建中间字符串
+                content.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.xiaozhi.websocket.llm.api;
 
 import com.xiaozhi.websocket.llm.memory.ModelContext;
+import reactor.core.publisher.Flux;
+
 import java.io.IOException;
 
 /**
@@ -28,6 +30,16 @@ public interface LlmService {
      * @throws IOException 如果请求失败
      */
     void chatStream(String userMessage, ModelContext modelContext, StreamResponseListener streamListener) throws IOException;
+
+    /**
+     * 发送聊天请求（响应式流式方式）
+     * 订阅时发起请求，按下游需求逐个推送token；取消订阅会立即中止对提供商的请求
+     * 
+     * @param userMessage 用户消息
+     * @param modelContext 模型上下文
+     * @return token流
+     */
+    Flux<String> streamTokens(String userMessage, ModelContext modelContext);
     
     /**
      * 获取模型名称
@@ -0,0 +1,74 @@
+package com.xiaozhi.websocket.llm.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 基于字符n-gram的MinHash签名
+ * 以单字和相邻两字作为特征，两段文本签名中相同位置取值相等的比例即为Jaccard相似度的估计值
+ */
+public final class MinHash {
+
+    // 签名长度，估计误差约为 1/sqrt(64)
+    public static final int SIGNATURE_SIZE = 64;
+
+    private static final long[] SEEDS_A = new long[SIGNATURE_SIZE];
+    private static final long[] SEEDS_B = new long[SIGNATURE_SIZE];
+
+    static {
+        // 固定种子，重启后签名保持一致
+        Random random = new Random(20240501L);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            SEEDS_A[i] = random.nextLong() | 1;
+            SEEDS_B[i] = random.nextLong();
+        }
+    }
+
+    private MinHash() {
+    }
+
+    /**
+     * 计算签名
+     *
+     * @param text 归一化后的文本
+     * @return 签名，文本为空时返回null
+     */
+    public static int[] signature(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[SIGNATURE_SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            update(signature, c);
+            if (i + 1 < text.length()) {
+                // 双字特征放在单字特征的取值范围之外
+                update(signature, 0x100000000L | (long) c << 16 | text.charAt(i + 1));
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 估计两个签名对应文本的Jaccard相似度
+     */
+    public static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / SIGNATURE_SIZE;
+    }
+
+    private static void update(int[] signature, long shingle) {
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            int hash = (int) ((SEEDS_A[i] * shingle + SEEDS_B[i]) >>> 33);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+            }
+        }
+    }
+}
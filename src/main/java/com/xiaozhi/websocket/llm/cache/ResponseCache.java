@@ -0,0 +1,343 @@
+package com.xiaozhi.websocket.llm.cache;
+
+import com.xiaozhi.entity.SysDevice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 回复缓存
+ * 设备经常重复同样的问题（讲个笑话、你是谁等），命中时直接重放上次回复已编码好的Opus帧，跳过模型和语音合成。
+ * 缓存按角色、模型、语音合成配置和音色隔离，键为归一化后的用户文本：先精确匹配，
+ * 未命中时在同一范围内按字符n-gram的MinHash相似度查找。回复完整播放后才写入缓存，被打断或有句子合成失败则放弃。
+ * 默认关闭，可按角色排除，包含时间类关键词的问题不缓存
+ */
+@Component
+public class ResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    // 句尾语气词，归一化时去除
+    private static final String TRAILING_PARTICLES = "啊呀吧呢嘛哦哈啦吗";
+
+    @Value("${app.llm.response-cache.enabled:false}")
+    private boolean enabled;
+
+    // 缓存有效期（分钟）
+    @Value("${app.llm.response-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    // 最多缓存的回复数，超出时淘汰最久未命中的
+    @Value("${app.llm.response-cache.max-entries:200}")
+    private int maxEntries;
+
+    // 相似度阈值，0表示只做精确匹配
+    @Value("${app.llm.response-cache.similarity-threshold:0.8}")
+    private double similarityThreshold;
+
+    // 不使用缓存的角色ID
+    @Value("${app.llm.response-cache.excluded-roles:}")
+    private Set<Integer> excludedRoles;
+
+    // 包含这些关键词的问题答案随时间变化，不缓存
+    @Value("${app.llm.response-cache.bypass-keywords:几点,几号,星期几,时间,日期,今天,明天,昨天}")
+    private Set<String> bypassKeywords;
+
+    // 按访问顺序排列，用于淘汰
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 各会话正在记录的回复
+    private final Map<String, Capture> captures = new ConcurrentHashMap<>();
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong similarHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 查找缓存的回复
+     *
+     * @param device   设备（提供角色、模型和语音配置）
+     * @param userText 用户文本
+     * @return 缓存的回复，未命中时返回null
+     */
+    public CachedReply lookup(SysDevice device, String userText) {
+        if (!isCacheable(device, userText)) {
+            return null;
+        }
+        String scope = scope(device);
+        String normalized = normalize(userText);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            String key = key(scope, normalized);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!isExpired(entry, now)) {
+                    exactHits.incrementAndGet();
+                    return entry.reply;
+                }
+                entries.remove(key);
+            }
+
+            if (similarityThreshold > 0) {
+                int[] signature = MinHash.signature(normalized);
+                Entry best = null;
+                double bestSimilarity = similarityThreshold;
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+                    Entry candidate = it.next();
+                    if (isExpired(candidate, now)) {
+                        it.remove();
+                        continue;
+                    }
+                    if (!candidate.scope.equals(scope)) {
+                        continue;
+                    }
+                    double similarity = MinHash.similarity(signature, candidate.signature);
+                    if (similarity >= bestSimilarity) {
+                        best = candidate;
+                        bestSimilarity = similarity;
+                    }
+                }
+                if (best != null) {
+                    // 刷新访问顺序
+                    entries.get(key(best.scope, best.normalized));
+                    similarHits.incrementAndGet();
+                    logger.debug("回复缓存相似命中 - 问题: \"{}\", 缓存问题: \"{}\", 相似度: {}", userText,
+                            best.reply.getUserText(), bestSimilarity);
+                    return best.reply;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 开始记录本轮回复，播放完整后写入缓存
+     */
+    public void beginCapture(String sessionId, SysDevice device, String userText) {
+        if (!isCacheable(device, userText) || normalize(userText).isEmpty()) {
+            captures.remove(sessionId);
+            return;
+        }
+        captures.put(sessionId, new Capture(scope(device), userText));
+    }
+
+    /**
+     * 记录已播放的一句回复及其Opus帧
+     */
+    public void captureSentence(String sessionId, String text, List<byte[]> opusFrames) {
+        Capture capture = captures.get(sessionId);
+        if (capture == null) {
+            return;
+        }
+        if (text == null || text.isEmpty() || opusFrames == null || opusFrames.isEmpty()) {
+            // 缺少文本或音频的回复不完整，不缓存
+            captures.remove(sessionId, capture);
+            return;
+        }
+        capture.add(text, opusFrames);
+    }
+
+    /**
+     * 回复播放完成，写入缓存
+     */
+    public void completeCapture(String sessionId) {
+        Capture capture = captures.remove(sessionId);
+        if (capture == null || capture.isEmpty()) {
+            return;
+        }
+        String normalized = normalize(capture.userText);
+        Entry entry = new Entry(capture.scope, normalized, MinHash.signature(normalized),
+                new CachedReply(capture.userText, capture.sentences()));
+        synchronized (entries) {
+            entries.put(key(entry.scope, normalized), entry);
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 放弃本轮回复的记录（被打断、合成失败或会话关闭）
+     */
+    public void discardCapture(String sessionId) {
+        captures.remove(sessionId);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getExactHits() {
+        return exactHits.get();
+    }
+
+    public long getSimilarHits() {
+        return similarHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private boolean isCacheable(SysDevice device, String userText) {
+        if (!enabled || userText == null || device == null) {
+            return false;
+        }
+        if (device.getRoleId() != null && excludedRoles.contains(device.getRoleId())) {
+            return false;
+        }
+        for (String keyword : bypassKeywords) {
+            if (!keyword.isEmpty() && userText.contains(keyword)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    /**
+     * 回复的内容和音频取决于角色、模型、语音合成配置和音色
+     */
+    private static String scope(SysDevice device) {
+        return device.getRoleId() + ":" + device.getModelId() + ":" + device.getTtsId() + ":" + device.getVoiceName();
+    }
+
+    private static String key(String scope, String normalized) {
+        return scope + "\n" + normalized;
+    }
+
+    /**
+     * 归一化：全角转半角、转小写、只保留文字和数字、去掉句尾语气词
+     */
+    static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        int end = sb.length();
+        while (end > 1 && TRAILING_PARTICLES.indexOf(sb.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    /**
+     * 缓存的一次回复
+     */
+    public static class CachedReply {
+        private final String userText;
+        private final List<CachedSentence> sentences;
+
+        CachedReply(String userText, List<CachedSentence> sentences) {
+            this.userText = userText;
+            this.sentences = Collections.unmodifiableList(sentences);
+        }
+
+        public String getUserText() {
+            return userText;
+        }
+
+        public List<CachedSentence> getSentences() {
+            return sentences;
+        }
+
+        /**
+         * 完整的回复文本
+         */
+        public String getText() {
+            StringBuilder sb = new StringBuilder();
+            for (CachedSentence sentence : sentences) {
+                sb.append(sentence.getText());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 回复中的一句及其Opus帧
+     */
+    public static class CachedSentence {
+        private final String text;
+        private final List<byte[]> opusFrames;
+
+        CachedSentence(String text, List<byte[]> opusFrames) {
+            this.text = text;
+            this.opusFrames = Collections.unmodifiableList(opusFrames);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<byte[]> getOpusFrames() {
+            return opusFrames;
+        }
+    }
+
+    private static class Entry {
+        private final String scope;
+        private final String normalized;
+        private final int[] signature;
+        private final CachedReply reply;
+        private final long createdAt = System.currentTimeMillis();
+
+        Entry(String scope, String normalized, int[] signature, CachedReply reply) {
+            this.scope = scope;
+            this.normalized = normalized;
+            this.signature = signature;
+            this.reply = reply;
+        }
+    }
+
+    private static class Capture {
+        private final String scope;
+        private final String userText;
+        private final List<CachedSentence> sentences = new ArrayList<>();
+
+        Capture(String scope, String userText) {
+            this.scope = scope;
+            this.userText = userText;
+        }
+
+        synchronized void add(String text, List<byte[]> opusFrames) {
+            sentences.add(new CachedSentence(text, new ArrayList<>(opusFrames)));
+        }
+
+        synchronized boolean isEmpty() {
+            return sentences.isEmpty();
+        }
+
+        synchronized List<CachedSentence> sentences() {
+            return new ArrayList<>(sentences);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.xiaozhi.websocket.llm.context;
+
+import com.xiaozhi.entity.SysMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按token预算构建发送给模型的上下文
+ * 系统消息和当前用户消息必定保留，历史消息从最新往前加入，超出预算的最早几轮被舍弃，
+ * 保留下来的历史总是从用户消息开始。每条历史消息的token数和JSON片段只计算一次：
+ * 历史消息对象在共享的历史存储中保持不变，以对象为弱引用键缓存，消息被淘汰后缓存随之回收
+ */
+public class ContextWindowBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(ContextWindowBuilder.class);
+
+    // 系统消息缓存的最大条数，角色描述通常只有少数几种
+    private static final int MAX_SYSTEM_CACHE_SIZE = 256;
+
+    private static final Map<SysMessage, PromptMessage> historyCache = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private static final Map<String, PromptMessage> systemCache = new ConcurrentHashMap<>();
+
+    private final int maxTokens;
+    private final int reservedTokens;
+
+    /**
+     * @param maxTokens      模型的上下文窗口（token数）
+     * @param reservedTokens 为模型回复预留的token数
+     */
+    public ContextWindowBuilder(int maxTokens, int reservedTokens) {
+        this.maxTokens = maxTokens;
+        this.reservedTokens = reservedTokens;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * 构建消息列表
+     *
+     * @param systemMessage 系统消息，可为空
+     * @param history       历史消息，按时间从早到晚排列
+     * @param userMessage   当前用户消息
+     * @return 消息列表
+     */
+    public PromptMessages build(String systemMessage, List<SysMessage> history, String userMessage) {
+        PromptMessage system = systemMessage != null && !systemMessage.isEmpty() ? systemMessage(systemMessage)
+                : null;
+        PromptMessage user = new PromptMessage("user", userMessage);
+
+        int budget = maxTokens - reservedTokens - user.getTokens() - (system != null ? system.getTokens() : 0);
+
+        // 从最新的历史消息往前，放到预算用完为止
+        int from = history.size();
+        int used = 0;
+        PromptMessage[] selected = new PromptMessage[history.size()];
+        while (from > 0) {
+            PromptMessage message = historyMessage(history.get(from - 1));
+            if (used + message.getTokens() > budget) {
+                break;
+            }
+            used += message.getTokens();
+            selected[--from] = message;
+        }
+        // 不以缺少提问的助手回复开头
+        while (from < history.size() && "assistant".equals(selected[from].getRole())) {
+            from++;
+        }
+
+        List<PromptMessage> messages = new ArrayList<>(history.size() - from + 2);
+        if (system != null) {
+            messages.add(system);
+        }
+        for (int i = from; i < history.size(); i++) {
+            messages.add(selected[i]);
+        }
+        messages.add(user);
+
+        if (from > 0) {
+            logger.debug("上下文超出预算，舍弃最早的{}条历史消息 - 预算: {}, 保留: {}", from, maxTokens, messages.size());
+        }
+        if (budget < 0) {
+            logger.warn("系统消息和当前用户消息已超出上下文预算 - 预算: {}, 系统消息: {}, 用户消息: {}",
+                    maxTokens, system != null ? system.getTokens() : 0, user.getTokens());
+        }
+        return new PromptMessages(messages);
+    }
+
+    private static PromptMessage systemMessage(String content) {
+        PromptMessage message = systemCache.get(content);
+        if (message == null) {
+            if (systemCache.size() >= MAX_SYSTEM_CACHE_SIZE) {
+                systemCache.clear();
+            }
+            message = new PromptMessage("system", content);
+            systemCache.put(content, message);
+        }
+        return message;
+    }
+
+    private static PromptMessage historyMessage(SysMessage source) {
+        PromptMessage message = historyCache.get(source);
+        if (message == null) {
+            String role = "assistant".equals(source.getSender()) ? "assistant" : "user";
+            message = new PromptMessage(role, source.getMessage());
+            historyCache.put(source, message);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,63 @@
+package com.xiaozhi.websocket.llm.context;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 发送给模型的一条消息
+ * 创建时计算好token数和JSON片段，同一条历史消息在后续每轮对话中直接复用，不再重复估算和序列化
+ */
+public final class PromptMessage {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, String> map;
+    private final int tokens;
+    private final String json;
+
+    public PromptMessage(String role, String content) {
+        Map<String, String> message = new LinkedHashMap<>(4);
+        message.put("role", role);
+        message.put("content", content != null ? content : "");
+        this.map = Collections.unmodifiableMap(message);
+        this.tokens = TokenCounter.countMessage(content);
+        try {
+            this.json = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            // 只包含字符串的Map不会序列化失败
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getRole() {
+        return map.get("role");
+    }
+
+    public String getContent() {
+        return map.get("content");
+    }
+
+    /**
+     * 供需要逐条处理消息的提供商使用的只读Map
+     */
+    public Map<String, String> asMap() {
+        return map;
+    }
+
+    /**
+     * 估算的token数（含格式开销）
+     */
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * 序列化后的JSON对象
+     */
+    public String getJson() {
+        return json;
+    }
+}
@@ -0,0 +1,68 @@
+package com.xiaozhi.websocket.llm.context;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次请求的消息列表（系统消息 + 历史对话 + 当前用户消息）
+ * 对提供商而言就是普通的List&lt;Map&gt;；放入请求体交给Jackson序列化时直接拼接每条消息缓存的JSON片段，
+ * 系统消息和历史消息不再逐轮重新序列化
+ */
+@JsonSerialize(using = PromptMessages.Serializer.class)
+public final class PromptMessages extends AbstractList<Map<String, String>> {
+
+    private final List<PromptMessage> messages;
+    private final int tokens;
+
+    public PromptMessages(List<PromptMessage> messages) {
+        this.messages = messages;
+        int sum = 0;
+        for (PromptMessage message : messages) {
+            sum += message.getTokens();
+        }
+        this.tokens = sum;
+    }
+
+    @Override
+    public Map<String, String> get(int index) {
+        return messages.get(index).asMap();
+    }
+
+    @Override
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * 估算的总token数
+     */
+    public int getTokens() {
+        return tokens;
+    }
+
+    public List<PromptMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 按缓存的JSON片段输出消息数组
+     */
+    public static class Serializer extends JsonSerializer<PromptMessages> {
+        @Override
+        public void serialize(PromptMessages value, JsonGenerator gen, SerializerProvider serializers)
+                throws IOException {
+            gen.writeStartArray();
+            for (PromptMessage message : value.messages) {
+                gen.writeRawValue(message.getJson());
+            }
+            gen.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.xiaozhi.websocket.llm.context;
+
+/**
+ * token数估算
+ * 不依赖具体模型的分词器，按字符类别近似：中日韩文字每字约1个token，英文单词约每4个字母1个token，
+ * 数字约每3位1个token，标点每个1个token，空白不计。用于上下文预算，结果偏保守即可
+ */
+public final class TokenCounter {
+
+    // 每条消息的角色、分隔符等格式开销
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenCounter() {
+    }
+
+    /**
+     * 估算一条消息的token数（含格式开销）
+     */
+    public static int countMessage(CharSequence content) {
+        return MESSAGE_OVERHEAD + count(content);
+    }
+
+    /**
+     * 估算文本的token数
+     */
+    public static int count(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int letters = 0;
+        int digits = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters++;
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                digits++;
+                continue;
+            }
+            tokens += (letters + 3) / 4 + (digits + 2) / 3;
+            letters = 0;
+            digits = 0;
+            if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (letters + 3) / 4 + (digits + 2) / 3;
+    }
+}
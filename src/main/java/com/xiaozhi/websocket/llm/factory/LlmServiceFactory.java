@@ -1,5 +1,7 @@
 package com.xiaozhi.websocket.llm.factory;
 
+import com.xiaozhi.websocket.http.HttpClientRegistry;
+import com.xiaozhi.websocket.llm.api.AbstractLlmService;
 import com.xiaozhi.websocket.llm.api.LlmService;
 import com.xiaozhi.websocket.llm.providers.OllamaService;
 import com.xiaozhi.websocket.llm.providers.OpenAiService;
@@ -16,6 +18,27 @@ import org.slf4j.LoggerFactory;
 public class LlmServiceFactory {
     private static final Logger logger = LoggerFactory.getLogger(LlmServiceFactory.class);
 
+    /**
+     * 创建LLM服务，并从注册表中为其分配按端点共享的HTTP客户端和流式请求使用的WebClient
+     * 
+     * @param provider       提供商
+     * @param endpoint       API端点
+     * @param apiKey         API密钥
+     * @param model          模型名称
+     * @param clientRegistry HTTP客户端注册表
+     * @return LLM服务
+     */
+    public static LlmService createLlmService(String provider, String endpoint, String appId, String apiKey,
+            String apiSecret, String model, HttpClientRegistry clientRegistry) {
+        LlmService service = createLlmService(provider, endpoint, appId, apiKey, apiSecret, model);
+        if (clientRegistry != null && service instanceof AbstractLlmService) {
+            AbstractLlmService llmService = (AbstractLlmService) service;
+            llmService.setHttpClient(clientRegistry.getClient(provider.toLowerCase(), endpoint));
+            llmService.setWebClient(clientRegistry.getWebClient(provider.toLowerCase(), endpoint));
+        }
+        return service;
+    }
+
     /**
      * 创建LLM服务
      * 
@@ -40,8 +63,9 @@ public class LlmServiceFactory {
                 return new SparkService(endpoint, appId, apiKey, apiSecret, model);
             // 可以添加更多提供商的支持
             default:
-                logger.info("未找到匹配的模型提供商 '{}', 默认使用Ollama", provider);
-                return new OllamaService(endpoint, appId, apiKey, apiSecret, model);
+                // 不再静默改用Ollama，由调用方按故障转移链选择其他配置
+                logger.error("不支持的模型提供商 '{}'", provider);
+                throw new IllegalArgumentException("不支持的模型提供商: " + provider);
         }
     }
 }
\ No newline at end of file
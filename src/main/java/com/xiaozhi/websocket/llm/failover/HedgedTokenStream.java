@@ -0,0 +1,215 @@
+package com.xiaozhi.websocket.llm.failover;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 对冲的token流
+ * 按顺序依次发起候选请求：前一个请求在首token期限内没有输出，或者在输出前就失败，就发起下一个；
+ * 最先输出token的请求胜出，其余请求立即取消。胜出的请求之后出错时直接向下游报错，不再切换。
+ * 所有候选都没有输出时，以最后一个错误结束
+ */
+public final class HedgedTokenStream {
+    private static final Logger logger = LoggerFactory.getLogger(HedgedTokenStream.class);
+
+    private HedgedTokenStream() {
+    }
+
+    /**
+     * 一个候选请求
+     */
+    public static final class Candidate {
+        private final String name;
+        private final Supplier<Flux<String>> request;
+
+        /**
+         * @param name    名称，用于日志
+         * @param request 发起请求，订阅时才真正发送
+         */
+        public Candidate(String name, Supplier<Flux<String>> request) {
+            this.name = name;
+            this.request = request;
+        }
+    }
+
+    /**
+     * 创建对冲的token流
+     *
+     * @param candidates    按优先级排列的候选请求
+     * @param firstTokenTtl 首token期限，超过后发起下一个候选
+     * @return token流
+     */
+    public static Flux<String> create(List<Candidate> candidates, Duration firstTokenTtl) {
+        if (candidates.size() == 1) {
+            return Flux.defer(candidates.get(0).request);
+        }
+        return Flux.create(sink -> new Race(candidates, firstTokenTtl.toMillis(), sink).start(0));
+    }
+
+    /**
+     * 一次对冲请求的状态，状态变更都在自身的锁内完成
+     */
+    private static final class Race {
+        private final List<Candidate> candidates;
+        private final long ttlMillis;
+        private final FluxSink<String> sink;
+        private final Disposable[] requests;
+        private final Disposable[] timers;
+        private final long startTime = System.currentTimeMillis();
+
+        // 已发起的候选数、已失败的候选数、胜出的候选（-1表示尚未产生）
+        private int started;
+        private int failed;
+        private int winner = -1;
+        private boolean done;
+        private Throwable lastError;
+
+        Race(List<Candidate> candidates, long ttlMillis, FluxSink<String> sink) {
+            this.candidates = candidates;
+            this.ttlMillis = ttlMillis;
+            this.sink = sink;
+            this.requests = new Disposable[candidates.size()];
+            this.timers = new Disposable[candidates.size()];
+            sink.onDispose(this::cancelAll);
+        }
+
+        void start(int index) {
+            synchronized (this) {
+                // 只允许按顺序发起下一个候选
+                if (done || winner >= 0 || index != started || index >= candidates.size()) {
+                    return;
+                }
+                started++;
+                if (index > 0) {
+                    logger.info("模型请求对冲 - 发起候选: {}, 已等待: {}ms", candidates.get(index).name,
+                            System.currentTimeMillis() - startTime);
+                }
+                if (index + 1 < candidates.size()) {
+                    timers[index] = Schedulers.parallel().schedule(() -> start(index + 1), ttlMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+            Disposable request = Flux.defer(candidates.get(index).request)
+                    .subscribe(
+                            token -> onToken(index, token),
+                            error -> onError(index, error),
+                            () -> onComplete(index));
+            synchronized (this) {
+                if (done || (winner >= 0 && winner != index)) {
+                    request.dispose();
+                } else {
+                    requests[index] = request;
+                }
+            }
+        }
+
+        private void onToken(int index, String token) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (winner < 0) {
+                    winner = index;
+                    logger.info("模型请求胜出 - 候选: {}, 首token用时: {}ms", candidates.get(index).name,
+                            System.currentTimeMillis() - startTime);
+                    cancelOthers(index);
+                } else if (winner != index) {
+                    return;
+                }
+            }
+            sink.next(token);
+        }
+
+        private void onError(int index, Throwable error) {
+            boolean fail;
+            synchronized (this) {
+                if (done || (winner >= 0 && winner != index)) {
+                    return;
+                }
+                if (winner == index) {
+                    done = true;
+                    fail = true;
+                } else {
+                    logger.warn("模型候选请求失败 - 候选: {}, 原因: {}", candidates.get(index).name, error.getMessage());
+                    lastError = error;
+                    failed++;
+                    fail = failed == candidates.size();
+                    done = fail;
+                }
+            }
+            if (fail) {
+                sink.error(winner == index ? error : lastError);
+            } else {
+                // 未输出就失败，不必等待期限，立即发起下一个候选
+                start(startedSnapshot());
+            }
+        }
+
+        private void onComplete(int index) {
+            boolean complete;
+            synchronized (this) {
+                if (done || (winner >= 0 && winner != index)) {
+                    return;
+                }
+                if (winner == index) {
+                    done = true;
+                    complete = true;
+                } else {
+                    // 没有任何输出就结束，视为失败
+                    logger.warn("模型候选请求没有输出 - 候选: {}", candidates.get(index).name);
+                    failed++;
+                    complete = failed == candidates.size();
+                    done = complete;
+                }
+            }
+            if (complete) {
+                if (winner == index || lastError == null) {
+                    sink.complete();
+                } else {
+                    sink.error(lastError);
+                }
+            } else {
+                start(startedSnapshot());
+            }
+        }
+
+        private synchronized int startedSnapshot() {
+            return started;
+        }
+
+        private void cancelOthers(int winnerIndex) {
+            for (int i = 0; i < candidates.size(); i++) {
+                if (timers[i] != null) {
+                    timers[i].dispose();
+                }
+                if (i != winnerIndex && requests[i] != null) {
+                    requests[i].dispose();
+                }
+            }
+        }
+
+        private void cancelAll() {
+            Disposable[] toCancel;
+            synchronized (this) {
+                done = true;
+                toCancel = new Disposable[requests.length * 2];
+                System.arraycopy(requests, 0, toCancel, 0, requests.length);
+                System.arraycopy(timers, 0, toCancel, requests.length, timers.length);
+            }
+            for (Disposable disposable : toCancel) {
+                if (disposable != null) {
+                    disposable.dispose();
+                }
+            }
+        }
+    }
+}
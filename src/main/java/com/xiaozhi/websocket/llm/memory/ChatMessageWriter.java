@@ -0,0 +1,168 @@
+package com.xiaozhi.websocket.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.service.SysMessageService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天记录异步写入
+ * 对话线程只把消息放入队列，由单个写线程攒批后用一条多行INSERT写入sys_message，保持消息的提交顺序；
+ * 攒够batch-size条或距本批第一条消息超过flush-interval-ms即写入。批量写入失败时逐条重试，
+ * 队列满时退化为在调用线程同步写入，不丢弃聊天记录
+ */
+@Component
+public class ChatMessageWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    // 待写入队列容量
+    @Value("${app.llm.history.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每批最多写入的消息数
+    @Value("${app.llm.history.write-behind.batch-size:50}")
+    private int batchSize;
+
+    // 一批消息最长等待时间（毫秒）
+    @Value("${app.llm.history.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Autowired
+    private SysMessageService messageService;
+
+    private BlockingQueue<SysMessage> queue;
+    private Thread writerThread;
+    private volatile boolean running = false;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = new Thread(this::writeLoop, "chat-message-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写线程未能及时退出时，把剩余的消息同步写完
+        List<SysMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            writeBatch(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+        }
+        logger.info("聊天记录写入服务已关闭 - 已写入: {}, 失败: {}", writtenCount.get(), failedCount.get());
+    }
+
+    /**
+     * 提交一条聊天记录，正常情况下不阻塞调用线程
+     */
+    public void submit(SysMessage message) {
+        if (!running || !queue.offer(message)) {
+            logger.warn("聊天记录写入队列已满，改为同步写入 - DeviceId: {}", message.getDeviceId());
+            write(message);
+        }
+    }
+
+    /**
+     * 等待写入的消息数
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void writeLoop() {
+        List<SysMessage> batch = new ArrayList<>(batchSize);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (running || !queue.isEmpty()) {
+            try {
+                SysMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 从第一条消息开始计时，攒够一批或到达刷新间隔即写入
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    SysMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                writeBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeBatch(batch);
+                break;
+            }
+        }
+    }
+
+    private void writeBatch(List<SysMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            write(batch.get(0));
+            return;
+        }
+        try {
+            messageService.addBatch(batch);
+            writtenCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            // 批量写入失败时逐条写入，避免一条异常数据导致整批丢失
+            logger.warn("批量保存消息失败，改为逐条写入 - 数量: {}, 原因: {}", batch.size(), e.getMessage());
+            batch.forEach(this::write);
+        }
+    }
+
+    private void write(SysMessage message) {
+        try {
+            messageService.add(message);
+            writtenCount.incrementAndGet();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            logger.error("保存消息时出错: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.xiaozhi.websocket.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 对话历史存储
+ * 所有LLM服务共用，每个设备保存固定轮数的环形缓冲，一轮为一条用户消息和一条助手消息；
+ * 用户消息先暂存，收到对应的助手回复后才作为完整的一轮写入，保证历史中的消息成对出现。
+ * 超过内存预算时优先淘汰最久未访问的设备，长时间未访问的设备定期清理，再次访问时从数据库重新加载
+ */
+@Component
+public class ConversationHistoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationHistoryStore.class);
+
+    // 每条消息除文本外的估算开销（字节）
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    // 每个设备保留的对话轮数
+    @Value("${app.llm.history.max-turns:5}")
+    private int maxTurns;
+
+    // 所有设备历史记录的内存预算
+    @Value("${app.llm.history.max-memory-mb:64}")
+    private long maxMemoryMb;
+
+    // 设备超过该时间未访问即被清理
+    @Value("${app.llm.history.idle-timeout-minutes:30}")
+    private long idleTimeoutMinutes;
+
+    private final Map<String, DeviceHistory> histories = new ConcurrentHashMap<>();
+
+    // 所有设备历史记录的估算内存占用
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "history-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMinutes);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 每个设备最多保留的消息条数
+     */
+    public int getCapacity() {
+        return maxTurns * 2;
+    }
+
+    /**
+     * 获取设备最近的历史消息，按时间从早到晚排列，不包含尚未得到回复的用户消息
+     *
+     * @param deviceId 设备ID
+     * @param limit    消息数量限制
+     * @param loader   缓存未命中时从数据库加载历史消息
+     * @return 历史消息
+     */
+    public List<SysMessage> getMessages(String deviceId, int limit, Function<String, List<SysMessage>> loader) {
+        return history(deviceId, loader).snapshot(limit);
+    }
+
+    /**
+     * 暂存用户消息，等待助手回复
+     */
+    public void addUserMessage(String deviceId, SysMessage message, Function<String, List<SysMessage>> loader) {
+        history(deviceId, loader).setPendingUser(message);
+    }
+
+    /**
+     * 写入助手回复，与暂存的用户消息组成一轮对话
+     */
+    public void addAssistantMessage(String deviceId, SysMessage message, Function<String, List<SysMessage>> loader) {
+        history(deviceId, loader).completeTurn(message);
+        if (usedBytes.get() > maxMemoryMb * 1024 * 1024) {
+            // 超出预算时在后台淘汰，不阻塞对话
+            sweeper.execute(this::evictToBudget);
+        }
+    }
+
+    /**
+     * 清除设备的历史记录缓存
+     */
+    public void clear(String deviceId) {
+        DeviceHistory history = histories.remove(deviceId);
+        if (history != null) {
+            history.detach();
+        }
+    }
+
+    /**
+     * 已缓存的设备数
+     */
+    public int size() {
+        return histories.size();
+    }
+
+    /**
+     * 估算的内存占用（字节）
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    private DeviceHistory history(String deviceId, Function<String, List<SysMessage>> loader) {
+        DeviceHistory history = histories.get(deviceId);
+        if (history == null) {
+            // 在映射锁之外查询数据库，并发加载时只保留先放入的一份
+            DeviceHistory loaded = new DeviceHistory(getCapacity());
+            loaded.load(loader.apply(deviceId));
+            history = histories.putIfAbsent(deviceId, loaded);
+            if (history == null) {
+                history = loaded;
+            } else {
+                loaded.detach();
+            }
+        }
+        history.touch();
+        return history;
+    }
+
+    /**
+     * 清理长时间未访问的设备
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        int evicted = 0;
+        for (Map.Entry<String, DeviceHistory> entry : histories.entrySet()) {
+            if (entry.getValue().lastAccess < deadline && histories.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().detach();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("清理空闲设备历史记录 - 数量: {}, 剩余设备: {}", evicted, histories.size());
+        }
+    }
+
+    /**
+     * 按最久未访问的顺序淘汰设备，直到内存占用回到预算的90%以下
+     */
+    private void evictToBudget() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long target = maxMemoryMb * 1024 * 1024 * 9 / 10;
+            if (usedBytes.get() <= target) {
+                return;
+            }
+            List<Map.Entry<String, DeviceHistory>> entries = new ArrayList<>(histories.entrySet());
+            entries.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            int evicted = 0;
+            for (Map.Entry<String, DeviceHistory> entry : entries) {
+                if (usedBytes.get() <= target) {
+                    break;
+                }
+                if (histories.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().detach();
+                    evicted++;
+                }
+            }
+            logger.info("历史记录超出内存预算，淘汰设备 - 数量: {}, 当前占用: {}KB", evicted, usedBytes.get() / 1024);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static long estimate(SysMessage message) {
+        String text = message.getMessage();
+        return MESSAGE_OVERHEAD_BYTES + (text != null ? text.length() * 2L : 0);
+    }
+
+    /**
+     * 单个设备的环形历史缓冲
+     */
+    private class DeviceHistory {
+        private final SysMessage[] ring;
+        private int head;
+        private int size;
+        private long bytes;
+        private SysMessage pendingUser;
+        private boolean detached;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        DeviceHistory(int capacity) {
+            this.ring = new SysMessage[capacity];
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * 从存储中移除后不再计入内存占用
+         */
+        synchronized void detach() {
+            detached = true;
+            usedBytes.addAndGet(-bytes);
+        }
+
+        synchronized void load(List<SysMessage> messages) {
+            if (messages == null) {
+                return;
+            }
+            int from = Math.max(0, messages.size() - ring.length);
+            for (int i = from; i < messages.size(); i++) {
+                append(messages.get(i));
+            }
+        }
+
+        synchronized void setPendingUser(SysMessage message) {
+            pendingUser = message;
+        }
+
+        synchronized void completeTurn(SysMessage assistant) {
+            if (pendingUser != null) {
+                append(pendingUser);
+                pendingUser = null;
+            }
+            append(assistant);
+        }
+
+        synchronized List<SysMessage> snapshot(int limit) {
+            int count = Math.min(size, Math.max(0, limit));
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<SysMessage> messages = new ArrayList<>(count);
+            int start = head + size - count;
+            for (int i = 0; i < count; i++) {
+                messages.add(ring[(start + i) % ring.length]);
+            }
+            return messages;
+        }
+
+        private void append(SysMessage message) {
+            long added = estimate(message);
+            int index = (head + size) % ring.length;
+            if (size == ring.length) {
+                // 覆盖最旧的消息
+                added -= estimate(ring[head]);
+                head = (head + 1) % ring.length;
+            } else {
+                size++;
+            }
+            ring[index] = message;
+            bytes += added;
+            if (!detached) {
+                usedBytes.addAndGet(added);
+            }
+        }
+    }
+}
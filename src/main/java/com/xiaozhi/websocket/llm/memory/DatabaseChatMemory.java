@@ -4,7 +4,7 @@ import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.service.SysMessageService;
 import com.xiaozhi.service.SysRoleService;
-import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
+import com.xiaozhi.websocket.service.ReplyAudioArchiver;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +30,13 @@ public class DatabaseChatMemory implements ChatMemory {
     private SysRoleService roleService;
 
     @Autowired
-    private TtsServiceFactory ttsService;
+    private ConversationHistoryStore historyStore;
+
+    @Autowired
+    private ChatMessageWriter messageWriter;
+
+    @Autowired
+    private ReplyAudioArchiver replyAudioArchiver;
 
     // 缓存系统消息，避免频繁查询数据库
     private Map<String, String> systemMessageCache = new ConcurrentHashMap<>();
@@ -44,12 +50,16 @@ public class DatabaseChatMemory implements ChatMemory {
             message.setSender(sender);
             message.setMessage(content);
             message.setRoleId(roleId);
-            if (sender == "assistant") {
-                // 目前生成的语音保存采用默认的语音合成服务，后续可以考虑支持自定义语音合成服务
-                // todo
-                message.setAudioPath(ttsService.getDefaultTtsService().textToSpeech(content));
+
+            // 先更新内存中的历史记录，数据库由写线程异步写入
+            if ("assistant".equals(sender)) {
+                historyStore.addAssistantMessage(deviceId, message, this::loadMessages);
+                // 助手消息等回复播放结束、语音存档后再入库
+                replyAudioArchiver.submitMessage(sessionId, message);
+            } else {
+                historyStore.addUserMessage(deviceId, message, this::loadMessages);
+                messageWriter.submit(message);
             }
-            messageService.add(message);
         } catch (Exception e) {
             logger.error("保存消息时出错: {}", e.getMessage(), e);
         }
@@ -57,17 +67,24 @@ public class DatabaseChatMemory implements ChatMemory {
 
     @Override
     public List<SysMessage> getMessages(String deviceId, Integer limit) {
+        return historyStore.getMessages(deviceId, limit != null ? limit : historyStore.getCapacity(),
+                this::loadMessages);
+    }
+
+    /**
+     * 从数据库加载设备最近的历史消息
+     */
+    private List<SysMessage> loadMessages(String deviceId) {
         try {
             SysMessage queryMessage = new SysMessage();
             queryMessage.setDeviceId(deviceId);
             queryMessage.setStart(1);
-            queryMessage.setLimit(limit);
+            queryMessage.setLimit(historyStore.getCapacity());
 
             List<SysMessage> messages = messageService.query(queryMessage);
             messages = new ArrayList<>(messages);
             messages.sort((m1, m2) -> m1.getCreateTime().compareTo(m2.getCreateTime()));
             return messages;
-            // return messages;
         } catch (Exception e) {
             logger.error("获取历史消息时出错: {}", e.getMessage(), e);
             return new ArrayList<>();
@@ -83,6 +100,7 @@ public class DatabaseChatMemory implements ChatMemory {
             // messageService.update(deleteMessage);
 
             // 清除缓存
+            historyStore.clear(deviceId);
             systemMessageCache.keySet().removeIf(key -> key.startsWith(deviceId + ":"));
         } catch (Exception e) {
             logger.error("清除设备历史记录时出错: {}", e.getMessage(), e);
@@ -14,6 +14,7 @@ public class ModelContext {
     private final Integer roleId;
     private final String systemMessage;
     private final ChatMemory chatMemory;
+    private final boolean recordMessages;
 
     /**
      * 构造函数
@@ -24,10 +25,25 @@ public class ModelContext {
      * @param chatMemory 聊天记忆
      */
     public ModelContext(String deviceId, String sessionId, Integer roleId, ChatMemory chatMemory) {
+        this(deviceId, sessionId, roleId, chatMemory, true);
+    }
+
+    /**
+     * 构造函数
+     * 
+     * @param deviceId       设备ID
+     * @param sessionId      会话ID
+     * @param roleId         角色ID
+     * @param chatMemory     聊天记忆
+     * @param recordMessages 是否保存消息，同时向多个提供商发起请求时不保存，由调用方统一保存胜出的回复
+     */
+    public ModelContext(String deviceId, String sessionId, Integer roleId, ChatMemory chatMemory,
+            boolean recordMessages) {
         this.deviceId = deviceId;
         this.sessionId = sessionId;
         this.roleId = roleId;
         this.chatMemory = chatMemory;
+        this.recordMessages = recordMessages;
         this.systemMessage = chatMemory.getSystemMessage(deviceId, roleId);
     }
 
@@ -73,6 +89,9 @@ public class ModelContext {
      * @param message 用户消息
      */
     public void addUserMessage(String message) {
+        if (!recordMessages) {
+            return;
+        }
         chatMemory.addMessage(deviceId, sessionId, "user", message, roleId);
     }
 
@@ -82,6 +101,9 @@ public class ModelContext {
      * @param message AI消息
      */
     public void addAssistantMessage(String message) {
+        if (!recordMessages) {
+            return;
+        }
         chatMemory.addMessage(deviceId, sessionId, "assistant", message, roleId);
     }
 
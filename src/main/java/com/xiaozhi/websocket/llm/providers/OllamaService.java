@@ -1,10 +1,13 @@
 package com.xiaozhi.websocket.llm.providers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.xiaozhi.websocket.llm.api.AbstractLlmService;
-import com.xiaozhi.websocket.llm.api.StreamResponseListener;
 import okhttp3.*;
-import okio.BufferedSource;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -64,7 +67,7 @@ public class OllamaService extends AbstractLlmService {
     }
 
     @Override
-    protected void chatStream(List<Map<String, String>> messages, StreamResponseListener streamListener)
+    protected WebClient.RequestHeadersSpec<?> createStreamRequest(List<Map<String, String>> messages)
             throws IOException {
         // 构建请求体
         Map<String, Object> requestBody = new HashMap<>();
@@ -76,73 +79,30 @@ public class OllamaService extends AbstractLlmService {
         String jsonBody = objectMapper.writeValueAsString(requestBody);
 
         // 构建请求
-        Request request = new Request.Builder()
-                .url(endpoint + "/api/chat")
-                .post(RequestBody.create(jsonBody, JSON))
-                .build();
-
-        // 通知开始
-        streamListener.onStart();
+        return webClient.post()
+                .uri(endpoint + "/api/chat")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(jsonBody);
+    }
 
-        // 发送请求
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                logger.error("流式请求失败: {}", e.getMessage(), e);
-                streamListener.onError(e);
+    @Override
+    protected Flux<String> decodeTokens(WebClient.ResponseSpec response) {
+        // Ollama的流式响应为每行一个JSON对象，done为true时结束
+        return response.bodyToFlux(String.class).handle((line, sink) -> {
+            if (line.isEmpty()) {
+                return;
             }
-
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    String errorMsg = "流式请求响应失败: " + response;
-                    logger.error(errorMsg);
-                    streamListener.onError(new IOException(errorMsg));
-                    return;
+            try {
+                JsonNode data = objectMapper.readTree(line);
+                String content = data.path("message").path("content").asText("");
+                if (!content.isEmpty()) {
+                    sink.next(content);
                 }
-
-                try (ResponseBody responseBody = response.body()) {
-                    if (responseBody == null) {
-                        String errorMsg = "响应体为空";
-                        logger.error(errorMsg);
-                        streamListener.onError(new IOException(errorMsg));
-                        return;
-                    }
-
-                    BufferedSource source = responseBody.source();
-                    StringBuilder fullResponse = new StringBuilder();
-
-                    while (!source.exhausted()) {
-                        String line = source.readUtf8Line();
-                        if (line == null) {
-                            break;
-                        }
-                        if (line.isEmpty()) {
-                            continue;
-                        }
-                        try {
-                            Map<String, Object> data = objectMapper.readValue(line,
-                                    new TypeReference<Map<String, Object>>() {
-                                    });
-                            if (data.containsKey("message")) {
-                                Map<String, Object> message = (Map<String, Object>) data.get("message");
-                                if (message != null && message.containsKey("content")) {
-                                    String content = (String) message.get("content");
-                                    if (content != null && !content.isEmpty()) {
-                                        streamListener.onToken(content);
-                                        fullResponse.append(content);
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            logger.error("解析流式响应失败: {}", e.getMessage(), e);
-                            streamListener.onError(e);
-                        }
-                    }
-
-                    // 通知完成
-                    streamListener.onComplete(fullResponse.toString());
+                if (data.path("done").asBoolean(false)) {
+                    sink.complete();
                 }
+            } catch (JsonProcessingException e) {
+                logger.error("解析流式响应失败: {}", e.getMessage(), e);
             }
         });
     }
@@ -2,9 +2,10 @@ package com.xiaozhi.websocket.llm.providers;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.xiaozhi.websocket.llm.api.AbstractLlmService;
-import com.xiaozhi.websocket.llm.api.StreamResponseListener;
 import okhttp3.*;
-import okio.BufferedSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -67,7 +68,7 @@ public class QwenService extends AbstractLlmService {
     }
 
     @Override
-    protected void chatStream(List<Map<String, String>> messages, StreamResponseListener streamListener)
+    protected WebClient.RequestHeadersSpec<?> createStreamRequest(List<Map<String, String>> messages)
             throws IOException {
         // 构建请求体
         Map<String, Object> requestBody = new HashMap<>();
@@ -79,91 +80,11 @@ public class QwenService extends AbstractLlmService {
         String jsonBody = objectMapper.writeValueAsString(requestBody);
 
         // 构建请求
-        Request request = new Request.Builder()
-                .url(endpoint + "/chat/completions")
-                .post(RequestBody.create(jsonBody, JSON))
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        // 通知开始
-        streamListener.onStart();
-
-        // 发送请求
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                logger.error("流式请求失败: {}", e.getMessage(), e);
-                streamListener.onError(e);
-            }
-
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    String errorMsg = "流式请求响应失败: " + response;
-                    logger.error(errorMsg);
-                    streamListener.onError(new IOException(errorMsg));
-                    return;
-                }
-
-                try (ResponseBody responseBody = response.body()) {
-                    if (responseBody == null) {
-                        String errorMsg = "响应体为空";
-                        logger.error(errorMsg);
-                        streamListener.onError(new IOException(errorMsg));
-                        return;
-                    }
-                    BufferedSource source = responseBody.source();
-                    StringBuilder fullResponse = new StringBuilder();
-
-                    while (!source.exhausted()) {
-                        String line = source.readUtf8Line();
-                        if (line == null) {
-                            break;
-                        }
-                        if (line.isEmpty() || line.equals("data: [DONE]")) {
-                            continue;
-                        }
-                        if (line.startsWith("data: ")) {
-                            String jsonData = line.substring(6);
-                            try {
-                                Map<String, Object> data = objectMapper.readValue(jsonData,
-                                        new TypeReference<Map<String, Object>>() {
-                                        });
-                                List<Map<String, Object>> choices = (List<Map<String, Object>>) data.get("choices");
-
-                                if (choices != null && !choices.isEmpty()) {
-                                    Map<String, Object> choice = choices.get(0);
-                                    Map<String, Object> delta = (Map<String, Object>) choice.get("delta");
-
-                                    if (delta != null && delta.containsKey("content")) {
-                                        String content = (String) delta.get("content");
-                                        if (content != null && !content.isEmpty()) {
-                                            streamListener.onToken(content);
-                                            fullResponse.append(content);
-                                        }
-                                    }
-
-                                    // 检查是否完成
-                                    String finishReason = (String) choice.get("finish_reason");
-                                    if ("stop".equals(finishReason)) {
-                                        // 通知完成
-                                        streamListener.onComplete(fullResponse.toString());
-                                        return;
-                                    }
-                                }
-                            } catch (Exception e) {
-                                logger.error("解析流式响应失败: {}", e.getMessage(), e);
-                                streamListener.onError(e);
-                            }
-                        }
-                    }
-
-                    // 通知完成
-                    streamListener.onComplete(fullResponse.toString());
-                }
-            }
-        });
+        return webClient.post()
+                .uri(endpoint + "/chat/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .bodyValue(jsonBody);
     }
 
     @Override
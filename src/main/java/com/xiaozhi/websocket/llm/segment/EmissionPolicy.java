@@ -0,0 +1,28 @@
+package com.xiaozhi.websocket.llm.segment;
+
+/**
+ * 分句输出策略
+ * 分句器在遇到句末标点或停顿标点时询问策略，决定是否把当前缓冲的内容作为一句输出
+ */
+public interface EmissionPolicy {
+
+    /**
+     * 遇到句末标点（句号、问号、感叹号、省略号、换行等）时是否输出
+     *
+     * @param index         即将输出的句子序号，从0开始
+     * @param length        当前句子去除首尾空白后的长度
+     * @param contentLength 当前句子中文字和数字的个数（不含标点和空白）
+     * @return 是否输出
+     */
+    boolean emitAtSentenceEnd(int index, int length, int contentLength);
+
+    /**
+     * 遇到停顿标点（逗号、顿号、分号、冒号）时是否输出
+     *
+     * @param index         即将输出的句子序号，从0开始
+     * @param length        当前句子去除首尾空白后的长度
+     * @param contentLength 当前句子中文字和数字的个数（不含标点和空白）
+     * @return 是否输出
+     */
+    boolean emitAtPause(int index, int length, int contentLength);
+}
@@ -0,0 +1,36 @@
+package com.xiaozhi.websocket.llm.segment;
+
+/**
+ * 首句快速输出策略
+ * 第一句在第一个停顿标点处、内容达到指定字数即输出，尽早开始语音合成；其余句子交给被包装的策略
+ */
+public class FirstSentenceFastFlushPolicy implements EmissionPolicy {
+
+    private final EmissionPolicy delegate;
+    private final int minContentLength;
+
+    /**
+     * @param delegate         其余情况使用的策略
+     * @param minContentLength 首句在停顿标点处输出所需的最少文字数
+     */
+    public FirstSentenceFastFlushPolicy(EmissionPolicy delegate, int minContentLength) {
+        this.delegate = delegate;
+        this.minContentLength = minContentLength;
+    }
+
+    @Override
+    public boolean emitAtSentenceEnd(int index, int length, int contentLength) {
+        if (index == 0 && contentLength >= minContentLength) {
+            return true;
+        }
+        return delegate.emitAtSentenceEnd(index, length, contentLength);
+    }
+
+    @Override
+    public boolean emitAtPause(int index, int length, int contentLength) {
+        if (index == 0 && contentLength >= minContentLength) {
+            return true;
+        }
+        return delegate.emitAtPause(index, length, contentLength);
+    }
+}
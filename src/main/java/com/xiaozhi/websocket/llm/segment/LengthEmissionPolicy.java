@@ -0,0 +1,31 @@
+package com.xiaozhi.websocket.llm.segment;
+
+/**
+ * 按长度输出的分句策略
+ * 句末标点处达到最小长度才输出，过短的句子与下一句合并；
+ * 句子超过最大长度时在停顿标点处切分，避免长句拖慢语音合成
+ */
+public class LengthEmissionPolicy implements EmissionPolicy {
+
+    private final int minLength;
+    private final int maxLength;
+
+    /**
+     * @param minLength 句末标点处输出的最小长度
+     * @param maxLength 在停顿标点处切分的长度阈值
+     */
+    public LengthEmissionPolicy(int minLength, int maxLength) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public boolean emitAtSentenceEnd(int index, int length, int contentLength) {
+        return contentLength > 0 && length >= minLength;
+    }
+
+    @Override
+    public boolean emitAtPause(int index, int length, int contentLength) {
+        return contentLength > 0 && length >= maxLength;
+    }
+}
@@ -0,0 +1,315 @@
+package com.xiaozhi.websocket.llm.segment;
+
+/**
+ * 流式分句器
+ * 逐字符处理模型输出的token，基于字符类别的状态机切分句子，不使用正则，文本缓存在可复用的char数组中。
+ * 支持中英文标点、小数、常见英文缩写、省略号以及引号内的对话；何时输出由{@link EmissionPolicy}决定。
+ * <p>
+ * 为了能标记最后一句，每句完成后先暂存，等到后面出现新的文字时再交给监听器，
+ * 流结束时调用{@link #finish()}输出剩余内容并标记为最后一句。非线程安全，每个流式请求使用一个实例
+ */
+public class SentenceSegmenter {
+
+    /**
+     * 句子监听器
+     */
+    public interface Listener {
+        /**
+         * @param sentence 句子内容
+         * @param first    是否为第一句
+         * @param last     是否为最后一句
+         */
+        void onSentence(String sentence, boolean first, boolean last);
+    }
+
+    // 点号前的英文缩写（小写），命中时不视为句末
+    private static final String[] ABBREVIATIONS = {
+            "mr", "mrs", "ms", "dr", "prof", "sr", "jr", "st", "vs", "no", "inc", "ltd", "co", "e.g", "i.e"
+    };
+
+    private final EmissionPolicy policy;
+    private final Listener listener;
+
+    // 当前句子的缓冲区
+    private char[] buffer = new char[128];
+    private int length;
+
+    // 当前句子中文字和数字的个数
+    private int contentLength;
+
+    // 上一个字符是句末标点，后续的句末标点和右引号、右括号仍归入当前句
+    private boolean afterTerminal;
+
+    // 上一个字符是英文句点，需要根据下一个字符判断是否为句末
+    private boolean dotPending;
+
+    // 英文双引号是否处于打开状态
+    private boolean quoteOpen;
+
+    // 已完成但尚未交给监听器的句子
+    private String pending;
+
+    // 已完成的句子数（含暂存的句子）和已交给监听器的句子数
+    private int completed;
+    private int delivered;
+
+    public SentenceSegmenter(EmissionPolicy policy, Listener listener) {
+        this.policy = policy;
+        this.listener = listener;
+    }
+
+    /**
+     * 追加模型输出的token
+     */
+    public void append(CharSequence token) {
+        for (int i = 0, n = token.length(); i < n; i++) {
+            accept(token.charAt(i));
+        }
+    }
+
+    /**
+     * 流结束，输出剩余内容并标记最后一句，之后可继续用于下一个流
+     */
+    public void finish() {
+        int trimmed = trimmedLength();
+        if (contentLength > 0) {
+            if (pending != null) {
+                deliverPending(false);
+            }
+            deliver(new String(buffer, 0, trimmed), true);
+        } else if (pending != null) {
+            // 剩下的只有标点时并入最后一句
+            String last = trimmed > 0 ? pending + new String(buffer, 0, trimmed) : pending;
+            pending = null;
+            deliver(last, true);
+        }
+        reset();
+    }
+
+    /**
+     * 清空状态
+     */
+    public void reset() {
+        length = 0;
+        contentLength = 0;
+        afterTerminal = false;
+        dotPending = false;
+        quoteOpen = false;
+        pending = null;
+        completed = 0;
+        delivered = 0;
+    }
+
+    private void accept(char c) {
+        if (dotPending) {
+            dotPending = false;
+            resolveDot(c);
+        }
+
+        if (afterTerminal) {
+            if (isTerminal(c) || c == '.' || isClosing(c)) {
+                if (c == '"') {
+                    quoteOpen = false;
+                }
+                push(c);
+                return;
+            }
+            afterTerminal = false;
+            sentenceEnd();
+        }
+
+        if (c == '\n' || c == '\r') {
+            // 换行视为句末，未输出时以空格代替
+            if (contentLength > 0) {
+                sentenceEnd();
+            }
+            if (length > 0 && buffer[length - 1] != ' ') {
+                push(' ');
+            }
+            return;
+        }
+
+        if (length == 0 && Character.isWhitespace(c)) {
+            return;
+        }
+        push(c);
+
+        if (Character.isLetterOrDigit(c)) {
+            contentLength++;
+            if (pending != null) {
+                // 后面还有内容，暂存的句子不是最后一句
+                deliverPending(false);
+            }
+        } else if (c == '.') {
+            dotPending = true;
+        } else if (c == '"') {
+            quoteOpen = !quoteOpen;
+        } else if (isTerminal(c)) {
+            afterTerminal = true;
+        } else if (isPause(c)) {
+            pause();
+        }
+    }
+
+    /**
+     * 根据句点后的字符判断句点是否为句末：小数、缩写、网址和文件名中的点不切分，连续的点视为省略号
+     */
+    private void resolveDot(char next) {
+        if (next == '.') {
+            afterTerminal = true;
+        } else if (isAsciiDigit(next) || isAsciiLetter(next)) {
+            // 如3.14、e.g、xiaozhi.me，不是句末
+        } else if (!isAbbreviation(length - 1)) {
+            afterTerminal = true;
+        }
+    }
+
+    private void sentenceEnd() {
+        int trimmed = trimmedLength();
+        if (policy.emitAtSentenceEnd(completed, trimmed, contentLength)) {
+            emit(trimmed);
+        }
+    }
+
+    private void pause() {
+        char c = buffer[length - 1];
+        // 数字中的英文逗号和冒号（如1,000、10:30）不是停顿
+        if ((c == ',' || c == ':') && length >= 2 && isAsciiDigit(buffer[length - 2])) {
+            return;
+        }
+        int trimmed = trimmedLength();
+        if (policy.emitAtPause(completed, trimmed, contentLength)) {
+            emit(trimmed);
+        }
+    }
+
+    private void emit(int trimmed) {
+        String sentence = new String(buffer, 0, trimmed);
+        length = 0;
+        contentLength = 0;
+        if (pending != null) {
+            deliverPending(false);
+        }
+        pending = sentence;
+        completed++;
+    }
+
+    private void deliverPending(boolean last) {
+        String sentence = pending;
+        pending = null;
+        deliver(sentence, last);
+    }
+
+    private void deliver(String sentence, boolean last) {
+        boolean first = delivered == 0;
+        delivered++;
+        listener.onSentence(sentence, first, last);
+    }
+
+    private void push(char c) {
+        if (length == buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        buffer[length++] = c;
+    }
+
+    private int trimmedLength() {
+        int n = length;
+        while (n > 0 && Character.isWhitespace(buffer[n - 1])) {
+            n--;
+        }
+        return n;
+    }
+
+    /**
+     * 判断位于dotIndex的句点之前是否为英文缩写或人名首字母
+     */
+    private boolean isAbbreviation(int dotIndex) {
+        int start = dotIndex;
+        while (start > 0 && (isAsciiLetter(buffer[start - 1]) || buffer[start - 1] == '.')) {
+            start--;
+        }
+        int wordLength = dotIndex - start;
+        if (wordLength == 0) {
+            return false;
+        }
+        if (wordLength == 1 && Character.isUpperCase(buffer[start])) {
+            return true;
+        }
+        for (String abbreviation : ABBREVIATIONS) {
+            if (regionEqualsIgnoreCase(start, wordLength, abbreviation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionEqualsIgnoreCase(int start, int regionLength, String word) {
+        if (regionLength != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < regionLength; i++) {
+            if (Character.toLowerCase(buffer[start + i]) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isClosing(char c) {
+        switch (c) {
+            case '”':
+            case '’':
+            case '」':
+            case '』':
+            case '）':
+            case ')':
+            case '】':
+            case '》':
+                return true;
+            case '"':
+                return quoteOpen;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isTerminal(char c) {
+        switch (c) {
+            case '。':
+            case '！':
+            case '？':
+            case '!':
+            case '?':
+            case '…':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isPause(char c) {
+        switch (c) {
+            case '，':
+            case '、':
+            case '；':
+            case '：':
+            case ',':
+            case ';':
+            case ':':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
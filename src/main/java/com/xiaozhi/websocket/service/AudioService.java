@@ -1,8 +1,9 @@
 package com.xiaozhi.websocket.service;
 
-import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.OpusProcessor;
-import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
+import com.xiaozhi.websocket.llm.cache.ResponseCache;
+import com.xiaozhi.websocket.tts.TtsService;
+import io.github.jaredmdobson.concentus.OpusException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,7 +15,7 @@ import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
@@ -22,10 +23,10 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -40,15 +41,12 @@ public class AudioService {
 
     private static final Logger logger = LoggerFactory.getLogger(AudioService.class);
 
-    @Autowired
-    private TtsServiceFactory ttsService;
-
     // 播放帧持续时间（毫秒）
     private static final int FRAME_DURATION_MS = 60;
 
     // 默认音频采样率和通道数
-    private static final int DEFAULT_SAMPLE_RATE = 16000;
-    private static final int DEFAULT_CHANNELS = 1;
+    static final int DEFAULT_SAMPLE_RATE = 16000;
+    static final int DEFAULT_CHANNELS = 1;
 
     // 为每个会话维护一个音频发送队列
     private final Map<String, Queue<AudioMessageTask>> sessionAudioQueues = new ConcurrentHashMap<>();
@@ -59,14 +57,17 @@ public class AudioService {
     // 跟踪每个会话的消息序列号，用于日志
     private final Map<String, AtomicInteger> sessionMessageCounters = new ConcurrentHashMap<>();
 
-    // 为流式TTS任务维护一个队列
-    private final Map<String, Queue<StreamingAudioTask>> sessionStreamingQueues = new ConcurrentHashMap<>();
+    @Autowired
+    private OpusProcessor opusProcessor;
+
+    @Autowired
+    private ReplyAudioArchiver replyAudioArchiver;
 
-    // 跟踪每个会话的流式处理状态
-    private final Map<String, AtomicBoolean> sessionStreamingFlags = new ConcurrentHashMap<>();
+    @Autowired
+    private AudioStore audioStore;
 
     @Autowired
-    private OpusProcessor opusProcessor;
+    private ResponseCache responseCache;
 
     private final DataBufferFactory bufferFactory = new DefaultDataBufferFactory();
 
@@ -80,10 +81,23 @@ public class AudioService {
         private final boolean isLastMessage;
         private final String audioFilePath;
         private final int sequenceNumber; // 添加序列号用于日志跟踪
+        // 流式合成时边合成边到达的Opus帧，非流式时为null
+        private final Flux<byte[]> liveFrames;
 
         public AudioMessageTask(List<byte[]> opusFrames, String text, boolean isFirstMessage, boolean isLastMessage,
                 String audioFilePath, int sequenceNumber) {
+            this(opusFrames, null, text, isFirstMessage, isLastMessage, audioFilePath, sequenceNumber);
+        }
+
+        public AudioMessageTask(Flux<byte[]> liveFrames, String text, boolean isFirstMessage, boolean isLastMessage,
+                int sequenceNumber) {
+            this(Collections.emptyList(), liveFrames, text, isFirstMessage, isLastMessage, null, sequenceNumber);
+        }
+
+        private AudioMessageTask(List<byte[]> opusFrames, Flux<byte[]> liveFrames, String text,
+                boolean isFirstMessage, boolean isLastMessage, String audioFilePath, int sequenceNumber) {
             this.opusFrames = opusFrames;
+            this.liveFrames = liveFrames;
             this.text = text;
             this.isFirstMessage = isFirstMessage;
             this.isLastMessage = isLastMessage;
@@ -95,46 +109,8 @@ public class AudioService {
             return opusFrames;
         }
 
-        public String getText() {
-            return text;
-        }
-
-        public boolean isFirstMessage() {
-            return isFirstMessage;
-        }
-
-        public boolean isLastMessage() {
-            return isLastMessage;
-        }
-
-        public String getAudioFilePath() {
-            return audioFilePath;
-        }
-
-        public int getSequenceNumber() {
-            return sequenceNumber;
-        }
-    }
-
-    /**
-     * 流式音频任务类
-     */
-    private static class StreamingAudioTask {
-        private final String text;
-        private final boolean isFirstMessage;
-        private final boolean isLastMessage;
-        private final SysConfig ttsConfig;
-        private final String voiceName;
-        private final int sequenceNumber;
-
-        public StreamingAudioTask(String text, boolean isFirstMessage, boolean isLastMessage,
-                SysConfig ttsConfig, String voiceName, int sequenceNumber) {
-            this.text = text;
-            this.isFirstMessage = isFirstMessage;
-            this.isLastMessage = isLastMessage;
-            this.ttsConfig = ttsConfig;
-            this.voiceName = voiceName;
-            this.sequenceNumber = sequenceNumber;
+        public Flux<byte[]> getLiveFrames() {
+            return liveFrames;
         }
 
         public String getText() {
@@ -149,12 +125,8 @@ public class AudioService {
             return isLastMessage;
         }
 
-        public SysConfig getTtsConfig() {
-            return ttsConfig;
-        }
-
-        public String getVoiceName() {
-            return voiceName;
+        public String getAudioFilePath() {
+            return audioFilePath;
         }
 
         public int getSequenceNumber() {
@@ -197,8 +169,6 @@ public class AudioService {
         sessionAudioQueues.putIfAbsent(sessionId, new ConcurrentLinkedQueue<>());
         sessionProcessingFlags.putIfAbsent(sessionId, new AtomicBoolean(false));
         sessionMessageCounters.putIfAbsent(sessionId, new AtomicInteger(0));
-        sessionStreamingQueues.putIfAbsent(sessionId, new ConcurrentLinkedQueue<>());
-        sessionStreamingFlags.putIfAbsent(sessionId, new AtomicBoolean(false));
     }
 
     /**
@@ -210,6 +180,10 @@ public class AudioService {
         // 清理Opus处理器的会话状态
         opusProcessor.cleanupSession(sessionId);
 
+        // 保存未结束的回复语音，放弃未完成的回复缓存记录
+        replyAudioArchiver.cleanupSession(sessionId);
+        responseCache.discardCapture(sessionId);
+
         // 清理音频队列
         Queue<AudioMessageTask> queue = sessionAudioQueues.get(sessionId);
         if (queue != null) {
@@ -232,31 +206,18 @@ public class AudioService {
             }
         }
 
-        // 清空流式队列
-        Queue<StreamingAudioTask> streamingQueue = sessionStreamingQueues.get(sessionId);
-        if (streamingQueue != null) {
-            streamingQueue.clear();
-        }
-
         // 重置处理状态
         AtomicBoolean isProcessing = sessionProcessingFlags.get(sessionId);
         if (isProcessing != null) {
             isProcessing.set(false);
         }
 
-        AtomicBoolean isStreamingProcessing = sessionStreamingFlags.get(sessionId);
-        if (isStreamingProcessing != null) {
-            isStreamingProcessing.set(false);
-        }
-
         // 重置消息计数器
         sessionMessageCounters.remove(sessionId);
 
         // 移除会话相关的映射
         sessionAudioQueues.remove(sessionId);
         sessionProcessingFlags.remove(sessionId);
-        sessionStreamingQueues.remove(sessionId);
-        sessionStreamingFlags.remove(sessionId);
 
     }
 
@@ -269,6 +230,8 @@ public class AudioService {
      * @return 处理结果，包含opus数据和持续时间
      */
     public AudioProcessResult processAudioFile(String audioFilePath, int sampleRate, int channels) {
+        // 读取期间文件不会被清理
+        audioStore.retain(audioFilePath);
         try {
             // 从音频文件获取PCM数据
             byte[] pcmData = extractPcmFromAudio(audioFilePath);
@@ -287,6 +250,8 @@ public class AudioService {
         } catch (Exception e) {
             logger.error("处理音频文件失败: {}", audioFilePath, e);
             return new AudioProcessResult();
+        } finally {
+            audioStore.release(audioFilePath);
         }
     }
 
@@ -371,28 +336,13 @@ public class AudioService {
         // 处理音频文件，转换为Opus格式
         return Mono.fromCallable(() -> processAudioFile(audioFilePath, DEFAULT_SAMPLE_RATE, DEFAULT_CHANNELS))
                 .subscribeOn(Schedulers.boundedElastic())
-                .flatMap(audioResult -> {
-                    // 将任务添加到队列
-                    AudioMessageTask task = new AudioMessageTask(
-                            audioResult.getOpusFrames(),
-                            text,
-                            isStart,
-                            isEnd,
-                            audioFilePath,
-                            sequenceNumber);
-
-                    Queue<AudioMessageTask> queue = sessionAudioQueues.get(sessionId);
-                    queue.add(task);
-
-                    // 如果当前没有正在处理的任务，开始处理队列
-                    AtomicBoolean isProcessing = sessionProcessingFlags.get(sessionId);
-                    if (isProcessing.compareAndSet(false, true)) {
-                        return processAudioQueue(session, sessionId);
-                    }
-
-                    // 如果已经有任务在处理，直接返回
-                    return Mono.empty();
-                })
+                .flatMap(audioResult -> enqueueAudioMessage(session, sessionId, new AudioMessageTask(
+                        audioResult.getOpusFrames(),
+                        text,
+                        isStart,
+                        isEnd,
+                        audioFilePath,
+                        sequenceNumber)))
                 .onErrorResume(e -> {
                     logger.error("[消息#{}-错误] 准备音频消息失败: {}", sequenceNumber, e.getMessage(), e);
                     return Mono.empty();
@@ -400,37 +350,42 @@ public class AudioService {
     }
 
     /**
-     * 处理流式音频数据并发送
+     * 发送已编码好的Opus帧（如缓存的回复），与音频文件共用同一个发送队列
      * 
-     * @param session   WebSocket会话
-     * @param text      文本内容
-     * @param isStart   是否是对话开始
-     * @param isEnd     是否是对话结束
-     * @param config    TTS配置
-     * @param voiceName 语音名称
-     * @return 操作结果
+     * @param session    WebSocket会话
+     * @param opusFrames Opus帧
+     * @param text       文本内容
+     * @param isStart    是否是整个对话的开始
+     * @param isEnd      是否是整个对话的结束
+     * @return Mono<Void> 操作结果
      */
-    public Mono<Void> streamAudioMessage(WebSocketSession session, String text, boolean isStart, boolean isEnd,
-            SysConfig config, String voiceName) {
-        String sessionId = session.getId();
+    public Mono<Void> sendOpusFrames(WebSocketSession session, List<byte[]> opusFrames, String text, boolean isStart,
+            boolean isEnd) {
+        return Mono.defer(() -> {
+            String sessionId = session.getId();
 
-        // 确保会话已初始化
-        initializeSession(sessionId);
+            // 确保会话已初始化
+            initializeSession(sessionId);
 
-        // 获取消息序列号
-        int sequenceNumber = sessionMessageCounters.get(sessionId).incrementAndGet();
+            // 获取消息序列号
+            int sequenceNumber = sessionMessageCounters.get(sessionId).incrementAndGet();
 
-        logger.info("添加流式TTS任务到队列 - 文本: {}, 序列号: {}", text, sequenceNumber);
+            return enqueueAudioMessage(session, sessionId,
+                    new AudioMessageTask(opusFrames, text, isStart, isEnd, null, sequenceNumber));
+        });
+    }
 
-        // 创建新的流式任务并添加到队列
-        StreamingAudioTask task = new StreamingAudioTask(text, isStart, isEnd, config, voiceName, sequenceNumber);
-        Queue<StreamingAudioTask> queue = sessionStreamingQueues.get(sessionId);
+    /**
+     * 将任务添加到队列，当前没有正在处理的任务时开始处理队列
+     */
+    private Mono<Void> enqueueAudioMessage(WebSocketSession session, String sessionId, AudioMessageTask task) {
+        Queue<AudioMessageTask> queue = sessionAudioQueues.get(sessionId);
         queue.add(task);
 
         // 如果当前没有正在处理的任务，开始处理队列
-        AtomicBoolean isProcessing = sessionStreamingFlags.get(sessionId);
+        AtomicBoolean isProcessing = sessionProcessingFlags.get(sessionId);
         if (isProcessing.compareAndSet(false, true)) {
-            return processStreamingQueue(session, sessionId);
+            return processAudioQueue(session, sessionId);
         }
 
         // 如果已经有任务在处理，直接返回
@@ -438,129 +393,65 @@ public class AudioService {
     }
 
     /**
-     * 处理流式音频队列中的任务
+     * 流式合成一句：服务商返回的PCM边到达边编码为Opus帧交给onFrames，合成结束后返回完整结果
      * 
-     * @param session   WebSocket会话
-     * @param sessionId 会话ID
-     * @return 处理结果
+     * @param service  支持流式合成的语音合成服务
+     * @param text     要合成的文本
+     * @param onFrames 新编码出的Opus帧，在合成线程上按顺序调用
+     * @return 完整的合成结果
      */
-    private Mono<Void> processStreamingQueue(WebSocketSession session, String sessionId) {
-        Queue<StreamingAudioTask> queue = sessionStreamingQueues.get(sessionId);
-        AtomicBoolean isProcessing = sessionStreamingFlags.get(sessionId);
-
-        // 如果队列为空或会话已关闭，结束处理
-        if (queue.isEmpty() || !session.isOpen()) {
-            isProcessing.set(false);
-            return Mono.empty();
-        }
-
-        // 获取下一个任务
-        StreamingAudioTask task = queue.poll();
-        int sequenceNumber = task.getSequenceNumber();
-        logger.info("开始处理流式TTS任务 - 文本: {}, 序列号: {}", task.getText(), sequenceNumber);
-
-        // 创建消息序列
-        List<Mono<Void>> messageSequence = new ArrayList<>();
-
-        // 1. 如果是第一条消息，发送开始标记
-        if (task.isFirstMessage()) {
-            messageSequence.add(sendTtsStartMessage(session, sequenceNumber));
-        }
-
-        // 2. 如果有文本，发送句子开始标记
-        if (task.getText() != null && !task.getText().isEmpty()) {
-            messageSequence.add(sendSentenceStartMessage(session, task.getText(), sequenceNumber));
-        }
-
-        // 3. 创建一个CompletableFuture来跟踪TTS处理完成
-        CompletableFuture<Void> ttsDone = new CompletableFuture<>();
-
-        // 4. 创建一个Sink用于接收音频数据
-        Sinks.Many<byte[]> audioSink = Sinks.many().unicast().onBackpressureBuffer();
-
-        // 5. 启动TTS流式处理，将音频数据发送到Sink
-        try {
-            // 创建音频数据消费者
-            Consumer<byte[]> audioDataConsumer = pcmData -> {
-                try {
-                    // 使用更大的缓冲区收集PCM数据，避免过于频繁的转换
-                    // 创建一个更合适的帧大小，基于采样率和通道数
-                    int sampleRate = 16000;
-                    int channels = 1;
-                    int bytesPerSample = 2; // 16位PCM
-                    int optimalFrameSize = (sampleRate * channels * bytesPerSample * FRAME_DURATION_MS) / 1000;
-
-                    // 将PCM数据转换为Opus格式，确保帧大小合适
-                    List<byte[]> opusFrames = opusProcessor.convertPcmToOpus(pcmData, sampleRate, channels,
-                            FRAME_DURATION_MS);
-
-                    // 将每一帧添加到Sink
-                    for (byte[] frame : opusFrames) {
-                        audioSink.tryEmitNext(frame);
-                    }
-                } catch (Exception e) {
-                    logger.error("PCM转Opus失败: {}", e.getMessage(), e);
+    public AudioProcessResult synthesizeStreaming(TtsService service, String text, Consumer<List<byte[]>> onFrames)
+            throws Exception {
+        OpusProcessor.StreamEncoder encoder = opusProcessor.createStreamEncoder(DEFAULT_SAMPLE_RATE,
+                DEFAULT_CHANNELS, FRAME_DURATION_MS);
+        List<byte[]> opusFrames = new ArrayList<>();
+        long[] pcmBytes = new long[1];
+        service.streamTextToSpeech(text, pcm -> {
+            try {
+                List<byte[]> frames = encoder.encode(pcm);
+                pcmBytes[0] += pcm.length;
+                if (!frames.isEmpty()) {
+                    opusFrames.addAll(frames);
+                    onFrames.accept(frames);
                 }
-            };
-
-            // 启动流式TTS，使用新的异步方法
-            ttsService.getTtsService(task.getTtsConfig(), task.getVoiceName())
-                    .streamTextToSpeechAsync(task.getText(), audioDataConsumer)
-                    .whenComplete((result, ex) -> {
-                        if (ex != null) {
-                            logger.error("流式TTS处理失败: {}", ex.getMessage(), ex);
-                            ttsDone.completeExceptionally(ex);
-                        } else {
-                            logger.debug("流式TTS处理完成 - 序列号: {}", sequenceNumber);
-                            ttsDone.complete(null);
-                        }
-                        audioSink.tryEmitComplete();
-                    });
-
-        } catch (Exception e) {
-            logger.error("启动流式TTS失败: {}", e.getMessage(), e);
-            audioSink.tryEmitComplete();
-            ttsDone.completeExceptionally(e);
-        }
+            } catch (OpusException e) {
+                throw new IllegalStateException("PCM转Opus失败", e);
+            }
+        });
+        List<byte[]> tail = encoder.flush();
+        if (!tail.isEmpty()) {
+            opusFrames.addAll(tail);
+            onFrames.accept(tail);
+        }
+        long durationMs = pcmBytes[0] * 1000 / (DEFAULT_SAMPLE_RATE * DEFAULT_CHANNELS * 2);
+        return new AudioProcessResult(opusFrames, durationMs);
+    }
 
-        // 6. 将Sink转换为Flux，并发送到WebSocket，添加帧率控制
-        Flux<WebSocketMessage> audioMessages = audioSink.asFlux()
-                .bufferTimeout(5, Duration.ofMillis(100)) // 收集多个帧或等待100ms
-                .filter(frames -> !frames.isEmpty())
-                .flatMap(frames -> {
-                    List<WebSocketMessage> messages = new ArrayList<>();
-                    for (byte[] frame : frames) {
-                        DataBuffer buffer = bufferFactory.wrap(frame);
-                        messages.add(session.binaryMessage(factory -> buffer));
-                    }
-                    return Flux.fromIterable(messages);
-                })
-                .delayElements(Duration.ofMillis(FRAME_DURATION_MS)); // 添加帧率控制
+    /**
+     * 发送流式合成的音频，与其他音频共用同一个发送队列：先按句子顺序排队，轮到时边接收边播放。
+     * 音频流出错时结束本句，仍按顺序发送结束标记
+     * 
+     * @param session    WebSocket会话
+     * @param opusFrames 边合成边到达的Opus帧
+     * @param text       文本内容
+     * @param isStart    是否是整个对话的开始
+     * @param isEnd      是否是整个对话的结束
+     * @return Mono<Void> 操作结果
+     */
+    public Mono<Void> streamAudioMessage(WebSocketSession session, Flux<byte[]> opusFrames, String text,
+            boolean isStart, boolean isEnd) {
+        return Mono.defer(() -> {
+            String sessionId = session.getId();
 
-        // 添加音频发送操作到序列
-        messageSequence.add(session.send(audioMessages));
+            // 确保会话已初始化
+            initializeSession(sessionId);
 
-        // 7. 如果是最后一条消息，发送结束标记
-        if (task.isLastMessage()) {
-            messageSequence.add(sendTtsStopMessage(session, sequenceNumber));
-        }
+            // 获取消息序列号
+            int sequenceNumber = sessionMessageCounters.get(sessionId).incrementAndGet();
 
-        // 8. 执行所有消息发送操作，并在完成后处理队列中的下一个任务
-        return Flux.concat(messageSequence)
-                .then(Mono.fromFuture(ttsDone))
-                .then()
-                .doFinally(signalType -> {
-                    logger.info("流式TTS任务完成 - 序列号: {}", sequenceNumber);
-
-                    // 继续处理队列中的下一个任务
-                    if (!queue.isEmpty() && session.isOpen()) {
-                        processStreamingQueue(session, sessionId)
-                                .subscribe();
-                    } else {
-                        // 队列为空，重置处理状态
-                        isProcessing.set(false);
-                    }
-                });
+            return enqueueAudioMessage(session, sessionId,
+                    new AudioMessageTask(opusFrames, text, isStart, isEnd, sequenceNumber));
+        });
     }
 
     /**
@@ -605,7 +496,11 @@ public class AudioService {
         }
 
         // 4. 添加音频发送操作到序列
-        if (!audioMessages.isEmpty()) {
+        if (task.getLiveFrames() != null) {
+            messageSequence.add(sendLiveFrames(session, sessionId, task));
+        } else if (!audioMessages.isEmpty()) {
+            replyAudioArchiver.append(sessionId, task.getOpusFrames());
+            responseCache.captureSentence(sessionId, task.getText(), task.getOpusFrames());
             messageSequence.add(
                     session.send(
                             Flux.fromIterable(audioMessages)
@@ -624,6 +519,16 @@ public class AudioService {
                     // 删除音频文件
                     deleteAudioFiles(task.getAudioFilePath());
 
+                    // 回复播放结束，保存存档语音，完整播放的回复写入回复缓存
+                    if (task.isLastMessage()) {
+                        replyAudioArchiver.endReply(sessionId);
+                        if (signalType == SignalType.ON_COMPLETE) {
+                            responseCache.completeCapture(sessionId);
+                        } else {
+                            responseCache.discardCapture(sessionId);
+                        }
+                    }
+
                     // 继续处理队列中的下一个任务
                     if (!queue.isEmpty() && session.isOpen()) {
                         processAudioQueue(session, sessionId)
@@ -635,43 +540,37 @@ public class AudioService {
                 });
     }
 
+    /**
+     * 边接收边按帧率发送流式合成的音频，播放完成后写入回复缓存
+     */
+    private Mono<Void> sendLiveFrames(WebSocketSession session, String sessionId, AudioMessageTask task) {
+        List<byte[]> played = new ArrayList<>();
+        Flux<WebSocketMessage> audioMessages = task.getLiveFrames()
+                .onErrorResume(e -> {
+                    logger.error("[消息#{}-错误] 流式合成失败: {}", task.getSequenceNumber(), e.getMessage());
+                    // 回复不完整，不写入回复缓存
+                    responseCache.discardCapture(sessionId);
+                    return Flux.empty();
+                })
+                .doOnNext(frame -> {
+                    played.add(frame);
+                    replyAudioArchiver.append(sessionId, Collections.singletonList(frame));
+                })
+                .delayElements(Duration.ofMillis(FRAME_DURATION_MS))
+                .map(frame -> session.binaryMessage(factory -> factory.wrap(frame)));
+        return session.send(audioMessages)
+                .then(Mono.fromRunnable(() -> responseCache.captureSentence(sessionId, task.getText(), played)));
+    }
+
     /**
      * 删除音频文件及其相关文件（如同名的VTT文件）
+     * 删除由音频存储在后台分批执行，需要保留的片段和正在使用的文件不会被删除
      * 
      * @param audioPath 音频文件路径
-     * @return 是否成功删除
+     * @return 是否已加入删除队列
      */
     public boolean deleteAudioFiles(String audioPath) {
-        if (audioPath == null) {
-            return false;
-        }
-
-        try {
-            boolean success = true;
-
-            // 删除原始音频文件
-            File audioFile = new File(audioPath);
-            if (audioFile.exists()) {
-                if (!audioFile.delete()) {
-                    logger.warn("无法删除音频文件: {}", audioPath);
-                    success = false;
-                }
-            }
-
-            // 删除可能存在的VTT文件
-            File vttFile = new File(audioPath + ".vtt");
-            if (vttFile.exists()) {
-                if (!vttFile.delete()) {
-                    logger.warn("无法删除VTT文件: {}", vttFile.getPath());
-                    success = false;
-                }
-            }
-
-            return success;
-        } catch (Exception e) {
-            logger.error("删除音频文件时发生错误: {}", audioPath, e);
-            return false;
-        }
+        return audioStore.delete(audioPath);
     }
 
     /**
@@ -769,18 +668,6 @@ public class AudioService {
         String sessionId = session.getId();
         int sequenceNumber = sessionMessageCounters.getOrDefault(sessionId, new AtomicInteger(0)).incrementAndGet();
 
-        // 清空流式队列
-        Queue<StreamingAudioTask> streamingQueue = sessionStreamingQueues.get(sessionId);
-        if (streamingQueue != null) {
-            streamingQueue.clear();
-        }
-
-        // 重置流式处理状态
-        AtomicBoolean isStreamingProcessing = sessionStreamingFlags.get(sessionId);
-        if (isStreamingProcessing != null) {
-            isStreamingProcessing.set(false);
-        }
-
         // 复用现有的停止方法
         return sendTtsStopMessage(session, sequenceNumber);
     }
@@ -0,0 +1,369 @@
+package com.xiaozhi.websocket.service;
+
+import com.xiaozhi.service.SysMessageService;
+import com.xiaozhi.utils.AudioUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 音频文件存储
+ * 音频目录下分两类文件：语音合成的临时输出直接放在audio/下，转码后即删除；
+ * 需要保留的片段（回复存档、验证码语音等被数据库引用的文件）按文件名前两位放到audio/xx/分片目录。
+ * 删除请求进入队列由后台线程分批执行；正在使用的文件有引用计数，计数不为0时不会被删除或淘汰。
+ * 定期清理：超过transient-max-age-minutes的临时文件（数据库仍引用的旧文件除外）、
+ * 超过max-age-days的片段，目录总大小超过max-size-mb时从最旧的开始淘汰，
+ * 被淘汰片段在聊天记录中的音频路径随之清空。
+ * 文件仍由WebFluxConfig的/audio/**静态资源映射提供，文件资源以零拷贝方式写出
+ */
+@Component
+public class AudioStore {
+    private static final Logger logger = LoggerFactory.getLogger(AudioStore.class);
+
+    // 分片目录名：两位十六进制
+    private static final Pattern SHARD = Pattern.compile("[0-9a-f]{2}");
+
+    // 删除队列的处理间隔（毫秒）
+    private static final long DELETE_INTERVAL_MS = 1000;
+
+    // 音频目录的最大总大小（MB）
+    @Value("${app.audio.store.max-size-mb:2048}")
+    private long maxSizeMb;
+
+    // 片段的最长保留时间（天），0表示不按时间淘汰
+    @Value("${app.audio.store.max-age-days:30}")
+    private int maxAgeDays;
+
+    // 临时文件的最长保留时间（分钟），超过时视为遗留文件
+    @Value("${app.audio.store.transient-max-age-minutes:10}")
+    private int transientMaxAgeMinutes;
+
+    // 清理间隔（分钟）
+    @Value("${app.audio.store.sweep-interval-minutes:10}")
+    private int sweepIntervalMinutes;
+
+    // 每批删除的文件数，也是每次查询或更新数据库引用的路径数
+    @Value("${app.audio.store.delete-batch-size:200}")
+    private int deleteBatchSize;
+
+    @Autowired
+    private SysMessageService messageService;
+
+    // 正在使用的文件的引用计数，键为相对路径
+    private final Map<String, Integer> references = new ConcurrentHashMap<>();
+
+    // 等待删除的文件
+    private final Queue<String> deleteQueue = new ConcurrentLinkedQueue<>();
+
+    // 音频目录下仍被数据库引用的旧文件（分片之前保存的），按片段处理
+    private final Set<String> legacyClips = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        new File(AudioUtils.AUDIO_PATH).mkdirs();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "audio-store");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::drainDeletes, DELETE_INTERVAL_MS, DELETE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::sweep, 1, Math.max(1, sweepIntervalMinutes), TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        drainDeletes();
+    }
+
+    /**
+     * 分配一个片段文件路径，分片目录不存在时创建
+     *
+     * @param extension 扩展名，不含点
+     * @return 相对路径，如audio/3f/3f2a….ogg
+     */
+    public String newClipPath(String extension) {
+        String name = UUID.randomUUID().toString().replace("-", "");
+        String shard = name.substring(0, 2);
+        new File(AudioUtils.AUDIO_PATH + shard).mkdirs();
+        return AudioUtils.AUDIO_PATH + shard + "/" + name + "." + extension;
+    }
+
+    /**
+     * 把临时文件转为片段保存，失败时返回原路径
+     */
+    public String persist(String transientPath) {
+        if (transientPath == null || isClip(transientPath)) {
+            return transientPath;
+        }
+        String name = new File(transientPath).getName();
+        int dot = name.lastIndexOf('.');
+        String clipPath = newClipPath(dot >= 0 ? name.substring(dot + 1) : "bin");
+        try {
+            Files.move(new File(transientPath).toPath(), new File(clipPath).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return clipPath;
+        } catch (IOException e) {
+            logger.warn("保存音频片段失败: {}", transientPath, e);
+            return transientPath;
+        }
+    }
+
+    /**
+     * 增加引用计数，使用完毕后调用release
+     */
+    public void retain(String path) {
+        if (path != null) {
+            references.merge(key(path), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 减少引用计数
+     */
+    public void release(String path) {
+        if (path != null) {
+            references.computeIfPresent(key(path), (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * 删除临时文件（及同名的VTT文件），在后台分批执行
+     * 片段由清理策略管理，正在使用的文件不删除
+     *
+     * @return 是否已加入删除队列
+     */
+    public boolean delete(String path) {
+        if (path == null) {
+            return false;
+        }
+        String key = key(path);
+        if (isClip(key) || legacyClips.contains(key) || references.containsKey(key)) {
+            return false;
+        }
+        deleteQueue.add(key);
+        return true;
+    }
+
+    /**
+     * 判断是否为分片目录中的片段
+     */
+    private boolean isClip(String path) {
+        String key = key(path);
+        if (!key.startsWith(AudioUtils.AUDIO_PATH)) {
+            return false;
+        }
+        String[] parts = key.substring(AudioUtils.AUDIO_PATH.length()).split("/");
+        return parts.length == 2 && SHARD.matcher(parts[0]).matches();
+    }
+
+    private void drainDeletes() {
+        List<String> batch = new ArrayList<>();
+        String path;
+        while ((path = deleteQueue.poll()) != null) {
+            batch.add(path);
+            if (batch.size() >= deleteBatchSize) {
+                deleteFiles(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteFiles(batch);
+        }
+    }
+
+    private void deleteFiles(List<String> paths) {
+        int deleted = 0;
+        for (String path : paths) {
+            // 删除前再次检查，入队后可能又被引用
+            if (references.containsKey(path)) {
+                continue;
+            }
+            File file = new File(path);
+            if (file.exists() && !file.delete()) {
+                logger.warn("无法删除音频文件: {}", path);
+                continue;
+            }
+            new File(path + ".vtt").delete();
+            deleted++;
+        }
+        logger.debug("批量删除音频文件 {} 个", deleted);
+    }
+
+    /**
+     * 按时间和总大小清理音频目录
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            List<StoredFile> files = scan();
+            long totalBytes = files.stream().mapToLong(file -> file.size).sum();
+            long transientCutoff = now - TimeUnit.MINUTES.toMillis(transientMaxAgeMinutes);
+            long clipCutoff = maxAgeDays > 0 ? now - TimeUnit.DAYS.toMillis(maxAgeDays) : Long.MIN_VALUE;
+
+            // 过期的临时文件先确认数据库中没有引用
+            List<String> staleTransient = new ArrayList<>();
+            for (StoredFile file : files) {
+                if (!file.clip && file.modified < transientCutoff && !legacyClips.contains(file.path)) {
+                    staleTransient.add(file.path);
+                }
+            }
+            Set<String> referenced = queryReferenced(staleTransient);
+            legacyClips.addAll(referenced);
+
+            List<StoredFile> evicted = new ArrayList<>();
+            List<StoredFile> remaining = new ArrayList<>();
+            for (StoredFile file : files) {
+                boolean clip = file.clip || legacyClips.contains(file.path);
+                boolean expired = clip ? file.modified < clipCutoff : file.modified < transientCutoff;
+                if (expired && !references.containsKey(file.path)) {
+                    evicted.add(file);
+                    totalBytes -= file.size;
+                } else {
+                    remaining.add(file);
+                }
+            }
+
+            // 超出总大小时从最旧的开始淘汰，降到上限的90%
+            long maxBytes = maxSizeMb * 1024 * 1024;
+            if (totalBytes > maxBytes) {
+                remaining.sort(Comparator.comparingLong(file -> file.modified));
+                long target = maxBytes / 10 * 9;
+                for (StoredFile file : remaining) {
+                    if (totalBytes <= target) {
+                        break;
+                    }
+                    if (!references.containsKey(file.path)) {
+                        evicted.add(file);
+                        totalBytes -= file.size;
+                    }
+                }
+            }
+
+            if (!evicted.isEmpty()) {
+                evict(evicted);
+                logger.info("音频目录清理完成 - 淘汰 {} 个文件, 剩余 {} MB", evicted.size(),
+                        totalBytes / 1024 / 1024);
+            }
+        } catch (Exception e) {
+            logger.error("清理音频目录失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 删除淘汰的文件，片段在聊天记录中的引用分批清空
+     */
+    private void evict(List<StoredFile> evicted) {
+        List<String> clipPaths = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (StoredFile file : evicted) {
+            batch.add(file.path);
+            if (file.clip || legacyClips.remove(file.path)) {
+                clipPaths.add(file.path);
+            }
+            if (batch.size() >= deleteBatchSize) {
+                deleteFiles(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteFiles(batch);
+        }
+        for (int i = 0; i < clipPaths.size(); i += deleteBatchSize) {
+            messageService.clearAudioPath(clipPaths.subList(i, Math.min(clipPaths.size(), i + deleteBatchSize)));
+        }
+    }
+
+    /**
+     * 查询数据库中仍引用的路径，分批查询
+     */
+    private Set<String> queryReferenced(List<String> paths) {
+        Set<String> referenced = new HashSet<>();
+        for (int i = 0; i < paths.size(); i += deleteBatchSize) {
+            referenced.addAll(messageService.queryReferencedAudioPaths(
+                    paths.subList(i, Math.min(paths.size(), i + deleteBatchSize))));
+        }
+        return referenced;
+    }
+
+    /**
+     * 列出音频目录根下的临时文件和分片目录中的片段，其他子目录（如语音归档）不在管理范围内
+     */
+    private List<StoredFile> scan() {
+        List<StoredFile> files = new ArrayList<>();
+        File[] entries = new File(AudioUtils.AUDIO_PATH).listFiles();
+        if (entries == null) {
+            return files;
+        }
+        for (File entry : entries) {
+            if (entry.isFile()) {
+                files.add(new StoredFile(AudioUtils.AUDIO_PATH + entry.getName(), entry, false));
+            } else if (entry.isDirectory() && SHARD.matcher(entry.getName()).matches()) {
+                File[] clips = entry.listFiles(File::isFile);
+                if (clips == null) {
+                    continue;
+                }
+                for (File clip : clips) {
+                    files.add(new StoredFile(AudioUtils.AUDIO_PATH + entry.getName() + "/" + clip.getName(), clip,
+                            true));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 统一为数据库中保存的相对路径形式
+     */
+    private static String key(String path) {
+        String key = path.replace('\\', '/');
+        while (key.startsWith("./")) {
+            key = key.substring(2);
+        }
+        return key;
+    }
+
+    private static class StoredFile {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final boolean clip;
+
+        StoredFile(String path, File file, boolean clip) {
+            this.path = path;
+            this.size = file.length();
+            this.modified = file.lastModified();
+            this.clip = clip;
+        }
+    }
+}
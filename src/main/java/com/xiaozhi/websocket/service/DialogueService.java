@@ -3,24 +3,40 @@ package com.xiaozhi.websocket.service;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.websocket.llm.LlmManager;
+import com.xiaozhi.websocket.llm.cache.ResponseCache;
 import com.xiaozhi.websocket.service.VadService.VadStatus;
+import com.xiaozhi.websocket.stt.PcmBuffer;
 import com.xiaozhi.websocket.stt.SttService;
+import com.xiaozhi.websocket.stt.archive.UtteranceArchiver;
 import com.xiaozhi.websocket.stt.factory.SttServiceFactory;
+import com.xiaozhi.websocket.tts.TtsService;
 import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
+import com.xiaozhi.websocket.tts.text.ChineseTextNormalizer;
+import com.xiaozhi.websocket.tts.text.TextNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.text.DecimalFormat;
@@ -43,11 +59,29 @@ public class DialogueService {
     private AudioService audioService;
 
     @Autowired
-    private TtsServiceFactory ttsService;
+    private ReplyAudioArchiver replyAudioArchiver;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private TtsRateLimiter ttsRateLimiter;
+
+    @Autowired
+    private TtsDeduplicator ttsDeduplicator;
+
+    @Autowired
+    private TtsScheduler ttsScheduler;
+
+    @Autowired
+    private TtsServiceFactory ttsServiceFactory;
 
     @Autowired
     private SttServiceFactory sttServiceFactory;
 
+    @Autowired
+    private UtteranceArchiver utteranceArchiver;
+
     @Autowired
     private MessageService messageService;
 
@@ -56,9 +90,21 @@ public class DialogueService {
 
     @Autowired
     private SessionManager sessionManager;
-    
-    // 添加一个每个会话的TTS请求限制器
-    private final Map<String, Semaphore> sessionTtsLimiters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    // 语音合成前的文本归一化，可注册TextNormalizer类型的Bean替换默认实现
+    @Autowired
+    private ObjectProvider<TextNormalizer> textNormalizerProvider;
+
+    @Value("${app.tts.normalizer.enabled:true}")
+    private boolean textNormalizerEnabled;
+
+    private volatile TextNormalizer textNormalizer;
+
+    // 模型首个token到首段语音就绪的耗时
+    private volatile Timer firstAudioTimer;
     
     // 添加一个每个会话的句子序列号计数器
     private final Map<String, AtomicInteger> sessionSentenceCounters = new ConcurrentHashMap<>();
@@ -75,7 +121,11 @@ public class DialogueService {
     // 添加会话的完整回复内容
     private final Map<String, StringBuilder> sessionFullResponses = new ConcurrentHashMap<>();
 
-    private final Semaphore ttsRequestLimit = new Semaphore(1); // 限制同时进行的TTS请求数量，保证TTS请求有序执行
+    // 会话本轮对话收到模型第一个token的时间（纳秒）
+    private final Map<String, Long> sessionFirstTokenTimes = new ConcurrentHashMap<>();
+
+    // 会话当前进行中的模型流式请求，中止对话时取消
+    private final Map<String, Disposable> sessionLlmStreams = new ConcurrentHashMap<>();
 
     /**
      * 处理音频数据
@@ -116,6 +166,7 @@ public class DialogueService {
                 .flatMap(vadResult -> {
                     // 如果VAD处理出错，直接返回
                     if (vadResult.getStatus() == VadStatus.ERROR || vadResult.getProcessedData() == null) {
+                        vadResult.release();
                         return Mono.empty();
                     }
 
@@ -126,25 +177,30 @@ public class DialogueService {
                             sessionSttStartTimes.put(sessionId, System.currentTimeMillis());
                             logger.info("语音识别开始 - SessionId: {}", sessionId);
                             
-                            // 初始化流式识别
+                            // 初始化流式识别，音频块的引用随之转交
+                            List<PcmBuffer> initialAudio = new ArrayList<>(vadResult.getPreBufferData());
+                            initialAudio.add(vadResult.getProcessedData());
                             return initializeStreamingRecognition(session, sessionId, finalSttConfig, finalTtsConfig,
                                     device,
-                                    vadResult.getProcessedData());
+                                    initialAudio);
 
                         case SPEECH_CONTINUE:
                             // 语音继续，发送数据到流式识别
-                            if (sessionManager.isStreaming(sessionId)) {
-                                Sinks.Many<byte[]> audioSink = sessionManager.getAudioSink(sessionId);
-                                if (audioSink != null) {
-                                    audioSink.tryEmitNext(vadResult.getProcessedData());
-                                }
+                            Sinks.Many<PcmBuffer> continueSink = sessionManager.isStreaming(sessionId)
+                                    ? sessionManager.getAudioSink(sessionId)
+                                    : null;
+                            if (continueSink != null) {
+                                emitAudio(continueSink, vadResult.getProcessedData());
+                            } else {
+                                vadResult.release();
                             }
                             return Mono.empty();
 
                         case SPEECH_END:
-                            // 语音结束，完成流式识别
+                            // 语音结束，完成流式识别，最后的静音帧不再送入识别
+                            vadResult.release();
                             if (sessionManager.isStreaming(sessionId)) {
-                                Sinks.Many<byte[]> audioSink = sessionManager.getAudioSink(sessionId);
+                                Sinks.Many<PcmBuffer> audioSink = sessionManager.getAudioSink(sessionId);
                                 if (audioSink != null) {
                                     audioSink.tryEmitComplete();
                                     sessionManager.setStreamingState(sessionId, false);
@@ -153,6 +209,7 @@ public class DialogueService {
                             return Mono.empty();
 
                         default:
+                            vadResult.release();
                             return Mono.empty();
                     }
                 })
@@ -162,6 +219,15 @@ public class DialogueService {
                 });
     }
 
+    /**
+     * 将PCM数据块送入识别流，引用随之转交，发送失败时释放
+     */
+    private void emitAudio(Sinks.Many<PcmBuffer> audioSink, PcmBuffer buffer) {
+        if (buffer.length() == 0 || audioSink.tryEmitNext(buffer).isFailure()) {
+            buffer.release();
+        }
+    }
+
     /**
      * 初始化流式语音识别
      */
@@ -171,13 +237,13 @@ public class DialogueService {
             SysConfig sttConfig,
             SysConfig ttsConfig,
             SysDevice device,
-            byte[] initialAudio) {
+            List<PcmBuffer> initialAudio) {
 
         // 如果已经在进行流式识别，先清理旧的资源
         sessionManager.closeAudioSink(sessionId);
 
         // 创建新的音频数据接收器
-        Sinks.Many<byte[]> audioSink = sessionManager.createAudioSink(sessionId);
+        Sinks.Many<PcmBuffer> audioSink = sessionManager.createAudioSink(sessionId);
         sessionManager.setStreamingState(sessionId, true);
 
         // 获取对应的STT服务
@@ -185,19 +251,22 @@ public class DialogueService {
 
         if (sttService == null) {
             logger.error("无法获取STT服务 - Provider: {}", sttConfig != null ? sttConfig.getProvider() : "null");
+            if (initialAudio != null) {
+                initialAudio.forEach(PcmBuffer::release);
+            }
             return Mono.empty();
         }
 
         // 发送初始音频数据
-        if (initialAudio != null && initialAudio.length > 0) {
-            audioSink.tryEmitNext(initialAudio);
+        if (initialAudio != null) {
+            initialAudio.forEach(chunk -> emitAudio(audioSink, chunk));
         }
 
         // 创建最终变量以在lambda中使用
         final SysConfig finalTtsConfig = ttsConfig;
 
-        // 启动流式识别
-        sttService.streamRecognition(audioSink.asFlux())
+        // 启动流式识别，启用归档时音频块同时交给归档写线程，识别路径上不做拷贝
+        sttService.streamRecognitionPcm(utteranceArchiver.tap(sttService.getProviderName(), audioSink.asFlux()))
                 .doOnNext(text -> {
                     // 发送中间识别结果
                     if (StringUtils.hasText(text)) {
@@ -222,6 +291,7 @@ public class DialogueService {
                     
                     // 记录模型回复开始时间
                     sessionLlmStartTimes.put(sessionId, System.currentTimeMillis());
+                    sessionFirstTokenTimes.remove(sessionId);
                     
                     // 初始化TTS时间记录Map
                     sessionTtsStartTimes.putIfAbsent(sessionId, new ConcurrentHashMap<>());
@@ -229,18 +299,26 @@ public class DialogueService {
                     // 初始化完整回复内容
                     sessionFullResponses.put(sessionId, new StringBuilder());
 
+                    // 开始记录本轮回复的语音存档
+                    replyAudioArchiver.beginReply(sessionId);
+
                     // 设置会话为非监听状态，防止处理自己的声音
                     sessionManager.setListeningState(sessionId, false);
 
-                    // 确保为此会话创建TTS限制器
-                    sessionTtsLimiters.putIfAbsent(sessionId, ttsRequestLimit); // 限制为1个并发，确保顺序处理
+                    // 开始新一轮语音合成调度
+                    ttsScheduler.beginReply(sessionId);
                     sessionSentenceCounters.putIfAbsent(sessionId, new AtomicInteger(0));
 
                     // 发送最终识别结果
                     return messageService.sendMessage(session, "stt", "final", finalText)
                             .then(Mono.fromRunnable(() -> {
+                                // 命中回复缓存时直接重放，不再请求模型
+                                if (replayCachedReply(session, sessionId, device, finalText)) {
+                                    return;
+                                }
                                 // 使用句子切分处理流式响应
-                                llmManager.chatStreamBySentence(device, finalText,
+                                trackLlmStream(sessionId, llmManager.chatStreamBySentence(device, finalText,
+                                        () -> sessionFirstTokenTimes.put(sessionId, System.nanoTime()),
                                         (sentence, isStart, isEnd) -> {
                                             // 获取句子序列号
                                             int sentenceNumber = sessionSentenceCounters.get(sessionId).incrementAndGet();
@@ -261,8 +339,8 @@ public class DialogueService {
                                             // 记录TTS开始时间
                                             sessionTtsStartTimes.get(sessionId).put(sentenceNumber, System.currentTimeMillis());
                                             
-                                            // 使用TTS限制器控制并发
-                                            processSentenceWithRateLimit(
+                                            // 交给语音合成调度器
+                                            scheduleSentence(
                                                 session, 
                                                 sessionId, 
                                                 sentence, 
@@ -272,7 +350,7 @@ public class DialogueService {
                                                 device.getVoiceName(), 
                                                 sentenceNumber
                                             );
-                                        });
+                                        }));
                             }));
                 })
                 .onErrorResume(error -> {
@@ -284,10 +362,19 @@ public class DialogueService {
         return Mono.empty();
     }
     
+    private TextNormalizer textNormalizer() {
+        TextNormalizer normalizer = textNormalizer;
+        if (normalizer == null) {
+            normalizer = textNormalizerProvider.getIfAvailable(ChineseTextNormalizer::new);
+            textNormalizer = normalizer;
+        }
+        return normalizer;
+    }
+
     /**
-     * 使用限流器处理句子的TTS转换
+     * 提交句子到语音合成调度器，合成结果按句子顺序送入播放队列
      */
-    private void processSentenceWithRateLimit(
+    private void scheduleSentence(
             WebSocketSession session, 
             String sessionId, 
             String sentence, 
@@ -296,54 +383,226 @@ public class DialogueService {
             SysConfig ttsConfig, 
             String voiceName,
             int sentenceNumber) {
-        
-        Semaphore limiter = sessionTtsLimiters.get(sessionId);
-        
-        // 尝试获取许可
-        Mono.fromCallable(() -> {
-            // 阻塞获取许可，确保按顺序处理
-            limiter.acquire();
-            return true;
-        })
-        .subscribeOn(Schedulers.boundedElastic())
-        .flatMap(acquired -> 
-            // 使用非流式TTS处理
-            Mono.fromCallable(() -> 
-                ttsService.getTtsService(ttsConfig, voiceName).textToSpeech(sentence)
-            )
-            .subscribeOn(Schedulers.boundedElastic())
-            .flatMap(audioPath -> {
-                // 记录TTS完成时间并计算用时
-                Long ttsStartTime = sessionTtsStartTimes.getOrDefault(sessionId, new ConcurrentHashMap<>()).get(sentenceNumber);
-                if (ttsStartTime != null) {
-                    double ttsDuration = (System.currentTimeMillis() - ttsStartTime) / 1000.0;
-                    logger.info("语音生成完成 - SessionId: {}, 句子序号: {}, 用时: {}秒, 内容: \"{}\"", 
-                            sessionId, sentenceNumber, df.format(ttsDuration), sentence);
-                }
-                
-                // 如果是最后一个句子，记录完整回复
+
+        // 合成归一化后的文本，设备上显示的仍是原句
+        String speech = textNormalizerEnabled ? textNormalizer().normalize(sentence) : sentence;
+        TtsService ttsService = ttsServiceFactory.getTtsService(ttsConfig, voiceName);
+        // 相同提供商、配置和音色下的相同句子只合成一次
+        String dedupScope = ttsService != null
+                ? TtsDeduplicator.scope(ttsService.getProviderName(), ttsConfig, voiceName)
+                : TtsDeduplicator.scope(ttsServiceFactory.getDefaultTtsService().getProviderName(), null, voiceName);
+
+        // 支持流式合成的服务边合成边播放
+        if (!speech.isEmpty() && ttsService != null && ttsService.supportsStreaming()) {
+            scheduleStreamingSentence(session, sessionId, sentence, speech, dedupScope, isStart, isEnd, ttsConfig,
+                    voiceName, sentenceNumber);
+            return;
+        }
+
+        ttsScheduler.submitAsync(sessionId, speech, workers -> speech.isEmpty()
+                ? CompletableFuture.completedFuture(new AudioService.AudioProcessResult())
+                : ttsDeduplicator.synthesize(dedupScope, speech,
+                        // 使用非流式TTS处理，在服务商配额内合成，等待配额时不占用合成线程
+                        producer -> ttsRateLimiter.synthesize(ttsConfig, voiceName, speech, isStart, workers,
+                                route -> {
+                                    producer.accept(dedupScope(route));
+                                    return toOpus(route.getService().textToSpeech(speech));
+                                })),
+                (audioResult, error) -> {
+            if (error != null) {
+                logger.error("处理句子 #{} 失败: {}", sentenceNumber, error.getMessage(), error);
+                // 回复不完整，不写入回复缓存
+                responseCache.discardCapture(sessionId);
                 if (isEnd) {
-                    StringBuilder fullResponse = sessionFullResponses.get(sessionId);
-                    if (fullResponse != null) {
-                        logger.info("对话完成 - SessionId: {}, 完整回复: \"{}\"", sessionId, fullResponse.toString());
+                    // 最后一句失败时仍送入一个空的结束任务，前面的句子播完后发送结束标记并保存助手消息
+                    audioService.sendOpusFrames(session, Collections.emptyList(), null, isStart, true)
+                            .doOnError(e -> logger.error("发送结束消息失败: {}", e.getMessage(), e))
+                            .subscribe();
+                }
+                return;
+            }
+
+            logSentenceReady(sessionId, sentence, isEnd, sentenceNumber);
+
+            // 首句语音就绪，记录从模型首个token到首段语音的耗时
+            if (isStart) {
+                recordFirstAudioLatency(sessionId);
+            }
+
+            // 按顺序加入播放队列
+            audioService.sendOpusFrames(session, audioResult.getOpusFrames(), sentence, isStart, isEnd)
+                    .doOnError(e -> logger.error("发送音频消息失败: {}", e.getMessage(), e))
+                    .subscribe();
+        });
+    }
+
+    /**
+     * 流式合成一句：提交时就按句子顺序加入播放队列，轮到该句时已到达的音频立即播放，其余边合成边播放。
+     * 首句收到第一段音频即计为首段语音就绪；合成失败或回复被取消时播放队列中的该句随之结束
+     */
+    private void scheduleStreamingSentence(
+            WebSocketSession session,
+            String sessionId,
+            String sentence,
+            String speech,
+            String dedupScope,
+            boolean isStart,
+            boolean isEnd,
+            SysConfig ttsConfig,
+            String voiceName,
+            int sentenceNumber) {
+
+        Sinks.Many<byte[]> liveFrames = Sinks.many().unicast().onBackpressureBuffer();
+        // 本次合成是否已经边合成边输出，复用的合成结果需要整句送入
+        AtomicBoolean streamed = new AtomicBoolean();
+
+        audioService.streamAudioMessage(session, liveFrames.asFlux(), sentence, isStart, isEnd)
+                .doOnError(e -> logger.error("发送音频消息失败: {}", e.getMessage(), e))
+                .subscribe();
+
+        ttsScheduler.submitAsync(sessionId, speech, workers -> ttsDeduplicator.synthesize(dedupScope, speech,
+                producer -> ttsRateLimiter.synthesize(ttsConfig, voiceName, speech, isStart, workers, route -> {
+                    producer.accept(dedupScope(route));
+                    TtsService service = route.getService();
+                    if (!service.supportsStreaming()) {
+                        // 排队过长时改用的备用服务不支持流式，合成完成后整句播放
+                        return toOpus(service.textToSpeech(speech));
                     }
+                    streamed.set(true);
+                    return audioService.synthesizeStreaming(service, speech, frames -> {
+                        if (isStart) {
+                            recordFirstAudioLatency(sessionId);
+                        }
+                        emitFrames(liveFrames, frames);
+                    });
+                })), new TtsScheduler.Delivery() {
+                    @Override
+                    public void deliver(AudioService.AudioProcessResult audioResult, Throwable error) {
+                        if (error != null) {
+                            logger.error("处理句子 #{} 失败: {}", sentenceNumber, error.getMessage(), error);
+                            finishFrames(liveFrames, error);
+                            return;
+                        }
+                        logSentenceReady(sessionId, sentence, isEnd, sentenceNumber);
+                        if (!streamed.get()) {
+                            if (isStart) {
+                                recordFirstAudioLatency(sessionId);
+                            }
+                            emitFrames(liveFrames, audioResult.getOpusFrames());
+                        }
+                        finishFrames(liveFrames, null);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        finishFrames(liveFrames, null);
+                    }
+                });
+    }
+
+    /**
+     * 向句子的播放流发送音频帧
+     * 合成回调线程和调度、中止线程都会向同一个sink发送，在sink上串行，避免并发发送返回FAIL_NON_SERIALIZED而丢帧
+     */
+    private static void emitFrames(Sinks.Many<byte[]> liveFrames, List<byte[]> frames) {
+        synchronized (liveFrames) {
+            for (byte[] frame : frames) {
+                Sinks.EmitResult result = liveFrames.tryEmitNext(frame);
+                if (result.isFailure()) {
+                    logEmitFailure("音频帧", result);
+                    return;
                 }
-                
-                return audioService.sendAudioMessage(session, audioPath, sentence, isStart, isEnd)
-                    .doOnError(e -> logger.error("发送音频消息失败: {}", e.getMessage(), e));
-            })
-        )
-        .doFinally(signalType -> {
-            // 释放许可
-            limiter.release();
-        })
-        .onErrorResume(e -> {
-            logger.error("处理句子 #{} 失败: {}", sentenceNumber, e.getMessage(), e);
-            // 确保释放许可
-            limiter.release();
-            return Mono.empty();
-        })
-        .subscribe();
+            }
+        }
+    }
+
+    /**
+     * 结束句子的播放流，error为null时正常结束
+     */
+    private static void finishFrames(Sinks.Many<byte[]> liveFrames, Throwable error) {
+        Sinks.EmitResult result;
+        synchronized (liveFrames) {
+            result = error == null ? liveFrames.tryEmitComplete() : liveFrames.tryEmitError(error);
+        }
+        if (result.isFailure()) {
+            logEmitFailure(error == null ? "结束信号" : "错误信号", result);
+        }
+    }
+
+    private static void logEmitFailure(String signal, Sinks.EmitResult result) {
+        // 播放已取消或该句已结束（如回复被打断后合成回调仍在输出）属于正常情况
+        if (result == Sinks.EmitResult.FAIL_CANCELLED || result == Sinks.EmitResult.FAIL_TERMINATED) {
+            logger.debug("句子播放流已结束，丢弃{}: {}", signal, result);
+        } else {
+            logger.warn("发送{}到句子播放流失败: {}", signal, result);
+        }
+    }
+
+    /**
+     * 实际合成音频的范围，排队过长改用备用服务时与请求的范围不同
+     */
+    private static String dedupScope(TtsRateLimiter.Route route) {
+        return TtsDeduplicator.scope(route.getService().getProviderName(), route.getConfig(), route.getVoiceName());
+    }
+
+    /**
+     * 将合成的音频文件转为Opus帧，转换后即可删除音频文件
+     */
+    private AudioService.AudioProcessResult toOpus(String audioPath) {
+        try {
+            return audioService.processAudioFile(audioPath, AudioService.DEFAULT_SAMPLE_RATE,
+                    AudioService.DEFAULT_CHANNELS);
+        } finally {
+            audioService.deleteAudioFiles(audioPath);
+        }
+    }
+
+    /**
+     * 记录句子的语音合成用时，最后一句时记录完整回复
+     */
+    private void logSentenceReady(String sessionId, String sentence, boolean isEnd, int sentenceNumber) {
+        // 记录TTS完成时间并计算用时
+        Long ttsStartTime = sessionTtsStartTimes.getOrDefault(sessionId, new ConcurrentHashMap<>()).get(sentenceNumber);
+        if (ttsStartTime != null) {
+            double ttsDuration = (System.currentTimeMillis() - ttsStartTime) / 1000.0;
+            logger.info("语音生成完成 - SessionId: {}, 句子序号: {}, 用时: {}秒, 内容: \"{}\"", 
+                    sessionId, sentenceNumber, df.format(ttsDuration), sentence);
+        }
+
+        // 如果是最后一个句子，记录完整回复
+        if (isEnd) {
+            StringBuilder fullResponse = sessionFullResponses.get(sessionId);
+            if (fullResponse != null) {
+                logger.info("对话完成 - SessionId: {}, 完整回复: \"{}\"", sessionId, fullResponse.toString());
+            }
+        }
+    }
+
+    /**
+     * 记录从模型首个token到首段语音就绪的耗时
+     */
+    private void recordFirstAudioLatency(String sessionId) {
+        Long firstTokenTime = sessionFirstTokenTimes.remove(sessionId);
+        if (firstTokenTime == null) {
+            return;
+        }
+        long latencyNanos = System.nanoTime() - firstTokenTime;
+        logger.info("首段语音就绪 - SessionId: {}, 距模型首个token用时: {}秒",
+                sessionId, df.format(latencyNanos / 1_000_000_000.0));
+
+        Timer timer = firstAudioTimer;
+        if (timer == null) {
+            MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+            if (meterRegistry == null) {
+                return;
+            }
+            timer = Timer.builder("xiaozhi.dialogue.first.audio.latency")
+                    .description("模型首个token到首段语音就绪的耗时")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            firstAudioTimer = timer;
+        }
+        timer.record(latencyNanos, TimeUnit.NANOSECONDS);
     }
 
     /**
@@ -369,6 +628,7 @@ public class DialogueService {
         
         // 记录模型回复开始时间
         sessionLlmStartTimes.put(sessionId, System.currentTimeMillis());
+        sessionFirstTokenTimes.remove(sessionId);
         
         // 初始化TTS时间记录Map
         sessionTtsStartTimes.putIfAbsent(sessionId, new ConcurrentHashMap<>());
@@ -376,20 +636,29 @@ public class DialogueService {
         // 初始化完整回复内容
         sessionFullResponses.put(sessionId, new StringBuilder());
 
+        // 开始记录本轮回复的语音存档
+        replyAudioArchiver.beginReply(sessionId);
+
         // 设置为非监听状态，防止处理自己的声音
         sessionManager.setListeningState(sessionId, false);
 
-        // 确保为此会话创建TTS限制器
-        sessionTtsLimiters.putIfAbsent(sessionId, ttsRequestLimit); // 限制为1个并发，确保顺序处理
+        // 开始新一轮语音合成调度
+        ttsScheduler.beginReply(sessionId);
         sessionSentenceCounters.putIfAbsent(sessionId, new AtomicInteger(0));
 
         // 发送识别结果
         messageService.sendMessage(session, "stt", "start", text).subscribe();
 
-        // 使用句子切分处理流式响应
+        // 使用句子切分处理流式响应，请求在后台线程读取，这里只负责订阅
         return Mono.fromRunnable(() -> {
+            // 命中回复缓存时直接重放，不再请求模型
+            if (replayCachedReply(session, sessionId, device, text)) {
+                return;
+            }
+
             // 使用句子切分处理流式响应
-            llmManager.chatStreamBySentence(device, text,
+            trackLlmStream(sessionId, llmManager.chatStreamBySentence(device, text,
+                    () -> sessionFirstTokenTimes.put(sessionId, System.nanoTime()),
                     (sentence, isStart, isEnd) -> {
                         // 获取句子序列号
                         int sentenceNumber = sessionSentenceCounters.get(sessionId).incrementAndGet();
@@ -410,8 +679,8 @@ public class DialogueService {
                         // 记录TTS开始时间
                         sessionTtsStartTimes.get(sessionId).put(sentenceNumber, System.currentTimeMillis());
                         
-                        // 使用TTS限制器控制并发
-                        processSentenceWithRateLimit(
+                        // 交给语音合成调度器
+                        scheduleSentence(
                             session, 
                             sessionId, 
                             sentence, 
@@ -421,8 +690,58 @@ public class DialogueService {
                             device.getVoiceName(),
                             sentenceNumber
                         );
-                    });
-        }).subscribeOn(Schedulers.boundedElastic()).then();
+                    }));
+        });
+    }
+
+    /**
+     * 查找回复缓存，命中时保存对话记录并按句重放缓存的Opus帧；未命中时开始记录本轮回复
+     * 
+     * @return 是否命中
+     */
+    private boolean replayCachedReply(WebSocketSession session, String sessionId, SysDevice device, String text) {
+        ResponseCache.CachedReply cached = responseCache.lookup(device, text);
+        if (cached == null) {
+            responseCache.beginCapture(sessionId, device, text);
+            return false;
+        }
+        responseCache.discardCapture(sessionId);
+
+        String reply = cached.getText();
+        logger.info("命中回复缓存 - SessionId: {}, 问题: \"{}\", 回复: \"{}\"", sessionId, text, reply);
+        sessionFullResponses.get(sessionId).append(reply);
+        llmManager.recordExchange(device, text, reply);
+
+        List<ResponseCache.CachedSentence> sentences = cached.getSentences();
+        for (int i = 0; i < sentences.size(); i++) {
+            ResponseCache.CachedSentence sentence = sentences.get(i);
+            audioService.sendOpusFrames(session, sentence.getOpusFrames(), sentence.getText(), i == 0,
+                    i == sentences.size() - 1)
+                    .doOnError(e -> logger.error("发送缓存音频失败: {}", e.getMessage(), e))
+                    .subscribe();
+        }
+        return true;
+    }
+
+    /**
+     * 记录会话当前的模型流式请求，同一会话只保留最新的一个
+     */
+    private void trackLlmStream(String sessionId, Disposable stream) {
+        Disposable previous = sessionLlmStreams.put(sessionId, stream);
+        if (previous != null && previous != stream) {
+            previous.dispose();
+        }
+    }
+
+    /**
+     * 取消会话进行中的模型流式请求
+     */
+    private void cancelLlmStream(String sessionId) {
+        Disposable stream = sessionLlmStreams.remove(sessionId);
+        if (stream != null && !stream.isDisposed()) {
+            stream.dispose();
+            logger.info("已取消模型流式请求 - SessionId: {}", sessionId);
+        }
     }
 
     /**
@@ -436,6 +755,15 @@ public class DialogueService {
         String sessionId = session.getId();
         logger.info("中止对话 - SessionId: {}, Reason: {}", sessionId, reason);
 
+        // 取消模型请求，不再继续生成
+        cancelLlmStream(sessionId);
+
+        // 被打断的回复不写入回复缓存
+        responseCache.discardCapture(sessionId);
+
+        // 后续句子不再合成
+        ttsScheduler.cancelSession(sessionId);
+
         // 关闭音频流
         sessionManager.closeAudioSink(sessionId);
         sessionManager.setStreamingState(sessionId, false);
@@ -450,8 +778,11 @@ public class DialogueService {
      * @param sessionId 会话ID
      */
     public void cleanupSession(String sessionId) {
-        // 移除会话的TTS限制器和计数器
-        sessionTtsLimiters.remove(sessionId);
+        // 取消进行中的模型请求
+        cancelLlmStream(sessionId);
+
+        // 取消未完成的语音合成，移除句子计数器
+        ttsScheduler.cancelSession(sessionId);
         sessionSentenceCounters.remove(sessionId);
         
         // 移除时间记录
@@ -459,5 +790,6 @@ public class DialogueService {
         sessionLlmStartTimes.remove(sessionId);
         sessionTtsStartTimes.remove(sessionId);
         sessionFullResponses.remove(sessionId);
+        sessionFirstTokenTimes.remove(sessionId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package com.xiaozhi.websocket.service;
+
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.utils.OggOpusWriter;
+import com.xiaozhi.websocket.llm.memory.ChatMessageWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 回复语音存档
+ * 记录每轮回复实际播放给设备的Opus帧，播放结束后直接封装为Ogg Opus文件作为助手消息的audioPath，
+ * 不再为存档单独做一次语音合成和转码。助手消息在回复结束后才连同音频路径一起交给写线程入库；
+ * 存档文件在结束回复的线程上同步写出，新一轮回复开始前上一轮的助手消息已经入队，
+ * 打断时也不会排到下一轮的用户消息之后
+ */
+@Service
+public class ReplyAudioArchiver {
+    private static final Logger logger = LoggerFactory.getLogger(ReplyAudioArchiver.class);
+
+    // 与AudioService播放使用的参数一致
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 1;
+    private static final int FRAME_DURATION_MS = 60;
+
+    @Value("${app.audio.archive.enabled:true}")
+    private boolean enabled;
+
+    // 单轮回复最多存档的时长（秒），超出部分不再记录
+    @Value("${app.audio.archive.max-seconds:300}")
+    private int maxSeconds;
+
+    @Autowired
+    private ChatMessageWriter messageWriter;
+
+    @Autowired
+    private AudioStore audioStore;
+
+    // 每个会话当前正在记录的回复
+    private final Map<String, Reply> replies = new ConcurrentHashMap<>();
+
+    /**
+     * 开始记录新一轮回复，上一轮未结束的回复按已播放的内容存档
+     */
+    public void beginReply(String sessionId) {
+        if (!enabled) {
+            return;
+        }
+        Reply previous = replies.put(sessionId, new Reply());
+        if (previous != null) {
+            complete(previous);
+        }
+    }
+
+    /**
+     * 追加已发送给设备的Opus帧
+     */
+    public void append(String sessionId, List<byte[]> opusFrames) {
+        Reply reply = replies.get(sessionId);
+        if (reply != null && opusFrames != null) {
+            reply.append(opusFrames, maxSeconds * 1000 / FRAME_DURATION_MS);
+        }
+    }
+
+    /**
+     * 回复播放结束，写出存档文件并保存助手消息
+     */
+    public void endReply(String sessionId) {
+        Reply reply = replies.remove(sessionId);
+        if (reply != null) {
+            complete(reply);
+        }
+    }
+
+    /**
+     * 保存助手消息：会话有进行中的回复时等回复结束后带上音频路径再入库，否则直接入库
+     */
+    public void submitMessage(String sessionId, SysMessage message) {
+        Reply reply = sessionId != null ? replies.get(sessionId) : null;
+        if (reply == null || !reply.attach(message)) {
+            messageWriter.submit(message);
+        }
+    }
+
+    /**
+     * 清理会话，未结束的回复按已播放的内容存档
+     */
+    public void cleanupSession(String sessionId) {
+        endReply(sessionId);
+    }
+
+    private void complete(Reply reply) {
+        List<byte[]> frames;
+        SysMessage message;
+        synchronized (reply) {
+            reply.completed = true;
+            frames = reply.frames;
+            message = reply.message;
+        }
+        if (message == null) {
+            // 没有对应的助手消息（如模型请求失败），不需要存档
+            return;
+        }
+        if (!frames.isEmpty()) {
+            // 只是把已编码的Opus帧封装写入本地文件，直接在当前线程完成，保证消息按轮次顺序入队
+            message.setAudioPath(save(frames));
+        }
+        messageWriter.submit(message);
+    }
+
+    private String save(List<byte[]> frames) {
+        String filePath = audioStore.newClipPath("ogg");
+        try {
+            try (OggOpusWriter writer = new OggOpusWriter(
+                    new BufferedOutputStream(new FileOutputStream(filePath)), SAMPLE_RATE, CHANNELS)) {
+                for (byte[] frame : frames) {
+                    writer.writePacket(frame, FRAME_DURATION_MS);
+                }
+            }
+            return filePath;
+        } catch (Exception e) {
+            logger.error("保存回复语音失败: {}", e.getMessage(), e);
+            new File(filePath).delete();
+            return null;
+        }
+    }
+
+    /**
+     * 一轮回复的存档状态
+     */
+    private static class Reply {
+        private final List<byte[]> frames = new ArrayList<>();
+        private SysMessage message;
+        private boolean completed;
+
+        synchronized void append(List<byte[]> opusFrames, int maxFrames) {
+            if (completed) {
+                return;
+            }
+            for (byte[] frame : opusFrames) {
+                if (frames.size() >= maxFrames) {
+                    return;
+                }
+                frames.add(frame);
+            }
+        }
+
+        synchronized boolean attach(SysMessage assistant) {
+            if (completed) {
+                return false;
+            }
+            message = assistant;
+            return true;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.xiaozhi.websocket.service;
 
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
+import com.xiaozhi.websocket.stt.PcmBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -29,7 +30,7 @@ public class SessionManager {
     private final ConcurrentHashMap<String, Boolean> listeningState = new ConcurrentHashMap<>();
 
     // 用于存储每个会话的音频数据流
-    private final ConcurrentHashMap<String, Sinks.Many<byte[]>> audioSinks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Sinks.Many<PcmBuffer>> audioSinks = new ConcurrentHashMap<>();
 
     // 用于跟踪会话是否正在进行流式识别
     private final ConcurrentHashMap<String, Boolean> streamingState = new ConcurrentHashMap<>();
@@ -59,7 +60,7 @@ public class SessionManager {
         streamingState.remove(sessionId);
 
         // 清理音频流
-        Sinks.Many<byte[]> sink = audioSinks.remove(sessionId);
+        Sinks.Many<PcmBuffer> sink = audioSinks.remove(sessionId);
         if (sink != null) {
             sink.tryEmitComplete();
         }
@@ -166,8 +167,8 @@ public class SessionManager {
      * @param sessionId 会话ID
      * @return 音频数据接收器
      */
-    public Sinks.Many<byte[]> createAudioSink(String sessionId) {
-        Sinks.Many<byte[]> sink = Sinks.many().multicast().onBackpressureBuffer();
+    public Sinks.Many<PcmBuffer> createAudioSink(String sessionId) {
+        Sinks.Many<PcmBuffer> sink = Sinks.many().multicast().onBackpressureBuffer();
         audioSinks.put(sessionId, sink);
         return sink;
     }
@@ -178,7 +179,7 @@ public class SessionManager {
      * @param sessionId 会话ID
      * @return 音频数据接收器
      */
-    public Sinks.Many<byte[]> getAudioSink(String sessionId) {
+    public Sinks.Many<PcmBuffer> getAudioSink(String sessionId) {
         return audioSinks.get(sessionId);
     }
 
@@ -188,7 +189,7 @@ public class SessionManager {
      * @param sessionId 会话ID
      */
     public void closeAudioSink(String sessionId) {
-        Sinks.Many<byte[]> sink = audioSinks.get(sessionId);
+        Sinks.Many<PcmBuffer> sink = audioSinks.get(sessionId);
         if (sink != null) {
             sink.tryEmitComplete();
         }
@@ -0,0 +1,240 @@
+package com.xiaozhi.websocket.service;
+
+import com.xiaozhi.entity.SysConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 句子级语音合成去重
+ * 很多设备使用相同的角色和音色，模型也常输出相同的短句（好的。没问题！），
+ * 同一（语音合成配置, 音色, 归一化文本）正在合成时，后来的请求接在同一次合成的结果上，结果的Opus帧共享给所有等待方；
+ * 合成完成后短句结果再保留cache-ttl-ms，接住几乎同时到达的重复句子。
+ * 缓存按实际合成音频的提供商、配置和音色保存，排队过长改用备用服务合成的结果不会提供给主服务的请求
+ */
+@Service
+public class TtsDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(TtsDeduplicator.class);
+
+    @Value("${app.tts.dedup.enabled:true}")
+    private boolean enabled;
+
+    // 合成结果的保留时间（毫秒）
+    @Value("${app.tts.dedup.cache-ttl-ms:30000}")
+    private long cacheTtlMs;
+
+    // 最多保留的合成结果数，超出时淘汰最久未使用的
+    @Value("${app.tts.dedup.cache-max-entries:200}")
+    private int cacheMaxEntries;
+
+    // 只保留不超过该字数的句子的结果，长句很少重复
+    @Value("${app.tts.dedup.cache-max-chars:30}")
+    private int cacheMaxChars;
+
+    // 正在合成的句子
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    // 按访问顺序排列，用于淘汰
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * 实际的合成任务
+     */
+    public interface Synthesis {
+        /**
+         * @param producer 记录实际合成音频的范围，与请求的范围不同（如改用备用服务）时调用，结果按该范围缓存
+         * @return 合成结果，可在其他线程完成
+         */
+        CompletableFuture<AudioService.AudioProcessResult> start(Consumer<String> producer) throws Exception;
+    }
+
+    /**
+     * 合成范围
+     *
+     * @param provider  语音合成提供商
+     * @param config    语音合成配置，默认服务为null
+     * @param voiceName 音色
+     */
+    public static String scope(String provider, SysConfig config, String voiceName) {
+        return provider + ":" + (config != null ? config.getConfigId() : null) + ":" + voiceName;
+    }
+
+    /**
+     * 合成一句，相同的句子正在合成或刚合成过时复用其结果，等待相同句子的合成时不占用线程
+     *
+     * @param scope     合成范围，见scope(String, SysConfig, String)
+     * @param text      句子文本
+     * @param synthesis 实际的合成任务
+     * @return 合成结果，Opus帧列表只读且可能被多个会话共享
+     */
+    public CompletableFuture<AudioService.AudioProcessResult> synthesize(String scope, String text,
+            Synthesis synthesis) {
+        String normalized = normalize(text);
+        if (!enabled || normalized.isEmpty()) {
+            return start(synthesis, producer -> {
+            });
+        }
+        String key = scope + "|" + normalized;
+
+        AudioService.AudioProcessResult cached = getCached(key);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            logger.debug("语音合成结果复用 - 内容: \"{}\"", text);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        Flight[] created = new Flight[1];
+        Flight flight = inFlight.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.waiters++;
+                return existing;
+            }
+            created[0] = new Flight();
+            return created[0];
+        });
+        if (created[0] == null) {
+            coalesced.incrementAndGet();
+            logger.debug("等待相同句子的语音合成 - 内容: \"{}\"", text);
+            return join(key, flight);
+        }
+
+        // 合成实际使用的范围，默认为请求的范围
+        AtomicReference<String> produced = new AtomicReference<>(scope);
+        CompletableFuture<AudioService.AudioProcessResult> source = start(synthesis, produced::set);
+        // 所有等待方都已取消时取消合成，如排队等待配额的请求退出排队
+        flight.future.whenComplete((result, error) -> {
+            if (flight.future.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+        source.whenComplete((result, error) -> {
+            if (error != null) {
+                inFlight.remove(key, flight);
+                flight.future.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                return;
+            }
+            AudioService.AudioProcessResult shared = new AudioService.AudioProcessResult(
+                    Collections.unmodifiableList(result.getOpusFrames()), result.getDurationMs());
+            if (normalized.length() <= cacheMaxChars && !shared.getOpusFrames().isEmpty()) {
+                putCached(produced.get() + "|" + normalized, shared);
+            }
+            inFlight.remove(key, flight);
+            flight.future.complete(shared);
+        });
+        return join(key, flight);
+    }
+
+    /**
+     * 返回依赖共享结果的新Future：一个等待方取消不影响其他等待方，最后一个等待方取消时取消合成
+     */
+    private CompletableFuture<AudioService.AudioProcessResult> join(String key, Flight flight) {
+        CompletableFuture<AudioService.AudioProcessResult> waiter = flight.future.thenApply(Function.identity());
+        waiter.whenComplete((result, error) -> {
+            if (!waiter.isCancelled()) {
+                return;
+            }
+            boolean[] abandoned = new boolean[1];
+            inFlight.computeIfPresent(key, (k, current) -> {
+                if (current != flight || --current.waiters > 0) {
+                    return current;
+                }
+                abandoned[0] = true;
+                return null;
+            });
+            if (abandoned[0]) {
+                flight.future.cancel(false);
+            }
+        });
+        return waiter;
+    }
+
+    private static CompletableFuture<AudioService.AudioProcessResult> start(Synthesis synthesis,
+            Consumer<String> producer) {
+        try {
+            return synthesis.start(producer);
+        } catch (Throwable e) {
+            CompletableFuture<AudioService.AudioProcessResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    private AudioService.AudioProcessResult getCached(String key) {
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= entry.expireAt) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.result;
+        }
+    }
+
+    private void putCached(String key, AudioService.AudioProcessResult result) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.put(key, new Entry(result, now + cacheTtlMs));
+            // 先清理过期的，再按访问顺序淘汰
+            cache.values().removeIf(entry -> now >= entry.expireAt);
+            while (cache.size() > cacheMaxEntries) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * 归一化：全角转半角、去除首尾和连续空白，标点保留（影响语调）
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 正在进行的一次合成，等待方计数由inFlight的compute保护
+     */
+    private static class Flight {
+        private final CompletableFuture<AudioService.AudioProcessResult> future = new CompletableFuture<>();
+        private int waiters = 1;
+    }
+
+    private static class Entry {
+        private final AudioService.AudioProcessResult result;
+        private final long expireAt;
+
+        Entry(AudioService.AudioProcessResult result, long expireAt) {
+            this.result = result;
+            this.expireAt = expireAt;
+        }
+    }
+}
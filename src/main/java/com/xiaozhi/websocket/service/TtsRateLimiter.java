@@ -0,0 +1,472 @@
+package com.xiaozhi.websocket.service;
+
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.websocket.tts.TtsService;
+import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语音合成准入控制
+ * 每个（提供商, 配置ID）一个令牌桶，限制每秒请求数和并发数，避免超出服务商配额导致合成失败。
+ * 超出配额的请求排队等待，每轮回复的首句优先，同优先级按提交顺序；排队不占用线程，获得配额后才把合成交给调用方的线程执行。
+ * 排队过长或预计等待超过max-wait-ms时，新请求改用为该配置指定的备用配置和音色合成，未指定时继续排队，
+ * 如 app.tts.rate-limit.fallback.1.config-id=3、app.tts.rate-limit.fallback.1.voice=longxiaochun，备用配置ID为0表示默认的Edge服务。
+ * 全局默认值为app.tts.rate-limit.*，也可按提供商单独配置，如app.tts.rate-limit.aliyun.qps
+ */
+@Service
+public class TtsRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(TtsRateLimiter.class);
+
+    private static final String PREFIX = "app.tts.rate-limit.";
+
+    // 首句的优先级
+    private static final int PRIORITY_FIRST = 0;
+    private static final int PRIORITY_NORMAL = 1;
+
+    // 尚无统计时估算的单次合成耗时（毫秒）
+    private static final long INITIAL_SERVICE_MS = 1000;
+
+    private static final Comparator<Waiter> ORDER = Comparator
+            .comparingInt((Waiter waiter) -> waiter.priority)
+            .thenComparingLong(waiter -> waiter.seq);
+
+    private final Environment environment;
+    private final TtsServiceFactory ttsServiceFactory;
+    private final SysConfigService configService;
+    private final MeterRegistry meterRegistry;
+
+    // 限流器，键为 提供商:配置ID
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    // 备用配置，键为主配置ID
+    private final Map<Integer, Optional<SysConfig>> fallbackConfigs = new ConcurrentHashMap<>();
+    private final AtomicLong waiterSeq = new AtomicLong();
+
+    // 令牌恢复和等待超时的定时器，只做调度，不执行合成
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tts-rate-limit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public TtsRateLimiter(Environment environment, TtsServiceFactory ttsServiceFactory,
+            SysConfigService configService, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.environment = environment;
+        this.ttsServiceFactory = ttsServiceFactory;
+        this.configService = configService;
+        this.meterRegistry = meterRegistry.getIfAvailable();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 在选定的语音合成服务上执行的合成
+     */
+    public interface Call<T> {
+        /**
+         * @param route 主服务，排队过长时为备用服务
+         */
+        T apply(Route route) throws Exception;
+    }
+
+    /**
+     * 实际用于合成的服务、配置和音色
+     */
+    public static class Route {
+        private final TtsService service;
+        private final SysConfig config;
+        private final String voiceName;
+        private final boolean fallback;
+
+        Route(TtsService service, SysConfig config, String voiceName, boolean fallback) {
+            this.service = service;
+            this.config = config;
+            this.voiceName = voiceName;
+            this.fallback = fallback;
+        }
+
+        public TtsService getService() {
+            return service;
+        }
+
+        public SysConfig getConfig() {
+            return config;
+        }
+
+        public String getVoiceName() {
+            return voiceName;
+        }
+
+        /**
+         * 是否因主服务排队过长改用了备用服务
+         */
+        public boolean isFallback() {
+            return fallback;
+        }
+    }
+
+    /**
+     * 在配额内执行合成，主服务排队过长时改用备用服务，调用方按传入的服务选择合成方式（如流式）
+     * 等待配额时不占用线程，获得配额后在executor中执行合成
+     *
+     * @param config        语音合成配置，为空时使用默认服务
+     * @param voiceName     语音名称
+     * @param text          文本，用于日志
+     * @param firstSentence 是否为回复的首句，首句优先
+     * @param executor      执行合成的线程
+     * @param call          合成
+     * @return 合成结果
+     */
+    public <T> CompletableFuture<T> synthesize(SysConfig config, String voiceName, String text,
+            boolean firstSentence, Executor executor, Call<T> call) {
+        int priority = firstSentence ? PRIORITY_FIRST : PRIORITY_NORMAL;
+        Route route = primaryRoute(config, voiceName);
+        Limiter limiter = limiter(route);
+
+        if (property(null, "fallback-enabled", Boolean.TRUE) && limiter.isOverloaded(priority)) {
+            Route fallback = fallbackRoute(config);
+            if (fallback != null) {
+                Limiter fallbackLimiter = limiter(fallback);
+                if (fallbackLimiter != limiter && !fallbackLimiter.isOverloaded(priority)) {
+                    logger.info("{}排队过长（排队 {}，预计等待 {}ms），改用{}合成: \"{}\"", limiter.key,
+                            limiter.queueDepth(), limiter.predictWaitMs(priority), fallbackLimiter.key, text);
+                    route = fallback;
+                    limiter = fallbackLimiter;
+                }
+            }
+        }
+        return run(limiter, route, priority, executor, call);
+    }
+
+    /**
+     * 预计新请求在该配置上需要等待的时间（毫秒）
+     */
+    public long predictWaitMs(SysConfig config, String voiceName, boolean firstSentence) {
+        return limiter(primaryRoute(config, voiceName)).predictWaitMs(firstSentence ? PRIORITY_FIRST : PRIORITY_NORMAL);
+    }
+
+    /**
+     * 配置新增或修改后重新读取备用配置
+     */
+    public void invalidate(Integer configId) {
+        // 修改的配置可能是其他配置的备用配置，全部重新读取
+        fallbackConfigs.clear();
+    }
+
+    private Route primaryRoute(SysConfig config, String voiceName) {
+        TtsService service = ttsServiceFactory.getTtsService(config, voiceName);
+        if (service == null) {
+            return new Route(ttsServiceFactory.getDefaultTtsService(), null, voiceName, false);
+        }
+        return new Route(service, config, voiceName, false);
+    }
+
+    /**
+     * 为主配置指定的备用服务，未指定时返回null
+     */
+    private Route fallbackRoute(SysConfig config) {
+        if (config == null || config.getConfigId() == null) {
+            return null;
+        }
+        String prefix = PREFIX + "fallback." + config.getConfigId() + ".";
+        Integer fallbackId = environment.getProperty(prefix + "config-id", Integer.class);
+        String voiceName = environment.getProperty(prefix + "voice");
+        if (fallbackId == null || ObjectUtils.isEmpty(voiceName)) {
+            return null;
+        }
+        SysConfig fallbackConfig = null;
+        if (fallbackId != 0) {
+            fallbackConfig = fallbackConfigs.computeIfAbsent(config.getConfigId(),
+                    id -> Optional.ofNullable(configService.selectConfigById(fallbackId))).orElse(null);
+            if (fallbackConfig == null) {
+                logger.warn("配置ID: {} 的备用语音合成配置 {} 不存在", config.getConfigId(), fallbackId);
+                return null;
+            }
+        }
+        TtsService service = ttsServiceFactory.getTtsService(fallbackConfig, voiceName);
+        return service != null ? new Route(service, fallbackConfig, voiceName, true) : null;
+    }
+
+    private <T> CompletableFuture<T> run(Limiter limiter, Route route, int priority, Executor executor,
+            Call<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> acquired = limiter.acquire(priority);
+        // 调用方取消（如回复被打断）时退出排队，不再占用配额
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        acquired.whenComplete((granted, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            Runnable task = () -> {
+                // 获得配额后、开始合成前被取消，归还配额，不请求服务商
+                if (result.isDone()) {
+                    limiter.abandon();
+                    return;
+                }
+                long startTime = System.currentTimeMillis();
+                try {
+                    result.complete(call.apply(route));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    limiter.release(System.currentTimeMillis() - startTime);
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                limiter.abandon();
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private Limiter limiter(Route route) {
+        String provider = route.getService().getProviderName();
+        Integer configId = route.getConfig() != null ? route.getConfig().getConfigId() : null;
+        return limiters.computeIfAbsent(provider + ":" + configId, key -> {
+            Limiter limiter = new Limiter(key,
+                    property(provider, "qps", 5.0),
+                    property(provider, "burst", 0),
+                    property(provider, "concurrency", 4),
+                    property(provider, "max-queue", 8),
+                    property(provider, "max-wait-ms", 3000L),
+                    property(provider, "acquire-timeout-ms", 30000L));
+            if (meterRegistry != null) {
+                Gauge.builder("xiaozhi.tts.rate-limit.queue", limiter, Limiter::queueDepth)
+                        .tag("limiter", key)
+                        .description("等待语音合成配额的请求数")
+                        .register(meterRegistry);
+            }
+            logger.info("创建语音合成限流器 - {}, QPS: {}, 突发: {}, 并发: {}", key, limiter.qps, limiter.burst,
+                    limiter.maxConcurrent);
+            return limiter;
+        });
+    }
+
+    private <T> T property(String provider, String name, T defaultValue) {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) defaultValue.getClass();
+        T global = environment.getProperty(PREFIX + name, type, defaultValue);
+        if (provider == null || provider.isEmpty()) {
+            return global;
+        }
+        return environment.getProperty(PREFIX + provider.toLowerCase() + "." + name, type, global);
+    }
+
+    /**
+     * 单个配置的令牌桶和等待队列，状态由自身的锁保护
+     */
+    private class Limiter {
+        private final String key;
+        private final double qps;
+        private final int burst;
+        private final int maxConcurrent;
+        private final int maxQueue;
+        private final long maxWaitMs;
+        private final long acquireTimeoutMs;
+
+        private final TreeSet<Waiter> queue = new TreeSet<>(ORDER);
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private int running;
+        // 是否已定时在令牌恢复后分配配额
+        private boolean wakeScheduled;
+        // 单次合成耗时的滑动平均，用于估算并发占满时的等待
+        private double avgServiceMs = INITIAL_SERVICE_MS;
+
+        Limiter(String key, double qps, int burst, int maxConcurrent, int maxQueue, long maxWaitMs,
+                long acquireTimeoutMs) {
+            this.key = key;
+            this.qps = Math.max(0.01, qps);
+            this.burst = burst > 0 ? burst : Math.max(1, (int) Math.ceil(qps));
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.maxQueue = maxQueue;
+            this.maxWaitMs = maxWaitMs;
+            this.acquireTimeoutMs = acquireTimeoutMs;
+            this.tokens = this.burst;
+        }
+
+        synchronized int queueDepth() {
+            return queue.size();
+        }
+
+        synchronized boolean isOverloaded(int priority) {
+            return queue.size() >= maxQueue || predictWaitMs(priority) > maxWaitMs;
+        }
+
+        /**
+         * 预计以该优先级加入时的等待时间：取令牌恢复和并发释放两者中较长的一个
+         */
+        synchronized long predictWaitMs(int priority) {
+            refill();
+            int ahead = 0;
+            for (Waiter waiter : queue) {
+                if (waiter.priority <= priority) {
+                    ahead++;
+                }
+            }
+            double rateWait = Math.max(0, (ahead + 1 - tokens) / qps * 1000);
+            int busy = running + ahead + 1 - maxConcurrent;
+            double concurrencyWait = busy > 0 ? Math.ceil((double) busy / maxConcurrent) * avgServiceMs : 0;
+            return (long) Math.max(rateWait, concurrencyWait);
+        }
+
+        /**
+         * 以该优先级排队等待配额，获得配额时完成，超过acquire-timeout-ms时以TimeoutException结束；
+         * 取消返回的Future即退出排队
+         */
+        CompletableFuture<Void> acquire(int priority) {
+            Waiter self = new Waiter(priority, waiterSeq.incrementAndGet());
+            synchronized (this) {
+                queue.add(self);
+            }
+            dispatch();
+            if (!self.granted.isDone()) {
+                try {
+                    ScheduledFuture<?> timeout = timer.schedule(() -> expire(self), acquireTimeoutMs,
+                            TimeUnit.MILLISECONDS);
+                    self.granted.whenComplete((v, e) -> timeout.cancel(false));
+                } catch (RejectedExecutionException e) {
+                    expire(self);
+                }
+                self.granted.whenComplete((v, e) -> {
+                    if (self.granted.isCancelled()) {
+                        withdraw(self);
+                    }
+                });
+            }
+            return self.granted;
+        }
+
+        void release(long serviceMs) {
+            synchronized (this) {
+                running--;
+                avgServiceMs = avgServiceMs * 0.8 + serviceMs * 0.2;
+            }
+            dispatch();
+        }
+
+        /**
+         * 获得配额但没有发起合成（已取消或无法执行），归还并发名额和令牌
+         */
+        void abandon() {
+            synchronized (this) {
+                running--;
+                tokens = Math.min(burst, tokens + 1);
+            }
+            dispatch();
+        }
+
+        /**
+         * 按优先级把配额分给排队的请求；只差令牌时定时在令牌恢复后再分配
+         */
+        private void dispatch() {
+            List<Waiter> admitted = new ArrayList<>();
+            synchronized (this) {
+                refill();
+                while (!queue.isEmpty() && tokens >= 1 && running < maxConcurrent) {
+                    admitted.add(queue.pollFirst());
+                    tokens -= 1;
+                    running++;
+                }
+                if (!queue.isEmpty() && running < maxConcurrent && !wakeScheduled) {
+                    long waitMs = Math.max(1, (long) Math.ceil((1 - tokens) / qps * 1000));
+                    try {
+                        timer.schedule(this::wake, waitMs, TimeUnit.MILLISECONDS);
+                        wakeScheduled = true;
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("语音合成限流器已关闭 - {}", key);
+                    }
+                }
+            }
+            // 在锁外完成，后续的合成提交不阻塞其他请求；出队时恰好被取消的归还配额
+            for (Waiter waiter : admitted) {
+                if (!waiter.granted.complete(null)) {
+                    abandon();
+                }
+            }
+        }
+
+        private void wake() {
+            synchronized (this) {
+                wakeScheduled = false;
+            }
+            dispatch();
+        }
+
+        private void expire(Waiter waiter) {
+            boolean removed;
+            synchronized (this) {
+                removed = queue.remove(waiter);
+            }
+            if (removed) {
+                waiter.granted.completeExceptionally(new TimeoutException("等待语音合成配额超时 - " + key));
+            }
+        }
+
+        /**
+         * 取消的请求退出排队，不计入排队长度和预计等待
+         */
+        private void withdraw(Waiter waiter) {
+            synchronized (this) {
+                queue.remove(waiter);
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * qps);
+            lastRefill = now;
+        }
+    }
+
+    private static class Waiter {
+        private final int priority;
+        private final long seq;
+        // 获得配额时完成
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        Waiter(int priority, long seq) {
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.xiaozhi.websocket.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语音合成调度器
+ * 所有会话的句子进入同一个优先队列，按（预计播放时间, 句子序号）排序：每轮回复的首句预计立即播放，排在最前；
+ * 后续句子的预计播放时间为首句提交时间加上前面各句的预估时长，工作线程有空闲时就提前合成，
+ * 不必等前一句播放完。每个会话已合成未播放的音频达到buffered-audio-ms后暂停提前合成，等播放消耗后再继续。
+ * 异步提交的句子等待服务商配额或相同句子的合成结果时不占用工作线程，等到后再交回工作线程执行，且优先于尚未开始的句子。
+ * 合成可以并行完成，但结果按句子顺序交付
+ */
+@Service
+public class TtsScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(TtsScheduler.class);
+
+    // 合成线程数，即同时进行的语音合成请求数
+    @Value("${app.tts.scheduler.workers:4}")
+    private int workers;
+
+    // 每个会话提前合成的音频上限（毫秒）
+    @Value("${app.tts.scheduler.buffered-audio-ms:15000}")
+    private long bufferedAudioTargetMs;
+
+    // 估算句子时长时每个字的时长（毫秒）
+    @Value("${app.tts.scheduler.ms-per-char:250}")
+    private long msPerChar;
+
+    // 没有可调度的句子时的检查间隔（毫秒），缓冲的音频随播放减少后重新检查
+    private static final long IDLE_WAIT_MS = 100;
+
+    private static final Comparator<Job> ORDER = Comparator
+            .comparingLong((Job job) -> job.deadline)
+            .thenComparingInt(job -> job.index)
+            .thenComparingLong(job -> job.id);
+
+    private final Object lock = new Object();
+    private final TreeSet<Job> pending = new TreeSet<>(ORDER);
+    // 已开始的句子等到配额后交回的任务
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final Map<String, Reply> replies = new ConcurrentHashMap<>();
+    private final AtomicLong jobIds = new AtomicLong();
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * 合成任务
+     */
+    public interface Synthesis {
+        /**
+         * 合成一句
+         *
+         * @return 合成结果
+         */
+        AudioService.AudioProcessResult synthesize() throws Exception;
+    }
+
+    /**
+     * 异步合成任务
+     */
+    public interface AsyncSynthesis {
+        /**
+         * 开始合成一句，在工作线程中调用，需要等待时返回未完成的结果，不阻塞工作线程
+         *
+         * @param workers 工作线程，等待结束后的阻塞调用（如请求服务商）交给它执行
+         * @return 合成结果
+         */
+        CompletableFuture<AudioService.AudioProcessResult> start(Executor workers) throws Exception;
+    }
+
+    /**
+     * 合成结果交付，按句子顺序调用
+     */
+    public interface Delivery {
+        /**
+         * @param result 合成结果，失败时为null
+         * @param error  失败原因，成功时为null
+         */
+        void deliver(AudioService.AudioProcessResult result, Throwable error);
+
+        /**
+         * 回复被取消，该句不再交付
+         */
+        default void cancelled() {
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            Thread thread = new Thread(this::workLoop, "tts-scheduler-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        synchronized (lock) {
+            pending.clear();
+            tasks.clear();
+            lock.notifyAll();
+        }
+        threads.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 开始新一轮回复，上一轮尚未合成的句子不再合成
+     */
+    public void beginReply(String sessionId) {
+        Reply previous = replies.put(sessionId, new Reply());
+        if (previous != null) {
+            cancel(previous);
+        }
+    }
+
+    /**
+     * 提交一句待合成的文本，同一会话按提交顺序交付
+     *
+     * @param sessionId 会话ID
+     * @param text      句子文本，用于估算时长
+     * @param synthesis 合成任务
+     * @param delivery  结果交付
+     */
+    public void submit(String sessionId, String text, Synthesis synthesis, Delivery delivery) {
+        submitAsync(sessionId, text, workers -> CompletableFuture.completedFuture(synthesis.synthesize()), delivery);
+    }
+
+    /**
+     * 提交一句待合成的文本，合成中的等待不占用工作线程，同一会话按提交顺序交付
+     *
+     * @param sessionId 会话ID
+     * @param text      句子文本，用于估算时长
+     * @param synthesis 异步合成任务
+     * @param delivery  结果交付
+     */
+    public void submitAsync(String sessionId, String text, AsyncSynthesis synthesis, Delivery delivery) {
+        Reply reply = replies.computeIfAbsent(sessionId, id -> new Reply());
+        long estimatedMs = Math.max(1, text == null ? 0 : text.length()) * msPerChar;
+        synchronized (lock) {
+            if (!reply.cancelled) {
+                int index = reply.submitted++;
+                // 首句预计立即播放；后续句子在前面各句播完后播放
+                if (index == 0) {
+                    reply.startTime = System.currentTimeMillis();
+                }
+                long deadline = reply.startTime + reply.estimatedOffsetMs;
+                reply.estimatedOffsetMs += estimatedMs;
+                pending.add(new Job(jobIds.incrementAndGet(), reply, index, deadline, estimatedMs, synthesis,
+                        delivery));
+                lock.notifyAll();
+                return;
+            }
+        }
+        // 提交时回复已被取消
+        notifyCancelled(delivery);
+    }
+
+    /**
+     * 取消会话的回复：未合成的句子丢弃，正在合成的句子取消其合成结果（如退出配额排队）且不再交付，两者都会收到取消通知
+     */
+    public void cancelSession(String sessionId) {
+        Reply reply = replies.remove(sessionId);
+        if (reply != null) {
+            cancel(reply);
+        }
+    }
+
+    /**
+     * 等待合成的句子数
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void cancel(Reply reply) {
+        List<Delivery> dropped = new ArrayList<>();
+        List<CompletableFuture<?>> started;
+        synchronized (lock) {
+            reply.cancelled = true;
+            for (Iterator<Job> it = pending.iterator(); it.hasNext();) {
+                Job job = it.next();
+                if (job.reply == reply) {
+                    it.remove();
+                    dropped.add(job.delivery);
+                }
+            }
+            started = new ArrayList<>(reply.started);
+            reply.started.clear();
+            lock.notifyAll();
+        }
+        // 正在合成的句子，取消后由complete通知取消
+        started.forEach(future -> future.cancel(false));
+        // 已合成但因顺序尚未交付的结果
+        synchronized (reply) {
+            for (Outcome outcome : reply.completed.values()) {
+                dropped.add(outcome.delivery);
+            }
+            reply.completed.clear();
+        }
+        dropped.forEach(TtsScheduler::notifyCancelled);
+    }
+
+    private static void notifyCancelled(Delivery delivery) {
+        try {
+            delivery.cancelled();
+        } catch (Exception e) {
+            logger.error("通知合成取消失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把已开始的句子的后续步骤交给工作线程，优先于尚未开始的句子执行
+     */
+    private void execute(Runnable task) {
+        synchronized (lock) {
+            if (!running) {
+                throw new RejectedExecutionException("语音合成调度器已关闭");
+            }
+            tasks.addLast(task);
+            lock.notifyAll();
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("执行语音合成任务失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void start(Job job) {
+        CompletableFuture<AudioService.AudioProcessResult> future;
+        try {
+            future = job.synthesis.start(this::execute);
+        } catch (Throwable e) {
+            complete(job, null, null, e);
+            return;
+        }
+        boolean cancelled;
+        synchronized (lock) {
+            cancelled = job.reply.cancelled;
+            if (!cancelled) {
+                job.reply.started.add(future);
+            }
+        }
+        if (cancelled) {
+            future.cancel(false);
+        }
+        future.whenComplete((result, error) -> complete(job, future, result,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    /**
+     * 取出下一个任务：先执行已开始的句子交回的任务，再取优先级最高的可合成句子，缓冲的音频已达到上限的会话暂时跳过
+     * 缓冲量随播放减少，每轮回复开始时为0，首句不会被挡住
+     */
+    private Runnable take() throws InterruptedException {
+        synchronized (lock) {
+            while (running) {
+                Runnable task = tasks.pollFirst();
+                if (task != null) {
+                    return task;
+                }
+                long now = System.currentTimeMillis();
+                for (Iterator<Job> it = pending.iterator(); it.hasNext();) {
+                    Job job = it.next();
+                    Reply reply = job.reply;
+                    if (reply.bufferedMs(now) < bufferedAudioTargetMs) {
+                        it.remove();
+                        reply.inFlightMs += job.estimatedMs;
+                        return () -> start(job);
+                    }
+                }
+                lock.wait(IDLE_WAIT_MS);
+            }
+            throw new InterruptedException();
+        }
+    }
+
+    private void complete(Job job, CompletableFuture<AudioService.AudioProcessResult> future,
+            AudioService.AudioProcessResult result, Throwable error) {
+        Reply reply = job.reply;
+        synchronized (lock) {
+            reply.started.remove(future);
+            reply.inFlightMs -= job.estimatedMs;
+            if (result != null) {
+                reply.readyMs += result.getDurationMs();
+            }
+        }
+        // 交付在会话上串行，保证句子顺序
+        synchronized (reply) {
+            if (reply.cancelled) {
+                notifyCancelled(job.delivery);
+                return;
+            }
+            reply.completed.put(job.index, new Outcome(result, error, job.delivery));
+            Outcome outcome;
+            while ((outcome = reply.completed.remove(reply.nextToDeliver)) != null) {
+                synchronized (lock) {
+                    reply.nextToDeliver++;
+                    if (outcome.result != null) {
+                        long now = System.currentTimeMillis();
+                        reply.readyMs -= outcome.result.getDurationMs();
+                        reply.playbackEnd = Math.max(reply.playbackEnd, now) + outcome.result.getDurationMs();
+                    }
+                    lock.notifyAll();
+                }
+                try {
+                    outcome.delivery.deliver(outcome.result, outcome.error);
+                } catch (Exception e) {
+                    logger.error("交付合成结果失败: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一轮回复的调度状态，计数字段由lock保护
+     */
+    private static class Reply {
+        // 首句提交的时间，后续句子的预计播放时间以此为起点
+        private long startTime;
+        private int submitted;
+        private long estimatedOffsetMs;
+        private int nextToDeliver;
+        // 已交付播放的音频预计播完的时间
+        private long playbackEnd;
+        // 已合成但因顺序尚未交付的音频时长
+        private long readyMs;
+        // 正在合成的句子的预估时长
+        private long inFlightMs;
+        private volatile boolean cancelled;
+        // 正在合成的句子的结果，回复取消时一并取消
+        private final Set<CompletableFuture<?>> started = new HashSet<>();
+        private final Map<Integer, Outcome> completed = new HashMap<>();
+
+        long bufferedMs(long now) {
+            return Math.max(0, playbackEnd - now) + readyMs + inFlightMs;
+        }
+    }
+
+    private static class Job {
+        private final long id;
+        private final Reply reply;
+        private final int index;
+        private final long deadline;
+        private final long estimatedMs;
+        private final AsyncSynthesis synthesis;
+        private final Delivery delivery;
+
+        Job(long id, Reply reply, int index, long deadline, long estimatedMs, AsyncSynthesis synthesis,
+                Delivery delivery) {
+            this.id = id;
+            this.reply = reply;
+            this.index = index;
+            this.deadline = deadline;
+            this.estimatedMs = estimatedMs;
+            this.synthesis = synthesis;
+            this.delivery = delivery;
+        }
+    }
+
+    private static class Outcome {
+        private final AudioService.AudioProcessResult result;
+        private final Throwable error;
+        private final Delivery delivery;
+
+        Outcome(AudioService.AudioProcessResult result, Throwable error, Delivery delivery) {
+            this.result = result;
+            this.error = error;
+            this.delivery = delivery;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.xiaozhi.websocket.service;
 
 import com.xiaozhi.utils.OpusProcessor;
 import com.xiaozhi.utils.TarsosNoiseReducer;
+import com.xiaozhi.websocket.stt.PcmBuffer;
+import com.xiaozhi.websocket.stt.PcmBufferPool;
 import com.xiaozhi.websocket.vad.impl.SileroVadModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +17,7 @@ import javax.annotation.PreDestroy;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,6 +32,9 @@ public class VadService {
     @Autowired
     private ResourceLoader resourceLoader;
 
+    @Autowired
+    private PcmBufferPool pcmBufferPool;
+
     // 注入SileroVadModel
     @Autowired
     private SileroVadModel sileroVadModel;
@@ -55,6 +61,9 @@ public class VadService {
     // 噪声抑制器
     private TarsosNoiseReducer tarsosNoiseReducer;
 
+    // 单帧解码的最大样本数（16kHz下120ms）
+    private static final int MAX_FRAME_SAMPLES = 1920;
+
     // 会话状态管理
     private final ConcurrentHashMap<String, VadSessionState> sessionStates = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Object> sessionLocks = new ConcurrentHashMap<>();
@@ -93,7 +102,9 @@ public class VadService {
         private long lastSilenceTime = 0; // 添加最后一次检测到静音的时间
         private float averageEnergy = 0;
         private final List<Float> probabilities = new ArrayList<>();
-        private final LinkedList<byte[]> preBuffer = new LinkedList<>();
+        private final LinkedList<PcmBuffer> preBuffer = new LinkedList<>();
+        // 解码用的样本数组，处理过程持有会话锁，可复用
+        private final short[] decodeBuffer = new short[MAX_FRAME_SAMPLES];
         private int preBufferSize = 0; // 当前缓冲区大小（字节）
         private final int maxPreBufferSize; // 最大缓冲区大小（字节）
 
@@ -170,42 +181,36 @@ public class VadService {
         }
 
         /**
-         * 添加数据到预缓冲区
+         * 添加数据到预缓冲区，预缓冲区持有一次引用
          */
-        public void addToPreBuffer(byte[] data) {
+        public void addToPreBuffer(PcmBuffer data) {
             // 如果已经在说话，不需要添加到预缓冲区
             if (speaking) {
                 return;
             }
 
             // 添加到预缓冲区
-            preBuffer.add(data);
-            preBufferSize += data.length;
+            preBuffer.add(data.retain());
+            preBufferSize += data.length();
 
             // 如果超出最大缓冲区大小，移除最旧的数据
             while (preBufferSize > maxPreBufferSize && !preBuffer.isEmpty()) {
-                byte[] removed = preBuffer.removeFirst();
-                preBufferSize -= removed.length;
+                PcmBuffer removed = preBuffer.removeFirst();
+                preBufferSize -= removed.length();
+                removed.release();
             }
         }
 
         /**
          * 获取并清空预缓冲区数据
+         * 按原始分块返回，不再合并拷贝，引用随之转交给调用方，由调用方逐块送入识别流
          */
-        public byte[] drainPreBuffer() {
+        public List<PcmBuffer> drainPreBuffer() {
             if (preBuffer.isEmpty()) {
-                return new byte[0];
+                return Collections.emptyList();
             }
 
-            // 计算总大小并创建结果数组
-            byte[] result = new byte[preBufferSize];
-            int offset = 0;
-
-            // 复制所有缓冲区数据
-            for (byte[] chunk : preBuffer) {
-                System.arraycopy(chunk, 0, result, offset, chunk.length);
-                offset += chunk.length;
-            }
+            List<PcmBuffer> result = new ArrayList<>(preBuffer);
 
             // 清空缓冲区
             preBuffer.clear();
@@ -223,6 +228,7 @@ public class VadService {
             lastSilenceTime = 0;
             averageEnergy = 0;
             probabilities.clear();
+            preBuffer.forEach(PcmBuffer::release);
             preBuffer.clear();
             preBufferSize = 0;
         }
@@ -255,18 +261,21 @@ public class VadService {
 
     /**
      * 处理音频数据
+     * 返回的音频块（处理后的数据和预缓冲数据）各带一次引用，由调用方送入识别流或释放
      */
     public VadResult processAudio(String sessionId, byte[] opusData) {
         Object lock = getSessionLock(sessionId);
 
         synchronized (lock) {
+            PcmBuffer pcmData = null;
+            PcmBuffer processedPcm = null;
             try {
                 // 确保会话状态已初始化
                 VadSessionState state = sessionStates.computeIfAbsent(sessionId, k -> new VadSessionState());
 
-                // 解码Opus数据为PCM
-                byte[] pcmData = opusDecoder.decodeOpusFrameToPcm(opusData);
-                if (pcmData == null || pcmData.length == 0) {
+                // 解码Opus数据为PCM，写入缓冲池中的音频块
+                pcmData = decodePcm(sessionId, state, opusData);
+                if (pcmData == null) {
                     return new VadResult(VadStatus.NO_SPEECH, null);
                 }
 
@@ -274,10 +283,10 @@ public class VadService {
                 state.addToPreBuffer(pcmData);
 
                 // 应用噪声抑制
-                byte[] processedPcm = applyNoiseReduction(sessionId, pcmData);
+                processedPcm = applyNoiseReduction(sessionId, pcmData);
 
                 // 计算音频能量
-                float[] samples = convertBytesToFloats(processedPcm);
+                float[] samples = convertBytesToFloats(processedPcm.array(), processedPcm.length());
                 float currentEnergy = calculateEnergy(samples);
                 state.updateAverageEnergy(currentEnergy);
 
@@ -293,26 +302,20 @@ public class VadService {
                 // 更新静音状态
                 state.updateSilenceState(isSilence);
 
+                VadStatus status;
+                List<PcmBuffer> preBufferData = Collections.emptyList();
                 if (!state.isSpeaking() && isSpeech) {
                     // 检测到语音开始
                     state.setSpeaking(true);
                     logger.info("检测到语音开始 - SessionId: {}, 概率: {}, 能量: {}", sessionId, speechProb, currentEnergy);
 
-                    // 获取预缓冲区数据
-                    byte[] preBufferData = state.drainPreBuffer();
-
-                    // 合并预缓冲区数据和当前数据
-                    byte[] combinedData;
-                    if (preBufferData.length > 0) {
-                        combinedData = new byte[preBufferData.length + processedPcm.length];
-                        System.arraycopy(preBufferData, 0, combinedData, 0, preBufferData.length);
-                        System.arraycopy(processedPcm, 0, combinedData, preBufferData.length, processedPcm.length);
-                        logger.debug("添加了{}字节的预缓冲音频 (约{}ms)", preBufferData.length, preBufferData.length / 32);
-                    } else {
-                        combinedData = processedPcm;
+                    // 获取预缓冲区数据，与当前数据一起按块返回
+                    preBufferData = state.drainPreBuffer();
+                    if (!preBufferData.isEmpty()) {
+                        int preBufferBytes = preBufferData.stream().mapToInt(PcmBuffer::length).sum();
+                        logger.debug("添加了{}字节的预缓冲音频 (约{}ms)", preBufferBytes, preBufferBytes / 32);
                     }
-
-                    return new VadResult(VadStatus.SPEECH_START, combinedData);
+                    status = VadStatus.SPEECH_START;
                 } else if (state.isSpeaking() && isSilence) {
                     // 检查静音持续时间
                     int silenceDuration = state.getSilenceDuration();
@@ -320,25 +323,59 @@ public class VadService {
                         // 检测到语音结束
                         state.setSpeaking(false);
                         logger.info("检测到语音结束 - SessionId: {}, 静音持续: {}ms", sessionId, silenceDuration);
-                        return new VadResult(VadStatus.SPEECH_END, processedPcm);
+                        status = VadStatus.SPEECH_END;
                     } else {
                         // 静音但未达到结束阈值，仍然视为语音继续
-                        return new VadResult(VadStatus.SPEECH_CONTINUE, processedPcm);
+                        status = VadStatus.SPEECH_CONTINUE;
                     }
                 } else if (state.isSpeaking()) {
                     // 语音继续
-                    return new VadResult(VadStatus.SPEECH_CONTINUE, processedPcm);
+                    status = VadStatus.SPEECH_CONTINUE;
                 } else {
                     // 没有检测到语音
                     return new VadResult(VadStatus.NO_SPEECH, null);
                 }
+
+                // 处理后数据的引用转交给调用方
+                VadResult result = new VadResult(status, processedPcm, preBufferData);
+                processedPcm = null;
+                return result;
             } catch (Exception e) {
                 logger.error("处理音频数据失败 - SessionId: {}", sessionId, e);
                 return new VadResult(VadStatus.ERROR, null);
+            } finally {
+                // 未交给调用方的引用在这里释放
+                if (processedPcm != null) {
+                    processedPcm.release();
+                }
+                if (pcmData != null) {
+                    pcmData.release();
+                }
             }
         }
     }
 
+    /**
+     * 解码Opus帧，PCM数据写入缓冲池中的音频块
+     *
+     * @return 音频块，没有解码出数据时返回null
+     */
+    private PcmBuffer decodePcm(String sessionId, VadSessionState state, byte[] opusData) throws Exception {
+        short[] samples = state.decodeBuffer;
+        // 在会话锁内调用，同一会话的帧按顺序使用会话的解码器
+        int count = opusDecoder.decodeOpusFrame(sessionId, opusData, samples);
+        if (count <= 0) {
+            return null;
+        }
+        PcmBuffer buffer = pcmBufferPool.acquire(count * 2);
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < count; i++) {
+            bytes[i * 2] = (byte) (samples[i] & 0xFF);
+            bytes[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
+        }
+        return buffer;
+    }
+
     /**
      * 运行VAD模型推断
      */
@@ -391,15 +428,15 @@ public class VadService {
     }
 
     /**
-     * 将PCM字节数组转换为浮点数组
+     * 将PCM字节数组的前length个字节转换为浮点数组
      */
-    private float[] convertBytesToFloats(byte[] pcmData) {
+    private float[] convertBytesToFloats(byte[] pcmData, int length) {
         // 16位PCM，每个样本2个字节
-        int sampleCount = pcmData.length / 2;
+        int sampleCount = length / 2;
         float[] samples = new float[sampleCount];
 
         // 将字节转换为16位整数，然后归一化到[-1, 1]
-        ByteBuffer buffer = ByteBuffer.wrap(pcmData).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer buffer = ByteBuffer.wrap(pcmData, 0, length).order(ByteOrder.LITTLE_ENDIAN);
         for (int i = 0; i < sampleCount; i++) {
             short sample = buffer.getShort();
             samples[i] = sample / 32768.0f; // 归一化
@@ -410,12 +447,14 @@ public class VadService {
 
     /**
      * 应用噪声抑制
+     * 返回的音频块带一次新的引用：未启用降噪时即为原音频块
      */
-    private byte[] applyNoiseReduction(String sessionId, byte[] pcmData) {
+    private PcmBuffer applyNoiseReduction(String sessionId, PcmBuffer pcmData) {
         if (tarsosNoiseReducer != null && enableNoiseReduction) {
-            return tarsosNoiseReducer.processAudio(sessionId, pcmData);
+            // 缓冲池中的数组与数据等长，降噪只读取输入
+            return PcmBuffer.wrap(tarsosNoiseReducer.processAudio(sessionId, pcmData.array()));
         }
-        return pcmData;
+        return pcmData.retain();
     }
 
     /**
@@ -534,21 +573,48 @@ public class VadService {
      */
     public static class VadResult {
         private final VadStatus status;
-        private final byte[] processedData;
+        private final PcmBuffer processedData;
+        private final List<PcmBuffer> preBufferData;
+
+        public VadResult(VadStatus status, PcmBuffer processedData) {
+            this(status, processedData, Collections.emptyList());
+        }
 
-        public VadResult(VadStatus status, byte[] processedData) {
+        public VadResult(VadStatus status, PcmBuffer processedData, List<PcmBuffer> preBufferData) {
             this.status = status;
             this.processedData = processedData;
+            this.preBufferData = preBufferData;
         }
 
         public VadStatus getStatus() {
             return status;
         }
 
-        public byte[] getProcessedData() {
+        /**
+         * 处理后的音频块，带一次引用，使用方负责释放
+         */
+        public PcmBuffer getProcessedData() {
             return processedData;
         }
 
+        /**
+         * 语音开始前的预缓冲音频块（仅SPEECH_START时有值），应在processedData之前送入识别，
+         * 每块带一次引用，使用方负责释放
+         */
+        public List<PcmBuffer> getPreBufferData() {
+            return preBufferData;
+        }
+
+        /**
+         * 释放结果中所有音频块的引用，结果中的音频块都不使用时调用
+         */
+        public void release() {
+            if (processedData != null) {
+                processedData.release();
+            }
+            preBufferData.forEach(PcmBuffer::release);
+        }
+
         public boolean isSpeechActive() {
             return status == VadStatus.SPEECH_START || status == VadStatus.SPEECH_CONTINUE;
         }
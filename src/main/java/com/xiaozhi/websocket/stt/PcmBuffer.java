@@ -0,0 +1,140 @@
+package com.xiaozhi.websocket.stt;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 引用计数的PCM音频块（16kHz, 16bit, 单声道）
+ * 数据存放在底层数组的[0, length)区间，持有方用完后必须调用{@link #release()}，
+ * 需要交给多个消费者时先调用{@link #retain()}。
+ * 音频块发布后内容只读，所有持有方共享同一个数组；来自{@link PcmBufferPool}的音频块
+ * 引用计数归零时数组回收到池中，被{@link #detach()}交出的数组不再回收
+ */
+public final class PcmBuffer {
+
+    private volatile byte[] array;
+    private final int length;
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    // 所属的缓冲池，为空时不回收
+    private final PcmBufferPool pool;
+
+    // 底层数组已交给外部，不能再回收
+    private volatile boolean escaped;
+
+    private PcmBuffer(byte[] array, int length, PcmBufferPool pool) {
+        this.array = array;
+        this.length = length;
+        this.pool = pool;
+    }
+
+    /**
+     * 包装字节数组，不做拷贝，调用方此后不应再修改该数组
+     */
+    public static PcmBuffer wrap(byte[] data) {
+        return new PcmBuffer(data, data.length, null);
+    }
+
+    /**
+     * 包装字节数组的前length个字节，不做拷贝
+     */
+    public static PcmBuffer wrap(byte[] data, int length) {
+        if (length < 0 || length > data.length) {
+            throw new IllegalArgumentException("无效的PCM数据长度: " + length);
+        }
+        return new PcmBuffer(data, length, null);
+    }
+
+    /**
+     * 由缓冲池创建，引用计数归零时数组回收到池中
+     */
+    static PcmBuffer pooled(PcmBufferPool pool, byte[] data) {
+        return new PcmBuffer(data, data.length, pool);
+    }
+
+    /**
+     * 底层数组，有效数据为[0, length())
+     */
+    public byte[] array() {
+        byte[] data = array;
+        if (data == null) {
+            throw new IllegalStateException("PCM缓冲区已释放");
+        }
+        return data;
+    }
+
+    /**
+     * 有效数据长度（字节）
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 当前引用计数
+     */
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    /**
+     * 增加一次引用
+     */
+    public PcmBuffer retain() {
+        int count;
+        do {
+            count = refCnt.get();
+            if (count <= 0) {
+                throw new IllegalStateException("PCM缓冲区已释放");
+            }
+        } while (!refCnt.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * 释放一次引用，引用计数归零时释放底层数组，来自缓冲池且未被交出的数组回收到池中
+     *
+     * @return 是否已完全释放
+     */
+    public boolean release() {
+        int count = refCnt.decrementAndGet();
+        if (count < 0) {
+            refCnt.incrementAndGet();
+            throw new IllegalStateException("PCM缓冲区重复释放");
+        }
+        if (count == 0) {
+            byte[] data = array;
+            array = null;
+            if (pool != null && !escaped && data != null) {
+                pool.recycle(data);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 拷贝有效数据
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(array(), length);
+    }
+
+    /**
+     * 取出有效数据并释放当前引用
+     * 内容只读，数组恰好等长时直接交出底层数组（即使还有其他持有方），该数组此后不再回收到缓冲池；
+     * 只有数组长于有效数据时才拷贝一次
+     */
+    public byte[] detach() {
+        byte[] data = array();
+        byte[] result;
+        if (data.length == length) {
+            escaped = true;
+            result = data;
+        } else {
+            result = Arrays.copyOf(data, length);
+        }
+        release();
+        return result;
+    }
+}
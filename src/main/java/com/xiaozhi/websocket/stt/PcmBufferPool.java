@@ -0,0 +1,82 @@
+package com.xiaozhi.websocket.stt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PCM音频块缓冲池
+ * 按数组长度分别缓存空闲数组，设备上行的Opus帧时长固定，解码后的PCM长度只有少数几种。
+ * 音频块引用计数归零时数组回到池中；每种长度最多缓存max-per-size个，超出的交给GC。
+ * 未释放或被交出的数组不会回到池中，只是少了一次复用
+ */
+@Component
+public class PcmBufferPool {
+
+    private final int maxPerSize;
+
+    private final Map<Integer, BlockingQueue<byte[]>> free = new ConcurrentHashMap<>();
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public PcmBufferPool(@Value("${app.stt.pcm-pool.max-per-size:256}") int maxPerSize) {
+        this.maxPerSize = Math.max(0, maxPerSize);
+    }
+
+    /**
+     * 取一个指定长度的音频块，内容未初始化，由调用方写满后再发布
+     *
+     * @param length 长度（字节）
+     */
+    public PcmBuffer acquire(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("无效的PCM数据长度: " + length);
+        }
+        BlockingQueue<byte[]> queue = free.get(length);
+        byte[] array = queue != null ? queue.poll() : null;
+        if (array != null) {
+            reused.incrementAndGet();
+        } else {
+            array = new byte[length];
+            allocated.incrementAndGet();
+        }
+        return PcmBuffer.pooled(this, array);
+    }
+
+    /**
+     * 回收数组，池已满时丢弃
+     */
+    void recycle(byte[] array) {
+        if (maxPerSize == 0) {
+            return;
+        }
+        free.computeIfAbsent(array.length, k -> new ArrayBlockingQueue<>(maxPerSize)).offer(array);
+    }
+
+    /**
+     * 当前缓存的空闲数组数
+     */
+    public int getFreeCount() {
+        return free.values().stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * 新分配的数组数
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * 复用的数组数
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+}
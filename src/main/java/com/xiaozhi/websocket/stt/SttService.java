@@ -28,6 +28,19 @@ public interface SttService {
    */
   Flux<String> streamRecognition(Flux<byte[]> audioStream);
 
+  /**
+   * 流式处理引用计数的PCM音频块
+   * 实现方负责在使用完每个音频块后调用{@link PcmBuffer#release()}，音频块内容只读。
+   * 默认实现通过{@link PcmBuffer#detach()}把底层数组转交给{@link #streamRecognition(Flux)}，
+   * 数组等长时不产生拷贝，因此streamRecognition的实现不得修改收到的数组
+   * 
+   * @param pcmStream PCM音频块流
+   * @return 识别的文本结果流
+   */
+  default Flux<String> streamRecognitionPcm(Flux<PcmBuffer> pcmStream) {
+    return streamRecognition(pcmStream.map(PcmBuffer::detach));
+  }
+
   /**
    * 检查服务是否支持流式处理
    * 
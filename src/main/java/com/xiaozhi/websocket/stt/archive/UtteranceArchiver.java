@@ -0,0 +1,464 @@
+package com.xiaozhi.websocket.stt.archive;
+
+import com.xiaozhi.websocket.stt.PcmBuffer;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语音片段归档服务
+ * 识别线程只负责把PCM数据放入队列，由单个写线程追加到按天划分的段文件（yyyyMMdd.pcm），
+ * 流式识别的音频块只增加引用暂存，写线程直接从音频块写入后释放，识别路径上没有拷贝和IO；
+ * 同时在索引文件（yyyyMMdd.idx）中记录每段语音的偏移和长度，并按批次刷盘；
+ * 跨天后的段文件由低优先级线程压缩为Opus/Ogg，压缩成功后删除原始PCM
+ */
+@Component
+public class UtteranceArchiver {
+    private static final Logger logger = LoggerFactory.getLogger(UtteranceArchiver.class);
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String PCM_SUFFIX = ".pcm";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String OGG_SUFFIX = ".ogg";
+
+    // 音频参数（16kHz, 16bit, 单声道）
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNELS = 1;
+    private static final int BYTES_PER_MS = 32;
+
+    // 是否启用归档
+    @Value("${app.stt.archive.enabled:false}")
+    private boolean enabled;
+
+    // 归档目录
+    @Value("${app.stt.archive.path:audio/archive/}")
+    private String archivePath;
+
+    // 待写入队列容量，队列满时丢弃新的片段
+    @Value("${app.stt.archive.queue-capacity:256}")
+    private int queueCapacity;
+
+    // 累计写入多少字节后刷盘
+    @Value("${app.stt.archive.fsync-bytes:1048576}")
+    private long fsyncBytes;
+
+    // 最长多久刷盘一次（毫秒）
+    @Value("${app.stt.archive.fsync-interval-ms:1000}")
+    private long fsyncIntervalMs;
+
+    // 是否将历史段文件压缩为Opus/Ogg
+    @Value("${app.stt.archive.compress:true}")
+    private boolean compress;
+
+    // Opus编码比特率
+    @Value("${app.stt.archive.opus-bitrate:24000}")
+    private int opusBitrate;
+
+    private BlockingQueue<Utterance> queue;
+    private Thread writerThread;
+    private ExecutorService compressExecutor;
+    private volatile boolean running = false;
+
+    // 当前段文件
+    private LocalDate segmentDay;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private long unsyncedBytes = 0;
+    private long lastSyncTime = 0;
+
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(Paths.get(archivePath));
+        } catch (IOException e) {
+            logger.error("创建语音归档目录失败，归档功能已禁用: {}", archivePath, e);
+            enabled = false;
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+
+        writerThread = new Thread(this::writeLoop, "utterance-archive-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        if (compress) {
+            compressExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread thread = new Thread(r, "utterance-archive-compressor");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+            // 压缩上次运行遗留的历史段文件
+            compressPendingSegments();
+        }
+
+        logger.info("语音归档服务已启动 - 目录: {}, 压缩: {}", archivePath, compress);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!running) {
+            return;
+        }
+        // 不中断写线程（FileChannel被中断会直接关闭），等待其写完队列中的数据后自行退出
+        running = false;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (compressExecutor != null) {
+            compressExecutor.shutdownNow();
+        }
+        logger.info("语音归档服务已关闭 - 已归档: {}, 已丢弃: {}", archivedCount.get(), droppedCount.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交一段语音进行归档，不阻塞调用线程
+     *
+     * @param source 来源标识（如STT服务名称）
+     * @param pcm    PCM数据，提交后调用方不应再修改
+     */
+    public void archive(String source, byte[] pcm) {
+        if (!running || pcm == null || pcm.length == 0) {
+            return;
+        }
+        submit(source, Collections.singletonList(PcmBuffer.wrap(pcm)));
+    }
+
+    /**
+     * 在流式识别的音频流上挂接归档，未启用时原样返回
+     * 每个音频块在交给下游前增加一次引用暂存，流正常结束后整段提交给写线程；
+     * 流出错或被取消时不归档，直接释放暂存的引用
+     *
+     * @param source    来源标识（如STT服务名称）
+     * @param pcmStream 识别使用的音频块流
+     */
+    public Flux<PcmBuffer> tap(String source, Flux<PcmBuffer> pcmStream) {
+        if (!running) {
+            return pcmStream;
+        }
+        return Flux.defer(() -> {
+            List<PcmBuffer> chunks = new ArrayList<>();
+            return pcmStream
+                    .doOnNext(chunk -> {
+                        synchronized (chunks) {
+                            chunks.add(chunk.retain());
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        synchronized (chunks) {
+                            submit(source, new ArrayList<>(chunks));
+                            chunks.clear();
+                        }
+                    })
+                    .doFinally(signal -> {
+                        synchronized (chunks) {
+                            chunks.forEach(PcmBuffer::release);
+                            chunks.clear();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 放入写入队列，队列满时丢弃并释放音频块
+     */
+    private void submit(String source, List<PcmBuffer> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        if (!running || !queue.offer(new Utterance(source, chunks, System.currentTimeMillis()))) {
+            chunks.forEach(PcmBuffer::release);
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped % 100 == 1) {
+                logger.warn("语音归档队列已满，丢弃片段 - 累计丢弃: {}", dropped);
+            }
+        }
+    }
+
+    public long getArchivedCount() {
+        return archivedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void writeLoop() {
+        List<Utterance> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Utterance first = queue.poll(fsyncIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    for (Utterance utterance : batch) {
+                        try {
+                            write(utterance);
+                        } catch (IOException e) {
+                            logger.error("写入语音归档失败 - 来源: {}", utterance.source, e);
+                        } finally {
+                            utterance.release();
+                        }
+                    }
+                    batch.clear();
+                }
+                syncIfNeeded(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("写入语音归档失败", e);
+                batch.clear();
+            }
+        }
+        closeSegment();
+    }
+
+    private void write(Utterance utterance) throws IOException {
+        LocalDate day = LocalDate.now();
+        if (!day.equals(segmentDay)) {
+            rollSegment(day);
+        }
+
+        // 各音频块直接聚集写入，不合并拷贝
+        long offset = segmentChannel.size();
+        ByteBuffer[] data = new ByteBuffer[utterance.chunks.size()];
+        long length = 0;
+        for (int i = 0; i < data.length; i++) {
+            PcmBuffer chunk = utterance.chunks.get(i);
+            data[i] = ByteBuffer.wrap(chunk.array(), 0, chunk.length());
+            length += chunk.length();
+        }
+        long written = 0;
+        while (written < length) {
+            written += segmentChannel.write(data);
+        }
+
+        // 索引：偏移、长度、时间戳、来源
+        String line = offset + "\t" + length + "\t" + utterance.timestamp + "\t" + utterance.source
+                + "\n";
+        ByteBuffer index = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (index.hasRemaining()) {
+            indexChannel.write(index);
+        }
+
+        unsyncedBytes += length;
+        archivedCount.incrementAndGet();
+        syncIfNeeded(false);
+    }
+
+    /**
+     * 达到字节数或时间阈值时刷盘
+     */
+    private void syncIfNeeded(boolean force) {
+        if (segmentChannel == null || unsyncedBytes == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && unsyncedBytes < fsyncBytes && now - lastSyncTime < fsyncIntervalMs) {
+            return;
+        }
+        try {
+            segmentChannel.force(false);
+            indexChannel.force(false);
+        } catch (IOException e) {
+            logger.error("语音归档刷盘失败", e);
+        }
+        unsyncedBytes = 0;
+        lastSyncTime = now;
+    }
+
+    /**
+     * 切换到新的一天的段文件，旧段文件提交压缩
+     */
+    private void rollSegment(LocalDate day) throws IOException {
+        LocalDate previousDay = segmentDay;
+        closeSegment();
+
+        String name = day.format(DAY_FORMAT);
+        segmentChannel = FileChannel.open(Paths.get(archivePath, name + PCM_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexChannel = FileChannel.open(Paths.get(archivePath, name + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentDay = day;
+        lastSyncTime = System.currentTimeMillis();
+
+        if (previousDay != null) {
+            submitCompression(Paths.get(archivePath, previousDay.format(DAY_FORMAT) + PCM_SUFFIX));
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentChannel == null) {
+            return;
+        }
+        syncIfNeeded(true);
+        try {
+            segmentChannel.close();
+            indexChannel.close();
+        } catch (IOException e) {
+            logger.error("关闭语音归档文件失败", e);
+        }
+        segmentChannel = null;
+        indexChannel = null;
+        segmentDay = null;
+    }
+
+    /**
+     * 提交历史段文件（非当天）进行压缩
+     */
+    private void compressPendingSegments() {
+        String today = LocalDate.now().format(DAY_FORMAT);
+        File[] files = new File(archivePath).listFiles((dir, name) -> name.endsWith(PCM_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().startsWith(today)) {
+                submitCompression(file.toPath());
+            }
+        }
+    }
+
+    private void submitCompression(Path pcmFile) {
+        if (compressExecutor == null) {
+            return;
+        }
+        compressExecutor.execute(() -> {
+            try {
+                compressSegment(pcmFile);
+            } catch (Exception e) {
+                logger.error("压缩语音归档失败: {}", pcmFile, e);
+            }
+        });
+    }
+
+    /**
+     * 将PCM段文件压缩为Opus/Ogg
+     * 片段在段文件中首尾相接，索引中的字节偏移除以每毫秒字节数即为在Ogg中的时间位置，因此索引无需改写
+     */
+    private void compressSegment(Path pcmFile) throws Exception {
+        if (!Files.exists(pcmFile)) {
+            return;
+        }
+        String fileName = pcmFile.getFileName().toString();
+        Path oggFile = pcmFile.resolveSibling(fileName.substring(0, fileName.length() - PCM_SUFFIX.length())
+                + OGG_SUFFIX);
+        Path tmpFile = oggFile.resolveSibling(oggFile.getFileName() + ".tmp");
+
+        long startTime = System.currentTimeMillis();
+        long pcmSize = Files.size(pcmFile);
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(tmpFile.toString(), CHANNELS);
+        recorder.setFormat("ogg");
+        recorder.setAudioCodec(avcodec.AV_CODEC_ID_OPUS);
+        recorder.setSampleRate(SAMPLE_RATE);
+        recorder.setAudioChannels(CHANNELS);
+        recorder.setAudioBitrate(opusBitrate);
+        recorder.setSampleFormat(avutil.AV_SAMPLE_FMT_S16);
+
+        try (FileChannel channel = FileChannel.open(pcmFile, StandardOpenOption.READ)) {
+            recorder.start();
+            // 每次读取1秒的音频
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_RATE * 2).order(ByteOrder.LITTLE_ENDIAN);
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                int samples = buffer.remaining() / 2;
+                if (samples == 0) {
+                    break;
+                }
+                short[] pcm = new short[samples];
+                buffer.asShortBuffer().get(pcm);
+                buffer.position(samples * 2);
+                buffer.compact();
+
+                Frame frame = new Frame();
+                frame.sampleRate = SAMPLE_RATE;
+                frame.audioChannels = CHANNELS;
+                frame.samples = new Buffer[] { ShortBuffer.wrap(pcm) };
+                recorder.record(frame);
+            }
+            recorder.stop();
+        } finally {
+            recorder.release();
+        }
+
+        Files.move(tmpFile, oggFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(pcmFile);
+        logger.info("语音归档压缩完成 - 文件: {}, 时长: {}s, 原始大小: {}KB, 压缩后: {}KB, 耗时: {}ms",
+                oggFile.getFileName(), pcmSize / BYTES_PER_MS / 1000, pcmSize / 1024, Files.size(oggFile) / 1024,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 待归档的语音片段
+     */
+    private static class Utterance {
+        private final String source;
+        // 按顺序排列的音频块，各持有一次引用
+        private final List<PcmBuffer> chunks;
+        private final long timestamp;
+
+        Utterance(String source, List<PcmBuffer> chunks, long timestamp) {
+            this.source = source;
+            this.chunks = chunks;
+            this.timestamp = timestamp;
+        }
+
+        void release() {
+            chunks.forEach(PcmBuffer::release);
+        }
+    }
+}
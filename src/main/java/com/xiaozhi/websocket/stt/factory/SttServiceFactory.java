@@ -1,19 +1,31 @@
 package com.xiaozhi.websocket.stt.factory;
 
 import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.service.SysConfigService;
 import com.xiaozhi.websocket.stt.SttService;
+import com.xiaozhi.websocket.stt.archive.UtteranceArchiver;
 import com.xiaozhi.websocket.stt.providers.AliyunSttService;
 import com.xiaozhi.websocket.stt.providers.TencentSttService;
+import com.xiaozhi.websocket.stt.providers.VoskModelRegistry;
 import com.xiaozhi.websocket.stt.providers.VoskSttService;
+import com.xiaozhi.websocket.stt.routing.RoutingSttService;
+import com.xiaozhi.websocket.stt.routing.SttProviderHealth;
 import com.xiaozhi.websocket.token.TokenManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Component
 public class SttServiceFactory {
@@ -35,6 +47,57 @@ public class SttServiceFactory {
     // 注入TokenManager
     @Autowired
     private TokenManager tokenManager;
+
+    @Autowired
+    private SysConfigService configService;
+
+    @Autowired
+    private VoskModelRegistry voskModelRegistry;
+
+    @Autowired
+    private UtteranceArchiver utteranceArchiver;
+
+  // 启动时是否预加载默认Vosk模型
+  @Value("${app.stt.vosk.preload-default:true}")
+  private boolean preloadDefaultVosk;
+
+  // 是否启用STT路由（故障切换和对冲请求）
+  @Value("${app.stt.routing.enabled:true}")
+  private boolean routingEnabled;
+
+  // 备用服务提供商顺序，主服务不可用时依次尝试
+  @Value("${app.stt.routing.fallback-providers:tencent,aliyun,vosk}")
+  private String[] fallbackProviders;
+
+  // 健康度统计窗口：最近N次请求
+  @Value("${app.stt.routing.window-size:50}")
+  private int windowSize;
+
+  // 健康度统计窗口：时长（毫秒）
+  @Value("${app.stt.routing.window-ms:300000}")
+  private long windowMs;
+
+  // 样本数少于该值时视为健康
+  @Value("${app.stt.routing.min-samples:5}")
+  private int minSamples;
+
+  // 成功率低于该值时视为不健康
+  @Value("${app.stt.routing.min-success-rate:0.8}")
+  private double minSuccessRate;
+
+  // p95出最终结果耗时高于该值（毫秒）时视为不健康
+  @Value("${app.stt.routing.max-p95-ms:3000}")
+  private long maxP95Ms;
+
+  // 音频结束后多久未出结果则发起对冲请求（毫秒），小于等于0时关闭
+  @Value("${app.stt.routing.hedge-delay-ms:1500}")
+  private long hedgeDelayMs;
+
+  // 各服务的健康度统计，键与serviceCache一致
+  private final Map<String, SttProviderHealth> healthStats = new ConcurrentHashMap<>();
+
+  // 备用服务配置缓存，键为"provider:userId"
+  private final Map<String, Optional<SysConfig>> fallbackConfigCache = new ConcurrentHashMap<>();
     /**
    * 应用启动时自动初始化Vosk服务
      */
@@ -57,8 +120,11 @@ public class SttServiceFactory {
         }
 
     try {
-      VoskSttService voskService = new VoskSttService();
+      VoskSttService voskService = new VoskSttService(voskModelRegistry, null, utteranceArchiver);
       voskService.initialize();
+      if (preloadDefaultVosk) {
+        voskService.preload();
+      }
       serviceCache.put(DEFAULT_PROVIDER, voskService);
       voskInitialized = true;
       logger.info("Vosk STT服务初始化成功");
@@ -99,14 +165,165 @@ public class SttServiceFactory {
 
   /**
    * 根据配置获取STT服务
+   * 启用路由时返回带故障切换和对冲请求的服务，主服务不可用时依次使用备用服务
    */
   public SttService getSttService(SysConfig config) {
+    if (!routingEnabled) {
+      return getProviderService(config);
+    }
+
+    List<RoutingSttService.Candidate> candidates = buildCandidates(config);
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    return new RoutingSttService(candidates, hedgeDelayMs);
+  }
+
+  /**
+   * 构建候选服务列表：主服务在前，备用服务按配置顺序在后，不健康的服务排到最后
+   */
+  private List<RoutingSttService.Candidate> buildCandidates(SysConfig config) {
+    List<RoutingSttService.Candidate> chain = new ArrayList<>();
+    Set<String> keys = new HashSet<>();
+
+    addCandidate(chain, keys, config);
+
+    for (String provider : fallbackProviders) {
+      provider = provider.trim();
+      if (DEFAULT_PROVIDER.equals(provider)) {
+        addCandidate(chain, keys, new SysConfig().setProvider(DEFAULT_PROVIDER));
+      } else {
+        SysConfig fallbackConfig = findFallbackConfig(provider, config);
+        if (fallbackConfig != null) {
+          addCandidate(chain, keys, fallbackConfig);
+        }
+      }
+    }
+
+    // 健康的服务保持原有顺序，不健康的服务仅作为最后的选择
+    List<RoutingSttService.Candidate> healthy = new ArrayList<>();
+    List<RoutingSttService.Candidate> degraded = new ArrayList<>();
+    for (RoutingSttService.Candidate candidate : chain) {
+      if (isHealthy(candidate.getHealth())) {
+        healthy.add(candidate);
+      } else {
+        degraded.add(candidate);
+      }
+    }
+    if (!degraded.isEmpty()) {
+      logger.debug("以下STT服务当前不健康，将降低优先级: {}", degraded.stream()
+          .map(RoutingSttService.Candidate::getKey).collect(Collectors.joining(", ")));
+    }
+    healthy.addAll(degraded);
+    return healthy;
+  }
+
+  private void addCandidate(List<RoutingSttService.Candidate> chain, Set<String> keys, SysConfig config) {
+    String key = getCacheKey(config);
+    if (key == null || keys.contains(key)) {
+      return;
+    }
+    SttService service = getProviderService(config);
+    if (service == null) {
+      return;
+    }
+    keys.add(key);
+    SttProviderHealth health = healthStats.computeIfAbsent(key,
+        k -> new SttProviderHealth(k, windowSize, windowMs));
+    chain.add(new RoutingSttService.Candidate(key, service, health));
+  }
+
+  /**
+   * 查找同一用户下指定提供商的STT配置，优先使用默认配置
+   */
+  private SysConfig findFallbackConfig(String provider, SysConfig primary) {
+    Integer userId = primary != null ? primary.getUserId() : null;
+    String cacheKey = provider + ":" + userId;
+    return fallbackConfigCache.computeIfAbsent(cacheKey, k -> {
+      try {
+        List<SysConfig> configs = configService.query(new SysConfig()
+            .setConfigType("stt")
+            .setProvider(provider)
+            .setUserId(userId));
+        SysConfig selected = null;
+        for (SysConfig c : configs) {
+          if (selected == null || "1".equals(c.getIsDefault())) {
+            selected = c;
+          }
+        }
+        return Optional.ofNullable(selected);
+      } catch (Exception e) {
+        logger.error("查询备用STT配置失败 - Provider: {}", provider, e);
+        return Optional.empty();
+      }
+    }).orElse(null);
+  }
+
+  private boolean isHealthy(SttProviderHealth health) {
+    SttProviderHealth.Snapshot snapshot = health.snapshot();
+    if (snapshot.getSamples() < minSamples) {
+      return true;
+    }
+    return snapshot.getSuccessRate() >= minSuccessRate && snapshot.getP95TimeToFinalMs() <= maxP95Ms;
+  }
+
+  /**
+   * 获取服务缓存键，与serviceCache的键一致
+   */
+  private String getCacheKey(SysConfig config) {
+    if (config == null) {
+      return voskInitialized ? DEFAULT_PROVIDER : fallbackProvider;
+    }
+    if (DEFAULT_PROVIDER.equals(config.getProvider())) {
+      return hasCustomVoskModel(config) ? DEFAULT_PROVIDER + ":" + config.getConfigId() : DEFAULT_PROVIDER;
+    }
+    Integer configId = config.getConfigId();
+    return config.getProvider() + ":" + (configId != null ? configId : "default");
+  }
+
+  /**
+   * 配置新增或修改后调用：移除该配置的服务实例和健康度统计，并清空备用配置缓存，
+   * 下次路由时按最新配置重新查找备用服务
+   *
+   * @param configId 配置ID，新增配置时可为空
+   */
+  public void invalidate(Integer configId) {
+    fallbackConfigCache.clear();
+    if (configId == null) {
+      return;
+    }
+    String suffix = ":" + configId;
+    serviceCache.keySet().removeIf(key -> key.endsWith(suffix));
+    healthStats.keySet().removeIf(key -> key.endsWith(suffix));
+    if (fallbackProvider != null && fallbackProvider.endsWith(suffix)) {
+      fallbackProvider = null;
+    }
+  }
+
+  /**
+   * 获取各STT服务的健康度快照
+   */
+  public Map<String, SttProviderHealth.Snapshot> getHealthSnapshots() {
+    Map<String, SttProviderHealth.Snapshot> snapshots = new ConcurrentHashMap<>();
+    healthStats.forEach((key, health) -> snapshots.put(key, health.snapshot()));
+    return snapshots;
+  }
+
+  /**
+   * 根据配置获取单个提供商的STT服务
+   */
+  private SttService getProviderService(SysConfig config) {
     if (config == null) {
       return getDefaultSttService();
     }
 
     String provider = config.getProvider();
     
+    // 指定了模型目录的Vosk配置，按配置创建实例，模型由注册表按需加载并共享
+    if (DEFAULT_PROVIDER.equals(provider) && hasCustomVoskModel(config)) {
+      return getCustomVoskService(config);
+    }
+
     // 如果是Vosk，直接使用全局共享的实例
     if (DEFAULT_PROVIDER.equals(provider)) {
       // 如果Vosk还未初始化，尝试初始化
@@ -149,6 +366,35 @@ public class SttServiceFactory {
     return null;
   }
 
+  /**
+   * Vosk配置的apiUrl字段用于指定模型目录，为空时使用默认模型
+   */
+  private boolean hasCustomVoskModel(SysConfig config) {
+    return config.getConfigId() != null
+        && config.getApiUrl() != null && !config.getApiUrl().trim().isEmpty();
+  }
+
+  /**
+   * 获取指定模型目录的Vosk服务
+   */
+  private SttService getCustomVoskService(SysConfig config) {
+    String cacheKey = getCacheKey(config);
+    SttService cached = serviceCache.get(cacheKey);
+    if (cached != null) {
+      return cached;
+    }
+
+    try {
+      VoskSttService voskService = new VoskSttService(voskModelRegistry, config.getApiUrl(), utteranceArchiver);
+      voskService.initialize();
+      serviceCache.put(cacheKey, voskService);
+      return voskService;
+    } catch (Exception e) {
+      logger.error("创建Vosk服务失败, configId={}, 模型目录={}", config.getConfigId(), config.getApiUrl(), e);
+      return null;
+    }
+  }
+
   /**
    * 根据配置创建API类型的STT服务
    */
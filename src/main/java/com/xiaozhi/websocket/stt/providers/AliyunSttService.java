@@ -16,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.ObjectUtils;
 
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
 import java.util.UUID;
@@ -34,6 +35,7 @@ public class AliyunSttService implements SttService {
 
     // 全局共享的NLS客户端
     private NlsClient client;
+    private String clientToken;
 
     // Token管理器
     @Autowired
@@ -49,24 +51,24 @@ public class AliyunSttService implements SttService {
     // 设置TokenManager的方法，由工厂类调用
     public void setTokenManager(TokenManager tokenManager) {
         this.tokenManager = tokenManager;
-        // 初始化NLS客户端（如果尚未初始化）
-        initClient();
+        // 提前在后台获取Token，不等待结果
+        tokenManager.getValidTokenAsync(config);
     }
 
     /**
-     * 初始化NLS客户端
+     * 获取NLS客户端，尚未创建时按Token创建，Token更新后原地替换
      */
-    private void initClient() {
-        try {
-            // 获取有效Token
-            String accessToken = tokenManager.getValidToken(config);
-            if (accessToken != null) {
-                // 创建NLS客户端实例
-                client = new NlsClient(NLS_URL, accessToken);
-            }
-        } catch (Exception e) {
-            logger.error("初始化阿里云NLS客户端失败", e);
+    private synchronized NlsClient client(String accessToken) {
+        if (client == null) {
+            // 配置了接口地址时使用配置的地址（如本地模拟服务）
+            String url = ObjectUtils.isEmpty(config.getApiUrl()) ? NLS_URL : config.getApiUrl();
+            client = new NlsClient(url, accessToken);
+            clientToken = accessToken;
+        } else if (!accessToken.equals(clientToken)) {
+            client.setToken(accessToken);
+            clientToken = accessToken;
         }
+        return client;
     }
 
     @Override
@@ -94,16 +96,16 @@ public class AliyunSttService implements SttService {
             return Flux.error(new IllegalStateException("阿里云语音识别配置未设置"));
         }
 
-        // 检查客户端是否已初始化
-        if (client == null) {
-            // 尝试重新初始化客户端
-            initClient();
-            if (client == null) {
-                logger.error("阿里云NLS客户端初始化失败，无法进行识别");
-                return Flux.error(new IllegalStateException("阿里云NLS客户端初始化失败"));
-            }
-        }
+        // Token就绪后再开始识别，等待期间不占用线程
+        return Mono.fromFuture(tokenManager.getValidTokenAsync(config))
+                .switchIfEmpty(Mono.defer(() -> {
+                    logger.error("无法获取阿里云Token，无法进行识别");
+                    return Mono.error(new IllegalStateException("阿里云NLS客户端初始化失败"));
+                }))
+                .flatMapMany(accessToken -> startRecognition(client(accessToken), audioStream));
+    }
 
+    private Flux<String> startRecognition(NlsClient client, Flux<byte[]> audioStream) {
         // 创建结果接收器
         Sinks.Many<String> resultSink = Sinks.many().multicast().onBackpressureBuffer();
 
@@ -233,8 +235,12 @@ public class AliyunSttService implements SttService {
 
             @Override
             public void onFail(SpeechTranscriberResponse response) {
+                logger.error("识别失败 - TaskId: {}, Status: {}, 错误: {}", taskId, response.getStatus(),
+                        response.getStatusText());
                 // 从活跃转写器中移除
                 activeTranscribers.remove(taskId);
+                // 通知订阅方识别失败，便于切换到备用服务
+                resultSink.tryEmitError(new RuntimeException("识别失败: " + response.getStatusText()));
             }
         };
     }
@@ -253,9 +259,12 @@ public class AliyunSttService implements SttService {
         activeTranscribers.clear();
 
         // 关闭NLS客户端
-        if (client != null) {
-            client.shutdown();
-            client = null;
+        synchronized (this) {
+            if (client != null) {
+                client.shutdown();
+                client = null;
+                clientToken = null;
+            }
         }
     }
 }
\ No newline at end of file
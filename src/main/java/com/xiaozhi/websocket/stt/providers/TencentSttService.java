@@ -30,7 +30,7 @@ public class TencentSttService implements SttService {
     private String appId;
 
     // 全局共享的SpeechClient实例
-    private final SpeechClient speechClient = new SpeechClient(WS_API_URL);
+    private final SpeechClient speechClient;
 
     // 存储当前活跃的识别会话
     private final ConcurrentHashMap<String, SpeechRecognizer> activeRecognizers = new ConcurrentHashMap<>();
@@ -41,6 +41,11 @@ public class TencentSttService implements SttService {
             this.secretKey = config.getApiSecret();
             this.appId = config.getAppId();
         }
+        // 配置了接口地址时使用配置的地址（如本地模拟服务）
+        String apiUrl = config != null && config.getApiUrl() != null && !config.getApiUrl().isEmpty()
+                ? config.getApiUrl()
+                : WS_API_URL;
+        this.speechClient = new SpeechClient(apiUrl);
     }
 
     @Override
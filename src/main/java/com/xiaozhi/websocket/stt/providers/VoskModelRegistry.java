@@ -0,0 +1,318 @@
+package com.xiaozhi.websocket.stt.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Vosk模型注册表
+ * 按模型目录管理多个Vosk模型：首次使用时才加载，按会话引用计数，空闲超时后卸载
+ */
+@Component
+public class VoskModelRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(VoskModelRegistry.class);
+
+    // 默认模型目录（相对于工作目录）
+    public static final String DEFAULT_MODEL_PATH = "models/vosk-model";
+
+    // 模型空闲多久后卸载（毫秒）
+    @Value("${app.stt.vosk.idle-unload-ms:1800000}")
+    private long idleUnloadMs;
+
+    // 空闲检查间隔（毫秒）
+    @Value("${app.stt.vosk.idle-check-interval-ms:60000}")
+    private long idleCheckIntervalMs;
+
+    // 已注册的模型，键为模型目录的绝对路径
+    private final Map<String, ModelEntry> models = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService idleChecker;
+
+    @PostConstruct
+    public void init() {
+        // 禁用Vosk日志输出
+        LibVosk.setLogLevel(LogLevel.WARNINGS);
+
+        idleChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vosk-model-idle-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleChecker.scheduleWithFixedDelay(this::unloadIdleModels, idleCheckIntervalMs, idleCheckIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (idleChecker != null) {
+            idleChecker.shutdownNow();
+        }
+        models.values().forEach(entry -> entry.unload("服务关闭"));
+        models.clear();
+    }
+
+    /**
+     * 解析模型目录，相对路径以工作目录为基准
+     *
+     * @param modelPath 模型目录，为空时使用默认模型
+     * @return 模型目录的绝对路径
+     */
+    public static String resolvePath(String modelPath) {
+        String path = (modelPath == null || modelPath.trim().isEmpty()) ? DEFAULT_MODEL_PATH : modelPath.trim();
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(System.getProperty("user.dir"), path);
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * 获取模型引用，模型尚未加载时同步加载
+     * 使用完毕后必须调用{@link ModelLease#close()}释放引用
+     *
+     * @param modelPath 模型目录
+     * @return 模型引用
+     * @throws IOException 模型不存在或加载失败
+     */
+    public ModelLease acquire(String modelPath) throws IOException {
+        String path = resolvePath(modelPath);
+        ModelEntry entry = models.computeIfAbsent(path, ModelEntry::new);
+        return entry.acquire();
+    }
+
+    /**
+     * 检查模型目录是否存在
+     */
+    public boolean exists(String modelPath) {
+        return new File(resolvePath(modelPath)).isDirectory();
+    }
+
+    /**
+     * 获取所有已注册模型的状态
+     */
+    public List<ModelStats> getModelStats() {
+        List<ModelStats> stats = new ArrayList<>();
+        models.values().forEach(entry -> stats.add(entry.stats()));
+        return stats;
+    }
+
+    /**
+     * 卸载空闲超时的模型
+     */
+    private void unloadIdleModels() {
+        try {
+            long now = System.currentTimeMillis();
+            models.values().forEach(entry -> entry.unloadIfIdle(now, idleUnloadMs));
+        } catch (Exception e) {
+            logger.error("检查空闲Vosk模型时发生错误", e);
+        }
+    }
+
+    /**
+     * 单个模型的加载状态和引用计数
+     */
+    private static class ModelEntry {
+        private final String path;
+        private Model model;
+        private int refCount = 0;
+        private long lastReleaseTime = 0;
+        private long loadTimeMs = 0;
+        private long sizeBytes = 0;
+        private long rssDeltaBytes = -1;
+        private long loadCount = 0;
+
+        ModelEntry(String path) {
+            this.path = path;
+        }
+
+        synchronized ModelLease acquire() throws IOException {
+            if (model == null) {
+                load();
+            }
+            refCount++;
+            return new ModelLease(this, model);
+        }
+
+        synchronized void release() {
+            if (refCount > 0) {
+                refCount--;
+            }
+            if (refCount == 0) {
+                lastReleaseTime = System.currentTimeMillis();
+            }
+        }
+
+        private void load() throws IOException {
+            File dir = new File(path);
+            if (!dir.isDirectory()) {
+                throw new IOException("Vosk模型目录不存在: " + path);
+            }
+
+            long rssBefore = readResidentMemory();
+            long startTime = System.currentTimeMillis();
+            // Vosk由原生代码读取模型文件，Java层无法控制内存映射方式
+            model = new Model(path);
+            loadTimeMs = System.currentTimeMillis() - startTime;
+            long rssAfter = readResidentMemory();
+
+            sizeBytes = directorySize(dir.toPath());
+            rssDeltaBytes = (rssBefore >= 0 && rssAfter >= 0) ? rssAfter - rssBefore : -1;
+            loadCount++;
+
+            logger.info("Vosk模型加载成功 - 路径: {}, 耗时: {}ms, 模型大小: {}MB, 进程内存增量: {}",
+                    path, loadTimeMs, sizeBytes / (1024 * 1024),
+                    rssDeltaBytes >= 0 ? rssDeltaBytes / (1024 * 1024) + "MB" : "未知");
+        }
+
+        synchronized void unloadIfIdle(long now, long idleUnloadMs) {
+            if (model != null && refCount == 0 && now - lastReleaseTime > idleUnloadMs) {
+                unload("空闲超时");
+            }
+        }
+
+        synchronized void unload(String reason) {
+            if (model == null) {
+                return;
+            }
+            if (refCount > 0) {
+                logger.warn("Vosk模型仍有{}个引用，强制卸载 - 路径: {}", refCount, path);
+            }
+            model.close();
+            model = null;
+            logger.info("Vosk模型已卸载 - 路径: {}, 原因: {}", path, reason);
+        }
+
+        synchronized ModelStats stats() {
+            return new ModelStats(path, model != null, refCount, loadTimeMs, sizeBytes, rssDeltaBytes, loadCount);
+        }
+    }
+
+    /**
+     * 模型引用，关闭时释放引用计数
+     */
+    public static class ModelLease implements AutoCloseable {
+        private final ModelEntry entry;
+        private final Model model;
+        private boolean closed = false;
+
+        private ModelLease(ModelEntry entry, Model model) {
+            this.entry = entry;
+            this.model = model;
+        }
+
+        public Model getModel() {
+            return model;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * 模型状态
+     */
+    public static class ModelStats {
+        private final String path;
+        private final boolean loaded;
+        private final int refCount;
+        private final long loadTimeMs;
+        private final long sizeBytes;
+        private final long rssDeltaBytes;
+        private final long loadCount;
+
+        public ModelStats(String path, boolean loaded, int refCount, long loadTimeMs, long sizeBytes,
+                long rssDeltaBytes, long loadCount) {
+            this.path = path;
+            this.loaded = loaded;
+            this.refCount = refCount;
+            this.loadTimeMs = loadTimeMs;
+            this.sizeBytes = sizeBytes;
+            this.rssDeltaBytes = rssDeltaBytes;
+            this.loadCount = loadCount;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        public int getRefCount() {
+            return refCount;
+        }
+
+        public long getLoadTimeMs() {
+            return loadTimeMs;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public long getRssDeltaBytes() {
+            return rssDeltaBytes;
+        }
+
+        public long getLoadCount() {
+            return loadCount;
+        }
+    }
+
+    /**
+     * 计算模型目录大小
+     */
+    private static long directorySize(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 读取进程常驻内存（仅Linux可用），不可用时返回-1
+     */
+    private static long readResidentMemory() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try (Stream<String> lines = Files.lines(status)) {
+            return lines.filter(line -> line.startsWith("VmRSS:"))
+                    .map(line -> line.replaceAll("[^0-9]", ""))
+                    .filter(value -> !value.isEmpty())
+                    .mapToLong(value -> Long.parseLong(value) * 1024)
+                    .findFirst()
+                    .orElse(-1);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
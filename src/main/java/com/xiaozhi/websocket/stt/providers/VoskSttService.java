@@ -1,18 +1,15 @@
 package com.xiaozhi.websocket.stt.providers;
 
-import java.io.ByteArrayInputStream;
-
-import javax.annotation.PostConstruct;
+import java.io.IOException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.vosk.LibVosk;
-import org.vosk.LogLevel;
 import org.vosk.Model;
 import org.vosk.Recognizer;
 
-import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.websocket.stt.PcmBuffer;
 import com.xiaozhi.websocket.stt.SttService;
+import com.xiaozhi.websocket.stt.archive.UtteranceArchiver;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -22,32 +19,51 @@ import org.json.JSONObject;
 
 /**
  * Vosk STT服务实现
+ * 模型由{@link VoskModelRegistry}统一管理，识别时按需加载并持有引用
  */
 public class VoskSttService implements SttService {
 
     private static final Logger logger = LoggerFactory.getLogger(VoskSttService.class);
     private static final String PROVIDER_NAME = "vosk";
 
-    // Vosk模型相关对象
-    private Model model;
-    private String voskModelPath;
+    // Vosk模型注册表
+    private final VoskModelRegistry modelRegistry;
+
+    // 模型目录
+    private final String voskModelPath;
+
+    // 语音归档服务，可为空
+    private final UtteranceArchiver archiver;
+
+    /**
+     * @param modelRegistry 模型注册表
+     * @param modelPath     模型目录，为空时使用默认模型
+     * @param archiver      语音归档服务，为空时不归档
+     */
+    public VoskSttService(VoskModelRegistry modelRegistry, String modelPath, UtteranceArchiver archiver) {
+        this.modelRegistry = modelRegistry;
+        this.voskModelPath = VoskModelRegistry.resolvePath(modelPath);
+        this.archiver = archiver;
+    }
 
     /**
-     * 初始化Vosk模型
+     * 检查模型目录是否存在，模型本身在首次识别时才加载
      */
-    @PostConstruct
     public void initialize() throws Exception {
-        try {
-            // 禁用Vosk日志输出
-            LibVosk.setLogLevel(LogLevel.WARNINGS);
-
-            // 加载模型，路径为配置的模型目录
-            voskModelPath = System.getProperty("user.dir") + "/models/vosk-model";
-            logger.debug(voskModelPath);
-            model = new Model(voskModelPath);
-            logger.info("Vosk 模型加载成功！路径: {}", voskModelPath);
+        if (!modelRegistry.exists(voskModelPath)) {
+            throw new IOException("Vosk模型目录不存在: " + voskModelPath);
+        }
+        logger.info("Vosk 模型已注册，将在首次使用时加载！路径: {}", voskModelPath);
+    }
+
+    /**
+     * 预加载模型，避免首次识别时等待模型加载
+     */
+    public void preload() {
+        try (VoskModelRegistry.ModelLease lease = modelRegistry.acquire(voskModelPath)) {
+            logger.debug("Vosk 模型预加载完成: {}", voskModelPath);
         } catch (Exception e) {
-            logger.warn("Vosk 模型加载失败！将使用其他STT服务: {}", e.getMessage());
+            logger.warn("Vosk 模型预加载失败！将使用其他STT服务: {}", e.getMessage());
         }
     }
 
@@ -63,17 +79,19 @@ public class VoskSttService implements SttService {
             return null;
         }
 
-        // 将原始音频数据转换为MP3格式并保存
-        String fileName = AudioUtils.saveAsMp3File(audioData);
-
-        try (Recognizer recognizer = new Recognizer(model, 16000)) { // 16000 是采样率
-            ByteArrayInputStream audioStream = new ByteArrayInputStream(audioData);
+        // 异步归档原始音频，不阻塞识别
+        if (archiver != null) {
+            archiver.archive(PROVIDER_NAME, audioData);
+        }
 
+        try (VoskModelRegistry.ModelLease lease = modelRegistry.acquire(voskModelPath);
+                Recognizer recognizer = new Recognizer(lease.getModel(), 16000)) { // 16000 是采样率
             byte[] buffer = new byte[4096];
-            int bytesRead;
 
-            while ((bytesRead = audioStream.read(buffer)) != -1) {
-                if (recognizer.acceptWaveForm(buffer, bytesRead)) {
+            for (int offset = 0; offset < audioData.length; offset += buffer.length) {
+                int length = Math.min(buffer.length, audioData.length - offset);
+                System.arraycopy(audioData, offset, buffer, 0, length);
+                if (recognizer.acceptWaveForm(buffer, length)) {
                     // 如果识别到完整的结果
                     return recognizer.getResult().replaceAll("\\s+", "");
                 }
@@ -90,60 +108,106 @@ public class VoskSttService implements SttService {
 
     @Override
     public Flux<String> streamRecognition(Flux<byte[]> audioStream) {
-        return Mono.fromCallable(() -> new Recognizer(model, 16000))
-                .flatMapMany(recognizer -> {
-                    return audioStream
-                            .publishOn(Schedulers.boundedElastic())
-                            .map(audioChunk -> {
-                                try {
-                                    boolean hasResult = recognizer.acceptWaveForm(audioChunk, audioChunk.length);
-                                    if (hasResult) {
-                                        // 提取部分识别结果中的文本
-                                        String result = recognizer.getResult();
-                                        JSONObject jsonResult = new JSONObject(result);
-                                        if (jsonResult.has("text") && !jsonResult.getString("text").isEmpty()) {
-                                            return jsonResult.getString("text").replaceAll("\\s+", "");
-                                        }
-                                    } else {
-                                        // 获取部分识别结果
-                                        String partialResult = recognizer.getPartialResult();
-                                        JSONObject jsonPartial = new JSONObject(partialResult);
-                                        if (jsonPartial.has("partial") && !jsonPartial.getString("partial").isEmpty()) {
-                                            return jsonPartial.getString("partial").replaceAll("\\s+", "");
-                                        }
-                                    }
-                                    return "";
-                                } catch (Exception e) {
-                                    logger.error("流式识别处理音频块时发生错误", e);
-                                    return "";
-                                }
-                            })
-                            .filter(text -> !text.isEmpty())
-                            .concatWith(Mono.fromSupplier(() -> {
-                                try {
-                                    // 流结束时获取最终结果
-                                    String finalResult = recognizer.getFinalResult().replaceAll("\\s+", "");
-                                    JSONObject jsonFinal = new JSONObject(finalResult);
-
-                                    recognizer.close();
-                                    return jsonFinal.getString("text").replaceAll("\\s+", "");
-                                } catch (Exception e) {
-                                    logger.error("获取最终识别结果时发生错误", e);
-                                    return "";
-                                }
-                            }))
-                            .doOnError(e -> {
-                                logger.error("流式识别过程中发生错误", e);
-                                try {
-                                    recognizer.close();
-                                } catch (Exception ex) {
-                                    logger.error("关闭识别器时发生错误", ex);
-                                }
-                            });
-                })
+        return streamRecognitionPcm(audioStream.map(PcmBuffer::wrap));
+    }
+
+    @Override
+    public Flux<String> streamRecognitionPcm(Flux<PcmBuffer> pcmStream) {
+        // 识别期间持有模型引用；识别器先于模型引用关闭，流结束、出错或取消时都会释放
+        return Flux.using(
+                () -> modelRegistry.acquire(voskModelPath),
+                lease -> recognize(lease.getModel(), pcmStream),
+                VoskModelRegistry.ModelLease::close);
+    }
+
+    private Flux<String> recognize(Model model, Flux<PcmBuffer> pcmStream) {
+        return Flux.using(
+                () -> new RecognizerHandle(new Recognizer(model, 16000)),
+                handle -> pcmStream
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(audioChunk -> {
+                            try {
+                                return handle.accept(audioChunk);
+                            } catch (Exception e) {
+                                logger.error("流式识别处理音频块时发生错误", e);
+                                return "";
+                            } finally {
+                                audioChunk.release();
+                            }
+                        })
+                        .doOnDiscard(PcmBuffer.class, PcmBuffer::release)
+                        .filter(text -> !text.isEmpty())
+                        .concatWith(Mono.fromSupplier(() -> {
+                            try {
+                                // 流结束时获取最终结果
+                                return handle.finalResult();
+                            } catch (Exception e) {
+                                logger.error("获取最终识别结果时发生错误", e);
+                                return "";
+                            }
+                        }))
+                        .doOnError(e -> logger.error("流式识别过程中发生错误", e)),
+                RecognizerHandle::close)
                 .onErrorResume(e -> {
                     logger.error("创建Vosk识别器时发生错误", e);
                     return Flux.empty();
                 });
     }
+
+    /**
+     * 识别器和关闭标记，识别与关闭互斥：
+     * 流被取消时识别线程可能仍在处理音频块，关闭要等它结束，关闭后的音频块直接忽略，避免访问已释放的本地对象
+     */
+    private static class RecognizerHandle {
+        private final Recognizer recognizer;
+        private boolean closed;
+
+        RecognizerHandle(Recognizer recognizer) {
+            this.recognizer = recognizer;
+        }
+
+        /**
+         * 送入一段音频，返回完整或部分识别结果中的文本，没有文本时返回空字符串
+         */
+        synchronized String accept(PcmBuffer audioChunk) {
+            if (closed) {
+                return "";
+            }
+            // 直接将底层数组交给Vosk，不做拷贝
+            if (recognizer.acceptWaveForm(audioChunk.array(), audioChunk.length())) {
+                // 提取完整识别结果中的文本
+                JSONObject jsonResult = new JSONObject(recognizer.getResult());
+                if (jsonResult.has("text") && !jsonResult.getString("text").isEmpty()) {
+                    return jsonResult.getString("text").replaceAll("\\s+", "");
+                }
+            } else {
+                // 获取部分识别结果
+                JSONObject jsonPartial = new JSONObject(recognizer.getPartialResult());
+                if (jsonPartial.has("partial") && !jsonPartial.getString("partial").isEmpty()) {
+                    return jsonPartial.getString("partial").replaceAll("\\s+", "");
+                }
+            }
+            return "";
+        }
+
+        synchronized String finalResult() {
+            if (closed) {
+                return "";
+            }
+            JSONObject jsonFinal = new JSONObject(recognizer.getFinalResult());
+            return jsonFinal.getString("text").replaceAll("\\s+", "");
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                recognizer.close();
+            } catch (Exception e) {
+                logger.error("关闭识别器时发生错误", e);
+            }
+        }
+    }
 }
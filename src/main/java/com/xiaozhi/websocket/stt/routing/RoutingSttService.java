@@ -0,0 +1,214 @@
+package com.xiaozhi.websocket.stt.routing;
+
+import com.xiaozhi.websocket.stt.PcmBuffer;
+import com.xiaozhi.websocket.stt.SttService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带故障切换和对冲请求的STT服务
+ * 按顺序尝试候选服务：当前服务出错时自动切换到下一个服务；
+ * 音频结束后若当前服务在对冲延迟内仍未给出最终结果，则将同一段音频发送给下一个服务，先返回结果者胜出
+ */
+public class RoutingSttService implements SttService {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingSttService.class);
+
+    // 候选服务列表，按优先级排序
+    private final List<Candidate> candidates;
+
+    // 对冲请求延迟（毫秒），小于等于0时不发起对冲请求
+    private final long hedgeDelayMs;
+
+    public RoutingSttService(List<Candidate> candidates, long hedgeDelayMs) {
+        if (candidates == null || candidates.isEmpty()) {
+            throw new IllegalArgumentException("STT候选服务不能为空");
+        }
+        this.candidates = candidates;
+        this.hedgeDelayMs = hedgeDelayMs;
+    }
+
+    @Override
+    public String getProviderName() {
+        return candidates.get(0).getService().getProviderName();
+    }
+
+    @Override
+    public boolean supportsStreaming() {
+        return candidates.get(0).getService().supportsStreaming();
+    }
+
+    @Override
+    public String recognition(byte[] audioData) {
+        for (Candidate candidate : candidates) {
+            long startTime = System.currentTimeMillis();
+            try {
+                String result = candidate.getService().recognition(audioData);
+                if (result != null) {
+                    candidate.getHealth().recordSuccess(System.currentTimeMillis() - startTime);
+                    return result;
+                }
+            } catch (Exception e) {
+                candidate.getHealth().recordFailure();
+                logger.warn("STT服务识别失败，尝试下一个服务 - Provider: {}", candidate.getKey(), e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Flux<String> streamRecognition(Flux<byte[]> audioStream) {
+        return streamRecognitionPcm(audioStream.map(PcmBuffer::wrap));
+    }
+
+    @Override
+    public Flux<String> streamRecognitionPcm(Flux<PcmBuffer> pcmStream) {
+        // 记录音频结束时间，用于计算出最终结果的耗时
+        AtomicLong audioEndTime = new AtomicLong(0);
+
+        if (candidates.size() == 1) {
+            // 没有备用服务时不需要重放，音频块连同引用直接交给唯一的服务
+            return track(candidates.get(0),
+                    pcmStream.doOnComplete(() -> audioEndTime.set(System.currentTimeMillis())),
+                    audioEndTime, 0);
+        }
+
+        // 路由层持有的音频块引用，识别结束后统一释放
+        List<PcmBuffer> retained = Collections.synchronizedList(new ArrayList<>());
+
+        // 缓存音频数据，便于切换服务或发起对冲请求时从头重放；
+        // 每个订阅方拿到的都是新增的一次引用，由服务自行释放
+        Flux<PcmBuffer> audio = pcmStream
+                .doOnNext(retained::add)
+                .doOnComplete(() -> audioEndTime.set(System.currentTimeMillis()))
+                .replay()
+                .autoConnect()
+                .map(PcmBuffer::retain);
+
+        return route(audio, audioEndTime)
+                .doFinally(signal -> {
+                    synchronized (retained) {
+                        retained.forEach(PcmBuffer::release);
+                        retained.clear();
+                    }
+                });
+    }
+
+    private Flux<String> route(Flux<PcmBuffer> audio, AtomicLong audioEndTime) {
+        // 当前正在使用的候选服务下标
+        AtomicInteger activeIndex = new AtomicInteger(0);
+
+        Flux<String> primary = recognizeWithFallback(0, audio, audioEndTime, activeIndex);
+        if (candidates.size() < 2 || hedgeDelayMs <= 0) {
+            return primary;
+        }
+
+        // 中间结果和最终结果共用同一个识别请求
+        Flux<String> shared = primary.replay().refCount(2);
+
+        // 音频结束后等待对冲延迟，若仍未得到结果则向下一个服务发起对冲请求
+        // 只关心音频何时结束，重放出来的引用直接释放
+        Mono<String> hedge = audio.doOnNext(PcmBuffer::release).then()
+                .then(Mono.delay(Duration.ofMillis(hedgeDelayMs)))
+                .then(Mono.defer(() -> {
+                    int hedgeIndex = activeIndex.get() + 1;
+                    if (hedgeIndex >= candidates.size()) {
+                        return Mono.<String>never();
+                    }
+                    Candidate candidate = candidates.get(hedgeIndex);
+                    logger.info("STT服务{}ms内未返回最终结果，发起对冲请求 - Provider: {}", hedgeDelayMs, candidate.getKey());
+                    return track(candidate, audio, audioEndTime, 0).last("");
+                }));
+
+        // 先得到最终结果者胜出，另一方的订阅会被取消
+        Mono<String> winner = Mono.firstWithValue(shared.last(""), hedge).cache();
+
+        return shared.takeUntilOther(winner)
+                .concatWith(winner)
+                .distinctUntilChanged();
+    }
+
+    /**
+     * 按顺序尝试候选服务，出错时切换到下一个服务
+     */
+    private Flux<String> recognizeWithFallback(int index, Flux<PcmBuffer> audio, AtomicLong audioEndTime,
+            AtomicInteger activeIndex) {
+        Candidate candidate = candidates.get(index);
+        Flux<String> result = Flux.defer(() -> {
+            activeIndex.set(index);
+            return track(candidate, audio, audioEndTime, candidates.size() > 1 ? hedgeDelayMs : 0);
+        });
+
+        if (index + 1 >= candidates.size()) {
+            return result;
+        }
+
+        return result.onErrorResume(e -> {
+            logger.warn("STT服务识别失败，切换到备用服务 - Provider: {}, Fallback: {}, 错误: {}",
+                    candidate.getKey(), candidates.get(index + 1).getKey(), e.getMessage());
+            return recognizeWithFallback(index + 1, audio, audioEndTime, activeIndex);
+        });
+    }
+
+    /**
+     * 调用服务并记录健康度
+     * 被取消的请求没有结果，不计为成功：音频结束后超过timeoutMs仍未出结果而被取代的记为超时，
+     * 其余情况（对冲请求落败、会话中止）不计入统计
+     *
+     * @param timeoutMs 超时阈值（毫秒），小于等于0时取消不计入统计
+     */
+    private Flux<String> track(Candidate candidate, Flux<PcmBuffer> audio, AtomicLong audioEndTime,
+            long timeoutMs) {
+        SttProviderHealth health = candidate.getHealth();
+        return Flux.defer(() -> candidate.getService().streamRecognitionPcm(audio))
+                .doOnComplete(() -> health.recordSuccess(elapsedSince(audioEndTime.get())))
+                .doOnError(e -> health.recordFailure())
+                .doOnCancel(() -> {
+                    if (timeoutMs > 0 && audioEndTime.get() > 0
+                            && elapsedSince(audioEndTime.get()) >= timeoutMs) {
+                        health.recordTimeout();
+                    }
+                });
+    }
+
+    private static long elapsedSince(long time) {
+        return time > 0 ? System.currentTimeMillis() - time : 0;
+    }
+
+    /**
+     * 路由候选服务
+     */
+    public static class Candidate {
+        private final String key;
+        private final SttService service;
+        private final SttProviderHealth health;
+
+        public Candidate(String key, SttService service, SttProviderHealth health) {
+            this.key = key;
+            this.service = service;
+            this.health = health;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public SttService getService() {
+            return service;
+        }
+
+        public SttProviderHealth getHealth() {
+            return health;
+        }
+    }
+}
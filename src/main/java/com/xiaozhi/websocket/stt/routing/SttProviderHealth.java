@@ -0,0 +1,134 @@
+package com.xiaozhi.websocket.stt.routing;
+
+import java.util.Arrays;
+
+/**
+ * STT服务健康度统计
+ * 在滑动窗口内记录每次识别的成功与否以及出最终结果的耗时，
+ * 用于计算成功率和p95耗时，供路由层判断服务是否可用
+ */
+public class SttProviderHealth {
+
+    private final String providerKey;
+
+    // 窗口容量（最近N次请求）
+    private final int windowSize;
+
+    // 窗口时长（毫秒），超出时长的样本不参与统计
+    private final long windowMs;
+
+    private final long[] timestamps;
+    private final long[] latencies;
+    private final boolean[] successes;
+
+    // 下一个写入位置
+    private int index = 0;
+
+    // 已写入的样本数量（不超过窗口容量）
+    private int count = 0;
+
+    public SttProviderHealth(String providerKey, int windowSize, long windowMs) {
+        this.providerKey = providerKey;
+        this.windowSize = windowSize;
+        this.windowMs = windowMs;
+        this.timestamps = new long[windowSize];
+        this.latencies = new long[windowSize];
+        this.successes = new boolean[windowSize];
+    }
+
+    public String getProviderKey() {
+        return providerKey;
+    }
+
+    /**
+     * 记录一次成功的识别
+     *
+     * @param timeToFinalMs 从音频结束到最终结果的耗时
+     */
+    public void recordSuccess(long timeToFinalMs) {
+        record(true, timeToFinalMs);
+    }
+
+    /**
+     * 记录一次失败的识别
+     */
+    public void recordFailure() {
+        record(false, 0);
+    }
+
+    /**
+     * 记录一次超时（未出结果即被取代），按失败统计
+     */
+    public void recordTimeout() {
+        record(false, 0);
+    }
+
+    private synchronized void record(boolean success, long latencyMs) {
+        timestamps[index] = System.currentTimeMillis();
+        latencies[index] = Math.max(0, latencyMs);
+        successes[index] = success;
+        index = (index + 1) % windowSize;
+        if (count < windowSize) {
+            count++;
+        }
+    }
+
+    /**
+     * 获取健康度快照
+     */
+    public synchronized Snapshot snapshot() {
+        long now = System.currentTimeMillis();
+        long[] window = new long[count];
+        int samples = 0;
+        int succeeded = 0;
+        int latencySamples = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (now - timestamps[i] > windowMs) {
+                continue;
+            }
+            samples++;
+            if (successes[i]) {
+                succeeded++;
+                window[latencySamples++] = latencies[i];
+            }
+        }
+
+        long p95 = 0;
+        if (latencySamples > 0) {
+            Arrays.sort(window, 0, latencySamples);
+            int rank = (int) Math.ceil(latencySamples * 0.95) - 1;
+            p95 = window[Math.max(0, rank)];
+        }
+
+        double successRate = samples == 0 ? 1.0 : (double) succeeded / samples;
+        return new Snapshot(samples, successRate, p95);
+    }
+
+    /**
+     * 健康度快照
+     */
+    public static class Snapshot {
+        private final int samples;
+        private final double successRate;
+        private final long p95TimeToFinalMs;
+
+        public Snapshot(int samples, double successRate, long p95TimeToFinalMs) {
+            this.samples = samples;
+            this.successRate = successRate;
+            this.p95TimeToFinalMs = p95TimeToFinalMs;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        public double getSuccessRate() {
+            return successRate;
+        }
+
+        public long getP95TimeToFinalMs() {
+            return p95TimeToFinalMs;
+        }
+    }
+}
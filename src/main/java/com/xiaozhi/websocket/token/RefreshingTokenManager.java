@@ -0,0 +1,274 @@
+package com.xiaozhi.websocket.token;
+
+import com.xiaozhi.entity.SysConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 通用Token管理器，与服务商无关，子类只需实现获取Token的请求
+ * 同一配置同时只有一个获取请求在进行，所有等待方共享同一个结果；
+ * Token使用到有效期的refresh-ratio时在后台线程提前刷新，刷新期间仍返回旧Token；
+ * 刷新失败后在retry-delay-ms内不再重新请求。请求线程不等待获取结果，需要等待Token的调用方使用getValidTokenAsync
+ */
+public abstract class RefreshingTokenManager implements TokenManager {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshingTokenManager.class);
+
+    // 后台检查需要刷新的Token的间隔（毫秒）
+    private static final long CHECK_INTERVAL_MS = 30000;
+
+    // Token使用到有效期的该比例时开始刷新
+    @Value("${app.token.refresh-ratio:0.8}")
+    private double refreshRatio;
+
+    // 主动刷新时最长等待时间（毫秒）
+    @Value("${app.token.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
+    // 后台刷新失败后的重试间隔（毫秒）
+    @Value("${app.token.retry-delay-ms:30000}")
+    private long retryDelayMs;
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "token-refresh-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 获取到的Token及其过期时间
+     */
+    protected static class IssuedToken {
+        private final String token;
+        // 过期时间（毫秒时间戳）
+        private final long expiresAt;
+
+        public IssuedToken(String token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 向服务商请求新Token，在后台线程中调用
+     *
+     * @param config 配置
+     * @return 新Token，获取失败时返回null或抛出异常
+     */
+    protected abstract IssuedToken fetchToken(SysConfig config) throws Exception;
+
+    @PostConstruct
+    public void startRefresher() {
+        executor.scheduleWithFixedDelay(this::refreshExpiring, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopRefresher() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取指定配置的有效Token，不阻塞调用线程
+     * 有未过期的Token时立即返回，需要刷新时在后台进行；没有可用Token时在后台发起获取并返回null
+     */
+    @Override
+    public String getValidToken(SysConfig config) {
+        return getValidTokenAsync(config).getNow(null);
+    }
+
+    /**
+     * 异步获取指定配置的有效Token，不阻塞调用线程
+     * 没有可用Token时返回进行中的获取请求；刷新失败后的重试间隔内直接返回null，不重复请求服务商
+     */
+    @Override
+    public CompletableFuture<String> getValidTokenAsync(SysConfig config) {
+        Entry entry = entry(config);
+        long now = System.currentTimeMillis();
+        String token = entry.token;
+        if (token != null && now < entry.expiresAt) {
+            if (now >= entry.refreshAt && now >= entry.retryAt) {
+                refreshAsync(entry);
+            }
+            return CompletableFuture.completedFuture(token);
+        }
+        CompletableFuture<String> inFlight;
+        synchronized (entry) {
+            inFlight = entry.inFlight;
+        }
+        if (inFlight == null) {
+            if (now < entry.retryAt) {
+                return CompletableFuture.completedFuture(null);
+            }
+            inFlight = refreshAsync(entry);
+        }
+        // 返回依赖的新Future，调用方取消时不影响共享同一请求的其他等待方
+        return inFlight.thenApply(Function.identity());
+    }
+
+    /**
+     * 刷新指定配置的Token，已有刷新在进行时共享其结果，最多等待acquire-timeout-ms
+     */
+    @Override
+    public String refreshToken(SysConfig config) {
+        return await(refreshAsync(entry(config)), config);
+    }
+
+    /**
+     * 在后台获取Token，不等待结果，用于启动时预热
+     */
+    protected void preload(SysConfig config) {
+        refreshAsync(entry(config));
+    }
+
+    @Override
+    public boolean isTokenExpiringSoon(Integer configId) {
+        Entry entry = entries.get(configId);
+        return entry == null || entry.token == null || System.currentTimeMillis() >= entry.refreshAt;
+    }
+
+    @Override
+    public void invalidate(Integer configId) {
+        if (configId != null) {
+            entries.remove(configId);
+        }
+    }
+
+    private Entry entry(SysConfig config) {
+        Entry entry = entries.computeIfAbsent(config.getConfigId(), id -> new Entry());
+        int credentials = Objects.hash(config.getAppId(), config.getApiKey(), config.getApiSecret());
+        synchronized (entry) {
+            if (entry.config != null && entry.credentials != credentials) {
+                // 密钥已修改，旧Token作废
+                logger.info("配置ID: {} 的密钥已修改，重新获取Token", config.getConfigId());
+                entry.token = null;
+                entry.expiresAt = 0;
+                entry.refreshAt = 0;
+                entry.retryAt = 0;
+            }
+            entry.config = config;
+            entry.credentials = credentials;
+        }
+        return entry;
+    }
+
+    /**
+     * 发起获取请求，同一配置同时只有一个请求，后来者共享进行中的结果
+     */
+    private CompletableFuture<String> refreshAsync(Entry entry) {
+        CompletableFuture<String> future;
+        synchronized (entry) {
+            if (entry.inFlight != null) {
+                return entry.inFlight;
+            }
+            future = new CompletableFuture<>();
+            entry.inFlight = future;
+        }
+        try {
+            executor.execute(() -> doRefresh(entry, future));
+        } catch (Exception e) {
+            synchronized (entry) {
+                entry.inFlight = null;
+            }
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private void doRefresh(Entry entry, CompletableFuture<String> future) {
+        SysConfig config = entry.config;
+        String result = null;
+        try {
+            IssuedToken issued = fetchToken(config);
+            if (issued == null || issued.token == null) {
+                throw new IllegalStateException("服务商未返回Token");
+            }
+            long now = System.currentTimeMillis();
+            long lifetime = Math.max(0, issued.expiresAt - now);
+            synchronized (entry) {
+                entry.token = issued.token;
+                entry.expiresAt = issued.expiresAt;
+                entry.refreshAt = now + (long) (lifetime * refreshRatio);
+                entry.retryAt = 0;
+            }
+            result = issued.token;
+            logger.info("配置ID: {} 的Token已更新，有效期 {} 秒", config.getConfigId(), lifetime / 1000);
+        } catch (Exception e) {
+            synchronized (entry) {
+                entry.retryAt = System.currentTimeMillis() + retryDelayMs;
+            }
+            logger.error("获取配置ID: {} 的Token失败: {}", config.getConfigId(), e.getMessage(), e);
+            // 旧Token尚未过期时继续使用
+            if (entry.token != null && System.currentTimeMillis() < entry.expiresAt) {
+                result = entry.token;
+            }
+        } finally {
+            synchronized (entry) {
+                entry.inFlight = null;
+            }
+            future.complete(result);
+        }
+    }
+
+    /**
+     * 后台检查，提前刷新即将过期的Token，失败的按重试间隔重试
+     */
+    private void refreshExpiring() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Entry entry : entries.values()) {
+                if (entry.config != null && now >= entry.refreshAt && now >= entry.retryAt) {
+                    refreshAsync(entry);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("后台刷新Token时发生错误: {}", e.getMessage(), e);
+        }
+    }
+
+    private String await(CompletableFuture<String> future, SysConfig config) {
+        try {
+            return future.get(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("等待配置ID: {} 的Token超时", config.getConfigId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("等待Token时被中断", e);
+        } catch (ExecutionException e) {
+            logger.error("获取配置ID: {} 的Token失败: {}", config.getConfigId(), e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * 单个配置的Token状态，写入在entry锁内进行
+     */
+    private static class Entry {
+        private volatile SysConfig config;
+        private int credentials;
+        private volatile String token;
+        private volatile long expiresAt;
+        // 到达该时间后后台刷新
+        private volatile long refreshAt;
+        // 刷新失败后，到达该时间前后台不再重试
+        private volatile long retryAt;
+        private CompletableFuture<String> inFlight;
+    }
+}
@@ -2,6 +2,8 @@ package com.xiaozhi.websocket.token;
 
 import com.xiaozhi.entity.SysConfig;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Token管理器接口
  * 定义通用的Token管理功能
@@ -13,6 +15,13 @@ public interface TokenManager {
      * @return Token字符串，如果无效则返回null
      */
     String getValidToken(SysConfig config);
+
+    /**
+     * 异步获取指定配置的有效Token，不阻塞调用线程
+     * @param config 配置
+     * @return 获取结果，无法获取时结果为null
+     */
+    CompletableFuture<String> getValidTokenAsync(SysConfig config);
     
     /**
      * 刷新指定配置的Token
@@ -27,6 +36,12 @@ public interface TokenManager {
      * @return 如果Token即将过期返回true，否则返回false
      */
     boolean isTokenExpiringSoon(Integer configId);
+
+    /**
+     * 移除指定配置的缓存Token，配置删除或修改后调用
+     * @param configId 配置ID
+     */
+    void invalidate(Integer configId);
     
     /**
      * 初始化所有需要的Token
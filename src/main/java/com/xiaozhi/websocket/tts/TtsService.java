@@ -28,6 +28,15 @@ public interface TtsService {
    */
   String textToSpeech(String text) throws Exception;
 
+  /**
+   * 检查服务是否支持流式合成，支持时合成结果边生成边播放
+   * 
+   * @return 是否支持流式合成
+   */
+  default boolean supportsStreaming() {
+    return false;
+  }
+
   /**
    * 流式将文本转换为语音
    * 
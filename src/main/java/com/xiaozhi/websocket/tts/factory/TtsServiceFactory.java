@@ -1,11 +1,14 @@
 package com.xiaozhi.websocket.tts.factory;
 
 import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.websocket.http.HttpClientRegistry;
 import com.xiaozhi.websocket.tts.TtsService;
+import com.xiaozhi.websocket.tts.providers.AliyunNlsClientPool;
 import com.xiaozhi.websocket.tts.providers.AliyunTtsService;
 import com.xiaozhi.websocket.tts.providers.EdgeTtsService;
+import com.xiaozhi.websocket.tts.providers.LocalTtsModelRegistry;
+import com.xiaozhi.websocket.tts.providers.LocalTtsService;
 import com.xiaozhi.websocket.tts.providers.VolcengineTtsService;
-import com.xiaozhi.websocket.token.TokenManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +16,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TTS服务工厂
+ * 服务实例按（提供商, 配置ID, 语音）缓存复用，配置的密钥或地址变化时重新创建，
+ * 每句话的开销只剩语音合成本身
+ */
 @Component
 public class TtsServiceFactory {
 
@@ -27,22 +39,32 @@ public class TtsServiceFactory {
     // 默认 EDGE TTS 服务默认语音名称
     private static final String DEFAULT_VOICE = "zh-CN-XiaoyiNeural";
     
-    // 注入TokenManager
+    // 阿里云NLS客户端池
+    @Autowired
+    private AliyunNlsClientPool aliyunClientPool;
+
     @Autowired
-    private TokenManager tokenManager;
+    private HttpClientRegistry httpClientRegistry;
+
+    // 本地语音合成模型
+    @Autowired
+    private LocalTtsModelRegistry localModelRegistry;
+
+    // 已创建的服务，键为 提供商:配置ID:语音
+    private final Map<String, CachedService> services = new ConcurrentHashMap<>();
+
+    // 默认的Edge服务
+    private final TtsService defaultService = new EdgeTtsService(DEFAULT_VOICE, outputPath);
 
     /**
      * 获取默认TTS服务
      */
     public TtsService getDefaultTtsService() {
-        // 如果缓存中没有默认服务，则创建一个
-        TtsService edgeService = new EdgeTtsService(DEFAULT_VOICE, outputPath);
-
-        return edgeService;
+        return defaultService;
     }
 
     public TtsService getTtsService() {
-        return new EdgeTtsService(DEFAULT_VOICE, outputPath);
+        return defaultService;
     }
 
     /**
@@ -56,9 +78,23 @@ public class TtsServiceFactory {
         } else {
             provider = config.getProvider();
         }
-        // 如果是默认提供商且尚未初始化，则初始化
+        Integer configId = config != null ? config.getConfigId() : null;
+        String key = provider + ":" + configId + ":" + voiceName;
+        String fingerprint = fingerprint(config);
+
+        CachedService cached = services.get(key);
+        if (cached != null) {
+            if (cached.fingerprint.equals(fingerprint)) {
+                return cached.service;
+            }
+            // 配置已变化，该配置下的服务和客户端都需要重建
+            invalidate(configId);
+        }
+
+        // 如果是默认提供商，直接创建Edge服务
         if (DEFAULT_PROVIDER.equals(provider)) {
             TtsService edgeService = new EdgeTtsService(voiceName, outputPath);
+            services.put(key, new CachedService(configId, fingerprint, edgeService));
             return edgeService;
         }
 
@@ -67,6 +103,9 @@ public class TtsServiceFactory {
             TtsService service;
             // 创建其他API服务
             service = createApiService(config, voiceName, outputPath);
+            if (service != null) {
+                services.put(key, new CachedService(configId, fingerprint, service));
+            }
 
             return service;
         } catch (Exception e) {
@@ -75,6 +114,44 @@ public class TtsServiceFactory {
         }
     }
 
+    /**
+     * 配置修改后移除该配置下缓存的服务
+     * 
+     * @param configId 配置ID
+     */
+    public void invalidate(Integer configId) {
+        if (configId != null) {
+            services.values().removeIf(cached -> configId.equals(cached.configId));
+            aliyunClientPool.invalidate(configId);
+        }
+    }
+
+    /**
+     * 配置中影响服务实例的字段
+     */
+    private static String fingerprint(SysConfig config) {
+        if (config == null) {
+            return "";
+        }
+        return config.getProvider() + "|" + config.getAppId() + "|" + config.getApiKey() + "|"
+                + config.getApiSecret() + "|" + config.getApiUrl();
+    }
+
+    /**
+     * 缓存的服务实例
+     */
+    private static class CachedService {
+        private final Integer configId;
+        private final String fingerprint;
+        private final TtsService service;
+
+        CachedService(Integer configId, String fingerprint, TtsService service) {
+            this.configId = configId;
+            this.fingerprint = Objects.requireNonNull(fingerprint);
+            this.service = service;
+        }
+    }
+
     /**
      * 根据配置创建API类型的TTS服务
      */
@@ -85,12 +162,20 @@ public class TtsServiceFactory {
         if (DEFAULT_PROVIDER.equals(provider)) {
             return new EdgeTtsService(voiceName, outputPath);
         } else if ("aliyun".equals(provider)) {
-            // 创建阿里云TTS服务并设置TokenManager
+            // 创建阿里云TTS服务并设置共享的客户端池
             AliyunTtsService aliyunTtsService = new AliyunTtsService(config, voiceName, outputPath);
-            aliyunTtsService.setTokenManager(tokenManager);
+            aliyunTtsService.setClientPool(aliyunClientPool);
             return aliyunTtsService;
         } else if ("volcengine".equals(provider)) {
-            return new VolcengineTtsService(config, voiceName, outputPath);
+            // 创建火山引擎TTS服务并设置共享的HTTP客户端
+            VolcengineTtsService volcengineTtsService = new VolcengineTtsService(config, voiceName, outputPath);
+            volcengineTtsService.setHttpClient(
+                    httpClientRegistry.getClient(provider, VolcengineTtsService.API_URL));
+            return volcengineTtsService;
+        } else if ("local".equals(provider)) {
+            // 本地ONNX模型，语音名称即模型名称
+            return new LocalTtsService(localModelRegistry.getModel(voiceName), outputPath,
+                    localModelRegistry.getMaxChunkChars());
         } /*
            * else if ("tencent".equals(provider)) {
            * return new TencentTtsService(config, voiceName, outputPath);
@@ -0,0 +1,322 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import com.alibaba.nls.client.protocol.NlsClient;
+import com.alibaba.nls.client.protocol.tts.SpeechSynthesizer;
+import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerListener;
+import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerResponse;
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.websocket.token.TokenManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阿里云NLS客户端池
+ * 每个配置只创建一个NlsClient，Token更新时直接替换客户端上的Token，不再为每个服务实例新建客户端。
+ * 同时为每个配置预先建立少量语音合成连接：SpeechSynthesizer创建时即完成WebSocket握手，
+ * 取用时只需发送合成请求，首包不再等待建连。预建连接超过空闲时间后关闭（服务端会断开长时间无请求的连接），
+ * 只在有合成请求时补充，空闲的配置不占用连接
+ */
+@Component
+public class AliyunNlsClientPool {
+    private static final Logger logger = LoggerFactory.getLogger(AliyunNlsClientPool.class);
+
+    // 阿里云NLS服务的默认URL
+    private static final String NLS_URL = "wss://nls-gateway.aliyuncs.com/ws/v1";
+
+    // 每个配置预建的合成连接数，0表示不预建
+    @Value("${app.tts.aliyun.pool-size:2}")
+    private int poolSize;
+
+    // 预建连接的最长空闲时间（毫秒）
+    @Value("${app.tts.aliyun.max-idle-ms:8000}")
+    private long maxIdleMs;
+
+    @Autowired
+    private TokenManager tokenManager;
+
+    // 以configId为键
+    private final Map<Integer, ClientEntry> clients = new ConcurrentHashMap<>();
+
+    // 补充和清理预建连接的线程
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "aliyun-nls-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::evictIdle, maxIdleMs, Math.max(1000, maxIdleMs / 4),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        for (ClientEntry entry : clients.values()) {
+            entry.shutdown();
+        }
+        clients.clear();
+        logger.info("阿里云NLS客户端池已关闭");
+    }
+
+    /**
+     * 获取一个可立即发起合成的SpeechSynthesizer，优先使用预建的连接
+     * 等待Token时不占用调用线程，Token就绪后再取用连接；合成完成或失败后由调用方关闭，连接不再复用
+     *
+     * @param config   阿里云配置
+     * @param listener 本次合成的回调
+     * @return 尚未开始的合成请求
+     */
+    public CompletableFuture<SpeechSynthesizer> acquire(SysConfig config, SpeechSynthesizerListener listener) {
+        return tokenManager.getValidTokenAsync(config).thenApply(token -> {
+            ClientEntry entry = client(config, token);
+            PooledSynthesizer pooled = entry.poll(maxIdleMs);
+            if (pooled == null) {
+                try {
+                    pooled = entry.create();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+            pooled.listener.bind(listener);
+            refill(entry);
+            return pooled.synthesizer;
+        });
+    }
+
+    /**
+     * 配置修改后关闭该配置的客户端，下次使用时按新配置重建
+     */
+    public void invalidate(Integer configId) {
+        if (configId == null) {
+            return;
+        }
+        ClientEntry entry = clients.remove(configId);
+        if (entry != null) {
+            entry.shutdown();
+        }
+    }
+
+    /**
+     * 获取配置对应的客户端，Token变化时原地更新
+     */
+    private ClientEntry client(SysConfig config, String token) {
+        if (token == null) {
+            throw new IllegalStateException("无法获取阿里云Token - ConfigId: " + config.getConfigId());
+        }
+        ClientEntry entry = clients.computeIfAbsent(config.getConfigId(), id -> new ClientEntry(config, token));
+        entry.updateToken(token);
+        return entry;
+    }
+
+    private void refill(ClientEntry entry) {
+        if (poolSize <= 0 || executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            while (!entry.closed && entry.idleCount() < poolSize) {
+                try {
+                    entry.offer(entry.create());
+                } catch (Exception e) {
+                    logger.warn("预建阿里云语音合成连接失败 - ConfigId: {}, 原因: {}", entry.configId, e.getMessage());
+                    return;
+                }
+            }
+        });
+    }
+
+    private void evictIdle() {
+        for (ClientEntry entry : clients.values()) {
+            entry.evict(maxIdleMs);
+        }
+    }
+
+    /**
+     * 一个配置的客户端及其预建连接
+     */
+    private static class ClientEntry {
+        private final Integer configId;
+        private final NlsClient client;
+        private final Deque<PooledSynthesizer> idle = new ArrayDeque<>();
+        private volatile String token;
+        private volatile boolean closed;
+
+        ClientEntry(SysConfig config, String token) {
+            this.configId = config.getConfigId();
+            // 配置了接口地址时使用配置的地址（如本地模拟服务）
+            String url = ObjectUtils.isEmpty(config.getApiUrl()) ? NLS_URL : config.getApiUrl();
+            this.client = new NlsClient(url, token);
+            this.token = token;
+            logger.info("创建阿里云NLS客户端 - ConfigId: {}", configId);
+        }
+
+        void updateToken(String newToken) {
+            if (newToken.equals(token)) {
+                return;
+            }
+            synchronized (this) {
+                if (newToken.equals(token)) {
+                    return;
+                }
+                client.setToken(newToken);
+                token = newToken;
+                // 已建立的连接使用旧Token鉴权，交由新Token重新预建
+                closeAll(drain());
+            }
+            logger.info("阿里云NLS客户端Token已更新 - ConfigId: {}", configId);
+        }
+
+        PooledSynthesizer create() throws Exception {
+            RelayListener listener = new RelayListener();
+            return new PooledSynthesizer(new SpeechSynthesizer(client, listener), listener);
+        }
+
+        synchronized PooledSynthesizer poll(long maxIdleMs) {
+            long now = System.currentTimeMillis();
+            PooledSynthesizer pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (!pooled.listener.broken && now - pooled.createdAt < maxIdleMs) {
+                    return pooled;
+                }
+                pooled.close();
+            }
+            return null;
+        }
+
+        void offer(PooledSynthesizer pooled) {
+            synchronized (this) {
+                if (!closed) {
+                    idle.addLast(pooled);
+                    return;
+                }
+            }
+            pooled.close();
+        }
+
+        synchronized int idleCount() {
+            return idle.size();
+        }
+
+        void evict(long maxIdleMs) {
+            List<PooledSynthesizer> expired = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (Iterator<PooledSynthesizer> it = idle.iterator(); it.hasNext();) {
+                    PooledSynthesizer pooled = it.next();
+                    if (pooled.listener.broken || now - pooled.createdAt >= maxIdleMs) {
+                        it.remove();
+                        expired.add(pooled);
+                    }
+                }
+            }
+            closeAll(expired);
+        }
+
+        void shutdown() {
+            List<PooledSynthesizer> remaining;
+            synchronized (this) {
+                closed = true;
+                remaining = drain();
+            }
+            closeAll(remaining);
+            client.shutdown();
+            logger.info("阿里云NLS客户端已关闭 - ConfigId: {}", configId);
+        }
+
+        private List<PooledSynthesizer> drain() {
+            List<PooledSynthesizer> drained = new ArrayList<>(idle);
+            idle.clear();
+            return drained;
+        }
+
+        private static void closeAll(List<PooledSynthesizer> synthesizers) {
+            for (PooledSynthesizer pooled : synthesizers) {
+                pooled.close();
+            }
+        }
+    }
+
+    /**
+     * 预建的合成连接
+     */
+    private static class PooledSynthesizer {
+        private final SpeechSynthesizer synthesizer;
+        private final RelayListener listener;
+        private final long createdAt = System.currentTimeMillis();
+
+        PooledSynthesizer(SpeechSynthesizer synthesizer, RelayListener listener) {
+            this.synthesizer = synthesizer;
+            this.listener = listener;
+        }
+
+        void close() {
+            try {
+                synthesizer.close();
+            } catch (Exception e) {
+                logger.debug("关闭预建的语音合成连接失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 连接建立时还不知道用于哪次合成，回调先转发到这里，取用时再绑定实际的监听器
+     */
+    private static class RelayListener extends SpeechSynthesizerListener {
+        private volatile SpeechSynthesizerListener target;
+        // 空闲期间连接出错或被服务端断开
+        private volatile boolean broken;
+
+        void bind(SpeechSynthesizerListener listener) {
+            this.target = listener;
+        }
+
+        @Override
+        public void onMessage(ByteBuffer message) {
+            SpeechSynthesizerListener listener = target;
+            if (listener != null) {
+                listener.onMessage(message);
+            }
+        }
+
+        @Override
+        public void onComplete(SpeechSynthesizerResponse response) {
+            SpeechSynthesizerListener listener = target;
+            if (listener != null) {
+                listener.onComplete(response);
+            }
+        }
+
+        @Override
+        public void onFail(SpeechSynthesizerResponse response) {
+            SpeechSynthesizerListener listener = target;
+            if (listener != null) {
+                listener.onFail(response);
+            } else {
+                broken = true;
+            }
+        }
+    }
+}
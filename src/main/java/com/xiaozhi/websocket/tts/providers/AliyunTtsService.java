@@ -1,6 +1,5 @@
 package com.xiaozhi.websocket.tts.providers;
 
-import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.OutputFormatEnum;
 import com.alibaba.nls.client.protocol.SampleRateEnum;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizer;
@@ -8,10 +7,8 @@ import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerListener;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerResponse;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.websocket.tts.TtsService;
-import com.xiaozhi.websocket.token.TokenManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -20,7 +17,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 public class AliyunTtsService implements TtsService {
@@ -28,19 +29,15 @@ public class AliyunTtsService implements TtsService {
 
     private static final String PROVIDER_NAME = "aliyun";
 
-    // 阿里云NLS服务的默认URL
-    private static final String NLS_URL = "wss://nls-gateway.aliyuncs.com/ws/v1";
+    // 单次合成（含等待连接）的最长时间
+    private static final long SYNTHESIS_TIMEOUT_MS = 60000;
 
     // 阿里云配置
     private final SysConfig config;
     private final String voiceName;
     private final String outputPath;
-    // 全局共享的NLS客户端
-    private NlsClient client;
-
-    // Token管理器
-    @Autowired
-    private TokenManager tokenManager;
+    // 按配置共享的NLS客户端和预建连接
+    private AliyunNlsClientPool clientPool;
 
     public AliyunTtsService(SysConfig config,
                             String voiceName, String outputPath) {
@@ -49,24 +46,9 @@ public class AliyunTtsService implements TtsService {
         this.outputPath = outputPath;
     }
 
-    // 设置TokenManager的方法，由工厂类调用
-    public void setTokenManager(TokenManager tokenManager) {
-        this.tokenManager = tokenManager;
-        // 初始化NLS客户端（如果尚未初始化）
-        initClient();
-    }
-
-    private void initClient() {
-        try {
-            // 获取有效Token
-            String accessToken = tokenManager.getValidToken(config);
-            if (accessToken != null) {
-                // 创建NLS客户端实例
-                client = new NlsClient(NLS_URL, accessToken);
-            }
-        } catch (Exception e) {
-            logger.error("初始化阿里云NLS客户端失败", e);
-        }
+    // 设置客户端池的方法，由工厂类调用
+    public void setClientPool(AliyunNlsClientPool clientPool) {
+        this.clientPool = clientPool;
     }
 
     @Override
@@ -88,7 +70,7 @@ public class AliyunTtsService implements TtsService {
 
         try {
             // 创建语音合成请求
-            SpeechSynthesizer synthesizer = new SpeechSynthesizer(client, new SpeechSynthesizerListener() {
+            SpeechSynthesizer synthesizer = acquire(new SpeechSynthesizerListener() {
                 @Override
                 public void onComplete(SpeechSynthesizerResponse response) {
                     latch.countDown();
@@ -111,28 +93,32 @@ public class AliyunTtsService implements TtsService {
                 }
             });
 
-            // 设置appKey
-            synthesizer.setAppKey(config.getApiKey());
-            // 设置语音输出格式
-            synthesizer.setFormat(OutputFormatEnum.MP3);
-            // 设置采样率
-            synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-            // 设置语音
-            synthesizer.setVoice(voiceName);
-            // 设置音量
-            synthesizer.setVolume(50);
-            // 设置语速
-            synthesizer.setSpeechRate(0);
-            // 设置语调
-            synthesizer.setPitchRate(0);
-
-            // 发送文本
-            synthesizer.setText(text);
-            // 开始语音合成
-            synthesizer.start();
-
-            // 等待语音合成完成
-            latch.await();
+            try {
+                // 设置appKey
+                synthesizer.setAppKey(config.getApiKey());
+                // 设置语音输出格式
+                synthesizer.setFormat(OutputFormatEnum.MP3);
+                // 设置采样率
+                synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
+                // 设置语音
+                synthesizer.setVoice(voiceName);
+                // 设置音量
+                synthesizer.setVolume(50);
+                // 设置语速
+                synthesizer.setSpeechRate(0);
+                // 设置语调
+                synthesizer.setPitchRate(0);
+
+                // 发送文本
+                synthesizer.setText(text);
+                // 开始语音合成
+                synthesizer.start();
+
+                // 等待语音合成完成
+                await(latch);
+            } finally {
+                close(synthesizer);
+            }
 
             // 保存音频文件
             String audioFileName = getAudioFileName();
@@ -164,7 +150,7 @@ public class AliyunTtsService implements TtsService {
 
         try {
             // 创建语音合成请求
-            SpeechSynthesizer synthesizer = new SpeechSynthesizer(client, new SpeechSynthesizerListener() {
+            SpeechSynthesizer synthesizer = acquire(new SpeechSynthesizerListener() {
                 private boolean firstPacket = true;
 
                 @Override
@@ -192,34 +178,36 @@ public class AliyunTtsService implements TtsService {
                 }
             });
 
-            // 设置appKey
-            synthesizer.setAppKey(config.getApiKey());
-            // 设置PCM格式输出，便于直接处理
-            synthesizer.setFormat(OutputFormatEnum.PCM);
-            // 设置采样率
-            synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
-            // 设置语音
-            synthesizer.setVoice(voiceName);
-            // 设置音量
-            synthesizer.setVolume(100);
-            // 设置语速
-            synthesizer.setSpeechRate(0);
-            // 设置语调
-            synthesizer.setPitchRate(0);
-
-            // 发送文本
-            synthesizer.setText(text);
-
-            // 开始语音合成
-            long startTime = System.currentTimeMillis();
-            synthesizer.start();
-            logger.info("语音合成请求已发送，耗时: {} ms", System.currentTimeMillis() - startTime);
-
-            // 我们需要等待合成完成后再关闭synthesizer
-            latch.await();
-
-            // 合成完成后关闭synthesizer
-            synthesizer.close();
+            try {
+                // 设置appKey
+                synthesizer.setAppKey(config.getApiKey());
+                // 设置PCM格式输出，便于直接处理
+                synthesizer.setFormat(OutputFormatEnum.PCM);
+                // 设置采样率
+                synthesizer.setSampleRate(SampleRateEnum.SAMPLE_RATE_16K);
+                // 设置语音
+                synthesizer.setVoice(voiceName);
+                // 设置音量
+                synthesizer.setVolume(100);
+                // 设置语速
+                synthesizer.setSpeechRate(0);
+                // 设置语调
+                synthesizer.setPitchRate(0);
+
+                // 发送文本
+                synthesizer.setText(text);
+
+                // 开始语音合成
+                long startTime = System.currentTimeMillis();
+                synthesizer.start();
+                logger.info("语音合成请求已发送，耗时: {} ms", System.currentTimeMillis() - startTime);
+
+                // 等待合成完成后再关闭synthesizer
+                await(latch);
+            } finally {
+                // 启动失败或超时也要关闭synthesizer
+                close(synthesizer);
+            }
 
         } catch (Exception e) {
             logger.error("阿里云流式语音合成失败: {}", e.getMessage(), e);
@@ -230,74 +218,70 @@ public class AliyunTtsService implements TtsService {
     @Override
     public CompletableFuture<Void> streamTextToSpeechAsync(String text, Consumer<byte[]> audioDataConsumer) {
         CompletableFuture<Void> future = new CompletableFuture<>();
+        logger.info("开始阿里云流式语音合成 - 文本长度: {}", text.length());
 
-        // 在单独的线程中执行，避免阻塞
-        CompletableFuture.runAsync(() -> {
-            logger.info("开始阿里云流式语音合成 - 文本长度: {}", text.length());
+        SpeechSynthesizerListener listener = new SpeechSynthesizerListener() {
+            private boolean firstPacket = true;
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            private static final int BUFFER_SIZE = 4096; // 4KB 缓冲区
 
-            SpeechSynthesizer synthesizer = null;
-            try {
-                // 确保有有效的客户端
-                if (client == null || tokenManager.getValidToken(config) == null) {
-                    initClient();
-                    if (client == null) {
-                        throw new RuntimeException("无法初始化阿里云NLS客户端");
-                    }
+            @Override
+            public void onComplete(SpeechSynthesizerResponse response) {
+
+                // 发送最后剩余的数据
+                if (buffer.size() > 0) {
+                    audioDataConsumer.accept(buffer.toByteArray());
                 }
 
-                // 创建语音合成请求
-                synthesizer = new SpeechSynthesizer(client, new SpeechSynthesizerListener() {
-                    private boolean firstPacket = true;
-                    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                    private static final int BUFFER_SIZE = 4096; // 4KB 缓冲区
+                // 合成完成，完成Future
+                future.complete(null);
+            }
 
-                    @Override
-                    public void onComplete(SpeechSynthesizerResponse response) {
+            @Override
+            public void onFail(SpeechSynthesizerResponse response) {
+                logger.error("流式语音合成失败 - TaskId: {}, Status: {}, StatusText: {}",
+                        response.getTaskId(), response.getStatus(), response.getStatusText());
+                // 合成失败，异常完成Future
+                future.completeExceptionally(new RuntimeException(
+                        "阿里云TTS失败: " + response.getStatusText()));
+            }
 
-                        // 发送最后剩余的数据
-                        if (buffer.size() > 0) {
-                            audioDataConsumer.accept(buffer.toByteArray());
-                        }
+            @Override
+            public void onMessage(ByteBuffer message) {
+                if (firstPacket) {
+                    logger.info("收到首个音频数据包，延迟: {} ms", System.currentTimeMillis());
+                    firstPacket = false;
+                }
 
-                        // 合成完成，完成Future
-                        future.complete(null);
-                    }
+                // 从ByteBuffer中获取字节数组
+                byte[] data = new byte[message.remaining()];
+                message.get(data);
 
-                    @Override
-                    public void onFail(SpeechSynthesizerResponse response) {
-                        logger.error("流式语音合成失败 - TaskId: {}, Status: {}, StatusText: {}",
-                                response.getTaskId(), response.getStatus(), response.getStatusText());
-                        // 合成失败，异常完成Future
-                        future.completeExceptionally(new RuntimeException(
-                                "阿里云TTS失败: " + response.getStatusText()));
-                    }
+                try {
+                    // 将数据添加到缓冲区
+                    buffer.write(data);
 
-                    @Override
-                    public void onMessage(ByteBuffer message) {
-                        if (firstPacket) {
-                            logger.info("收到首个音频数据包，延迟: {} ms", System.currentTimeMillis());
-                            firstPacket = false;
-                        }
-
-                        // 从ByteBuffer中获取字节数组
-                        byte[] data = new byte[message.remaining()];
-                        message.get(data);
-
-                        try {
-                            // 将数据添加到缓冲区
-                            buffer.write(data);
-
-                            // 当缓冲区达到一定大小时，发送数据并清空缓冲区
-                            if (buffer.size() >= BUFFER_SIZE) {
-                                audioDataConsumer.accept(buffer.toByteArray());
-                                buffer.reset();
-                            }
-                        } catch (IOException e) {
-                            logger.error("处理音频数据时发生错误", e);
-                        }
+                    // 当缓冲区达到一定大小时，发送数据并清空缓冲区
+                    if (buffer.size() >= BUFFER_SIZE) {
+                        audioDataConsumer.accept(buffer.toByteArray());
+                        buffer.reset();
                     }
-                });
-
+                } catch (IOException e) {
+                    logger.error("处理音频数据时发生错误", e);
+                }
+            }
+        };
+
+        // Token和连接就绪后再发起合成，等待期间不占用线程
+        clientPool.acquire(config, listener).whenComplete((synthesizer, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                logger.error("阿里云流式语音合成失败: {}", cause.getMessage(), cause);
+                future.completeExceptionally(cause);
+                return;
+            }
+            try {
                 // 设置appKey
                 synthesizer.setAppKey(config.getApiKey());
                 // 设置PCM格式输出，便于直接处理
@@ -320,31 +304,50 @@ public class AliyunTtsService implements TtsService {
                 long startTime = System.currentTimeMillis();
                 synthesizer.start();
                 logger.info("语音合成请求已发送，耗时: {} ms", System.currentTimeMillis() - startTime);
-
             } catch (Exception e) {
                 logger.error("阿里云流式语音合成失败: {}", e.getMessage(), e);
                 future.completeExceptionally(e);
-
-                // 关闭synthesizer
-                if (synthesizer != null) {
-                    try {
-                        synthesizer.close();
-                    } catch (Exception closeEx) {
-                        logger.error("关闭synthesizer失败", closeEx);
-                    }
-                }
             }
+            // 合成结束后关闭连接，预建的连接只使用一次
+            future.whenComplete((result, closeError) -> close(synthesizer));
         });
 
         return future;
     }
 
-    // 关闭资源
-    public void shutdown() {
-        if (client != null) {
-            client.shutdown();
-            client = null;
-            logger.info("NLS客户端已关闭");
+    /**
+     * 同步接口使用：等待Token和连接就绪
+     */
+    private SpeechSynthesizer acquire(SpeechSynthesizerListener listener) throws Exception {
+        CompletableFuture<SpeechSynthesizer> future = clientPool.acquire(config, listener);
+        try {
+            return future.get(SYNTHESIS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            // 超时后才就绪的连接不再使用，直接关闭
+            future.thenAccept(AliyunTtsService::close);
+            throw new TimeoutException("等待阿里云语音合成连接超时");
+        }
+    }
+
+    /**
+     * 同步接口使用：等待合成完成，回调丢失时不会一直占用线程
+     */
+    private static void await(CountDownLatch latch) throws InterruptedException, TimeoutException {
+        if (!latch.await(SYNTHESIS_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("阿里云语音合成超时");
+        }
+    }
+
+    private static void close(SpeechSynthesizer synthesizer) {
+        try {
+            synthesizer.close();
+        } catch (Exception e) {
+            logger.error("关闭synthesizer失败", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,6 @@
 package com.xiaozhi.websocket.tts.providers;
 
 import io.github.whitemagic2014.tts.TTS;
-import io.github.whitemagic2014.tts.TTSVoice;
 import io.github.whitemagic2014.tts.bean.Voice;
 
 import java.io.File;
@@ -10,7 +9,6 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.UUID;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,10 +45,8 @@ public class EdgeTtsService implements TtsService {
     @Override
     public String textToSpeech(String text) throws Exception {
 
-        // 获取中文语音
-        Voice voiceObj = TTSVoice.provides().stream()
-                .filter(v -> v.getShortName().equals(voiceName))
-                .collect(Collectors.toList()).get(0);
+        // 从语音目录中按名称查找
+        Voice voiceObj = EdgeVoiceCatalog.find(voiceName);
 
         TTS ttsEngine = new TTS(voiceObj, text);
         // 执行TTS转换获取音频文件
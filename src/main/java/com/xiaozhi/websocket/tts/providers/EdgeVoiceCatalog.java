@@ -0,0 +1,60 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import io.github.whitemagic2014.tts.TTSVoice;
+import io.github.whitemagic2014.tts.bean.Voice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Edge语音目录
+ * 首次使用时加载一次全部语音并按ShortName建立索引，之后按名称直接查找，不再每次遍历完整的语音列表
+ */
+public final class EdgeVoiceCatalog {
+
+    private static volatile Map<String, Voice> voices;
+
+    private EdgeVoiceCatalog() {
+    }
+
+    /**
+     * 按ShortName查找语音
+     *
+     * @param shortName 语音名称，如zh-CN-XiaoyiNeural
+     * @return 语音
+     * @throws IllegalArgumentException 语音不存在时
+     */
+    public static Voice find(String shortName) {
+        Voice voice = voices().get(shortName);
+        if (voice == null) {
+            throw new IllegalArgumentException("不支持的Edge语音: " + shortName);
+        }
+        return voice;
+    }
+
+    /**
+     * 语音是否存在
+     */
+    public static boolean contains(String shortName) {
+        return shortName != null && voices().containsKey(shortName);
+    }
+
+    private static Map<String, Voice> voices() {
+        Map<String, Voice> loaded = voices;
+        if (loaded == null) {
+            synchronized (EdgeVoiceCatalog.class) {
+                loaded = voices;
+                if (loaded == null) {
+                    Map<String, Voice> index = new HashMap<>();
+                    for (Voice voice : TTSVoice.provides()) {
+                        index.put(voice.getShortName(), voice);
+                    }
+                    loaded = Collections.unmodifiableMap(index);
+                    voices = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+}
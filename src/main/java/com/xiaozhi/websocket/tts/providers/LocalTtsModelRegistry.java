@@ -0,0 +1,75 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地语音合成模型注册表
+ * 语音名称即模型文件名（不含.onnx），模型放在app.tts.local.model-dir目录下，首次使用时加载，之后共享
+ */
+@Component
+public class LocalTtsModelRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(LocalTtsModelRegistry.class);
+
+    // 模型目录
+    @Value("${app.tts.local.model-dir:models/tts}")
+    private String modelDir;
+
+    // 每个模型的推理会话数，即单模型最大并发合成数
+    @Value("${app.tts.local.session-pool-size:2}")
+    private int sessionPoolSize;
+
+    // 每个模型缓存的文本音素ID条数
+    @Value("${app.tts.local.frontend-cache-size:1000}")
+    private int frontendCacheSize;
+
+    // 流式合成时单个分句的最大字数
+    @Value("${app.tts.local.max-chunk-chars:30}")
+    private int maxChunkChars;
+
+    private final Map<String, OnnxTtsModel> models = new ConcurrentHashMap<>();
+
+    /**
+     * 获取模型，未加载时加载
+     *
+     * @param voiceName 模型名称
+     * @return 模型
+     * @throws IllegalArgumentException 模型文件不存在或加载失败时
+     */
+    public OnnxTtsModel getModel(String voiceName) {
+        return models.computeIfAbsent(voiceName, this::load);
+    }
+
+    public int getMaxChunkChars() {
+        return maxChunkChars;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        models.values().forEach(OnnxTtsModel::close);
+        models.clear();
+        logger.info("本地语音合成模型资源已释放");
+    }
+
+    private OnnxTtsModel load(String voiceName) {
+        if (voiceName == null || voiceName.isEmpty() || voiceName.contains("..")) {
+            throw new IllegalArgumentException("无效的本地语音模型名称: " + voiceName);
+        }
+        String modelPath = new File(modelDir, voiceName + ".onnx").getPath();
+        if (!new File(modelPath).isFile()) {
+            throw new IllegalArgumentException("本地语音模型不存在: " + modelPath);
+        }
+        try {
+            return new OnnxTtsModel(modelPath, sessionPoolSize, frontendCacheSize);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("加载本地语音模型失败: " + modelPath, e);
+        }
+    }
+}
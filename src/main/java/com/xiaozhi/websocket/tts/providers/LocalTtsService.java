@@ -0,0 +1,162 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import com.xiaozhi.websocket.tts.TtsService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 本地语音合成服务，使用ONNX Runtime在本机运行Piper（VITS）模型，不依赖网络
+ * 流式合成时按标点把文本切成分句逐段推理，每段合成完立即交出PCM，首包只需等第一个分句
+ */
+public class LocalTtsService implements TtsService {
+    private static final Logger logger = LoggerFactory.getLogger(LocalTtsService.class);
+
+    private static final String PROVIDER_NAME = "local";
+
+    // 分句的标点
+    private static final String CLAUSE_DELIMITERS = "，。！？；：、,.!?;:\n";
+
+    // 一个60ms播放帧的PCM字节数
+    private static final int FRAME_BYTES = OnnxTtsModel.OUTPUT_SAMPLE_RATE * 2 * 60 / 1000;
+
+    private final OnnxTtsModel model;
+    private final String outputPath;
+    // 单个分句的最大字数，超出时强制切分
+    private final int maxChunkChars;
+
+    public LocalTtsService(OnnxTtsModel model, String outputPath, int maxChunkChars) {
+        this.model = model;
+        this.outputPath = outputPath;
+        this.maxChunkChars = Math.max(1, maxChunkChars);
+    }
+
+    @Override
+    public String getProviderName() {
+        return PROVIDER_NAME;
+    }
+
+    @Override
+    public String getAudioFileName() {
+        String uuid = UUID.randomUUID().toString().replace("-", "");
+        return uuid + ".wav";
+    }
+
+    @Override
+    public String textToSpeech(String text) throws Exception {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        streamTextToSpeech(text, chunk -> pcm.write(chunk, 0, chunk.length));
+
+        File outputDir = new File(outputPath);
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        String filePath = outputPath + getAudioFileName();
+        writeWav(filePath, pcm.toByteArray());
+        return filePath;
+    }
+
+    @Override
+    public boolean supportsStreaming() {
+        return true;
+    }
+
+    @Override
+    public void streamTextToSpeech(String text, Consumer<byte[]> audioDataConsumer) throws Exception {
+        if (text == null || text.isEmpty()) {
+            logger.warn("文本内容为空！");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        boolean first = true;
+        // 分句之间不足一帧的音频留到下一段一起交出，避免编码时出现不完整的帧
+        ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        for (String chunk : split(text)) {
+            byte[] pcm = model.synthesize(chunk);
+            if (pcm.length == 0) {
+                continue;
+            }
+            if (first) {
+                first = false;
+                logger.debug("本地语音合成首段完成 - 模型: {}, 耗时: {} ms", model.getName(),
+                        System.currentTimeMillis() - startTime);
+            }
+            pending.write(pcm, 0, pcm.length);
+            int aligned = pending.size() / FRAME_BYTES * FRAME_BYTES;
+            if (aligned > 0) {
+                byte[] buffered = pending.toByteArray();
+                audioDataConsumer.accept(Arrays.copyOf(buffered, aligned));
+                pending.reset();
+                pending.write(buffered, aligned, buffered.length - aligned);
+            }
+        }
+        if (pending.size() > 0) {
+            audioDataConsumer.accept(pending.toByteArray());
+        }
+    }
+
+    /**
+     * 按标点切分为分句，标点保留在分句末尾
+     */
+    List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            current.append(c);
+            if (CLAUSE_DELIMITERS.indexOf(c) >= 0 || current.length() >= maxChunkChars) {
+                addChunk(chunks, current);
+            }
+        }
+        addChunk(chunks, current);
+        return chunks;
+    }
+
+    private static void addChunk(List<String> chunks, StringBuilder current) {
+        String chunk = current.toString().trim();
+        current.setLength(0);
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // 单独的标点并入上一句
+        if (chunk.length() == 1 && CLAUSE_DELIMITERS.indexOf(chunk.charAt(0)) >= 0 && !chunks.isEmpty()) {
+            int last = chunks.size() - 1;
+            chunks.set(last, chunks.get(last) + chunk);
+            return;
+        }
+        chunks.add(chunk);
+    }
+
+    private static void writeWav(String filePath, byte[] pcm) throws Exception {
+        int sampleRate = OnnxTtsModel.OUTPUT_SAMPLE_RATE;
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(filePath))) {
+            // RIFF头
+            dos.writeBytes("RIFF");
+            dos.writeInt(Integer.reverseBytes(36 + pcm.length));
+            dos.writeBytes("WAVE");
+            // fmt子块：PCM、单声道、16位
+            dos.writeBytes("fmt ");
+            dos.writeInt(Integer.reverseBytes(16));
+            dos.writeShort(Short.reverseBytes((short) 1));
+            dos.writeShort(Short.reverseBytes((short) 1));
+            dos.writeInt(Integer.reverseBytes(sampleRate));
+            dos.writeInt(Integer.reverseBytes(sampleRate * 2));
+            dos.writeShort(Short.reverseBytes((short) 2));
+            dos.writeShort(Short.reverseBytes((short) 16));
+            // data子块
+            dos.writeBytes("data");
+            dos.writeInt(Integer.reverseBytes(pcm.length));
+            dos.write(pcm);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtLoggingLevel;
+import ai.onnxruntime.OrtSession;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaozhi.utils.SincResampler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Piper（VITS）格式的本地语音合成模型
+ * 模型文件为xxx.onnx，同目录的xxx.onnx.json提供采样率、音素ID表和推理参数。
+ * 前端把文本逐字映射为音素：同目录存在xxx.lexicon（每行“词 音素串”）时先按最长匹配查词典，
+ * 否则直接用字符本身查音素ID表，适用于以字符为音素的模型。同一文本的音素ID会被缓存。
+ * 每个模型持有若干推理会话，并发合成时各自占用一个会话，输出转换为16kHz 16bit单声道PCM
+ */
+public class OnnxTtsModel implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(OnnxTtsModel.class);
+
+    // 输出采样率，与播放参数一致
+    public static final int OUTPUT_SAMPLE_RATE = 16000;
+
+    // Piper音素ID表中的特殊符号
+    private static final String PAD = "_";
+    private static final String BOS = "^";
+    private static final String EOS = "$";
+
+    // 等待空闲会话的最长时间
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+    private final String name;
+    private final int sampleRate;
+    // 模型采样率到输出采样率的重采样器，带抗混叠低通
+    private final SincResampler resampler;
+    private final Map<String, long[]> phonemeIds;
+    private final Map<String, String> lexicon;
+    private final int maxWordLength;
+    private final float[] scales;
+    private final boolean multiSpeaker;
+
+    private final OrtEnvironment env;
+    private final BlockingQueue<OrtSession> sessions;
+    private final List<OrtSession> allSessions = new ArrayList<>();
+
+    // 文本到音素ID的缓存，按访问顺序淘汰
+    private final Map<String, long[]> frontendCache;
+
+    /**
+     * 加载模型
+     *
+     * @param modelPath         模型文件路径
+     * @param poolSize          推理会话数，即最大并发合成数
+     * @param frontendCacheSize 音素ID缓存条数
+     */
+    public OnnxTtsModel(String modelPath, int poolSize, int frontendCacheSize) throws IOException, OrtException {
+        File modelFile = new File(modelPath);
+        this.name = modelFile.getName().replaceAll("\\.onnx$", "");
+
+        JsonNode config = new ObjectMapper().readTree(new File(modelPath + ".json"));
+        this.sampleRate = config.path("audio").path("sample_rate").asInt(22050);
+        this.resampler = new SincResampler(sampleRate, OUTPUT_SAMPLE_RATE);
+        JsonNode inference = config.path("inference");
+        this.scales = new float[] {
+                (float) inference.path("noise_scale").asDouble(0.667),
+                (float) inference.path("length_scale").asDouble(1.0),
+                (float) inference.path("noise_w").asDouble(0.8) };
+        this.multiSpeaker = config.path("num_speakers").asInt(1) > 1;
+
+        this.phonemeIds = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = config.path("phoneme_id_map").fields(); it.hasNext();) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            long[] ids = new long[entry.getValue().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entry.getValue().get(i).asLong();
+            }
+            phonemeIds.put(entry.getKey(), ids);
+        }
+        if (!phonemeIds.containsKey(PAD) || !phonemeIds.containsKey(BOS) || !phonemeIds.containsKey(EOS)) {
+            throw new IOException("模型配置缺少音素ID表: " + modelPath + ".json");
+        }
+
+        this.lexicon = loadLexicon(new File(modelFile.getParentFile(), name + ".lexicon"));
+        int longest = 1;
+        for (String word : lexicon.keySet()) {
+            longest = Math.max(longest, word.length());
+        }
+        this.maxWordLength = longest;
+
+        this.frontendCache = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > frontendCacheSize;
+            }
+        };
+
+        this.env = OrtEnvironment.getEnvironment();
+        this.sessions = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        try {
+            for (int i = 0; i < Math.max(1, poolSize); i++) {
+                OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+                opts.setSessionLogLevel(OrtLoggingLevel.ORT_LOGGING_LEVEL_ERROR);
+                opts.setInterOpNumThreads(1);
+                opts.setIntraOpNumThreads(1);
+                OrtSession session = env.createSession(modelPath, opts);
+                allSessions.add(session);
+                sessions.add(session);
+            }
+        } catch (OrtException e) {
+            close();
+            throw e;
+        }
+        logger.info("本地语音合成模型加载成功 - 模型: {}, 采样率: {}, 会话数: {}, 词典条数: {}",
+                name, sampleRate, allSessions.size(), lexicon.size());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 合成一段文本
+     *
+     * @param text 文本，建议为一个短句或分句
+     * @return 16kHz 16bit单声道小端PCM，文本中没有可发音的字符时返回空数组
+     */
+    public byte[] synthesize(String text) throws OrtException, InterruptedException {
+        long[] ids = phonemize(text);
+        if (ids.length <= 3) {
+            return new byte[0];
+        }
+
+        OrtSession session = sessions.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (session == null) {
+            throw new IllegalStateException("等待本地语音合成会话超时 - 模型: " + name);
+        }
+        try {
+            Map<String, OnnxTensor> inputs = new HashMap<>();
+            try {
+                inputs.put("input", OnnxTensor.createTensor(env, LongBuffer.wrap(ids), new long[] { 1, ids.length }));
+                inputs.put("input_lengths", OnnxTensor.createTensor(env, new long[] { ids.length }));
+                inputs.put("scales", OnnxTensor.createTensor(env, scales));
+                if (multiSpeaker) {
+                    inputs.put("sid", OnnxTensor.createTensor(env, new long[] { 0 }));
+                }
+                try (OrtSession.Result result = session.run(inputs)) {
+                    FloatBuffer audio = ((OnnxTensor) result.get(0)).getFloatBuffer();
+                    float[] samples = new float[audio.remaining()];
+                    audio.get(samples);
+                    return toPcm(resampler.resample(samples));
+                }
+            } finally {
+                for (OnnxTensor tensor : inputs.values()) {
+                    tensor.close();
+                }
+            }
+        } finally {
+            sessions.offer(session);
+        }
+    }
+
+    /**
+     * 文本转音素ID：开头^，每个音素后接_，结尾$
+     */
+    long[] phonemize(String text) {
+        synchronized (frontendCache) {
+            long[] cached = frontendCache.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        List<Long> ids = new ArrayList<>();
+        add(ids, phonemeIds.get(BOS));
+        add(ids, phonemeIds.get(PAD));
+        int i = 0;
+        while (i < normalized.length()) {
+            // 词典按最长匹配
+            String phonemes = null;
+            int matched = 0;
+            for (int len = Math.min(maxWordLength, normalized.length() - i); len > 0 && !lexicon.isEmpty(); len--) {
+                phonemes = lexicon.get(normalized.substring(i, i + len));
+                if (phonemes != null) {
+                    matched = len;
+                    break;
+                }
+            }
+            if (phonemes == null) {
+                int codePoint = normalized.codePointAt(i);
+                matched = Character.charCount(codePoint);
+                phonemes = new String(Character.toChars(codePoint));
+            }
+            for (int p = 0; p < phonemes.length();) {
+                int codePoint = phonemes.codePointAt(p);
+                long[] phonemeId = phonemeIds.get(new String(Character.toChars(codePoint)));
+                if (phonemeId != null) {
+                    add(ids, phonemeId);
+                    add(ids, phonemeIds.get(PAD));
+                }
+                p += Character.charCount(codePoint);
+            }
+            i += matched;
+        }
+        add(ids, phonemeIds.get(EOS));
+
+        long[] result = new long[ids.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = ids.get(k);
+        }
+        synchronized (frontendCache) {
+            frontendCache.put(text, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        for (OrtSession session : allSessions) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                logger.error("关闭本地语音合成模型失败 - 模型: {}", name, e);
+            }
+        }
+        allSessions.clear();
+        sessions.clear();
+    }
+
+    private static void add(List<Long> ids, long[] values) {
+        for (long value : values) {
+            ids.add(value);
+        }
+    }
+
+    /**
+     * 已重采样到16kHz的浮点音频转换为16bit PCM
+     */
+    static byte[] toPcm(float[] samples) {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            double value = samples[i];
+            int sample = (int) Math.round(Math.max(-1.0, Math.min(1.0, value)) * 32767);
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * 读取词典，每行“词 音素串”，#开头为注释
+     */
+    private static Map<String, String> loadLexicon(File file) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(' ');
+            if (separator <= 0) {
+                continue;
+            }
+            String word = Normalizer.normalize(line.substring(0, separator), Normalizer.Form.NFKC).toLowerCase();
+            entries.put(word, line.substring(separator + 1).replace(" ", ""));
+        }
+        return entries;
+    }
+}
@@ -6,19 +6,37 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.websocket.http.HttpClientRegistry;
 import com.xiaozhi.websocket.tts.TtsService;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
 
 import java.util.Base64;
 
@@ -26,7 +44,35 @@ public class VolcengineTtsService implements TtsService {
     private static final Logger logger = LoggerFactory.getLogger(VolcengineTtsService.class);
 
     private static final String PROVIDER_NAME = "volcengine";
-    private static final String API_URL = "https://openspeech.bytedance.com/api/v1/tts";
+    public static final String API_URL = "https://openspeech.bytedance.com/api/v1/tts";
+    // 流式合成的WebSocket二进制协议接口
+    public static final String WS_URL = "wss://openspeech.bytedance.com/api/v1/tts/ws_binary";
+
+    // 流式合成输出16kHz 16bit单声道PCM，与播放参数一致
+    private static final int SAMPLE_RATE = 16000;
+    // 一个60ms播放帧的PCM字节数
+    private static final int FRAME_BYTES = SAMPLE_RATE * 2 * 60 / 1000;
+
+    // 二进制协议的消息类型
+    private static final int MESSAGE_AUDIO_ONLY = 0x0b;
+    private static final int MESSAGE_ERROR = 0x0f;
+    private static final int COMPRESSION_GZIP = 0x01;
+
+    // 音频响应的消息标志
+    private static final int FLAGS_NONE = 0x00;
+    private static final int FLAGS_POSITIVE_SEQUENCE = 0x01;
+    private static final int FLAGS_LAST = 0x02;
+    private static final int FLAGS_NEGATIVE_SEQUENCE = 0x03;
+
+    // 流式合成的最长时间，服务端无响应时结束合成并断开连接
+    private static final long STREAM_TIMEOUT_SECONDS = 60;
+
+    // 流式合成的超时检查，所有实例共用，只做调度
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "volcengine-tts-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
     // 音频名称
@@ -38,18 +84,22 @@ public class VolcengineTtsService implements TtsService {
     // API相关
     private String appId;
     private String accessToken; // 对应 apiKey
+    private String wsUrl;
 
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .build();
+    // HTTP客户端，由工厂从注册表中分配，未设置时使用共享的默认客户端
+    private OkHttpClient client = HttpClientRegistry.defaultClient();
 
     public VolcengineTtsService(SysConfig config, String voiceName, String outputPath) {
         this.voiceName = voiceName;
         this.outputPath = outputPath;
         this.appId = config.getAppId();
         this.accessToken = config.getApiKey();
+        this.wsUrl = resolveWsUrl(config.getApiUrl());
+    }
+
+    // 设置HTTP客户端的方法，由工厂类调用
+    public void setHttpClient(OkHttpClient client) {
+        this.client = client;
     }
 
     @Override
@@ -95,38 +145,7 @@ public class VolcengineTtsService implements TtsService {
     private boolean sendRequest(String text, String audioFilePath) throws Exception {
         try {
             // 构建请求参数
-            JsonObject requestJson = new JsonObject();
-
-            // app部分
-            JsonObject app = new JsonObject();
-            app.addProperty("appid", appId);
-            app.addProperty("token", accessToken);
-            app.addProperty("cluster", "volcano_tts");
-            requestJson.add("app", app);
-
-            // user部分
-            JsonObject user = new JsonObject();
-            user.addProperty("uid", UUID.randomUUID().toString());
-            requestJson.add("user", user);
-
-            // audio部分
-            JsonObject audio = new JsonObject();
-            audio.addProperty("voice_type", voiceName);
-            audio.addProperty("encoding", "mp3");
-            audio.addProperty("speed_ratio", 1.0);
-            audio.addProperty("volume_ratio", 1.0);
-            audio.addProperty("pitch_ratio", 1.0);
-            requestJson.add("audio", audio);
-
-            // request部分
-            JsonObject request_JsonObject = new JsonObject();
-            request_JsonObject.addProperty("reqid", UUID.randomUUID().toString());
-            request_JsonObject.addProperty("text", text);
-            request_JsonObject.addProperty("text_type", "plain");
-            request_JsonObject.addProperty("operation", "query");
-            request_JsonObject.addProperty("with_frontend", 1);
-            request_JsonObject.addProperty("frontend_type", "unitTson");
-            requestJson.add("request", request_JsonObject);
+            JsonObject requestJson = buildRequest(text, "mp3", "query");
 
             // 使用Bearer Token鉴权方式
             String bearerToken = "Bearer; " + accessToken; // 注意分号是火山引擎的特殊格式
@@ -194,9 +213,254 @@ public class VolcengineTtsService implements TtsService {
         }
     }
 
+    /**
+     * 构建合成请求，HTTP接口和WebSocket接口格式相同
+     *
+     * @param encoding  音频编码
+     * @param operation query为一次性返回，submit为流式返回
+     */
+    private JsonObject buildRequest(String text, String encoding, String operation) {
+        JsonObject requestJson = new JsonObject();
+
+        // app部分
+        JsonObject app = new JsonObject();
+        app.addProperty("appid", appId);
+        app.addProperty("token", accessToken);
+        app.addProperty("cluster", "volcano_tts");
+        requestJson.add("app", app);
+
+        // user部分
+        JsonObject user = new JsonObject();
+        user.addProperty("uid", UUID.randomUUID().toString());
+        requestJson.add("user", user);
+
+        // audio部分
+        JsonObject audio = new JsonObject();
+        audio.addProperty("voice_type", voiceName);
+        audio.addProperty("encoding", encoding);
+        if ("pcm".equals(encoding)) {
+            audio.addProperty("rate", SAMPLE_RATE);
+        }
+        audio.addProperty("speed_ratio", 1.0);
+        audio.addProperty("volume_ratio", 1.0);
+        audio.addProperty("pitch_ratio", 1.0);
+        requestJson.add("audio", audio);
+
+        // request部分
+        JsonObject request_JsonObject = new JsonObject();
+        request_JsonObject.addProperty("reqid", UUID.randomUUID().toString());
+        request_JsonObject.addProperty("text", text);
+        request_JsonObject.addProperty("text_type", "plain");
+        request_JsonObject.addProperty("operation", operation);
+        if ("query".equals(operation)) {
+            request_JsonObject.addProperty("with_frontend", 1);
+            request_JsonObject.addProperty("frontend_type", "unitTson");
+        }
+        requestJson.add("request", request_JsonObject);
+        return requestJson;
+    }
+
+    @Override
+    public boolean supportsStreaming() {
+        return true;
+    }
+
     @Override
     public void streamTextToSpeech(String text, Consumer<byte[]> audioDataConsumer) throws Exception {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'streamTextToSpeech'");
+        try {
+            streamTextToSpeechAsync(text, audioDataConsumer).get(STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * 通过WebSocket二进制协议流式合成，服务端边合成边返回PCM，收到一帧即交给消费者，
+     * 不必等整句合成完成。音频按播放帧长对齐后再交出，避免编码时出现不完整的帧
+     */
+    @Override
+    public CompletableFuture<Void> streamTextToSpeechAsync(String text, Consumer<byte[]> audioDataConsumer) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (text == null || text.isEmpty()) {
+            logger.warn("文本内容为空！");
+            future.complete(null);
+            return future;
+        }
+
+        byte[] frame;
+        try {
+            frame = encodeRequest(buildRequest(text, "pcm", "submit").toString());
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Request request = new Request.Builder()
+                .url(wsUrl)
+                .addHeader("Authorization", "Bearer; " + accessToken)
+                .build();
+
+        long startTime = System.currentTimeMillis();
+        logger.info("开始火山引擎流式语音合成 - 文本长度: {}", text.length());
+
+        WebSocket socket = client.newWebSocket(request, new WebSocketListener() {
+            private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+            private boolean firstChunk = true;
+
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send(ByteString.of(frame));
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                try {
+                    boolean last = decodeResponse(bytes.toByteArray(), this::onAudio);
+                    if (last) {
+                        // 交出不足一帧的剩余音频
+                        if (pending.size() > 0) {
+                            audioDataConsumer.accept(pending.toByteArray());
+                            pending.reset();
+                        }
+                        logger.debug("火山引擎流式语音合成完成，总耗时: {} ms", System.currentTimeMillis() - startTime);
+                        future.complete(null);
+                        webSocket.close(1000, null);
+                    }
+                } catch (Exception e) {
+                    logger.error("火山引擎流式语音合成失败: {}", e.getMessage());
+                    future.completeExceptionally(e);
+                    webSocket.cancel();
+                }
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (!future.isDone()) {
+                    logger.error("火山引擎流式语音合成连接失败: {}", t.getMessage());
+                    future.completeExceptionally(t);
+                }
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                if (!future.isDone()) {
+                    future.completeExceptionally(
+                            new IOException("火山引擎TTS连接提前关闭: " + code + " " + reason));
+                }
+            }
+
+            private void onAudio(byte[] pcm) {
+                if (firstChunk) {
+                    firstChunk = false;
+                    logger.info("收到首个音频数据包，延迟: {} ms", System.currentTimeMillis() - startTime);
+                }
+                pending.write(pcm, 0, pcm.length);
+                int aligned = pending.size() / FRAME_BYTES * FRAME_BYTES;
+                if (aligned > 0) {
+                    byte[] buffered = pending.toByteArray();
+                    audioDataConsumer.accept(Arrays.copyOf(buffered, aligned));
+                    pending.reset();
+                    pending.write(buffered, aligned, buffered.length - aligned);
+                }
+            }
+        });
+
+        // 服务端不再返回数据也不关闭连接时，超时结束，不让调用方一直等待
+        ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+            if (future.completeExceptionally(
+                    new TimeoutException("火山引擎流式语音合成超时: " + STREAM_TIMEOUT_SECONDS + "s"))) {
+                logger.error("火山引擎流式语音合成超时 - 文本长度: {}", text.length());
+                socket.cancel();
+            }
+        }, STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        future.whenComplete((result, error) -> timeout.cancel(false));
+
+        return future;
+    }
+
+    /**
+     * 编码客户端请求：4字节协议头（版本1、头长度1、完整请求、JSON、不压缩）+ 4字节负载长度 + JSON负载
+     */
+    static byte[] encodeRequest(String json) throws IOException {
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + payload.length);
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(new byte[] { 0x11, 0x10, 0x10, 0x00 });
+        data.writeInt(payload.length);
+        data.write(payload);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解析服务端消息
+     *
+     * @param message 二进制消息
+     * @param onAudio 音频数据回调
+     * @return 是否为最后一个音频包
+     */
+    static boolean decodeResponse(byte[] message, Consumer<byte[]> onAudio) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        int headerSize = (message[0] & 0x0f) * 4;
+        int messageType = (message[1] >> 4) & 0x0f;
+        int flags = message[1] & 0x0f;
+        int compression = message[2] & 0x0f;
+        buffer.position(headerSize);
+
+        switch (messageType) {
+            case MESSAGE_AUDIO_ONLY: {
+                // 无负载的音频响应仅表示请求已受理
+                if (flags == FLAGS_NONE) {
+                    return false;
+                }
+                // 1为带正序号的中间包，3为带负序号的最后一包，2为不带序号的最后一包
+                int sequence = flags == FLAGS_POSITIVE_SEQUENCE || flags == FLAGS_NEGATIVE_SEQUENCE
+                        ? buffer.getInt() : 0;
+                int size = buffer.getInt();
+                if (size > 0) {
+                    byte[] audio = new byte[size];
+                    buffer.get(audio);
+                    onAudio.accept(audio);
+                }
+                return flags == FLAGS_LAST || flags == FLAGS_NEGATIVE_SEQUENCE || sequence < 0;
+            }
+            case MESSAGE_ERROR: {
+                int code = buffer.getInt();
+                int size = buffer.getInt();
+                byte[] payload = new byte[size];
+                buffer.get(payload);
+                if (compression == COMPRESSION_GZIP) {
+                    payload = gunzip(payload);
+                }
+                throw new IOException("火山引擎TTS返回错误: code=" + code + ", message="
+                        + new String(payload, StandardCharsets.UTF_8));
+            }
+            default:
+                // 前端信息等其他消息不影响音频
+                return false;
+        }
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 配置了WebSocket地址时使用配置的地址（如本地模拟服务）
+     */
+    private static String resolveWsUrl(String apiUrl) {
+        if (apiUrl != null && (apiUrl.startsWith("ws://") || apiUrl.startsWith("wss://"))) {
+            return apiUrl;
+        }
+        return WS_URL;
     }
 }
@@ -0,0 +1,514 @@
+package com.xiaozhi.websocket.tts.text;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 中文语音合成文本归一化
+ * 单次扫描，不使用正则：去掉Markdown标记、链接地址和表情符号，
+ * 数字按上下文转写为读法（整数、小数、百分数、分数、负数、范围、日期、时间、年份和号码），
+ * 数字后的单位和货币符号按预先构建的字典树最长匹配转写为中文。无状态，可在多个线程中共用
+ */
+public class ChineseTextNormalizer implements TextNormalizer {
+
+    private static final char[] DIGITS = "零一二三四五六七八九".toCharArray();
+    private static final String[] SMALL_UNITS = { "", "十", "百", "千" };
+    private static final String[] GROUP_UNITS = { "", "万", "亿", "万亿" };
+
+    // 超过该位数的整数逐位朗读
+    private static final int MAX_CARDINAL_DIGITS = 12;
+
+    // 直接丢弃的Markdown标记
+    private static final String MARKUP = "*`#_|[]~";
+
+    // 两个数字之间的运算符
+    private static final Map<Character, String> OPERATORS = new HashMap<>();
+
+    // 数字前的货币符号
+    private static final Map<Character, String> CURRENCIES = new HashMap<>();
+
+    // 数字后的单位
+    private static final Trie UNITS = new Trie();
+
+    static {
+        OPERATORS.put('+', "加");
+        OPERATORS.put('×', "乘");
+        OPERATORS.put('*', "乘");
+        OPERATORS.put('÷', "除以");
+        OPERATORS.put('=', "等于");
+        OPERATORS.put('<', "小于");
+        OPERATORS.put('>', "大于");
+
+        CURRENCIES.put('$', "美元");
+        CURRENCIES.put('¥', "元");
+        CURRENCIES.put('￥', "元");
+        CURRENCIES.put('€', "欧元");
+        CURRENCIES.put('£', "英镑");
+
+        String[][] units = {
+                { "km/h", "公里每小时" }, { "m/s", "米每秒" }, { "km", "公里" }, { "cm", "厘米" },
+                { "mm", "毫米" }, { "m", "米" }, { "kg", "千克" }, { "mg", "毫克" }, { "g", "克" },
+                { "ml", "毫升" }, { "mL", "毫升" }, { "L", "升" }, { "°C", "摄氏度" }, { "℃", "摄氏度" },
+                { "°F", "华氏度" }, { "°", "度" }, { "min", "分钟" }, { "ms", "毫秒" }, { "s", "秒" },
+                { "h", "小时" }, { "kW", "千瓦" }, { "W", "瓦" }, { "V", "伏" }, { "kHz", "千赫兹" },
+                { "Hz", "赫兹" }, { "MB", "兆" }, { "GB", "G" }, { "TB", "T" }, { "KB", "K" } };
+        for (String[] unit : units) {
+            UNITS.put(unit[0], unit[1]);
+        }
+    }
+
+    @Override
+    public String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        int n = text.length();
+        StringBuilder out = new StringBuilder(n + 8);
+        boolean lineStart = true;
+        int i = 0;
+        while (i < n) {
+            if (lineStart) {
+                lineStart = false;
+                i = skipLinePrefix(text, i);
+                if (i >= n) {
+                    break;
+                }
+            }
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                appendBreak(out);
+                lineStart = true;
+                i++;
+            } else if (isDigit(c)) {
+                i = number(text, i, out);
+            } else if ((c == '-' || c == '−') && i + 1 < n && isDigit(text.charAt(i + 1))
+                    && (i == 0 || !isAsciiLetterOrDigit(text.charAt(i - 1)))) {
+                out.append('负');
+                i++;
+            } else if (CURRENCIES.containsKey(c) && i + 1 < n && isDigit(text.charAt(i + 1))) {
+                i = number(text, i + 1, out);
+                out.append(CURRENCIES.get(c));
+            } else if (isUrlStart(text, i)) {
+                i = skipUrl(text, i);
+            } else if (c == ']' && i + 1 < n && text.charAt(i + 1) == '(') {
+                // Markdown链接只保留文字
+                int close = text.indexOf(')', i + 2);
+                i = close < 0 ? n : close + 1;
+            } else if (c == '!' && i + 1 < n && text.charAt(i + 1) == '[') {
+                i++;
+            } else if (MARKUP.indexOf(c) >= 0) {
+                i++;
+            } else if (c == '&') {
+                out.append('和');
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                appendSpace(out);
+                i++;
+            } else {
+                int codePoint = text.codePointAt(i);
+                if (!isEmoji(codePoint)) {
+                    out.appendCodePoint(codePoint);
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+        return compactSpaces(out);
+    }
+
+    /**
+     * 跳过行首的Markdown标记：标题、引用、列表符号和有序列表序号
+     */
+    private static int skipLinePrefix(String text, int i) {
+        int n = text.length();
+        while (i < n && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        while (i < n && (text.charAt(i) == '#' || text.charAt(i) == '>')) {
+            i++;
+        }
+        if (i + 1 < n && (text.charAt(i) == '-' || text.charAt(i) == '*' || text.charAt(i) == '+')
+                && text.charAt(i + 1) == ' ') {
+            return i + 2;
+        }
+        int j = i;
+        while (j < n && isDigit(text.charAt(j))) {
+            j++;
+        }
+        if (j > i && j + 1 < n && text.charAt(j) == '.' && text.charAt(j + 1) == ' ') {
+            return j + 2;
+        }
+        return i;
+    }
+
+    /**
+     * 转写从i开始的数字及其前后缀，返回数字之后的位置
+     */
+    private static int number(String text, int i, StringBuilder out) {
+        int n = text.length();
+        int start = i;
+        StringBuilder digits = new StringBuilder();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                digits.append(c);
+                i++;
+            } else if (c == ',' && digitRun(text, i + 1) == 3) {
+                // 千分位分隔符
+                i++;
+            } else {
+                break;
+            }
+        }
+        String integer = digits.toString();
+        char next = i < n ? text.charAt(i) : 0;
+
+        // 日期：2024-05-01、2024/5/1
+        if (integer.length() == 4 && i == start + 4 && (next == '-' || next == '/')) {
+            int end = date(text, i, integer, next, out);
+            if (end > 0) {
+                return end;
+            }
+        }
+
+        // 时间：8:05、12:30:15
+        if (integer.length() <= 2 && (next == ':' || next == '：') && digitRun(text, i + 1) == 2) {
+            int end = time(text, i, Integer.parseInt(integer), out);
+            if (end > 0) {
+                return end;
+            }
+        }
+
+        String reading;
+        if (next == '.' && digitRun(text, i + 1) > 0) {
+            int fractionEnd = i + 1 + digitRun(text, i + 1);
+            reading = cardinal(integer) + "点" + spell(text.substring(i + 1, fractionEnd));
+            i = fractionEnd;
+        } else if ((next == '年' && integer.length() == 4) || isCode(integer)) {
+            reading = spell(integer);
+        } else {
+            reading = cardinal(integer);
+        }
+        next = i < n ? text.charAt(i) : 0;
+
+        if (next == '%' || next == '％') {
+            out.append("百分之").append(reading);
+            i++;
+        } else if (next == '‰') {
+            out.append("千分之").append(reading);
+            i++;
+        } else if (next == '/' && digitRun(text, i + 1) > 0 && reading.indexOf('点') < 0
+                && isFraction(text, i + 1, integer)) {
+            int run = digitRun(text, i + 1);
+            out.append(cardinal(text.substring(i + 1, i + 1 + run))).append("分之").append(reading);
+            i += 1 + run;
+        } else {
+            out.append(reading);
+            i = unit(text, i, out);
+        }
+
+        // 范围和运算符，后面的数字由主循环继续处理
+        if (i + 1 < n && isDigit(text.charAt(i + 1))) {
+            char c = text.charAt(i);
+            if (c == '-' || c == '~' || c == '～' || c == '—') {
+                out.append('到');
+                i++;
+            } else if (OPERATORS.containsKey(c)) {
+                out.append(OPERATORS.get(c));
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 分母大于分子时按分数读
+     */
+    private static boolean isFraction(String text, int i, String numerator) {
+        int run = digitRun(text, i);
+        if (run > MAX_CARDINAL_DIGITS || numerator.length() > MAX_CARDINAL_DIGITS) {
+            return false;
+        }
+        return Long.parseLong(text.substring(i, i + run)) > Long.parseLong(numerator);
+    }
+
+    /**
+     * 转写年月日，格式不符时返回-1
+     */
+    private static int date(String text, int i, String year, char separator, StringBuilder out) {
+        int monthLength = digitRun(text, i + 1);
+        if (monthLength < 1 || monthLength > 2) {
+            return -1;
+        }
+        int month = Integer.parseInt(text.substring(i + 1, i + 1 + monthLength));
+        int j = i + 1 + monthLength;
+        if (month < 1 || month > 12 || j >= text.length() || text.charAt(j) != separator) {
+            return -1;
+        }
+        int dayLength = digitRun(text, j + 1);
+        if (dayLength < 1 || dayLength > 2) {
+            return -1;
+        }
+        int day = Integer.parseInt(text.substring(j + 1, j + 1 + dayLength));
+        if (day < 1 || day > 31) {
+            return -1;
+        }
+        out.append(spell(year)).append('年').append(cardinal(String.valueOf(month))).append('月')
+                .append(cardinal(String.valueOf(day))).append('日');
+        return j + 1 + dayLength;
+    }
+
+    /**
+     * 转写时分（秒），格式不符时返回-1
+     */
+    private static int time(String text, int i, int hour, StringBuilder out) {
+        int minute = Integer.parseInt(text.substring(i + 1, i + 3));
+        if (hour > 24 || minute > 59) {
+            return -1;
+        }
+        int end = i + 3;
+        int second = -1;
+        if (end < text.length() && (text.charAt(end) == ':' || text.charAt(end) == '：')
+                && digitRun(text, end + 1) == 2) {
+            second = Integer.parseInt(text.substring(end + 1, end + 3));
+            end += 3;
+        }
+        out.append(cardinal(String.valueOf(hour))).append('点');
+        if (minute > 0 || second > 0) {
+            out.append(minute < 10 ? "零" + (minute > 0 ? String.valueOf(DIGITS[minute]) : "")
+                    : cardinal(String.valueOf(minute))).append('分');
+        }
+        if (second > 0) {
+            out.append(cardinal(String.valueOf(second))).append('秒');
+        }
+        return end;
+    }
+
+    /**
+     * 数字后的单位，允许中间有一个空格；单位后紧跟英文字母时不视为单位
+     */
+    private static int unit(String text, int i, StringBuilder out) {
+        int n = text.length();
+        int from = i < n && text.charAt(i) == ' ' ? i + 1 : i;
+        int[] lengths = UNITS.matchLengths(text, from);
+        for (int k = lengths.length - 1; k >= 0; k--) {
+            int end = from + lengths[k];
+            if (end < n && isAsciiLetter(text.charAt(end))) {
+                continue;
+            }
+            out.append(UNITS.get(text, from, lengths[k]));
+            return end;
+        }
+        return i;
+    }
+
+    /**
+     * 电话号码、编号等逐位朗读：以0开头的多位数、11位手机号和超长数字
+     */
+    private static boolean isCode(String digits) {
+        return digits.length() > MAX_CARDINAL_DIGITS
+                || digits.length() > 1 && digits.charAt(0) == '0'
+                || digits.length() == 11 && digits.charAt(0) == '1';
+    }
+
+    /**
+     * 逐位朗读
+     */
+    static String spell(String digits) {
+        StringBuilder sb = new StringBuilder(digits.length());
+        for (int i = 0; i < digits.length(); i++) {
+            sb.append(DIGITS[digits.charAt(i) - '0']);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 整数读法，如10读作十、1005读作一千零五、120000读作十二万
+     */
+    static String cardinal(String digits) {
+        int first = 0;
+        while (first < digits.length() - 1 && digits.charAt(first) == '0') {
+            first++;
+        }
+        digits = digits.substring(first);
+        if (digits.length() > MAX_CARDINAL_DIGITS) {
+            return spell(digits);
+        }
+        if (digits.equals("0")) {
+            return "零";
+        }
+        StringBuilder sb = new StringBuilder();
+        int groups = (digits.length() + 3) / 4;
+        boolean pendingZero = false;
+        for (int g = groups - 1; g >= 0; g--) {
+            int end = digits.length() - g * 4;
+            int value = Integer.parseInt(digits.substring(Math.max(0, end - 4), end));
+            if (value == 0) {
+                pendingZero = sb.length() > 0;
+                continue;
+            }
+            if (sb.length() > 0 && (pendingZero || value < 1000)) {
+                sb.append('零');
+            }
+            group(value, sb);
+            sb.append(GROUP_UNITS[g]);
+            pendingZero = false;
+        }
+        // 十到十九开头时省略“一”
+        if (sb.length() >= 2 && sb.charAt(0) == '一' && sb.charAt(1) == '十') {
+            sb.deleteCharAt(0);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 四位以内的读法
+     */
+    private static void group(int value, StringBuilder sb) {
+        boolean zero = false;
+        boolean started = false;
+        for (int k = 3; k >= 0; k--) {
+            int d = value / (int) Math.pow(10, k) % 10;
+            if (d == 0) {
+                zero = started;
+                continue;
+            }
+            if (zero) {
+                sb.append('零');
+                zero = false;
+            }
+            sb.append(DIGITS[d]).append(SMALL_UNITS[k]);
+            started = true;
+        }
+    }
+
+    private static boolean isUrlStart(String text, int i) {
+        return text.startsWith("http://", i) || text.startsWith("https://", i) || text.startsWith("www.", i);
+    }
+
+    /**
+     * 跳过链接地址，遇到空白、中文或右括号结束
+     */
+    private static int skipUrl(String text, int i) {
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == ')' || c > 0x7f) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isEmoji(int codePoint) {
+        return codePoint >= 0x1F000 && codePoint <= 0x1FAFF
+                || codePoint >= 0x2600 && codePoint <= 0x27BF
+                || codePoint >= 0x2B00 && codePoint <= 0x2BFF
+                || codePoint >= 0xFE00 && codePoint <= 0xFE0F
+                || codePoint == 0x200D || codePoint == 0x20E3;
+    }
+
+    private static int digitRun(String text, int i) {
+        int run = 0;
+        while (i + run < text.length() && isDigit(text.charAt(i + run))) {
+            run++;
+        }
+        return run;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || isDigit(c);
+    }
+
+    private static void appendSpace(StringBuilder out) {
+        if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    /**
+     * 换行处补一个逗号作为停顿，前面已有标点时不补
+     */
+    private static void appendBreak(StringBuilder out) {
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') {
+            end--;
+        }
+        out.setLength(end);
+        if (end > 0 && Character.isLetterOrDigit(out.charAt(end - 1))) {
+            out.append('，');
+        }
+    }
+
+    /**
+     * 去掉首尾空格，以及与中文或标点相邻的空格，英文单词之间的空格保留
+     */
+    private static String compactSpaces(StringBuilder out) {
+        StringBuilder sb = new StringBuilder(out.length());
+        for (int i = 0; i < out.length(); i++) {
+            char c = out.charAt(i);
+            if (c == ' ') {
+                boolean keep = sb.length() > 0 && i + 1 < out.length()
+                        && isAsciiLetterOrDigit(sb.charAt(sb.length() - 1))
+                        && isAsciiLetterOrDigit(out.charAt(i + 1));
+                if (!keep) {
+                    continue;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单位字典树，构建后只读
+     */
+    private static class Trie {
+        private final Map<Character, Trie> children = new HashMap<>();
+        private String value;
+
+        void put(String key, String word) {
+            Trie node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Trie());
+            }
+            node.value = word;
+        }
+
+        /**
+         * 从from开始能匹配到的所有键的长度，由短到长
+         */
+        int[] matchLengths(String text, int from) {
+            int[] lengths = new int[0];
+            Trie node = this;
+            for (int i = from; i < text.length(); i++) {
+                node = node.children.get(text.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.value != null) {
+                    int[] grown = new int[lengths.length + 1];
+                    System.arraycopy(lengths, 0, grown, 0, lengths.length);
+                    grown[lengths.length] = i - from + 1;
+                    lengths = grown;
+                }
+            }
+            return lengths;
+        }
+
+        String get(String text, int from, int length) {
+            Trie node = this;
+            for (int i = from; i < from + length; i++) {
+                node = node.children.get(text.charAt(i));
+            }
+            return node.value;
+        }
+    }
+}
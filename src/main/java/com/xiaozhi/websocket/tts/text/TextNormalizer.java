@@ -0,0 +1,15 @@
+package com.xiaozhi.websocket.tts.text;
+
+/**
+ * 语音合成文本归一化
+ * 模型输出的句子在送入语音合成前经过归一化，去掉不需要朗读的内容，把数字、符号等转写为读法。
+ * 实现需线程安全，在语音合成调度线程中对每个句子调用
+ */
+public interface TextNormalizer {
+
+    /**
+     * @param text 模型输出的句子
+     * @return 用于合成的文本，没有需要朗读的内容时返回空字符串
+     */
+    String normalize(String text);
+}
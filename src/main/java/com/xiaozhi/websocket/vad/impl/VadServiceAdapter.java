@@ -6,6 +6,7 @@ import org.springframework.stereotype.Component;
 import com.xiaozhi.websocket.vad.VadDetector;
 import com.xiaozhi.websocket.service.VadService;
 import com.xiaozhi.websocket.service.VadService.VadResult;
+import com.xiaozhi.websocket.stt.PcmBuffer;
 
 /**
  * VadDetector接口的适配器，连接到新的VadService实现
@@ -33,8 +34,9 @@ public class VadServiceAdapter implements VadDetector {
                 return pcmData;
             }
 
-            // 返回处理后的音频数据
-            return result.getProcessedData();
+            // 返回处理后的音频数据，预缓冲数据不使用
+            result.getPreBufferData().forEach(PcmBuffer::release);
+            return result.getProcessedData().detach();
         } catch (Exception e) {
             // 发生异常时返回原始数据
             return pcmData;
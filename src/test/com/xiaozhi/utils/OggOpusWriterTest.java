@@ -0,0 +1,185 @@
+package com.xiaozhi.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class OggOpusWriterTest {
+
+    /**
+     * 解析出的Ogg页
+     */
+    private static class Page {
+        int headerType;
+        long granule;
+        int serial;
+        int sequence;
+        List<byte[]> packets = new ArrayList<>();
+    }
+
+    private static byte[] write(List<byte[]> frames, int durationMs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OggOpusWriter writer = new OggOpusWriter(out, 16000, 1)) {
+            for (byte[] frame : frames) {
+                writer.writePacket(frame, durationMs);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Page> parse(byte[] data) {
+        List<Page> pages = new ArrayList<>();
+        int offset = 0;
+        while (offset < data.length) {
+            assertEquals("OggS", new String(data, offset, 4, StandardCharsets.US_ASCII));
+            assertEquals(0, data[offset + 4]);
+            Page page = new Page();
+            page.headerType = data[offset + 5] & 0xff;
+            page.granule = readIntLE(data, offset + 6) & 0xffffffffL | (long) readIntLE(data, offset + 10) << 32;
+            page.serial = readIntLE(data, offset + 14);
+            page.sequence = readIntLE(data, offset + 18);
+            int storedCrc = readIntLE(data, offset + 22);
+            int segmentCount = data[offset + 26] & 0xff;
+            int bodyLength = 0;
+            for (int i = 0; i < segmentCount; i++) {
+                bodyLength += data[offset + 27 + i] & 0xff;
+            }
+            int pageLength = 27 + segmentCount + bodyLength;
+
+            byte[] copy = Arrays.copyOfRange(data, offset, offset + pageLength);
+            copy[22] = copy[23] = copy[24] = copy[25] = 0;
+            assertEquals(crc(copy), storedCrc, "页CRC不正确");
+
+            int body = offset + 27 + segmentCount;
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            for (int i = 0; i < segmentCount; i++) {
+                int lacing = data[offset + 27 + i] & 0xff;
+                packet.write(data, body, lacing);
+                body += lacing;
+                if (lacing < 255) {
+                    page.packets.add(packet.toByteArray());
+                    packet.reset();
+                }
+            }
+            pages.add(page);
+            offset += pageLength;
+        }
+        return pages;
+    }
+
+    private static int readIntLE(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * 逐位计算的Ogg CRC32（多项式0x04c11db7，不反射，初值0）
+     */
+    private static int crc(byte[] data) {
+        int crc = 0;
+        for (byte b : data) {
+            crc ^= (b & 0xff) << 24;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] frame(int length, int seed) {
+        byte[] frame = new byte[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = (byte) (seed + i);
+        }
+        return frame;
+    }
+
+    @Test
+    public void writesOpusHeadAndTags() throws IOException {
+        List<Page> pages = parse(write(new ArrayList<>(), 60));
+
+        assertEquals(3, pages.size());
+        Page head = pages.get(0);
+        assertEquals(0x02, head.headerType);
+        assertEquals(0, head.sequence);
+        byte[] opusHead = head.packets.get(0);
+        assertEquals(19, opusHead.length);
+        assertEquals("OpusHead", new String(opusHead, 0, 8, StandardCharsets.US_ASCII));
+        assertEquals(1, opusHead[8]);
+        assertEquals(1, opusHead[9]);
+        assertEquals(16000, readIntLE(opusHead, 12));
+
+        byte[] tags = pages.get(1).packets.get(0);
+        assertEquals("OpusTags", new String(tags, 0, 8, StandardCharsets.US_ASCII));
+        assertEquals(0, pages.get(1).headerType);
+
+        // 没有音频帧时最后一页为空的结束页
+        assertEquals(0x04, pages.get(2).headerType);
+        assertTrue(pages.get(2).packets.isEmpty());
+    }
+
+    @Test
+    public void roundTripsPacketsWithGranuleAndSequence() throws IOException {
+        List<byte[]> frames = Arrays.asList(frame(120, 1), frame(255, 2), frame(600, 3), frame(0, 4));
+        List<Page> pages = parse(write(frames, 60));
+
+        assertEquals(3, pages.size());
+        Page audio = pages.get(2);
+        assertEquals(0x04, audio.headerType);
+        assertEquals(2, audio.sequence);
+        assertEquals(4 * 48000 * 60 / 1000, audio.granule);
+        assertEquals(frames.size(), audio.packets.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertArrayEquals(frames.get(i), audio.packets.get(i));
+        }
+        for (Page page : pages) {
+            assertEquals(pages.get(0).serial, page.serial);
+        }
+    }
+
+    @Test
+    public void startsNewPageWhenPageIsFull() throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            frames.add(frame(300, i));
+        }
+        List<Page> pages = parse(write(frames, 60));
+
+        assertTrue(pages.size() > 4);
+        List<byte[]> packets = new ArrayList<>();
+        long previousGranule = 0;
+        for (int i = 2; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            assertEquals(i, page.sequence);
+            assertEquals(i == pages.size() - 1 ? 0x04 : 0, page.headerType);
+            packets.addAll(page.packets);
+            // 每页的granule position为该页最后一帧结束时的位置
+            assertEquals(previousGranule + page.packets.size() * 2880L, page.granule);
+            previousGranule = page.granule;
+        }
+        assertEquals(frames.size(), packets.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertArrayEquals(frames.get(i), packets.get(i));
+        }
+    }
+
+    @Test
+    public void closeIsIdempotent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OggOpusWriter writer = new OggOpusWriter(out, 16000, 1);
+        writer.writePacket(frame(10, 0), 60);
+        writer.close();
+        int length = out.size();
+        writer.close();
+        assertEquals(length, out.size());
+    }
+}
@@ -0,0 +1,104 @@
+package com.xiaozhi.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class SincResamplerTest {
+
+    private static float[] sine(double frequency, int sampleRate, int length) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    /**
+     * 去掉首尾各10%后的均方根，避开段边缘的过渡
+     */
+    private static double rms(float[] samples) {
+        int from = samples.length / 10;
+        int to = samples.length - from;
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    /**
+     * 上升过零点数，用于估算频率
+     */
+    private static int zeroCrossings(float[] samples) {
+        int count = 0;
+        for (int i = 1; i < samples.length; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void outputLengthFollowsRateRatio() {
+        SincResampler resampler = new SincResampler(22050, 16000);
+        assertEquals(16000, resampler.resample(new float[22050]).length);
+        assertEquals(725, resampler.resample(new float[1000]).length);
+        assertEquals(0, resampler.resample(new float[0]).length);
+    }
+
+    @Test
+    public void sameRateReturnsCopy() {
+        SincResampler resampler = new SincResampler(16000, 16000);
+        float[] input = sine(440, 16000, 100);
+        float[] output = resampler.resample(input);
+        assertNotSame(input, output);
+        assertArrayEquals(input, output);
+    }
+
+    @Test
+    public void passbandToneIsPreserved() {
+        float[] output = new SincResampler(22050, 16000).resample(sine(1000, 22050, 22050));
+
+        assertEquals(0.5 / Math.sqrt(2), rms(output), 0.01);
+        assertEquals(1000, zeroCrossings(output), 2);
+    }
+
+    @Test
+    public void toneAboveTargetNyquistIsRemoved() {
+        // 10kHz高于16kHz的奈奎斯特频率，不滤除会混叠为6kHz
+        float[] input = sine(10000, 22050, 22050);
+        float[] output = new SincResampler(22050, 16000).resample(input);
+
+        assertTrue(rms(output) < rms(input) * 0.01, "混叠残留: " + rms(output));
+    }
+
+    @Test
+    public void upsamplingKeepsTone() {
+        float[] output = new SincResampler(8000, 16000).resample(sine(500, 8000, 8000));
+
+        assertEquals(16000, output.length);
+        assertEquals(0.5 / Math.sqrt(2), rms(output), 0.01);
+        assertEquals(500, zeroCrossings(output), 2);
+    }
+
+    @Test
+    public void unreducibleRatioUsesNearestPhase() {
+        // 约分后分子仍大于相位上限
+        SincResampler resampler = new SincResampler(44099, 16001);
+        float[] output = resampler.resample(sine(1000, 44099, 44099));
+
+        assertEquals(16001, output.length);
+        assertEquals(0.5 / Math.sqrt(2), rms(output), 0.01);
+    }
+
+    @Test
+    public void rejectsInvalidRates() {
+        assertThrows(IllegalArgumentException.class, () -> new SincResampler(0, 16000));
+    }
+}
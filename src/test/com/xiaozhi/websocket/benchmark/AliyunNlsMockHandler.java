@@ -0,0 +1,140 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 模拟阿里云NLS实时语音识别（SpeechTranscriber）WebSocket服务
+ * 收到StartTranscription后返回TranscriptionStarted；收到音频后按脚本返回SentenceBegin和TranscriptionResultChanged，
+ * 收到StopTranscription后返回SentenceEnd和TranscriptionCompleted
+ */
+@Component
+@Profile("benchmark")
+public class AliyunNlsMockHandler implements WebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(AliyunNlsMockHandler.class);
+
+    public static final String PATH = "/mock/aliyun/nls";
+
+    private static final String NAMESPACE = "SpeechTranscriber";
+    private static final int STATUS_SUCCESS = 20000000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private MockAsrScript script;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<String> taskId = new AtomicReference<>(UUID.randomUUID().toString().replace("-", ""));
+        AtomicReference<Disposable> partials = new AtomicReference<>();
+
+        Mono<Void> input = session.receive()
+                .doOnNext(message -> {
+                    if (message.getType() == WebSocketMessage.Type.BINARY) {
+                        if (partials.get() == null) {
+                            partials.set(script.startPartials((index, text) -> {
+                                if (index == 0) {
+                                    MockAsrScript.emit(outbound, event(taskId.get(), "SentenceBegin", null));
+                                }
+                                ObjectNode payload = objectMapper.createObjectNode();
+                                payload.put("index", 1);
+                                payload.put("time", 0);
+                                payload.put("result", text);
+                                payload.put("confidence", 1.0);
+                                payload.putArray("words");
+                                payload.put("status", 0);
+                                MockAsrScript.emit(outbound, event(taskId.get(), "TranscriptionResultChanged", payload));
+                            }));
+                        }
+                        return;
+                    }
+
+                    String name = commandName(message.getPayloadAsText(), taskId);
+                    if ("StartTranscription".equals(name)) {
+                        MockAsrScript.emit(outbound, event(taskId.get(), "TranscriptionStarted", null));
+                    } else if ("StopTranscription".equals(name)) {
+                        Disposable disposable = partials.get();
+                        if (disposable != null) {
+                            disposable.dispose();
+                        }
+                        script.scheduleFinal(text -> {
+                            ObjectNode payload = objectMapper.createObjectNode();
+                            payload.put("index", 1);
+                            payload.put("time", 0);
+                            payload.put("begin_time", 0);
+                            payload.put("result", text);
+                            payload.put("confidence", 1.0);
+                            payload.putArray("words");
+                            payload.put("status", 0);
+                            MockAsrScript.emit(outbound, event(taskId.get(), "SentenceEnd", payload));
+                            MockAsrScript.emit(outbound, event(taskId.get(), "TranscriptionCompleted", null));
+                            MockAsrScript.complete(outbound);
+                        });
+                    }
+                })
+                .doFinally(signal -> {
+                    Disposable disposable = partials.get();
+                    if (disposable != null) {
+                        disposable.dispose();
+                    }
+                })
+                .then();
+
+        Mono<Void> output = session.send(outbound.asFlux().map(session::textMessage));
+
+        return Mono.when(input, output)
+                .doOnError(e -> logger.warn("模拟阿里云NLS连接异常 - TaskId: {}", taskId.get(), e));
+    }
+
+    /**
+     * 解析客户端指令名称，并记录客户端指定的task_id
+     */
+    private String commandName(String text, AtomicReference<String> taskId) {
+        try {
+            JsonNode header = objectMapper.readTree(text).path("header");
+            String clientTaskId = header.path("task_id").asText(null);
+            if (clientTaskId != null && !clientTaskId.isEmpty()) {
+                taskId.set(clientTaskId);
+            }
+            return header.path("name").asText(null);
+        } catch (Exception e) {
+            logger.warn("无法解析模拟NLS指令: {}", text);
+            return null;
+        }
+    }
+
+    private String event(String taskId, String name, ObjectNode payload) {
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode header = root.putObject("header");
+        header.put("namespace", NAMESPACE);
+        header.put("name", name);
+        header.put("status", STATUS_SUCCESS);
+        header.put("message_id", UUID.randomUUID().toString().replace("-", ""));
+        header.put("task_id", taskId);
+        header.put("status_text", "Gateway:SUCCESS:Success.");
+        if (payload != null) {
+            root.set("payload", payload);
+        } else {
+            root.putObject("payload");
+        }
+        return root.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.xiaozhi.websocket.benchmark;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.adapter.AbstractWebSocketSession;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * 基准测试用的虚拟设备会话
+ * 不建立真实连接，服务端发给设备的文本消息交给监听器统计，二进制消息直接丢弃
+ */
+public class BenchmarkSession extends AbstractWebSocketSession<Object> {
+
+    private final Consumer<String> textListener;
+
+    private volatile boolean open = true;
+
+    public BenchmarkSession(String id, Consumer<String> textListener) {
+        super(new Object(), id,
+                new HandshakeInfo(URI.create("ws://localhost/benchmark/" + id), new HttpHeaders(), Mono.empty(), null),
+                DefaultDataBufferFactory.sharedInstance);
+        this.textListener = textListener;
+    }
+
+    @Override
+    public Flux<WebSocketMessage> receive() {
+        return Flux.empty();
+    }
+
+    @Override
+    public Mono<Void> send(Publisher<WebSocketMessage> messages) {
+        return Flux.from(messages)
+                .doOnNext(message -> {
+                    if (message.getType() == WebSocketMessage.Type.TEXT) {
+                        textListener.accept(message.getPayloadAsText());
+                    }
+                    DataBufferUtils.release(message.getPayload());
+                })
+                .then();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Mono<Void> close(CloseStatus status) {
+        open = false;
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<CloseStatus> closeStatus() {
+        return open ? Mono.never() : Mono.just(CloseStatus.NORMAL);
+    }
+}
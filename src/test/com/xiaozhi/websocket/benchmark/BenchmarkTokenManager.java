@@ -0,0 +1,62 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.websocket.token.AliyunTokenManager;
+import com.xiaozhi.websocket.token.TokenManager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基准测试用Token管理器
+ * 基准测试生成的配置（配置ID为负数）直接返回模拟Token，其余配置交给阿里云Token管理器
+ */
+@Component
+@Primary
+@Profile("benchmark")
+public class BenchmarkTokenManager implements TokenManager {
+
+    public static final String MOCK_TOKEN = "benchmark-mock-token";
+
+    @Autowired
+    private AliyunTokenManager delegate;
+
+    @Override
+    public String getValidToken(SysConfig config) {
+        return isBenchmarkConfig(config) ? MOCK_TOKEN : delegate.getValidToken(config);
+    }
+
+    @Override
+    public CompletableFuture<String> getValidTokenAsync(SysConfig config) {
+        return isBenchmarkConfig(config) ? CompletableFuture.completedFuture(MOCK_TOKEN)
+                : delegate.getValidTokenAsync(config);
+    }
+
+    @Override
+    public String refreshToken(SysConfig config) {
+        return isBenchmarkConfig(config) ? MOCK_TOKEN : delegate.refreshToken(config);
+    }
+
+    @Override
+    public boolean isTokenExpiringSoon(Integer configId) {
+        return configId != null && configId >= 0 && delegate.isTokenExpiringSoon(configId);
+    }
+
+    @Override
+    public void invalidate(Integer configId) {
+        delegate.invalidate(configId);
+    }
+
+    @Override
+    public void initializeAllTokens() {
+        delegate.initializeAllTokens();
+    }
+
+    private boolean isBenchmarkConfig(SysConfig config) {
+        return config.getConfigId() != null && config.getConfigId() < 0;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaozhi.websocket.llm.api.ChatDeltaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式响应解析微基准：对比逐个事件反序列化为Map和ChatDeltaParser两种方式解析一次完整流式响应的耗时与内存分配
+ *
+ * 运行（-prof gc输出每次操作的分配字节数）：
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ChatDeltaParserBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatDeltaParserBenchmark {
+
+    // 典型的OpenAI兼容流式响应，每项为一个SSE事件的data字段
+    private static final String[] EVENTS = {
+            "{\"id\":\"chatcmpl-9a1b2c3d\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                    + "\"model\":\"gpt-4o-mini\",\"system_fingerprint\":\"fp_0123456789\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"logprobs\":null,\"finish_reason\":null}]}",
+            "{\"id\":\"chatcmpl-9a1b2c3d\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                    + "\"model\":\"gpt-4o-mini\",\"system_fingerprint\":\"fp_0123456789\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{\"content\":\"今天\"},\"logprobs\":null,\"finish_reason\":null}]}",
+            "{\"id\":\"chatcmpl-9a1b2c3d\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                    + "\"model\":\"gpt-4o-mini\",\"system_fingerprint\":\"fp_0123456789\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{\"content\":\"天气不错，\"},\"logprobs\":null,\"finish_reason\":null}]}",
+            "{\"id\":\"chatcmpl-9a1b2c3d\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+                    + "\"model\":\"gpt-4o-mini\",\"system_fingerprint\":\"fp_0123456789\",\"choices\":[{\"index\":0,"
+                    + "\"delta\":{},\"logprobs\":null,\"finish_reason\":\"stop\"}]}",
+            "[DONE]"
+    };
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 原有方式：每个事件反序列化为Map后逐层取值
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void mapParser(Blackhole blackhole) throws IOException {
+        for (String event : EVENTS) {
+            if (event.equals("[DONE]")) {
+                break;
+            }
+            Map<String, Object> data = objectMapper.readValue(event,
+                    new TypeReference<Map<String, Object>>() {
+                    });
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) data.get("choices");
+            if (choices != null && !choices.isEmpty()) {
+                Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+                if (delta != null) {
+                    blackhole.consume(delta.get("content"));
+                }
+                blackhole.consume(choices.get(0).get("finish_reason"));
+            }
+        }
+    }
+
+    /**
+     * 新方式：一个流使用一个ChatDeltaParser，只提取增量内容和结束原因，不构建Map树
+     */
+    @Benchmark
+    public void deltaParser(Blackhole blackhole) throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+        for (String event : EVENTS) {
+            if (!parser.parse(event)) {
+                break;
+            }
+            if (parser.hasContent()) {
+                blackhole.consume(parser.getContent());
+            }
+            blackhole.consume(parser.getFinishReason());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.xiaozhi.websocket.benchmark;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试配置：在本服务内挂载模拟的腾讯云/阿里云语音识别和火山引擎流式语音合成WebSocket接口
+ * 仅在benchmark profile下生效
+ */
+@Configuration
+@Profile("benchmark")
+public class MockAsrConfig {
+
+    @Bean
+    public HandlerMapping mockAsrHandlerMapping(TencentAsrMockHandler tencentHandler,
+            AliyunNlsMockHandler aliyunHandler, VolcengineTtsMockHandler volcengineTtsHandler) {
+        Map<String, WebSocketHandler> map = new HashMap<>();
+        map.put(TencentAsrMockHandler.PATH, tencentHandler);
+        map.put(AliyunNlsMockHandler.PATH, aliyunHandler);
+        map.put(VolcengineTtsMockHandler.PATH, volcengineTtsHandler);
+
+        SimpleUrlHandlerMapping handlerMapping = new SimpleUrlHandlerMapping();
+        handlerMapping.setOrder(0);
+        handlerMapping.setUrlMap(map);
+
+        return handlerMapping;
+    }
+}
@@ -0,0 +1,80 @@
+package com.xiaozhi.websocket.benchmark;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 模拟ASR服务的识别脚本
+ * 收到第一帧音频后按固定间隔依次返回中间结果，收到结束指令后延迟返回最终结果
+ */
+@Component
+@Profile("benchmark")
+public class MockAsrScript {
+
+    // 依次返回的中间结果，最后一条同时作为最终结果
+    @Value("${app.benchmark.mock.partials:你好,你好小智,你好小智今天天气怎么样}")
+    private String[] partials;
+
+    // 收到第一帧音频到返回第一个中间结果的延迟（毫秒）
+    @Value("${app.benchmark.mock.first-partial-delay-ms:300}")
+    private long firstPartialDelayMs;
+
+    // 中间结果的间隔（毫秒）
+    @Value("${app.benchmark.mock.partial-interval-ms:200}")
+    private long partialIntervalMs;
+
+    // 收到结束指令到返回最终结果的延迟（毫秒）
+    @Value("${app.benchmark.mock.final-delay-ms:200}")
+    private long finalDelayMs;
+
+    /**
+     * 开始返回中间结果
+     *
+     * @param onPartial 中间结果回调（序号，文本）
+     * @return 用于停止中间结果的句柄
+     */
+    public Disposable startPartials(BiConsumer<Integer, String> onPartial) {
+        return Flux.interval(Duration.ofMillis(firstPartialDelayMs), Duration.ofMillis(partialIntervalMs))
+                .take(partials.length)
+                .subscribe(index -> onPartial.accept(index.intValue(), partials[index.intValue()]));
+    }
+
+    /**
+     * 延迟返回最终结果
+     *
+     * @param onFinal 最终结果回调
+     */
+    public void scheduleFinal(Consumer<String> onFinal) {
+        Mono.delay(Duration.ofMillis(finalDelayMs))
+                .subscribe(tick -> onFinal.accept(getFinalText()));
+    }
+
+    public String getFinalText() {
+        return partials[partials.length - 1];
+    }
+
+    /**
+     * 中间结果和最终结果来自不同线程，串行化写入
+     */
+    static void emit(Sinks.Many<String> outbound, String message) {
+        synchronized (outbound) {
+            outbound.tryEmitNext(message);
+        }
+    }
+
+    static void complete(Sinks.Many<String> outbound) {
+        synchronized (outbound) {
+            outbound.tryEmitComplete();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.xiaozhi.websocket.llm.segment.LengthEmissionPolicy;
+import com.xiaozhi.websocket.llm.segment.SentenceSegmenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分句微基准：对比原有基于正则的逐token分句和SentenceSegmenter切分一条完整回复的耗时与内存分配
+ *
+ * 运行（-prof gc输出每次操作的分配字节数）：
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main SentenceSegmenterBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SentenceSegmenterBenchmark {
+
+    private static final String REPLY = "你好！今天北京的天气不错，气温大约是23.5度，适合出门散步。"
+            + "如果你想去公园的话，记得带上水和帽子……另外，下午可能会有小雨。"
+            + "Mr. Smith said the forecast is 80% accurate, e.g. most days. "
+            + "他说：“出门前再看一眼天气预报吧。”还有什么需要我帮忙的吗？";
+
+    // 原有实现使用的正则
+    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
+    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
+
+    private static final String[] TOKENS = tokenize(REPLY);
+
+    /**
+     * 按1~3个字符切分成模拟的token
+     */
+    private static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int size = 1;
+        while (i < text.length()) {
+            int end = Math.min(text.length(), i + size);
+            tokens.add(text.substring(i, end));
+            i = end;
+            size = size % 3 + 1;
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * 原有方式：每个token做正则匹配，维护上下文字符串检测小数，结束时用replaceAll判断剩余内容
+     */
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        StringBuilder currentSentence = new StringBuilder();
+        StringBuilder contextBuffer = new StringBuilder();
+        for (String token : TOKENS) {
+            contextBuffer.append(token);
+            if (contextBuffer.length() > 20) {
+                contextBuffer.delete(0, contextBuffer.length() - 20);
+            }
+            currentSentence.append(token);
+            boolean isEndMark = SENTENCE_END_PATTERN.matcher(token).find();
+            if (isEndMark && token.equals(".")) {
+                Matcher numberMatcher = NUMBER_PATTERN.matcher(contextBuffer.toString());
+                isEndMark = !numberMatcher.find();
+            }
+            if (isEndMark) {
+                String sentence = currentSentence.toString().trim();
+                if (sentence.length() >= 5) {
+                    blackhole.consume(sentence);
+                    currentSentence.setLength(0);
+                }
+            } else {
+                blackhole.consume(PAUSE_PATTERN.matcher(token).find());
+            }
+        }
+        String rest = currentSentence.toString();
+        if (rest.replaceAll("[\\p{P}\\s]", "").length() >= 2) {
+            blackhole.consume(rest.trim());
+        }
+    }
+
+    /**
+     * 新方式：每个流使用一个SentenceSegmenter
+     */
+    @Benchmark
+    public void segmenter(Blackhole blackhole) {
+        SentenceSegmenter segmenter = new SentenceSegmenter(new LengthEmissionPolicy(5, 50),
+                (sentence, first, last) -> blackhole.consume(sentence));
+        for (String token : TOKENS) {
+            segmenter.append(token);
+        }
+        segmenter.finish();
+    }
+}
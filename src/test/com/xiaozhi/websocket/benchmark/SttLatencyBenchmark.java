@@ -0,0 +1,343 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.entity.SysDevice;
+import com.xiaozhi.utils.OpusProcessor;
+import com.xiaozhi.websocket.service.DialogueService;
+import com.xiaozhi.websocket.service.SessionManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * STT端到端延迟基准测试
+ * 由SttLatencyBenchmarkTest以benchmark profile启动服务后调用，创建N个虚拟设备会话，将同一段语音按实时节奏通过DialogueService.processAudioData
+ * 送入完整的VAD→STT链路，STT请求指向本服务内的模拟腾讯云/阿里云接口，统计首个中间结果耗时、最终结果耗时以及
+ * 每段语音的CPU时间和内存分配量。
+ *
+ * 示例：mvn test -Dtest=SttLatencyBenchmarkTest -Dapp.benchmark.audio-file=test.wav
+ * -Dapp.benchmark.provider=aliyun -Dapp.benchmark.concurrency=100 -Dapp.stt.routing.enabled=false
+ *
+ * 模拟服务与被测服务运行在同一进程中，CPU和内存分配统计包含模拟服务自身的开销；
+ * 识别完成后对话会继续进入LLM环节，可通过app.benchmark.model-id指定模型配置，未指定时LLM调用会直接失败
+ */
+@Component
+@Profile("benchmark")
+public class SttLatencyBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(SttLatencyBenchmark.class);
+
+    // 每帧音频时长（毫秒），与设备端保持一致
+    private static final int FRAME_DURATION_MS = 60;
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_MS = 32;
+    private static final int WAV_HEADER_SIZE = 44;
+
+    // 基准测试配置使用负数ID，避免与数据库中的配置冲突
+    private static final int TENCENT_CONFIG_ID = -1;
+    private static final int ALIYUN_CONFIG_ID = -2;
+
+    // 模拟的识别服务：tencent 或 aliyun
+    @Value("${app.benchmark.provider:tencent}")
+    private String provider;
+
+    // 并发会话数
+    @Value("${app.benchmark.concurrency:10}")
+    private int concurrency;
+
+    // 每个会话发送的语音段数
+    @Value("${app.benchmark.utterances:5}")
+    private int utterancesPerSession;
+
+    // 语音文件（16kHz 16bit 单声道的WAV或PCM）
+    @Value("${app.benchmark.audio-file:}")
+    private String audioFile;
+
+    // 语音后追加的静音时长（毫秒），需大于VAD的最小静音时长
+    @Value("${app.benchmark.trailing-silence-ms:1000}")
+    private int trailingSilenceMs;
+
+    // 等待最终结果的超时时间（毫秒）
+    @Value("${app.benchmark.final-timeout-ms:10000}")
+    private long finalTimeoutMs;
+
+    // 虚拟设备使用的模型配置ID，可为空
+    @Value("${app.benchmark.model-id:#{null}}")
+    private Integer modelId;
+
+    @Autowired
+    private DialogueService dialogueService;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private OpusProcessor opusProcessor;
+
+    @Autowired
+    private Environment environment;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public void run() throws Exception {
+        if (audioFile == null || audioFile.isEmpty()) {
+            logger.error("未指定基准测试语音文件，请设置app.benchmark.audio-file");
+            return;
+        }
+
+        SysConfig sttConfig = createSttConfig();
+        sessionManager.cacheConfig(sttConfig.getConfigId(), sttConfig);
+
+        byte[] speech = readPcm(audioFile);
+        byte[] pcm = Arrays.copyOf(speech, speech.length + trailingSilenceMs * BYTES_PER_MS);
+        List<byte[]> frames = opusProcessor.convertPcmToOpus(pcm, SAMPLE_RATE, 1, FRAME_DURATION_MS);
+        int speechFrames = (speech.length / BYTES_PER_MS + FRAME_DURATION_MS - 1) / FRAME_DURATION_MS;
+
+        logger.info("STT基准测试开始 - Provider: {}, 并发会话: {}, 每会话语音数: {}, 语音时长: {}ms",
+                provider, concurrency, utterancesPerSession, speech.length / BYTES_PER_MS);
+
+        ResourceUsage before = ResourceUsage.capture();
+        long startTime = System.currentTimeMillis();
+
+        List<UtteranceResult> results = Flux.range(0, concurrency)
+                .flatMap(index -> runSession(index, sttConfig, frames, speechFrames), concurrency)
+                .collectList()
+                .block();
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        ResourceUsage after = ResourceUsage.capture();
+
+        report(results, elapsed, before, after);
+    }
+
+    private SysConfig createSttConfig() {
+        String port = environment.getProperty("local.server.port", environment.getProperty("server.port", "8091"));
+        String baseUrl = "ws://127.0.0.1:" + port;
+        SysConfig config = new SysConfig()
+                .setConfigType("stt")
+                .setProvider(provider)
+                .setConfigName("benchmark")
+                .setAppId("benchmark")
+                .setApiKey("benchmark")
+                .setApiSecret("benchmark");
+        if ("aliyun".equals(provider)) {
+            config.setConfigId(ALIYUN_CONFIG_ID);
+            config.setApiUrl(baseUrl + AliyunNlsMockHandler.PATH);
+        } else {
+            config.setConfigId(TENCENT_CONFIG_ID);
+            config.setApiUrl(baseUrl + TencentAsrMockHandler.PATH.replace("**", ""));
+        }
+        return config;
+    }
+
+    /**
+     * 读取16kHz 16bit单声道音频，WAV文件跳过文件头
+     */
+    private byte[] readPcm(String path) throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(path));
+        if (path.toLowerCase().endsWith(".wav") && data.length > WAV_HEADER_SIZE) {
+            return Arrays.copyOfRange(data, WAV_HEADER_SIZE, data.length);
+        }
+        return data;
+    }
+
+    /**
+     * 运行单个虚拟设备会话，依次发送多段语音
+     */
+    private Flux<UtteranceResult> runSession(int index, SysConfig sttConfig, List<byte[]> frames, int speechFrames) {
+        String sessionId = "benchmark-" + index + "-" + UUID.randomUUID().toString().substring(0, 8);
+        UtteranceProbe[] current = new UtteranceProbe[1];
+        BenchmarkSession session = new BenchmarkSession(sessionId, text -> onMessage(current[0], text));
+
+        SysDevice device = new SysDevice();
+        device.setDeviceId(sessionId)
+                .setSessionId(sessionId)
+                .setSttId(sttConfig.getConfigId())
+                .setModelId(modelId);
+        sessionManager.registerSession(sessionId, session);
+        sessionManager.registerDevice(sessionId, device);
+
+        return Flux.range(0, utterancesPerSession)
+                .concatMap(utterance -> {
+                    UtteranceProbe probe = new UtteranceProbe();
+                    current[0] = probe;
+                    sessionManager.setListeningState(sessionId, true);
+                    return sendUtterance(session, frames, speechFrames, probe)
+                            .then(probe.finalSignal.asMono()
+                                    .timeout(Duration.ofMillis(finalTimeoutMs))
+                                    .onErrorResume(e -> Mono.empty()))
+                            .then(Mono.fromSupplier(probe::toResult));
+                })
+                .doFinally(signal -> {
+                    sessionManager.closeSession(sessionId);
+                    dialogueService.cleanupSession(sessionId);
+                });
+    }
+
+    /**
+     * 按实时节奏发送一段语音
+     */
+    private Mono<Void> sendUtterance(BenchmarkSession session, List<byte[]> frames, int speechFrames,
+            UtteranceProbe probe) {
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(FRAME_DURATION_MS))
+                .take(frames.size())
+                .concatMap(frameIndex -> {
+                    int i = frameIndex.intValue();
+                    if (i == 0) {
+                        probe.startNanos = System.nanoTime();
+                    }
+                    if (i == speechFrames) {
+                        probe.speechEndNanos = System.nanoTime();
+                    }
+                    return dialogueService.processAudioData(session, frames.get(i));
+                })
+                .then();
+    }
+
+    private void onMessage(UtteranceProbe probe, String text) {
+        if (probe == null) {
+            return;
+        }
+        try {
+            JsonNode message = objectMapper.readTree(text);
+            if (!"stt".equals(message.path("type").asText())) {
+                return;
+            }
+            String state = message.path("state").asText();
+            if ("interim".equals(state) && probe.firstPartialNanos == 0) {
+                probe.firstPartialNanos = System.nanoTime();
+            } else if ("final".equals(state)) {
+                probe.finalNanos = System.nanoTime();
+                probe.finalSignal.tryEmitValue(message.path("text").asText());
+            }
+        } catch (Exception e) {
+            logger.warn("无法解析下发消息: {}", text);
+        }
+    }
+
+    private void report(List<UtteranceResult> results, long elapsedMs, ResourceUsage before, ResourceUsage after) {
+        List<Long> firstPartial = new ArrayList<>();
+        List<Long> toFinal = new ArrayList<>();
+        int timeouts = 0;
+        for (UtteranceResult result : results) {
+            if (result.firstPartialMs >= 0) {
+                firstPartial.add(result.firstPartialMs);
+            }
+            if (result.finalMs >= 0) {
+                toFinal.add(result.finalMs);
+            } else {
+                timeouts++;
+            }
+        }
+
+        int total = Math.max(1, results.size());
+        logger.info("STT基准测试完成 - 语音数: {}, 超时: {}, 总耗时: {}ms", results.size(), timeouts, elapsedMs);
+        logger.info("首个中间结果耗时（从第一帧音频起）: {}", percentiles(firstPartial));
+        logger.info("最终结果耗时（从语音结束起）: {}", percentiles(toFinal));
+        logger.info("每段语音资源消耗 - CPU: {}ms, 内存分配: {}",
+                (after.cpuNanos - before.cpuNanos) / 1_000_000 / total,
+                after.allocatedBytes >= 0 && before.allocatedBytes >= 0
+                        ? (after.allocatedBytes - before.allocatedBytes) / 1024 / total + "KB"
+                        : "不支持");
+    }
+
+    private static String percentiles(List<Long> values) {
+        if (values.isEmpty()) {
+            return "无数据";
+        }
+        Collections.sort(values);
+        return String.format("p50=%dms, p95=%dms, p99=%dms, max=%dms",
+                percentile(values, 0.50), percentile(values, 0.95), percentile(values, 0.99),
+                values.get(values.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        int rank = (int) Math.ceil(sorted.size() * p) - 1;
+        return sorted.get(Math.max(0, Math.min(rank, sorted.size() - 1)));
+    }
+
+    /**
+     * 单段语音的时间点
+     */
+    private static class UtteranceProbe {
+        private volatile long startNanos;
+        private volatile long speechEndNanos;
+        private volatile long firstPartialNanos;
+        private volatile long finalNanos;
+        private final Sinks.One<String> finalSignal = Sinks.one();
+
+        UtteranceResult toResult() {
+            long firstPartialMs = firstPartialNanos > 0 ? (firstPartialNanos - startNanos) / 1_000_000 : -1;
+            long finalMs = -1;
+            if (finalNanos > 0) {
+                // 最终结果可能在追加的静音发完之前就已返回
+                long reference = speechEndNanos > 0 ? Math.min(speechEndNanos, finalNanos) : startNanos;
+                finalMs = (finalNanos - reference) / 1_000_000;
+            }
+            return new UtteranceResult(firstPartialMs, finalMs);
+        }
+    }
+
+    private static class UtteranceResult {
+        private final long firstPartialMs;
+        private final long finalMs;
+
+        UtteranceResult(long firstPartialMs, long finalMs) {
+            this.firstPartialMs = firstPartialMs;
+            this.finalMs = finalMs;
+        }
+    }
+
+    /**
+     * 进程CPU时间和所有存活线程的累计内存分配量
+     */
+    private static class ResourceUsage {
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private ResourceUsage(long cpuNanos, long allocatedBytes) {
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        static ResourceUsage capture() {
+            long cpu = 0;
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+
+            long allocated = -1;
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+                if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                    allocated = Arrays.stream(sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                            .filter(bytes -> bytes > 0)
+                            .sum();
+                }
+            }
+            return new ResourceUsage(cpu, allocated);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.xiaozhi.websocket.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * STT端到端延迟基准测试入口
+ * 以随机端口启动完整服务并挂载模拟的语音识别接口，只在指定了语音文件时运行：
+ * mvn test -Dtest=SttLatencyBenchmarkTest -Dapp.benchmark.audio-file=test.wav
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("benchmark")
+@EnabledIfSystemProperty(named = "app.benchmark.audio-file", matches = ".+")
+public class SttLatencyBenchmarkTest {
+
+    @Autowired
+    private SttLatencyBenchmark benchmark;
+
+    @Test
+    public void run() throws Exception {
+        benchmark.run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 模拟腾讯云实时语音识别（ASR v2）WebSocket服务
+ * 握手成功后返回code=0的消息；收到音频后按脚本返回slice_type=0/1的中间结果，
+ * 收到{"type":"end"}后返回slice_type=2的句子结果和final=1的结束消息
+ */
+@Component
+@Profile("benchmark")
+public class TencentAsrMockHandler implements WebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(TencentAsrMockHandler.class);
+
+    public static final String PATH = "/mock/tencent/asr/v2/**";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private MockAsrScript script;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String voiceId = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams()
+                .getFirst("voice_id");
+        if (voiceId == null) {
+            voiceId = UUID.randomUUID().toString();
+        }
+        String finalVoiceId = voiceId;
+
+        Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<Disposable> partials = new AtomicReference<>();
+        AtomicInteger messageCount = new AtomicInteger(0);
+
+        // 握手成功
+        MockAsrScript.emit(outbound, response(finalVoiceId, messageCount.incrementAndGet()).toString());
+
+        Mono<Void> input = session.receive()
+                .doOnNext(message -> {
+                    if (message.getType() == WebSocketMessage.Type.BINARY) {
+                        if (partials.get() == null) {
+                            partials.set(script.startPartials((index, text) -> {
+                                ObjectNode result = response(finalVoiceId, messageCount.incrementAndGet());
+                                result.set("result", result(index == 0 ? 0 : 1, text));
+                                MockAsrScript.emit(outbound, result.toString());
+                            }));
+                        }
+                    } else if (message.getPayloadAsText().contains("\"end\"")) {
+                        Disposable disposable = partials.get();
+                        if (disposable != null) {
+                            disposable.dispose();
+                        }
+                        script.scheduleFinal(text -> {
+                            ObjectNode sentence = response(finalVoiceId, messageCount.incrementAndGet());
+                            sentence.set("result", result(2, text));
+                            MockAsrScript.emit(outbound, sentence.toString());
+
+                            ObjectNode complete = response(finalVoiceId, messageCount.incrementAndGet());
+                            complete.put("final", 1);
+                            MockAsrScript.emit(outbound, complete.toString());
+                            MockAsrScript.complete(outbound);
+                        });
+                    }
+                })
+                .doFinally(signal -> {
+                    Disposable disposable = partials.get();
+                    if (disposable != null) {
+                        disposable.dispose();
+                    }
+                })
+                .then();
+
+        Mono<Void> output = session.send(outbound.asFlux().map(session::textMessage));
+
+        return Mono.when(input, output)
+                .doOnError(e -> logger.warn("模拟腾讯云ASR连接异常 - VoiceId: {}", finalVoiceId, e));
+    }
+
+    private ObjectNode response(String voiceId, int messageIndex) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("code", 0);
+        node.put("message", "success");
+        node.put("voice_id", voiceId);
+        node.put("message_id", voiceId + "_" + messageIndex);
+        return node;
+    }
+
+    private ObjectNode result(int sliceType, String text) {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("slice_type", sliceType);
+        result.put("index", 0);
+        result.put("start_time", 0);
+        result.put("end_time", 0);
+        result.put("voice_text_str", text);
+        result.put("word_size", 0);
+        result.putArray("word_list");
+        return result;
+    }
+}
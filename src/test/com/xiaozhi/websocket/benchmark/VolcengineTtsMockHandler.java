@@ -0,0 +1,134 @@
+package com.xiaozhi.websocket.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 模拟火山引擎流式语音合成（WebSocket二进制协议）服务
+ * 收到完整请求后先返回无序号的确认消息，然后按文本长度生成PCM（16kHz 16bit单声道的正弦音），
+ * 首包延迟后按固定间隔分块返回，最后一块的序号为负数。
+ * 将语音合成配置的apiUrl设为ws://127.0.0.1:端口/mock/volcengine/tts/ws_binary即可使用
+ */
+@Component
+@Profile("benchmark")
+public class VolcengineTtsMockHandler implements WebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(VolcengineTtsMockHandler.class);
+
+    public static final String PATH = "/mock/volcengine/tts/ws_binary";
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_MS = SAMPLE_RATE * 2 / 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 收到请求到返回第一块音频的延迟（毫秒）
+    @Value("${app.benchmark.mock.tts-first-chunk-delay-ms:150}")
+    private long firstChunkDelayMs;
+
+    // 每块音频的时长（毫秒）
+    @Value("${app.benchmark.mock.tts-chunk-ms:200}")
+    private int chunkMs;
+
+    // 音频块的返回间隔（毫秒），小于块时长表示合成快于实时
+    @Value("${app.benchmark.mock.tts-chunk-interval-ms:50}")
+    private long chunkIntervalMs;
+
+    // 每个字对应的音频时长（毫秒）
+    @Value("${app.benchmark.mock.tts-ms-per-char:200}")
+    private int msPerChar;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        Flux<WebSocketMessage> output = session.receive()
+                .filter(message -> message.getType() == WebSocketMessage.Type.BINARY)
+                .next()
+                .flatMapMany(message -> {
+                    String text = requestText(message.getPayload());
+                    byte[] pcm = tone(Math.max(1, text.length()) * msPerChar);
+                    int chunkBytes = chunkMs * BYTES_PER_MS;
+                    int chunks = (pcm.length + chunkBytes - 1) / chunkBytes;
+
+                    Flux<byte[]> audio = Flux.range(0, chunks)
+                            .delayElements(Duration.ofMillis(chunkIntervalMs))
+                            .delaySubscription(Duration.ofMillis(Math.max(0, firstChunkDelayMs - chunkIntervalMs)))
+                            .map(index -> {
+                                int from = index * chunkBytes;
+                                byte[] chunk = Arrays.copyOfRange(pcm, from, Math.min(pcm.length, from + chunkBytes));
+                                boolean last = index == chunks - 1;
+                                return audioResponse(last ? -(index + 1) : index + 1, chunk);
+                            });
+                    return Flux.concat(Mono.just(audioResponse(0, null)), audio);
+                })
+                .map(bytes -> session.binaryMessage(factory -> factory.wrap(bytes)));
+
+        return session.send(output)
+                .doOnError(e -> logger.warn("模拟火山引擎TTS连接异常", e));
+    }
+
+    /**
+     * 解析客户端请求：跳过协议头和4字节长度，负载为未压缩的JSON
+     */
+    private String requestText(DataBuffer payload) {
+        byte[] bytes = new byte[payload.readableByteCount()];
+        payload.read(bytes);
+        int headerSize = (bytes[0] & 0x0f) * 4;
+        try {
+            JsonNode request = objectMapper.readTree(new String(bytes, headerSize + 4,
+                    bytes.length - headerSize - 4, StandardCharsets.UTF_8));
+            return request.path("request").path("text").asText("");
+        } catch (Exception e) {
+            logger.warn("模拟火山引擎TTS请求解析失败: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * 构建仅含音频的响应，序号为0时只返回协议头作为确认
+     */
+    private static byte[] audioResponse(int sequence, byte[] audio) {
+        if (sequence == 0) {
+            return new byte[] { 0x11, (byte) 0xb0, 0x10, 0x00 };
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(12 + audio.length);
+        buffer.put((byte) 0x11);
+        buffer.put((byte) (0xb0 | (sequence < 0 ? 0x03 : 0x01)));
+        buffer.put((byte) 0x10);
+        buffer.put((byte) 0x00);
+        buffer.putInt(sequence);
+        buffer.putInt(audio.length);
+        buffer.put(audio);
+        return buffer.array();
+    }
+
+    /**
+     * 生成指定时长的440Hz正弦音
+     */
+    private static byte[] tone(int durationMs) {
+        int samples = durationMs * SAMPLE_RATE / 1000;
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short value = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 3000);
+            pcm[i * 2] = (byte) value;
+            pcm[i * 2 + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,115 @@
+package com.xiaozhi.websocket.llm.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class ChatDeltaParserTest {
+
+    private static String chunk(String delta, String finishReason) {
+        return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                + "\"delta\":" + delta + ",\"logprobs\":null,\"finish_reason\":"
+                + (finishReason == null ? "null" : "\"" + finishReason + "\"") + "}]}";
+    }
+
+    @Test
+    public void readsContentAndFinishReason() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse(chunk("{\"role\":\"assistant\",\"content\":\"\"}", null)));
+        assertFalse(parser.hasContent());
+        assertNull(parser.getFinishReason());
+
+        assertTrue(parser.parse(chunk("{\"content\":\"今天\"}", null)));
+        assertEquals("今天", parser.getContent());
+
+        assertTrue(parser.parse(chunk("{\"content\":\"天气不错，\"}", null)));
+        assertEquals("天气不错，", parser.getContent());
+
+        assertTrue(parser.parse(chunk("{}", "stop")));
+        assertFalse(parser.hasContent());
+        assertEquals("stop", parser.getFinishReason());
+
+        assertFalse(parser.isDone());
+        assertFalse(parser.parse("[DONE]"));
+        assertTrue(parser.isDone());
+    }
+
+    @Test
+    public void doneToleratesSurroundingWhitespace() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertFalse(parser.parse(" [DONE]\n"));
+        assertTrue(parser.isDone());
+        assertFalse(parser.hasContent());
+    }
+
+    @Test
+    public void ignoresUnknownFieldsAndLaterChoices() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse("{\"usage\":{\"prompt_tokens\":3,\"details\":[1,{\"a\":[]}]},\"choices\":["
+                + "{\"delta\":{\"tool_calls\":[{\"id\":\"t\"}],\"content\":\"first\"},\"finish_reason\":null},"
+                + "{\"delta\":{\"content\":\"second\"},\"finish_reason\":\"length\"}],\"model\":\"m\"}"));
+        assertEquals("first", parser.getContent());
+        assertNull(parser.getFinishReason());
+    }
+
+    @Test
+    public void decodesEscapedContent() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse(chunk("{\"content\":\"第一行\\n\\\"引号\\\"\\u4f60\"}", null)));
+        assertEquals("第一行\n\"引号\"你", parser.getContent());
+    }
+
+    @Test
+    public void resetsStateBetweenChunks() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse(chunk("{\"content\":\"a\"}", "length")));
+        assertEquals("length", parser.getFinishReason());
+        assertTrue(parser.parse("{\"choices\":[]}"));
+        assertFalse(parser.hasContent());
+        assertNull(parser.getFinishReason());
+    }
+
+    @Test
+    public void nonObjectDataYieldsEmptyChunk() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse("[1,2]"));
+        assertFalse(parser.hasContent());
+        assertNull(parser.getFinishReason());
+    }
+
+    @Test
+    public void recoversAfterMalformedChunk() throws IOException {
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse(chunk("{\"content\":\"a\"}", null)));
+        assertThrows(JsonProcessingException.class,
+                () -> parser.parse("{\"choices\":[{\"delta\":{\"content\":}}]}"));
+        assertTrue(parser.parse(chunk("{\"content\":\"b\"}", null)));
+        assertEquals("b", parser.getContent());
+    }
+
+    @Test
+    public void longContent() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        ChatDeltaParser parser = new ChatDeltaParser();
+
+        assertTrue(parser.parse(chunk("{\"content\":\"" + text + "\"}", null)));
+        assertEquals(text.toString(), parser.getContent());
+    }
+}
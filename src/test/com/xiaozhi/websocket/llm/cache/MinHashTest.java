@@ -0,0 +1,93 @@
+package com.xiaozhi.websocket.llm.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class MinHashTest {
+
+    /**
+     * 与MinHash相同的特征集合：单字和相邻两字
+     */
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            shingles.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                shingles.add("#" + text.substring(i, i + 2));
+            }
+        }
+        return shingles;
+    }
+
+    private static double jaccard(String a, String b) {
+        Set<String> sa = shingles(a);
+        Set<String> sb = shingles(b);
+        Set<String> union = new HashSet<>(sa);
+        union.addAll(sb);
+        sa.retainAll(sb);
+        return (double) sa.size() / union.size();
+    }
+
+    @Test
+    public void emptyTextHasNoSignature() {
+        assertNull(MinHash.signature(null));
+        assertNull(MinHash.signature(""));
+    }
+
+    @Test
+    public void signatureIsDeterministic() {
+        int[] signature = MinHash.signature("今天天气怎么样");
+        assertEquals(MinHash.SIGNATURE_SIZE, signature.length);
+        assertArrayEquals(signature, MinHash.signature("今天天气怎么样"));
+        assertEquals(1.0, MinHash.similarity(signature, MinHash.signature("今天天气怎么样")), 0.0);
+    }
+
+    @Test
+    public void singleCharacterText() {
+        int[] signature = MinHash.signature("好");
+        for (int value : signature) {
+            assertTrue(value >= 0 && value < Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void similarTextsScoreHigherThanUnrelated() {
+        int[] query = MinHash.signature("今天北京天气怎么样");
+        double similar = MinHash.similarity(query, MinHash.signature("今天北京的天气怎么样"));
+        double unrelated = MinHash.similarity(query, MinHash.signature("给我讲一个笑话吧"));
+
+        assertTrue(similar > 0.6, "相似问题的相似度过低: " + similar);
+        assertTrue(unrelated < 0.2, "无关问题的相似度过高: " + unrelated);
+    }
+
+    @Test
+    public void estimatesJaccardSimilarity() {
+        String[][] pairs = {
+                { "今天北京天气怎么样", "今天北京的天气怎么样" },
+                { "播放一首周杰伦的歌", "播放一首陈奕迅的歌" },
+                { "明天早上七点叫我起床", "明天早上八点叫我起床" },
+                { "你叫什么名字", "你今年多大了" },
+                { "what is the weather like today", "what is the weather like tomorrow" },
+        };
+        for (String[] pair : pairs) {
+            double expected = jaccard(pair[0], pair[1]);
+            double estimated = MinHash.similarity(MinHash.signature(pair[0]), MinHash.signature(pair[1]));
+            // 64个哈希的标准差不超过1/16，这里允许约4倍标准差
+            assertEquals(expected, estimated, 0.25, pair[0] + " / " + pair[1]);
+        }
+    }
+
+    @Test
+    public void bigramsDistinguishCharacterOrder() {
+        // 字符集合相同但顺序不同，双字特征使相似度低于1
+        double similarity = MinHash.similarity(MinHash.signature("我爱你"), MinHash.signature("你爱我"));
+        assertTrue(similarity < 1.0);
+    }
+}
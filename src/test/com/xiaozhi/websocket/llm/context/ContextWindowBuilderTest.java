@@ -0,0 +1,142 @@
+package com.xiaozhi.websocket.llm.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaozhi.entity.SysMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ContextWindowBuilderTest {
+
+    // 每条消息的token数：9个汉字 + 1位数字 + 格式开销
+    private static final int MESSAGE_TOKENS = 10 + TokenCounter.MESSAGE_OVERHEAD;
+
+    private static final String TEXT = "十个字的一条消息啊0";
+
+    private static SysMessage message(String sender, String text) {
+        return new SysMessage().setSender(sender).setMessage(text);
+    }
+
+    /**
+     * 按轮次生成历史消息，每条消息的token数相同，末尾数字为轮次
+     */
+    private static List<SysMessage> history(int turns) {
+        List<SysMessage> history = new ArrayList<>();
+        for (int i = 1; i <= turns; i++) {
+            history.add(message("user", "提问的一条消息啊啊" + i));
+            history.add(message("assistant", "回答的一条消息啊啊" + i));
+        }
+        return history;
+    }
+
+    private static List<String> roles(PromptMessages messages) {
+        List<String> roles = new ArrayList<>();
+        for (PromptMessage message : messages.getMessages()) {
+            roles.add(message.getRole());
+        }
+        return roles;
+    }
+
+    @Test
+    public void keepsEverythingWithinBudget() {
+        ContextWindowBuilder builder = new ContextWindowBuilder(Integer.MAX_VALUE, 0);
+        PromptMessages messages = builder.build("你是助手", history(2), TEXT);
+
+        assertEquals(Arrays.asList("system", "user", "assistant", "user", "assistant", "user"), roles(messages));
+        assertEquals(TEXT, messages.get(messages.size() - 1).get("content"));
+        assertEquals(TokenCounter.countMessage("你是助手") + 5 * MESSAGE_TOKENS, messages.getTokens());
+    }
+
+    @Test
+    public void dropsOldestTurnsOverBudget() {
+        // 系统消息 + 当前用户消息 + 两轮历史刚好放下
+        int system = TokenCounter.countMessage("你是助手");
+        ContextWindowBuilder builder = new ContextWindowBuilder(system + 5 * MESSAGE_TOKENS + 10, 10);
+        List<SysMessage> history = history(3);
+        PromptMessages messages = builder.build("你是助手", history, TEXT);
+
+        assertEquals(Arrays.asList("system", "user", "assistant", "user", "assistant", "user"), roles(messages));
+        assertEquals("提问的一条消息啊啊2", messages.getMessages().get(1).getContent());
+        assertEquals("回答的一条消息啊啊3", messages.getMessages().get(4).getContent());
+        assertEquals(system + 5 * MESSAGE_TOKENS, messages.getTokens());
+    }
+
+    @Test
+    public void skipsOrphanAssistantAtWindowStart() {
+        // 预算只够三条历史消息，第一条会是缺少提问的助手回复
+        ContextWindowBuilder builder = new ContextWindowBuilder(4 * MESSAGE_TOKENS, 0);
+        PromptMessages messages = builder.build(null, history(3), TEXT);
+
+        assertEquals(Arrays.asList("user", "assistant", "user"), roles(messages));
+    }
+
+    @Test
+    public void skipsOrphanAssistantAtHistoryStart() {
+        List<SysMessage> history = new ArrayList<>();
+        history.add(message("assistant", "欢迎回来"));
+        history.addAll(history(1));
+        PromptMessages messages = new ContextWindowBuilder(Integer.MAX_VALUE, 0).build(null, history, TEXT);
+
+        assertEquals(Arrays.asList("user", "assistant", "user"), roles(messages));
+    }
+
+    @Test
+    public void alwaysKeepsSystemAndUserMessages() {
+        ContextWindowBuilder builder = new ContextWindowBuilder(1, 0);
+        PromptMessages messages = builder.build("你是助手", history(2), TEXT);
+
+        assertEquals(Arrays.asList("system", "user"), roles(messages));
+    }
+
+    @Test
+    public void emptySystemMessageIsOmitted() {
+        ContextWindowBuilder builder = new ContextWindowBuilder(Integer.MAX_VALUE, 0);
+
+        assertEquals(Collections.singletonList("user"), roles(builder.build("", Collections.emptyList(), TEXT)));
+        assertEquals(Collections.singletonList("user"), roles(builder.build(null, Collections.emptyList(), TEXT)));
+    }
+
+    @Test
+    public void nonAssistantSendersBecomeUser() {
+        List<SysMessage> history = Arrays.asList(message("device", "你好"), message("assistant", "你好呀"));
+        PromptMessages messages = new ContextWindowBuilder(Integer.MAX_VALUE, 0).build(null, history, TEXT);
+
+        assertEquals(Arrays.asList("user", "assistant", "user"), roles(messages));
+    }
+
+    @Test
+    public void reusesPromptMessagesForSameHistoryObjects() {
+        ContextWindowBuilder builder = new ContextWindowBuilder(Integer.MAX_VALUE, 0);
+        List<SysMessage> history = history(1);
+        PromptMessages first = builder.build("你是助手", history, "第一问");
+        PromptMessages second = builder.build("你是助手", history, "第二问");
+
+        for (int i = 0; i < 3; i++) {
+            assertSame(first.getMessages().get(i), second.getMessages().get(i));
+        }
+    }
+
+    @Test
+    public void serializesAsPlainMessageArray() throws Exception {
+        PromptMessages messages = new ContextWindowBuilder(Integer.MAX_VALUE, 0)
+                .build("你是\"助手\"", history(1), "现在几点？");
+        Map<String, Object> body = new HashMap<>();
+        body.put("messages", messages);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<?, ?> parsed = objectMapper.readValue(objectMapper.writeValueAsString(body), Map.class);
+        List<?> list = (List<?>) parsed.get("messages");
+        assertEquals(4, list.size());
+        assertEquals("你是\"助手\"", ((Map<?, ?>) list.get(0)).get("content"));
+        assertEquals("现在几点？", ((Map<?, ?>) list.get(3)).get("content"));
+        assertEquals(new ArrayList<>(messages), list);
+    }
+}
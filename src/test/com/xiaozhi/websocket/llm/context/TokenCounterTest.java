@@ -0,0 +1,59 @@
+package com.xiaozhi.websocket.llm.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenCounterTest {
+
+    @Test
+    public void emptyAndNullText() {
+        assertEquals(0, TokenCounter.count(null));
+        assertEquals(0, TokenCounter.count(""));
+        assertEquals(0, TokenCounter.count(" \t\n"));
+    }
+
+    @Test
+    public void countsEachCjkCharacter() {
+        assertEquals(4, TokenCounter.count("今天天气"));
+        assertEquals(5, TokenCounter.count("今天天气。"));
+    }
+
+    @Test
+    public void countsEnglishWordsByFourLetters() {
+        assertEquals(1, TokenCounter.count("a"));
+        assertEquals(1, TokenCounter.count("word"));
+        assertEquals(2, TokenCounter.count("words"));
+        // hello(2) + 空白 + world(2) + !(1)
+        assertEquals(5, TokenCounter.count("hello world!"));
+    }
+
+    @Test
+    public void countsDigitsByThree() {
+        assertEquals(1, TokenCounter.count("7"));
+        assertEquals(1, TokenCounter.count("123"));
+        assertEquals(2, TokenCounter.count("1234"));
+        // 23(1) + .(1) + 5(1) + 度(1)
+        assertEquals(4, TokenCounter.count("23.5度"));
+    }
+
+    @Test
+    public void lettersAndDigitsAreCountedSeparately() {
+        // abc(1) + 1234(2)
+        assertEquals(3, TokenCounter.count("abc1234"));
+        // gpt(1) + -(1) + 4(1) + o(1)
+        assertEquals(4, TokenCounter.count("gpt-4o"));
+    }
+
+    @Test
+    public void surrogatePairCountsOnce() {
+        assertEquals(1, TokenCounter.count("😀"));
+        assertEquals(3, TokenCounter.count("好😀好"));
+    }
+
+    @Test
+    public void messageAddsOverhead() {
+        assertEquals(TokenCounter.MESSAGE_OVERHEAD, TokenCounter.countMessage(null));
+        assertEquals(TokenCounter.MESSAGE_OVERHEAD + 2, TokenCounter.countMessage("你好"));
+    }
+}
@@ -0,0 +1,175 @@
+package com.xiaozhi.websocket.llm.failover;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgedTokenStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * 记录订阅和取消情况的候选请求
+     */
+    private static class Probe {
+        final AtomicInteger subscribed = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final HedgedTokenStream.Candidate candidate;
+
+        Probe(String name, Flux<String> tokens) {
+            candidate = new HedgedTokenStream.Candidate(name, () -> tokens
+                    .doOnSubscribe(s -> subscribed.incrementAndGet())
+                    .doOnCancel(() -> cancelled.set(true)));
+        }
+    }
+
+    private static List<HedgedTokenStream.Candidate> candidates(Probe... probes) {
+        List<HedgedTokenStream.Candidate> candidates = new ArrayList<>();
+        for (Probe probe : probes) {
+            candidates.add(probe.candidate);
+        }
+        return candidates;
+    }
+
+    private static List<String> collect(Flux<String> stream) {
+        return stream.collectList().block(TIMEOUT);
+    }
+
+    @Test
+    public void singleCandidateIsPassedThrough() {
+        Probe primary = new Probe("primary", Flux.just("a", "b"));
+
+        assertEquals(Arrays.asList("a", "b"),
+                collect(HedgedTokenStream.create(candidates(primary), Duration.ofMillis(10))));
+        assertEquals(1, primary.subscribed.get());
+    }
+
+    @Test
+    public void primaryWithinDeadlineDoesNotStartBackup() {
+        Probe primary = new Probe("primary", Flux.just("你", "好"));
+        Probe backup = new Probe("backup", Flux.just("备用"));
+
+        assertEquals(Arrays.asList("你", "好"),
+                collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))));
+        assertEquals(0, backup.subscribed.get());
+    }
+
+    @Test
+    public void slowPrimaryIsHedgedAndCancelled() {
+        Probe primary = new Probe("primary", Flux.never());
+        Probe backup = new Probe("backup", Flux.just("备", "用"));
+
+        long start = System.currentTimeMillis();
+        assertEquals(Arrays.asList("备", "用"),
+                collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofMillis(50))));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(1, primary.subscribed.get());
+        assertTrue(primary.cancelled.get());
+    }
+
+    @Test
+    public void earlierCandidateWinsWhenItAnswersFirst() {
+        // 主请求在期限后才输出，但仍早于备用请求
+        Probe primary = new Probe("primary", Flux.just("主").delaySubscription(Duration.ofMillis(100)));
+        Probe backup = new Probe("backup", Flux.just("备").delaySubscription(Duration.ofSeconds(10)));
+
+        assertEquals(Collections.singletonList("主"),
+                collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofMillis(20))));
+        assertEquals(1, backup.subscribed.get());
+        assertTrue(backup.cancelled.get());
+    }
+
+    @Test
+    public void failureBeforeOutputStartsNextImmediately() {
+        Probe primary = new Probe("primary", Flux.error(new IllegalStateException("down")));
+        Probe backup = new Probe("backup", Flux.just("备用"));
+
+        long start = System.currentTimeMillis();
+        assertEquals(Collections.singletonList("备用"),
+                collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void emptyCandidateCountsAsFailure() {
+        Probe primary = new Probe("primary", Flux.empty());
+        Probe backup = new Probe("backup", Flux.just("备用"));
+
+        assertEquals(Collections.singletonList("备用"),
+                collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))));
+    }
+
+    @Test
+    public void winnerErrorIsPropagatedWithoutSwitching() {
+        IllegalStateException failure = new IllegalStateException("broken");
+        Probe primary = new Probe("primary", Flux.just("部分").concatWith(Flux.error(failure)));
+        Probe backup = new Probe("backup", Flux.just("备用"));
+
+        List<String> tokens = new ArrayList<>();
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))
+                        .doOnNext(tokens::add)
+                        .blockLast(TIMEOUT));
+        assertSame(failure, thrown);
+        assertEquals(Collections.singletonList("部分"), tokens);
+        assertEquals(0, backup.subscribed.get());
+    }
+
+    @Test
+    public void allFailedEndsWithLastError() {
+        IllegalStateException last = new IllegalStateException("second");
+        Probe primary = new Probe("primary", Flux.error(new IllegalStateException("first")));
+        Probe backup = new Probe("backup", Flux.error(last));
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))
+                        .blockLast(TIMEOUT));
+        assertSame(last, thrown);
+    }
+
+    @Test
+    public void allEmptyCompletesWithoutTokens() {
+        Probe primary = new Probe("primary", Flux.empty());
+        Probe backup = new Probe("backup", Flux.empty());
+
+        assertTrue(collect(HedgedTokenStream.create(candidates(primary, backup), Duration.ofSeconds(10))).isEmpty());
+    }
+
+    @Test
+    public void downstreamCancelStopsAllCandidates() throws InterruptedException {
+        Probe primary = new Probe("primary", Flux.never());
+        Probe backup = new Probe("backup", Flux.never());
+
+        Disposable subscription = HedgedTokenStream.create(candidates(primary, backup), Duration.ofMillis(20))
+                .subscribe();
+        long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+        while (backup.subscribed.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, backup.subscribed.get());
+        assertFalse(primary.cancelled.get());
+
+        subscription.dispose();
+        // 备用请求可能刚订阅还未登记，登记时发现已结束也会立即取消
+        deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+        while (!backup.cancelled.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(primary.cancelled.get());
+        assertTrue(backup.cancelled.get());
+    }
+}
@@ -0,0 +1,161 @@
+package com.xiaozhi.websocket.llm.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.xiaozhi.entity.SysMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class ConversationHistoryStoreTest {
+
+    private static final String DEVICE = "device-1";
+
+    private ConversationHistoryStore store;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, List<SysMessage>> emptyLoader = deviceId -> {
+        loads.incrementAndGet();
+        return Collections.emptyList();
+    };
+
+    @BeforeEach
+    public void setUp() {
+        store = new ConversationHistoryStore();
+        ReflectionTestUtils.setField(store, "maxTurns", 2);
+        ReflectionTestUtils.setField(store, "maxMemoryMb", 64L);
+        ReflectionTestUtils.setField(store, "idleTimeoutMinutes", 30L);
+        store.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.destroy();
+    }
+
+    private static SysMessage message(String sender, String text) {
+        return new SysMessage().setSender(sender).setMessage(text);
+    }
+
+    private static List<String> texts(List<SysMessage> messages) {
+        List<String> texts = new ArrayList<>();
+        for (SysMessage message : messages) {
+            texts.add(message.getMessage());
+        }
+        return texts;
+    }
+
+    private void turn(String deviceId, String user, String assistant) {
+        store.addUserMessage(deviceId, message("user", user), emptyLoader);
+        store.addAssistantMessage(deviceId, message("assistant", assistant), emptyLoader);
+    }
+
+    @Test
+    public void pendingUserMessageIsHiddenUntilReply() {
+        store.addUserMessage(DEVICE, message("user", "你好"), emptyLoader);
+        assertTrue(store.getMessages(DEVICE, 10, emptyLoader).isEmpty());
+
+        store.addAssistantMessage(DEVICE, message("assistant", "你好呀"), emptyLoader);
+        assertEquals(Arrays.asList("你好", "你好呀"), texts(store.getMessages(DEVICE, 10, emptyLoader)));
+    }
+
+    @Test
+    public void newerUserMessageReplacesUnansweredOne() {
+        store.addUserMessage(DEVICE, message("user", "第一句"), emptyLoader);
+        store.addUserMessage(DEVICE, message("user", "第二句"), emptyLoader);
+        store.addAssistantMessage(DEVICE, message("assistant", "回复"), emptyLoader);
+
+        assertEquals(Arrays.asList("第二句", "回复"), texts(store.getMessages(DEVICE, 10, emptyLoader)));
+    }
+
+    @Test
+    public void keepsOnlyConfiguredTurns() {
+        turn(DEVICE, "u1", "a1");
+        turn(DEVICE, "u2", "a2");
+        turn(DEVICE, "u3", "a3");
+
+        assertEquals(4, store.getCapacity());
+        assertEquals(Arrays.asList("u2", "a2", "u3", "a3"), texts(store.getMessages(DEVICE, 10, emptyLoader)));
+        assertEquals(Arrays.asList("u3", "a3"), texts(store.getMessages(DEVICE, 2, emptyLoader)));
+        assertTrue(store.getMessages(DEVICE, 0, emptyLoader).isEmpty());
+    }
+
+    @Test
+    public void loadsFromDatabaseOnceAndKeepsNewestMessages() {
+        List<SysMessage> stored = Arrays.asList(message("user", "u1"), message("assistant", "a1"),
+                message("user", "u2"), message("assistant", "a2"), message("user", "u3"), message("assistant", "a3"));
+        Function<String, List<SysMessage>> loader = deviceId -> {
+            loads.incrementAndGet();
+            return stored;
+        };
+
+        assertEquals(Arrays.asList("u2", "a2", "u3", "a3"), texts(store.getMessages(DEVICE, 10, loader)));
+        store.getMessages(DEVICE, 10, loader);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void clearForcesReload() {
+        turn(DEVICE, "u1", "a1");
+        store.clear(DEVICE);
+
+        assertEquals(0, store.size());
+        assertTrue(store.getMessages(DEVICE, 10, emptyLoader).isEmpty());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void devicesAreIsolated() {
+        turn("a", "ua", "aa");
+        turn("b", "ub", "ab");
+
+        assertEquals(2, store.size());
+        assertEquals(Arrays.asList("ua", "aa"), texts(store.getMessages("a", 10, emptyLoader)));
+        assertEquals(Arrays.asList("ub", "ab"), texts(store.getMessages("b", 10, emptyLoader)));
+    }
+
+    @Test
+    public void tracksMemoryAcrossOverwriteAndClear() {
+        turn(DEVICE, "u1", "a1");
+        long oneTurn = store.getUsedBytes();
+        assertTrue(oneTurn > 0);
+
+        turn(DEVICE, "u2", "a2");
+        assertEquals(oneTurn * 2, store.getUsedBytes());
+
+        // 覆盖最旧的一轮，占用不变
+        turn(DEVICE, "u3", "a3");
+        assertEquals(oneTurn * 2, store.getUsedBytes());
+
+        store.clear(DEVICE);
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedDevicesOverBudget() throws InterruptedException {
+        store.destroy();
+        ReflectionTestUtils.setField(store, "maxMemoryMb", 0L);
+        store.init();
+
+        turn("old", "u", "a");
+        Thread.sleep(5);
+        turn("new", "u", "a");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.size());
+        assertEquals(0, store.getUsedBytes());
+    }
+}
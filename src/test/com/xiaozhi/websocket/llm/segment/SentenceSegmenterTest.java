@@ -0,0 +1,146 @@
+package com.xiaozhi.websocket.llm.segment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SentenceSegmenterTest {
+
+    private final List<String> sentences = new ArrayList<>();
+    private final List<Boolean> firstFlags = new ArrayList<>();
+    private final List<Boolean> lastFlags = new ArrayList<>();
+
+    private SentenceSegmenter segmenter(EmissionPolicy policy) {
+        return new SentenceSegmenter(policy, (sentence, first, last) -> {
+            sentences.add(sentence);
+            firstFlags.add(first);
+            lastFlags.add(last);
+        });
+    }
+
+    /**
+     * 按1~3个字符切分成模拟的token后逐个追加
+     */
+    private List<String> segment(EmissionPolicy policy, String text) {
+        SentenceSegmenter segmenter = segmenter(policy);
+        int i = 0;
+        int size = 1;
+        while (i < text.length()) {
+            int end = Math.min(text.length(), i + size);
+            segmenter.append(text.substring(i, end));
+            i = end;
+            size = size % 3 + 1;
+        }
+        segmenter.finish();
+        return sentences;
+    }
+
+    private List<String> segment(String text) {
+        return segment(new LengthEmissionPolicy(1, 50), text);
+    }
+
+    @Test
+    public void splitsChineseSentences() {
+        assertEquals(Arrays.asList("你好！", "今天天气不错。", "要出门吗？"), segment("你好！今天天气不错。要出门吗？"));
+        assertEquals(Arrays.asList(true, false, false), firstFlags);
+        assertEquals(Arrays.asList(false, false, true), lastFlags);
+    }
+
+    @Test
+    public void keepsRepeatedTerminalsAndClosingQuotesInSentence() {
+        assertEquals(Arrays.asList("真的吗？！", "他说：“走吧。”", "好。"), segment("真的吗？！他说：“走吧。”好。"));
+    }
+
+    @Test
+    public void ellipsisEndsSentence() {
+        assertEquals(Arrays.asList("记得带上帽子……", "另外会下雨。"), segment("记得带上帽子……另外会下雨。"));
+        sentences.clear();
+        assertEquals(Arrays.asList("Well...", "ok."), segment("Well... ok."));
+    }
+
+    @Test
+    public void doesNotSplitDecimalsAbbreviationsAndDomains() {
+        assertEquals(Arrays.asList("气温是23.5度。", "Mr. Smith visited xiaozhi.me today.", "Fine."),
+                segment("气温是23.5度。Mr. Smith visited xiaozhi.me today. Fine."));
+        sentences.clear();
+        assertEquals(Arrays.asList("Try e.g. tea.", "J. Doe agreed."), segment("Try e.g. tea. J. Doe agreed."));
+    }
+
+    @Test
+    public void newlineEndsSentence() {
+        assertEquals(Arrays.asList("第一行", "第二行"), segment("第一行\n第二行"));
+    }
+
+    @Test
+    public void mergesShortSentencesUnderMinLength() {
+        assertEquals(Arrays.asList("嗯。好的，没问题。", "明天见！"),
+                segment(new LengthEmissionPolicy(5, 50), "嗯。好的，没问题。明天见！"));
+    }
+
+    @Test
+    public void splitsLongSentenceAtPause() {
+        assertEquals(Arrays.asList("一二三四五六，", "七八九十。"),
+                segment(new LengthEmissionPolicy(1, 6), "一二三四五六，七八九十。"));
+    }
+
+    @Test
+    public void numberSeparatorsAreNotPauses() {
+        assertEquals(Arrays.asList("共1,000人在10:30到。"),
+                segment(new LengthEmissionPolicy(1, 2), "共1,000人在10:30到。"));
+    }
+
+    @Test
+    public void firstSentenceFlushesEarlyAtPause() {
+        EmissionPolicy policy = new FirstSentenceFastFlushPolicy(new LengthEmissionPolicy(5, 50), 2);
+        assertEquals(Arrays.asList("好的，", "我来帮你查一下天气，稍等。"), segment(policy, "好的，我来帮你查一下天气，稍等。"));
+    }
+
+    @Test
+    public void trailingPunctuationJoinsLastSentence() {
+        SentenceSegmenter segmenter = segmenter(new LengthEmissionPolicy(1, 50));
+        segmenter.append("完成了。");
+        assertTrue(sentences.isEmpty());
+        segmenter.append("  ");
+        segmenter.finish();
+        assertEquals(Arrays.asList("完成了。"), sentences);
+        assertEquals(Arrays.asList(true), lastFlags);
+    }
+
+    @Test
+    public void unterminatedTailIsLastSentence() {
+        assertEquals(Arrays.asList("你好。", "还有什么需要"), segment("你好。还有什么需要"));
+        assertEquals(Arrays.asList(false, true), lastFlags);
+    }
+
+    @Test
+    public void whitespaceOnlyProducesNothing() {
+        assertTrue(segment("  \n ").isEmpty());
+    }
+
+    @Test
+    public void finishResetsForNextStream() {
+        SentenceSegmenter segmenter = segmenter(new LengthEmissionPolicy(1, 50));
+        segmenter.append("第一条。");
+        segmenter.finish();
+        segmenter.append("第二条。");
+        segmenter.finish();
+        assertEquals(Arrays.asList("第一条。", "第二条。"), sentences);
+        assertEquals(Arrays.asList(true, true), firstFlags);
+        assertEquals(Arrays.asList(true, true), lastFlags);
+    }
+
+    @Test
+    public void longSentenceGrowsBuffer() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append('字');
+        }
+        String sentence = text.append('。').toString();
+        assertEquals(Arrays.asList(sentence), segment(sentence));
+    }
+}
@@ -0,0 +1,221 @@
+package com.xiaozhi.websocket.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.xiaozhi.entity.SysConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TtsDeduplicatorTest {
+
+    private static final String SCOPE = "aliyun:1:xiaoyun";
+    private static final String FALLBACK_SCOPE = "edge:null:zh-CN-XiaoxiaoNeural";
+
+    private TtsDeduplicator deduplicator;
+
+    private final AtomicInteger started = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        deduplicator = new TtsDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "enabled", true);
+        ReflectionTestUtils.setField(deduplicator, "cacheTtlMs", 30000L);
+        ReflectionTestUtils.setField(deduplicator, "cacheMaxEntries", 200);
+        ReflectionTestUtils.setField(deduplicator, "cacheMaxChars", 30);
+    }
+
+    private static AudioService.AudioProcessResult result(int frames) {
+        List<byte[]> opusFrames = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            opusFrames.add(new byte[] { (byte) i });
+        }
+        return new AudioService.AudioProcessResult(opusFrames, frames * 60L);
+    }
+
+    /**
+     * 立即完成的合成，记录开始次数
+     */
+    private TtsDeduplicator.Synthesis immediate(AudioService.AudioProcessResult result) {
+        return producer -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(result);
+        };
+    }
+
+    private static AudioService.AudioProcessResult await(CompletableFuture<AudioService.AudioProcessResult> future)
+            throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void identicalSentenceWaitsOnInFlightSynthesis() throws Exception {
+        CompletableFuture<AudioService.AudioProcessResult> synthesis = new CompletableFuture<>();
+        CompletableFuture<AudioService.AudioProcessResult> first = deduplicator.synthesize(SCOPE, "好的。",
+                producer -> {
+                    started.incrementAndGet();
+                    return synthesis;
+                });
+
+        // 后来的请求接在进行中的合成上，立即返回，不阻塞调用线程
+        CompletableFuture<AudioService.AudioProcessResult> second = deduplicator.synthesize(SCOPE, "好的。",
+                immediate(result(1)));
+        assertFalse(second.isDone());
+        assertEquals(1, started.get());
+        assertEquals(1, deduplicator.getCoalescedCount());
+
+        synthesis.complete(result(3));
+        assertEquals(3, await(first).getOpusFrames().size());
+        assertSame(await(first).getOpusFrames(), await(second).getOpusFrames());
+    }
+
+    @Test
+    public void recentResultIsReused() throws Exception {
+        AudioService.AudioProcessResult shared = await(deduplicator.synthesize(SCOPE, "没问题！", immediate(result(2))));
+
+        AudioService.AudioProcessResult reused = await(deduplicator.synthesize(SCOPE, "没问题！",
+                immediate(result(5))));
+        assertSame(shared.getOpusFrames(), reused.getOpusFrames());
+        assertEquals(1, started.get());
+        assertEquals(1, deduplicator.getCacheHitCount());
+        assertThrows(UnsupportedOperationException.class, () -> reused.getOpusFrames().add(new byte[0]));
+    }
+
+    @Test
+    public void differentScopeIsSynthesizedSeparately() throws Exception {
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(2))));
+        await(deduplicator.synthesize("aliyun:1:aixia", "好的。", immediate(result(2))));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void fallbackResultIsCachedUnderProducingScope() throws Exception {
+        // 主服务排队过长，实际由备用服务合成
+        await(deduplicator.synthesize(SCOPE, "好的。", producer -> {
+            started.incrementAndGet();
+            producer.accept(FALLBACK_SCOPE);
+            return CompletableFuture.completedFuture(result(2));
+        }));
+
+        // 主服务的后续请求不使用备用音色的结果
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(2))));
+        assertEquals(2, started.get());
+
+        // 以备用服务为主服务的请求可以复用
+        await(deduplicator.synthesize(FALLBACK_SCOPE, "好的。", immediate(result(2))));
+        assertEquals(2, started.get());
+        assertEquals(1, deduplicator.getCacheHitCount());
+    }
+
+    @Test
+    public void failureIsSharedAndNotCached() throws Exception {
+        IllegalStateException failure = new IllegalStateException("合成失败");
+        CompletableFuture<AudioService.AudioProcessResult> synthesis = new CompletableFuture<>();
+        CompletableFuture<AudioService.AudioProcessResult> first = deduplicator.synthesize(SCOPE, "好的。",
+                producer -> synthesis);
+        CompletableFuture<AudioService.AudioProcessResult> second = deduplicator.synthesize(SCOPE, "好的。",
+                immediate(result(1)));
+        synthesis.completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> await(first)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> await(second)).getCause());
+
+        // 失败后重新合成
+        assertEquals(1, await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1)))).getOpusFrames().size());
+        assertEquals(1, started.get());
+    }
+
+    @Test
+    public void synthesisThrowingIsReportedAsFailure() {
+        IllegalStateException failure = new IllegalStateException("无法创建服务");
+        CompletableFuture<AudioService.AudioProcessResult> future = deduplicator.synthesize(SCOPE, "好的。",
+                producer -> {
+                    throw failure;
+                });
+        assertSame(failure, assertThrows(ExecutionException.class, () -> await(future)).getCause());
+    }
+
+    @Test
+    public void cancelledWaiterDoesNotAffectOthers() throws Exception {
+        CompletableFuture<AudioService.AudioProcessResult> synthesis = new CompletableFuture<>();
+        CompletableFuture<AudioService.AudioProcessResult> first = deduplicator.synthesize(SCOPE, "好的。",
+                producer -> synthesis);
+        CompletableFuture<AudioService.AudioProcessResult> second = deduplicator.synthesize(SCOPE, "好的。",
+                immediate(result(1)));
+
+        second.cancel(true);
+        synthesis.complete(result(2));
+        assertEquals(2, await(first).getOpusFrames().size());
+    }
+
+    @Test
+    public void synthesisIsCancelledWhenAllWaitersCancel() throws Exception {
+        CompletableFuture<AudioService.AudioProcessResult> synthesis = new CompletableFuture<>();
+        CompletableFuture<AudioService.AudioProcessResult> first = deduplicator.synthesize(SCOPE, "好的。",
+                producer -> synthesis);
+        CompletableFuture<AudioService.AudioProcessResult> second = deduplicator.synthesize(SCOPE, "好的。",
+                immediate(result(1)));
+
+        first.cancel(false);
+        assertFalse(synthesis.isCancelled());
+        second.cancel(false);
+        assertTrue(synthesis.isCancelled());
+
+        // 取消后相同的句子重新合成
+        assertEquals(1, await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1)))).getOpusFrames().size());
+        assertEquals(1, started.get());
+    }
+
+    @Test
+    public void longSentencesAreNotCached() throws Exception {
+        String text = String.join("", Collections.nCopies(31, "长"));
+        await(deduplicator.synthesize(SCOPE, text, immediate(result(1))));
+        await(deduplicator.synthesize(SCOPE, text, immediate(result(1))));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void expiredResultIsSynthesizedAgain() throws Exception {
+        ReflectionTestUtils.setField(deduplicator, "cacheTtlMs", 0L);
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1))));
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1))));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void disabledAlwaysSynthesizes() throws Exception {
+        ReflectionTestUtils.setField(deduplicator, "enabled", false);
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1))));
+        await(deduplicator.synthesize(SCOPE, "好的。", immediate(result(1))));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void normalizesWidthAndWhitespace() {
+        assertEquals("OK, 好的!", TtsDeduplicator.normalize("  ＯＫ,   好的！ "));
+        assertEquals("", TtsDeduplicator.normalize(null));
+    }
+
+    @Test
+    public void scopeIncludesProviderConfigAndVoice() {
+        SysConfig config = new SysConfig();
+        config.setConfigId(1);
+        assertEquals(SCOPE, TtsDeduplicator.scope("aliyun", config, "xiaoyun"));
+        assertEquals("edge:null:zh-CN-XiaoxiaoNeural", TtsDeduplicator.scope("edge", null, "zh-CN-XiaoxiaoNeural"));
+        assertNotEquals(TtsDeduplicator.scope("aliyun", config, "xiaoyun"),
+                TtsDeduplicator.scope("volcengine", config, "xiaoyun"));
+    }
+}
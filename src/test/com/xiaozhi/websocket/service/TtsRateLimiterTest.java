@@ -0,0 +1,390 @@
+package com.xiaozhi.websocket.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.websocket.tts.TtsService;
+import com.xiaozhi.websocket.tts.factory.TtsServiceFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class TtsRateLimiterTest {
+
+    private static final String PREFIX = "app.tts.rate-limit.";
+
+    private final MockEnvironment environment = new MockEnvironment();
+    private final Map<Integer, SysConfig> configs = new HashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private TtsRateLimiter limiter;
+
+    /**
+     * 按配置的提供商返回服务，不发起实际合成
+     */
+    private static class FakeTtsService implements TtsService {
+        private final String provider;
+
+        FakeTtsService(String provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public String getProviderName() {
+            return provider;
+        }
+
+        @Override
+        public String getAudioFileName() {
+            return "test.mp3";
+        }
+
+        @Override
+        public String textToSpeech(String text) {
+            return text;
+        }
+
+        @Override
+        public void streamTextToSpeech(String text, Consumer<byte[]> audioDataConsumer) {
+        }
+    }
+
+    private static class FakeTtsServiceFactory extends TtsServiceFactory {
+        private final TtsService defaultService = new FakeTtsService("edge");
+
+        @Override
+        public TtsService getDefaultTtsService() {
+            return defaultService;
+        }
+
+        @Override
+        public TtsService getTtsService(SysConfig config, String voiceName) {
+            return config == null ? defaultService : new FakeTtsService(config.getProvider());
+        }
+    }
+
+    private class FakeConfigService implements SysConfigService {
+        @Override
+        public int add(SysConfig config) {
+            return 0;
+        }
+
+        @Override
+        public int update(SysConfig config) {
+            return 0;
+        }
+
+        @Override
+        public List<SysConfig> query(SysConfig config) {
+            return new ArrayList<>(configs.values());
+        }
+
+        @Override
+        public SysConfig selectConfigById(Integer configId) {
+            return configs.get(configId);
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        environment.setProperty(PREFIX + "qps", "1000");
+        environment.setProperty(PREFIX + "concurrency", "1");
+        configs.put(1, config(1, "aliyun"));
+        configs.put(2, config(2, "volcengine"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (limiter != null) {
+            limiter.destroy();
+        }
+        executor.shutdownNow();
+    }
+
+    private TtsRateLimiter limiter() {
+        limiter = new TtsRateLimiter(environment, new FakeTtsServiceFactory(), new FakeConfigService(),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        return limiter;
+    }
+
+    private static SysConfig config(int configId, String provider) {
+        SysConfig config = new SysConfig();
+        config.setConfigId(configId);
+        config.setProvider(provider);
+        return config;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "等待超时");
+    }
+
+    /**
+     * 占住唯一的并发名额，直到release
+     */
+    private CompletableFuture<String> hold(TtsRateLimiter limiter, SysConfig config, CountDownLatch release)
+            throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<String> future = limiter.synthesize(config, "voice", "占用", false, executor, route -> {
+            running.countDown();
+            release.await();
+            return "held";
+        });
+        await(running);
+        return future;
+    }
+
+    @Test
+    public void waitingForQuotaDoesNotBlockCaller() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> queued = limiter.synthesize(configs.get(1), "voice", "排队", false, executor,
+                route -> "queued");
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertFalse(queued.isDone());
+
+        release.countDown();
+        assertEquals("held", await(held));
+        assertEquals("queued", await(queued));
+    }
+
+    @Test
+    public void callRunsOnGivenExecutor() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        Thread caller = Thread.currentThread();
+
+        Thread worker = await(limiter.synthesize(configs.get(1), "voice", "你好", false, executor,
+                route -> Thread.currentThread()));
+        assertFalse(worker == caller);
+    }
+
+    @Test
+    public void firstSentencesAreAdmittedFirst() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<String> a = limiter.synthesize(configs.get(1), "voice", "甲", false, executor,
+                route -> {
+                    order.add("甲");
+                    return "甲";
+                });
+        CompletableFuture<String> b = limiter.synthesize(configs.get(1), "voice", "乙", false, executor,
+                route -> {
+                    order.add("乙");
+                    return "乙";
+                });
+        CompletableFuture<String> first = limiter.synthesize(configs.get(1), "voice", "首句", true, executor,
+                route -> {
+                    order.add("首句");
+                    return "首句";
+                });
+
+        release.countDown();
+        await(held);
+        await(a);
+        await(b);
+        await(first);
+        assertEquals(Arrays.asList("首句", "甲", "乙"), order);
+    }
+
+    @Test
+    public void requestsAreSpacedByQps() throws Exception {
+        environment.setProperty(PREFIX + "qps", "10");
+        environment.setProperty(PREFIX + "burst", "1");
+        environment.setProperty(PREFIX + "concurrency", "10");
+        TtsRateLimiter limiter = limiter();
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(limiter.synthesize(configs.get(1), "voice", "句子" + i, false, executor,
+                    route -> System.currentTimeMillis()));
+        }
+        long first = await(futures.get(0));
+        long last = await(futures.get(2));
+        // 每秒10个令牌，第三个请求至少在约200ms后开始
+        assertTrue(last - first >= 150, "请求间隔过短: " + (last - first) + "ms");
+    }
+
+    @Test
+    public void overloadUsesConfiguredFallbackRoute() throws Exception {
+        environment.setProperty(PREFIX + "max-queue", "1");
+        environment.setProperty(PREFIX + "fallback.1.config-id", "2");
+        environment.setProperty(PREFIX + "fallback.1.voice", "zh_female_backup");
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+        CompletableFuture<TtsRateLimiter.Route> queued = limiter.synthesize(configs.get(1), "voice", "排队", false,
+                executor, route -> route);
+
+        // 主服务排队已满，改用备用配置和音色，不必等待
+        TtsRateLimiter.Route route = await(limiter.synthesize(configs.get(1), "voice", "溢出", false, executor,
+                r -> r));
+        assertTrue(route.isFallback());
+        assertEquals("volcengine", route.getService().getProviderName());
+        assertSame(configs.get(2), route.getConfig());
+        assertEquals("zh_female_backup", route.getVoiceName());
+
+        release.countDown();
+        await(held);
+        assertFalse(await(queued).isFallback());
+    }
+
+    @Test
+    public void overloadWithoutFallbackKeepsQueueing() throws Exception {
+        environment.setProperty(PREFIX + "max-queue", "1");
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+        limiter.synthesize(configs.get(1), "voice", "排队", false, executor, route -> route);
+
+        CompletableFuture<TtsRateLimiter.Route> overflow = limiter.synthesize(configs.get(1), "voice", "溢出", false,
+                executor, route -> route);
+        Thread.sleep(50);
+        assertFalse(overflow.isDone());
+
+        release.countDown();
+        await(held);
+        TtsRateLimiter.Route route = await(overflow);
+        assertFalse(route.isFallback());
+        assertEquals("aliyun", route.getService().getProviderName());
+        assertEquals("voice", route.getVoiceName());
+    }
+
+    @Test
+    public void fallbackToDefaultServiceWithConfigIdZero() throws Exception {
+        // 只有主服务的提供商排队上限为0
+        environment.setProperty(PREFIX + "aliyun.max-queue", "0");
+        environment.setProperty(PREFIX + "fallback.1.config-id", "0");
+        environment.setProperty(PREFIX + "fallback.1.voice", "zh-CN-XiaoxiaoNeural");
+
+        TtsRateLimiter.Route route = await(limiter().synthesize(configs.get(1), "voice", "溢出", false, executor,
+                r -> r));
+        assertTrue(route.isFallback());
+        assertEquals("edge", route.getService().getProviderName());
+        assertEquals("zh-CN-XiaoxiaoNeural", route.getVoiceName());
+    }
+
+    @Test
+    public void waitingLongerThanAcquireTimeoutFails() throws Exception {
+        environment.setProperty(PREFIX + "acquire-timeout-ms", "100");
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        hold(limiter, configs.get(1), release);
+
+        CompletableFuture<String> queued = limiter.synthesize(configs.get(1), "voice", "排队", false, executor,
+                route -> "queued");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> await(queued));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        release.countDown();
+    }
+
+    @Test
+    public void failedCallReleasesQuota() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        IllegalStateException failure = new IllegalStateException("合成失败");
+
+        CompletableFuture<String> failed = limiter.synthesize(configs.get(1), "voice", "失败", false, executor,
+                route -> {
+                    throw failure;
+                });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> await(failed));
+        assertSame(failure, e.getCause());
+
+        assertEquals("ok", await(limiter.synthesize(configs.get(1), "voice", "成功", false, executor,
+                route -> "ok")));
+    }
+
+    @Test
+    public void cancelledRequestLeavesQueueWithoutCallingProvider() throws Exception {
+        environment.setProperty(PREFIX + "max-queue", "1");
+        environment.setProperty(PREFIX + "fallback.1.config-id", "2");
+        environment.setProperty(PREFIX + "fallback.1.voice", "zh_female_backup");
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> queued = limiter.synthesize(configs.get(1), "voice", "排队", false, executor,
+                route -> {
+                    calls.incrementAndGet();
+                    return "queued";
+                });
+        // 回复被打断，排队的请求退出，不再计入排队长度，后续请求不会被挤到备用服务
+        queued.cancel(false);
+        CompletableFuture<TtsRateLimiter.Route> next = limiter.synthesize(configs.get(1), "voice", "下一句", false,
+                executor, route -> route);
+
+        release.countDown();
+        await(held);
+        assertFalse(await(next).isFallback());
+        Thread.sleep(50);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void cancelledAfterAdmissionReleasesQuota() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        List<Runnable> handedOver = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        // 获得配额后、执行前被取消
+        CompletableFuture<String> cancelled = limiter.synthesize(configs.get(1), "voice", "取消", false,
+                handedOver::add, route -> {
+                    calls.incrementAndGet();
+                    return "cancelled";
+                });
+        assertEquals(1, handedOver.size());
+        cancelled.cancel(false);
+        handedOver.get(0).run();
+        assertEquals(0, calls.get());
+
+        // 唯一的并发名额已归还
+        assertEquals("ok", await(limiter.synthesize(configs.get(1), "voice", "成功", false, executor,
+                route -> "ok")));
+    }
+
+    @Test
+    public void limitersAreSeparatedByConfig() throws Exception {
+        TtsRateLimiter limiter = limiter();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> held = hold(limiter, configs.get(1), release);
+
+        // 另一个配置不受第一个配置占满的影响
+        assertEquals("ok", await(limiter.synthesize(configs.get(2), "voice", "你好", false, executor,
+                route -> "ok")));
+        release.countDown();
+        await(held);
+    }
+}
@@ -0,0 +1,361 @@
+package com.xiaozhi.websocket.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TtsSchedulerTest {
+
+    private static final String SESSION = "session-1";
+
+    private TtsScheduler scheduler;
+
+    // 交付和取消的记录，按发生顺序
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private void start(int workers, long bufferedAudioMs) {
+        scheduler = new TtsScheduler();
+        ReflectionTestUtils.setField(scheduler, "workers", workers);
+        ReflectionTestUtils.setField(scheduler, "bufferedAudioTargetMs", bufferedAudioMs);
+        ReflectionTestUtils.setField(scheduler, "msPerChar", 10L);
+        scheduler.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.destroy();
+        }
+    }
+
+    private static AudioService.AudioProcessResult result(long durationMs) {
+        return new AudioService.AudioProcessResult(new ArrayList<>(), durationMs);
+    }
+
+    /**
+     * 记录交付结果的Delivery，name为句子名
+     */
+    private TtsScheduler.Delivery record(String name, CountDownLatch done) {
+        return new TtsScheduler.Delivery() {
+            @Override
+            public void deliver(AudioService.AudioProcessResult result, Throwable error) {
+                events.add(error == null ? name : name + ":error");
+                done.countDown();
+            }
+
+            @Override
+            public void cancelled() {
+                events.add(name + ":cancelled");
+                done.countDown();
+            }
+        };
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "等待超时");
+    }
+
+    @Test
+    public void deliversInSubmissionOrder() throws InterruptedException {
+        start(3, 60000);
+        CountDownLatch done = new CountDownLatch(3);
+
+        // 后提交的句子先合成完成
+        scheduler.submit(SESSION, "一", () -> {
+            Thread.sleep(150);
+            return result(100);
+        }, record("s1", done));
+        scheduler.submit(SESSION, "二", () -> {
+            Thread.sleep(50);
+            return result(100);
+        }, record("s2", done));
+        scheduler.submit(SESSION, "三", () -> result(100), record("s3", done));
+
+        await(done);
+        assertEquals(Arrays.asList("s1", "s2", "s3"), events);
+    }
+
+    @Test
+    public void failureIsDeliveredInOrder() throws InterruptedException {
+        start(2, 60000);
+        CountDownLatch done = new CountDownLatch(3);
+
+        scheduler.submit(SESSION, "一", () -> {
+            Thread.sleep(100);
+            return result(100);
+        }, record("s1", done));
+        scheduler.submit(SESSION, "二", () -> {
+            throw new IllegalStateException("合成失败");
+        }, record("s2", done));
+        scheduler.submit(SESSION, "三", () -> result(100), record("s3", done));
+
+        await(done);
+        assertEquals(Arrays.asList("s1", "s2:error", "s3"), events);
+    }
+
+    @Test
+    public void deliveryReceivesResultAndError() throws InterruptedException {
+        start(1, 60000);
+        AudioService.AudioProcessResult expected = result(300);
+        IllegalStateException failure = new IllegalStateException("合成失败");
+        Object[] received = new Object[4];
+        CountDownLatch done = new CountDownLatch(2);
+
+        scheduler.submit(SESSION, "一", () -> expected, (result, error) -> {
+            received[0] = result;
+            received[1] = error;
+            done.countDown();
+        });
+        scheduler.submit(SESSION, "二", () -> {
+            throw failure;
+        }, (result, error) -> {
+            received[2] = result;
+            received[3] = error;
+            done.countDown();
+        });
+
+        await(done);
+        assertSame(expected, received[0]);
+        assertNull(received[1]);
+        assertNull(received[2]);
+        assertSame(failure, received[3]);
+    }
+
+    @Test
+    public void firstSentenceOfNewReplyIsScheduledBeforeLaterSentences() throws InterruptedException {
+        start(1, 60000);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+        // 占住唯一的工作线程，首句较长，后续句子的预计播放时间明显晚于当前
+        scheduler.submit("a", repeat("一", 100), () -> {
+            busy.countDown();
+            release.await();
+            return result(100);
+        }, record("a1", done));
+        await(busy);
+
+        // 会话a后续的句子预计在前面各句播完后才播放，会话b的首句预计立即播放
+        scheduler.submit("a", "二二二二二二二二二二", () -> {
+            started.add("a2");
+            return result(100);
+        }, record("a2", done));
+        scheduler.submit("a", "三", () -> {
+            started.add("a3");
+            return result(100);
+        }, record("a3", done));
+        scheduler.submit("b", "一", () -> {
+            started.add("b1");
+            return result(100);
+        }, record("b1", done));
+        release.countDown();
+
+        await(done);
+        assertEquals(Arrays.asList("b1", "a2", "a3"), started);
+    }
+
+    @Test
+    public void beginReplyCancelsPendingSentences() throws InterruptedException {
+        start(1, 60000);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        scheduler.beginReply(SESSION);
+        scheduler.submit(SESSION, "一", () -> {
+            busy.countDown();
+            release.await();
+            return result(100);
+        }, record("s1", done));
+        await(busy);
+        scheduler.submit(SESSION, "二", () -> result(100), record("s2", done));
+
+        // 新一轮回复开始：等待中的句子立即取消，正在合成的句子完成后也不再交付
+        scheduler.beginReply(SESSION);
+        assertEquals(Collections.singletonList("s2:cancelled"), events);
+        assertEquals(0, scheduler.getPendingCount());
+
+        scheduler.submit(SESSION, "新", () -> result(100), record("n1", done));
+        release.countDown();
+
+        await(done);
+        assertTrue(events.contains("s1:cancelled"));
+        assertTrue(events.contains("n1"));
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void cancelSessionCancelsCompletedButUndeliveredSentences() throws InterruptedException {
+        start(2, 60000);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        scheduler.submit(SESSION, "一", () -> {
+            busy.countDown();
+            release.await();
+            return result(100);
+        }, record("s1", done));
+        await(busy);
+        scheduler.submit(SESSION, "二", () -> {
+            try {
+                return result(100);
+            } finally {
+                secondDone.countDown();
+            }
+        }, record("s2", done));
+        await(secondDone);
+        // 第二句已合成，但要等第一句交付后才能交付
+        Thread.sleep(50);
+
+        scheduler.cancelSession(SESSION);
+        assertEquals(Collections.singletonList("s2:cancelled"), events);
+
+        release.countDown();
+        await(done);
+        assertEquals(Arrays.asList("s2:cancelled", "s1:cancelled"), events);
+    }
+
+    @Test
+    public void waitingAsyncSynthesisDoesNotOccupyWorker() throws InterruptedException {
+        start(1, 60000);
+        CompletableFuture<AudioService.AudioProcessResult> quota = new CompletableFuture<>();
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        // 第一句等待配额，唯一的工作线程仍可合成第二句
+        scheduler.submitAsync(SESSION, "一", workers -> quota, record("s1", done));
+        scheduler.submit(SESSION, "二", () -> {
+            secondStarted.countDown();
+            return result(100);
+        }, record("s2", done));
+
+        await(secondStarted);
+        Thread.sleep(50);
+        assertTrue(events.isEmpty());
+
+        quota.complete(result(100));
+        await(done);
+        assertEquals(Arrays.asList("s1", "s2"), events);
+    }
+
+    @Test
+    public void handedBackTasksRunOnWorkersBeforeNewSentences() throws InterruptedException {
+        start(1, 60000);
+        CompletableFuture<Void> quota = new CompletableFuture<>();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        String[] thread = new String[1];
+
+        scheduler.submitAsync(SESSION, "一", workers -> quota.thenApplyAsync(v -> {
+            thread[0] = Thread.currentThread().getName();
+            order.add("s1");
+            return result(100);
+        }, workers), record("s1", done));
+        scheduler.submit("other", "一", () -> {
+            busy.countDown();
+            release.await();
+            return result(100);
+        }, record("o1", done));
+        await(busy);
+        scheduler.submit("other", "二", () -> {
+            order.add("o2");
+            return result(100);
+        }, record("o2", done));
+
+        // 工作线程空闲后先执行交回的任务
+        quota.complete(null);
+        release.countDown();
+
+        await(done);
+        assertTrue(thread[0].startsWith("tts-scheduler-"));
+        assertEquals(Arrays.asList("s1", "o2"), order);
+    }
+
+    @Test
+    public void cancellingReplyCancelsStartedSynthesis() throws InterruptedException {
+        start(1, 60000);
+        CompletableFuture<AudioService.AudioProcessResult> quota = new CompletableFuture<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.beginReply(SESSION);
+        scheduler.submitAsync(SESSION, "一", workers -> {
+            started.countDown();
+            return quota;
+        }, record("s1", done));
+        await(started);
+        Thread.sleep(50);
+
+        // 等待配额的句子随回复取消，排队的配额请求一并撤回
+        scheduler.beginReply(SESSION);
+        await(done);
+        assertTrue(quota.isCancelled());
+        assertEquals(Collections.singletonList("s1:cancelled"), events);
+    }
+
+    @Test
+    public void asyncFailureIsUnwrapped() throws InterruptedException {
+        start(1, 60000);
+        IllegalStateException failure = new IllegalStateException("配额等待超时");
+        Throwable[] received = new Throwable[1];
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.submitAsync(SESSION, "一", workers -> CompletableFuture.<Void>completedFuture(null)
+                .thenApply(v -> {
+                    throw failure;
+                }), (result, error) -> {
+                    received[0] = error;
+                    done.countDown();
+                });
+
+        await(done);
+        assertSame(failure, received[0]);
+    }
+
+    @Test
+    public void bufferedAudioLimitDelaysLookahead() throws InterruptedException {
+        start(1, 100);
+        CountDownLatch done = new CountDownLatch(2);
+        long[] times = new long[2];
+
+        scheduler.submit(SESSION, "一", () -> result(400), (result, error) -> {
+            times[0] = System.currentTimeMillis();
+            done.countDown();
+        });
+        scheduler.submit(SESSION, "二", () -> {
+            times[1] = System.currentTimeMillis();
+            return result(100);
+        }, (result, error) -> done.countDown());
+
+        await(done);
+        // 第一句交付后缓冲400ms音频，播放到低于100ms后才提前合成第二句
+        assertTrue(times[1] - times[0] >= 250, "第二句过早开始合成: " + (times[1] - times[0]) + "ms");
+    }
+}
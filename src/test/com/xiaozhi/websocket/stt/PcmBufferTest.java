@@ -0,0 +1,114 @@
+package com.xiaozhi.websocket.stt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class PcmBufferTest {
+
+    @Test
+    public void releaseFreesArrayWhenLastReferenceIsGone() {
+        PcmBuffer buffer = PcmBuffer.wrap(new byte[] { 1, 2, 3, 4 });
+        buffer.retain();
+        assertEquals(2, buffer.refCnt());
+        assertFalse(buffer.release());
+        assertEquals(4, buffer.array().length);
+        assertTrue(buffer.release());
+        assertThrows(IllegalStateException.class, buffer::array);
+        assertThrows(IllegalStateException.class, buffer::release);
+        assertThrows(IllegalStateException.class, buffer::retain);
+    }
+
+    @Test
+    public void detachHandsOverExactArrayWithoutCopy() {
+        byte[] data = { 1, 2, 3, 4 };
+        PcmBuffer buffer = PcmBuffer.wrap(data);
+        assertSame(data, buffer.detach());
+        assertEquals(0, buffer.refCnt());
+    }
+
+    @Test
+    public void detachDoesNotCopyWhileShared() {
+        byte[] data = { 1, 2, 3, 4 };
+        PcmBuffer buffer = PcmBuffer.wrap(data);
+        buffer.retain();
+        assertSame(data, buffer.detach());
+        // 其他持有方仍可读取同一份数据
+        assertEquals(1, buffer.refCnt());
+        assertSame(data, buffer.array());
+        buffer.release();
+    }
+
+    @Test
+    public void detachCopiesOnlyValidRange() {
+        byte[] data = { 1, 2, 3, 4, 5, 6 };
+        PcmBuffer buffer = PcmBuffer.wrap(data, 4);
+        byte[] detached = buffer.detach();
+        assertNotSame(data, detached);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, detached);
+    }
+
+    @Test
+    public void wrapRejectsInvalidLength() {
+        assertThrows(IllegalArgumentException.class, () -> PcmBuffer.wrap(new byte[2], 3));
+        assertThrows(IllegalArgumentException.class, () -> PcmBuffer.wrap(new byte[2], -1));
+    }
+
+    @Test
+    public void poolReusesReleasedArrays() {
+        PcmBufferPool pool = new PcmBufferPool(4);
+        PcmBuffer first = pool.acquire(1920);
+        byte[] array = first.array();
+        first.retain();
+        first.release();
+        assertEquals(0, pool.getFreeCount());
+        first.release();
+        assertEquals(1, pool.getFreeCount());
+
+        PcmBuffer second = pool.acquire(1920);
+        assertSame(array, second.array());
+        assertEquals(1, second.refCnt());
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    public void poolKeepsArraysBySize() {
+        PcmBufferPool pool = new PcmBufferPool(4);
+        pool.acquire(640).release();
+        PcmBuffer other = pool.acquire(1920);
+        assertEquals(1920, other.length());
+        assertEquals(2, pool.getAllocatedCount());
+        assertEquals(1, pool.getFreeCount());
+    }
+
+    @Test
+    public void detachedArrayIsNotRecycled() {
+        PcmBufferPool pool = new PcmBufferPool(4);
+        PcmBuffer buffer = pool.acquire(320);
+        buffer.retain();
+        byte[] detached = buffer.detach();
+        buffer.release();
+        assertEquals(0, pool.getFreeCount());
+        assertNotSame(detached, pool.acquire(320).array());
+    }
+
+    @Test
+    public void poolDropsArraysBeyondCapacity() {
+        PcmBufferPool pool = new PcmBufferPool(2);
+        PcmBuffer a = pool.acquire(320);
+        PcmBuffer b = pool.acquire(320);
+        PcmBuffer c = pool.acquire(320);
+        a.release();
+        b.release();
+        c.release();
+        assertEquals(2, pool.getFreeCount());
+    }
+}
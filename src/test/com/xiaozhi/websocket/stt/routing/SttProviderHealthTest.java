@@ -0,0 +1,72 @@
+package com.xiaozhi.websocket.stt.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class SttProviderHealthTest {
+
+    @Test
+    public void emptyWindowIsHealthy() {
+        SttProviderHealth health = new SttProviderHealth("tencent:1", 10, 60000);
+        SttProviderHealth.Snapshot snapshot = health.snapshot();
+        assertEquals(0, snapshot.getSamples());
+        assertEquals(1.0, snapshot.getSuccessRate(), 0.0001);
+        assertEquals(0, snapshot.getP95TimeToFinalMs());
+    }
+
+    @Test
+    public void successRateCountsFailuresAndTimeouts() {
+        SttProviderHealth health = new SttProviderHealth("tencent:1", 10, 60000);
+        health.recordSuccess(100);
+        health.recordSuccess(200);
+        health.recordFailure();
+        health.recordTimeout();
+        SttProviderHealth.Snapshot snapshot = health.snapshot();
+        assertEquals(4, snapshot.getSamples());
+        assertEquals(0.5, snapshot.getSuccessRate(), 0.0001);
+    }
+
+    @Test
+    public void p95UsesOnlySuccessfulLatencies() {
+        SttProviderHealth health = new SttProviderHealth("aliyun:2", 100, 60000);
+        for (int i = 1; i <= 20; i++) {
+            health.recordSuccess(i * 10);
+        }
+        health.recordFailure();
+        // 20个样本的p95为第19个：190ms，失败样本不参与耗时统计
+        assertEquals(190, health.snapshot().getP95TimeToFinalMs());
+    }
+
+    @Test
+    public void windowKeepsOnlyLatestSamples() {
+        SttProviderHealth health = new SttProviderHealth("vosk", 3, 60000);
+        health.recordFailure();
+        health.recordFailure();
+        health.recordSuccess(50);
+        health.recordSuccess(60);
+        health.recordSuccess(70);
+        SttProviderHealth.Snapshot snapshot = health.snapshot();
+        assertEquals(3, snapshot.getSamples());
+        assertEquals(1.0, snapshot.getSuccessRate(), 0.0001);
+        assertEquals(70, snapshot.getP95TimeToFinalMs());
+    }
+
+    @Test
+    public void samplesOutsideTimeWindowAreIgnored() throws Exception {
+        SttProviderHealth health = new SttProviderHealth("vosk", 10, 20);
+        health.recordFailure();
+        Thread.sleep(50);
+        health.recordSuccess(30);
+        SttProviderHealth.Snapshot snapshot = health.snapshot();
+        assertEquals(1, snapshot.getSamples());
+        assertEquals(1.0, snapshot.getSuccessRate(), 0.0001);
+    }
+
+    @Test
+    public void negativeLatencyIsClampedToZero() {
+        SttProviderHealth health = new SttProviderHealth("vosk", 10, 60000);
+        health.recordSuccess(-5);
+        assertEquals(0, health.snapshot().getP95TimeToFinalMs());
+    }
+}
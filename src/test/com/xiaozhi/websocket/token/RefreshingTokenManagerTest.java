@@ -0,0 +1,214 @@
+package com.xiaozhi.websocket.token;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.xiaozhi.entity.SysConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RefreshingTokenManagerTest {
+
+    private static final long HOUR_MS = 3600_000L;
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    // 为null时立即返回，否则获取请求等待放行
+    private volatile CountDownLatch release;
+
+    // 非null时获取请求抛出该异常
+    private volatile RuntimeException failure;
+
+    // 新Token的有效期（毫秒）
+    private volatile long lifetimeMs = HOUR_MS;
+
+    private TestTokenManager manager;
+
+    private class TestTokenManager extends RefreshingTokenManager {
+        @Override
+        protected IssuedToken fetchToken(SysConfig config) throws Exception {
+            int count = fetches.incrementAndGet();
+            CountDownLatch latch = release;
+            if (latch != null) {
+                latch.await();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new IssuedToken("token-" + count, System.currentTimeMillis() + lifetimeMs);
+        }
+
+        @Override
+        public void initializeAllTokens() {
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        manager = new TestTokenManager();
+        ReflectionTestUtils.setField(manager, "refreshRatio", 0.8);
+        ReflectionTestUtils.setField(manager, "acquireTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(manager, "retryDelayMs", 60000L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        manager.stopRefresher();
+    }
+
+    private static SysConfig config() {
+        SysConfig config = new SysConfig();
+        config.setConfigId(1);
+        config.setAppId("app");
+        config.setApiKey("key");
+        config.setApiSecret("secret");
+        return config;
+    }
+
+    private static String await(CompletableFuture<String> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void getValidTokenDoesNotWaitForFirstFetch() throws Exception {
+        release = new CountDownLatch(1);
+        SysConfig config = config();
+
+        long start = System.currentTimeMillis();
+        assertNull(manager.getValidToken(config));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        // 后台获取完成后返回Token
+        release.countDown();
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+        assertEquals("token-1", manager.getValidToken(config));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void concurrentWaitersShareOneFetch() throws Exception {
+        release = new CountDownLatch(1);
+        SysConfig config = config();
+
+        CompletableFuture<String> first = manager.getValidTokenAsync(config);
+        CompletableFuture<String> second = manager.getValidTokenAsync(config);
+        assertFalse(first.isDone());
+        release.countDown();
+
+        assertEquals("token-1", await(first));
+        assertEquals("token-1", await(second));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void cancelledWaiterDoesNotAffectOthers() throws Exception {
+        release = new CountDownLatch(1);
+        SysConfig config = config();
+
+        CompletableFuture<String> first = manager.getValidTokenAsync(config);
+        CompletableFuture<String> second = manager.getValidTokenAsync(config);
+        first.cancel(true);
+        release.countDown();
+
+        assertEquals("token-1", await(second));
+    }
+
+    @Test
+    public void tokenInRefreshWindowIsReturnedWhileRefreshing() throws Exception {
+        // 有效期很短，获取后立即进入刷新区间
+        lifetimeMs = 1000;
+        SysConfig config = config();
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+        Thread.sleep(850);
+
+        lifetimeMs = HOUR_MS;
+        release = new CountDownLatch(1);
+        assertEquals("token-1", manager.getValidToken(config));
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"token-2".equals(manager.getValidToken(config)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("token-2", manager.getValidToken(config));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void failedRefreshIsNotRetriedBeforeRetryDelay() throws Exception {
+        lifetimeMs = 1000;
+        SysConfig config = config();
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+        Thread.sleep(850);
+
+        // 刷新失败，旧Token仍可使用
+        failure = new IllegalStateException("服务商不可用");
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fetches.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        // 重试间隔内多次调用不再请求服务商
+        for (int i = 0; i < 20; i++) {
+            assertEquals("token-1", manager.getValidToken(config));
+        }
+        Thread.sleep(50);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void failedFetchWithoutTokenFailsFastUntilRetryDelay() throws Exception {
+        failure = new IllegalStateException("服务商不可用");
+        SysConfig config = config();
+
+        assertNull(await(manager.getValidTokenAsync(config)));
+        assertNull(await(manager.getValidTokenAsync(config)));
+        assertNull(manager.getValidToken(config));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void failedFetchIsRetriedAfterRetryDelay() throws Exception {
+        ReflectionTestUtils.setField(manager, "retryDelayMs", 0L);
+        failure = new IllegalStateException("服务商不可用");
+        SysConfig config = config();
+        assertNull(await(manager.getValidTokenAsync(config)));
+
+        failure = null;
+        Thread.sleep(5);
+        assertEquals("token-2", await(manager.getValidTokenAsync(config)));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void changedCredentialsDiscardCachedToken() throws Exception {
+        SysConfig config = config();
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+
+        config.setApiSecret("new-secret");
+        assertEquals("token-2", await(manager.getValidTokenAsync(config)));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void invalidateDiscardsCachedToken() throws Exception {
+        SysConfig config = config();
+        assertEquals("token-1", await(manager.getValidTokenAsync(config)));
+
+        manager.invalidate(config.getConfigId());
+        assertTrue(manager.isTokenExpiringSoon(config.getConfigId()));
+        assertEquals("token-2", await(manager.getValidTokenAsync(config)));
+        assertEquals(2, fetches.get());
+    }
+}
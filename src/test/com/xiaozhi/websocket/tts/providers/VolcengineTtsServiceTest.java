@@ -0,0 +1,148 @@
+package com.xiaozhi.websocket.tts.providers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class VolcengineTtsServiceTest {
+
+    private final List<byte[]> audio = new ArrayList<>();
+
+    /**
+     * 构建仅含音频的响应，flags为0时只有协议头，为1或3时带序号
+     */
+    private static byte[] audioResponse(int flags, int sequence, byte[] data) {
+        if (flags == 0) {
+            return new byte[] { 0x11, (byte) 0xb0, 0x10, 0x00 };
+        }
+        boolean hasSequence = flags == 0x01 || flags == 0x03;
+        ByteBuffer buffer = ByteBuffer.allocate((hasSequence ? 12 : 8) + data.length);
+        buffer.put(new byte[] { 0x11, (byte) (0xb0 | flags), 0x10, 0x00 });
+        if (hasSequence) {
+            buffer.putInt(sequence);
+        }
+        buffer.putInt(data.length);
+        buffer.put(data);
+        return buffer.array();
+    }
+
+    private static byte[] errorResponse(int code, byte[] payload, boolean gzip) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + payload.length);
+        buffer.put(new byte[] { 0x11, (byte) 0xf0, (byte) (gzip ? 0x11 : 0x10), 0x00 });
+        buffer.putInt(code);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void encodesFullClientRequest() throws IOException {
+        String json = "{\"request\":{\"text\":\"你好\"}}";
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+
+        byte[] frame = VolcengineTtsService.encodeRequest(json);
+
+        assertEquals(8 + payload.length, frame.length);
+        // 版本1、头长度1（4字节）；完整请求、无标志；JSON、不压缩；保留字节
+        assertArrayEquals(new byte[] { 0x11, 0x10, 0x10, 0x00 }, Arrays.copyOf(frame, 4));
+        assertEquals(payload.length, ByteBuffer.wrap(frame, 4, 4).getInt());
+        assertArrayEquals(payload, Arrays.copyOfRange(frame, 8, frame.length));
+    }
+
+    @Test
+    public void acknowledgementCarriesNoAudio() throws IOException {
+        assertFalse(VolcengineTtsService.decodeResponse(audioResponse(0, 0, null), audio::add));
+        assertTrue(audio.isEmpty());
+    }
+
+    @Test
+    public void decodesAudioUntilNegativeSequence() throws IOException {
+        byte[] first = { 1, 2, 3, 4 };
+        byte[] last = { 5, 6 };
+
+        assertFalse(VolcengineTtsService.decodeResponse(audioResponse(0x01, 1, first), audio::add));
+        assertTrue(VolcengineTtsService.decodeResponse(audioResponse(0x03, -2, last), audio::add));
+
+        assertEquals(2, audio.size());
+        assertArrayEquals(first, audio.get(0));
+        assertArrayEquals(last, audio.get(1));
+    }
+
+    @Test
+    public void lastPacketWithoutSequence() throws IOException {
+        byte[] last = { 5, 6, 7 };
+
+        // 标志2的最后一包没有序号字段，负载长度紧跟协议头
+        assertTrue(VolcengineTtsService.decodeResponse(audioResponse(0x02, 0, last), audio::add));
+        assertEquals(1, audio.size());
+        assertArrayEquals(last, audio.get(0));
+    }
+
+    @Test
+    public void emptyLastPacketEndsStream() throws IOException {
+        assertTrue(VolcengineTtsService.decodeResponse(audioResponse(0x03, -3, new byte[0]), audio::add));
+        assertTrue(audio.isEmpty());
+    }
+
+    @Test
+    public void skipsExtendedHeader() throws IOException {
+        // 头长度为2（8字节），多出的4字节为扩展头
+        byte[] data = { 9, 8, 7 };
+        ByteBuffer buffer = ByteBuffer.allocate(16 + data.length);
+        buffer.put(new byte[] { 0x12, (byte) 0xb1, 0x10, 0x00, 0x7f, 0x7f, 0x7f, 0x7f });
+        buffer.putInt(1);
+        buffer.putInt(data.length);
+        buffer.put(data);
+
+        assertFalse(VolcengineTtsService.decodeResponse(buffer.array(), audio::add));
+        assertArrayEquals(data, audio.get(0));
+    }
+
+    @Test
+    public void otherMessagesAreIgnored() throws IOException {
+        // 前端信息（0x0c）不影响音频
+        byte[] message = { 0x11, (byte) 0xc0, 0x10, 0x00, 0, 0, 0, 2, '{', '}' };
+        assertFalse(VolcengineTtsService.decodeResponse(message, audio::add));
+        assertTrue(audio.isEmpty());
+    }
+
+    @Test
+    public void errorMessageThrows() {
+        byte[] payload = "{\"message\":\"quota exceeded\"}".getBytes(StandardCharsets.UTF_8);
+
+        IOException e = assertThrows(IOException.class,
+                () -> VolcengineTtsService.decodeResponse(errorResponse(3031, payload, false), audio::add));
+        assertTrue(e.getMessage().contains("code=3031"));
+        assertTrue(e.getMessage().contains("quota exceeded"));
+    }
+
+    @Test
+    public void gzipErrorMessageIsDecompressed() throws IOException {
+        byte[] payload = gzip("{\"message\":\"文本过长\"}".getBytes(StandardCharsets.UTF_8));
+
+        IOException e = assertThrows(IOException.class,
+                () -> VolcengineTtsService.decodeResponse(errorResponse(3010, payload, true), audio::add));
+        assertTrue(e.getMessage().contains("文本过长"));
+    }
+}
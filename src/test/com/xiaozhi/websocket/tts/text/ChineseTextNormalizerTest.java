@@ -0,0 +1,82 @@
+package com.xiaozhi.websocket.tts.text;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class ChineseTextNormalizerTest {
+
+    private final ChineseTextNormalizer normalizer = new ChineseTextNormalizer();
+
+    private void assertReading(String expected, String text) {
+        assertEquals(expected, normalizer.normalize(text), text);
+    }
+
+    @Test
+    public void decimalFractionIsSpelled() {
+        assertReading("零点二七一", "0.271");
+        assertReading("三点一四", "3.14");
+    }
+
+    @Test
+    public void cardinalInsertsZeros() {
+        assertReading("一千零五", "1005");
+        assertReading("十", "10");
+        assertReading("十二万", "120000");
+        assertReading("一亿零一", "100000001");
+        assertReading("零", "0");
+    }
+
+    @Test
+    public void dateReadsYearDigitByDigit() {
+        assertReading("二零二四年五月一日", "2024-05-01");
+        assertReading("二零二四年五月一日", "2024/5/1");
+        assertReading("二零二四年", "2024年");
+    }
+
+    @Test
+    public void timeReadsMinutesWithLeadingZero() {
+        assertReading("八点零五分", "8:05");
+        assertReading("八点", "8:00");
+        assertReading("十二点三十分十五秒", "12:30:15");
+    }
+
+    @Test
+    public void rangeAndNegative() {
+        assertReading("三到五", "3-5");
+        assertReading("负五", "-5");
+    }
+
+    @Test
+    public void unitsAndCurrencies() {
+        assertReading("二十五摄氏度", "25℃");
+        assertReading("五公里", "5 km");
+        assertReading("二十美元", "$20");
+        // 单位后紧跟字母时不是单位
+        assertReading("三x", "3x");
+    }
+
+    @Test
+    public void percentAndFraction() {
+        assertReading("百分之五十", "50%");
+        assertReading("四分之三", "3/4");
+    }
+
+    @Test
+    public void phoneNumberIsSpelled() {
+        assertReading("一三八一二三四五六七八", "13812345678");
+        assertReading("零一零", "010");
+    }
+
+    @Test
+    public void markdownAndEmojiAreRemoved() {
+        assertReading("标题，重点内容", "## 标题\n- **重点**内容😀");
+        assertReading("见文档", "见[文档](https://example.com)");
+    }
+
+    @Test
+    public void emptyInput() {
+        assertReading("", null);
+        assertReading("", "");
+    }
+}